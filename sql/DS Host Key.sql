@@ -0,0 +1,18 @@
+# Indexed host key for data source duplicate lookups, replacing the full scan of DS URL Search.sql
+# run once per schema before deploying, then backfill with ManualRunner.backfillHostKeys (the key needs the public suffix list)
+
+alter table data_source
+	add column host_key varchar(255) null after url,
+	add key ix_data_source_host_key (host_key);
+
+# rows still missing a key after the backfill (unparseable urls)
+select id, url
+from data_source
+where host_key is null;
+
+# data sources sharing a site
+select host_key, count(*) sites
+from data_source
+group by host_key
+having count(*) > 1
+order by sites desc;
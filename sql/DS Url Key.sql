@@ -0,0 +1,11 @@
+# Unique key on the data source url so batched dealer inserts (on duplicate key update) are idempotent
+# run once per schema before deploying, resolve any duplicates listed first with DS Dupe Cleanup.sql
+
+select url, count(*) dupes
+from data_source
+group by url
+having count(*) > 1;
+
+alter table data_source
+	add column url_hash binary(16) as (unhex(md5(url))) stored after url,
+	add unique key uk_data_source_url (url_hash);
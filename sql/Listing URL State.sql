@@ -0,0 +1,29 @@
+# Work state for listing delegation, keyed by (data_source_id, base, url_hash)
+# run once per schema before deploying the leasing ListingDataSourceUrlService
+
+# remove duplicate urls left over from before the unique key, keeping the lowest id
+delete u
+from listing_data_source_urls u
+	join listing_data_source_urls d
+		on d.data_source_id = u.data_source_id
+			and d.base = u.base
+			and d.url = u.url
+			and d.id < u.id;
+
+alter table listing_data_source_urls
+	add column url_hash binary(16) as (unhex(md5(url))) stored after url,
+	add column lease_id char(36) null,
+	add unique key uk_listing_url_state (data_source_id, base, url_hash),
+	add key ix_listing_url_lease (lease_id);
+
+# work remaining by data source
+select
+	data_source_id
+	, base
+	, sum(case when ran then 0
+	      else 1 end)      ready
+	, sum(case when ran then 1
+	      else 0 end)      ran
+	, count(distinct lease_id) leases
+from listing_data_source_urls
+group by data_source_id, base;
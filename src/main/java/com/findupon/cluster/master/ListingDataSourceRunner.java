@@ -48,7 +48,6 @@ public class ListingDataSourceRunner implements Runnable {
 	@Autowired private JdbcTemplate jdbcTemplate;
 	@Autowired private com.findupon.commons.utilities.SlackMessenger slackMessenger;
 
-	private final Set<String> productUrls = new LinkedHashSet<>();
 	private final int defaultMaxQueuedOrders = 25;
 	private final int buildUrlDelegationSize = 200;
 	private int indexDelSize = 32;
@@ -67,7 +66,6 @@ public class ListingDataSourceRunner implements Runnable {
 			return;
 		}
 		Stopwatch stopwatch = Stopwatch.createStarted();
-		Stack<String> baseUrls;
 
 		if(listingDataSource.getIndexOnly()) {
 			if(listingDataSource.getIndexDelegationSize() != null && listingDataSource.getIndexDelegationSize() > 0) {
@@ -75,17 +73,10 @@ public class ListingDataSourceRunner implements Runnable {
 			}
 			logger.info("[ListingDataSourceRunner] - Indexed delegation size [{}] for [{}]", indexDelSize, listingDataSource.getUrl());
 			try {
-				baseUrls = getBaseUrls();
-				logger.info("[ListingDataSourceRunner] - Base URLs collection size [{}] for [{}]", baseUrls.size(), listingDataSource.getUrl());
+				long baseUrlCount = seedBaseUrls();
+				logger.info("[ListingDataSourceRunner] - Base URLs collection size [{}] for [{}]", baseUrlCount, listingDataSource.getUrl());
 
-				delegate(() -> {
-					List<String> baseUrlList = new ArrayList<>();
-					for(int x = 0; x < indexDelSize && !baseUrls.empty(); x++) {
-						baseUrlList.add(baseUrls.pop());
-					}
-					urlService.updateRan(listingDataSource, baseUrlList, true, true);
-					return baseUrlList;
-				}, baseUrls, MasterMessage.LISTING_GATHER);
+				delegate(() -> urlService.leaseUrls(listingDataSource, true, indexDelSize), baseUrlCount, MasterMessage.LISTING_GATHER);
 
 				if(checkAndHandleInterrupt(MasterMessage.LISTING_GATHER)) {
 					return;
@@ -100,24 +91,20 @@ public class ListingDataSourceRunner implements Runnable {
 				return;
 			}
 		} else {
-			List<String> newProductUrls = urlService.findAllNotRanUrls(listingDataSource, false);
-			if(newProductUrls.isEmpty()) {
+			long newProductUrlCount = urlService.countNotRanUrls(listingDataSource, false);
+			if(newProductUrlCount == 0) {
 				try {
-					baseUrls = getBaseUrls();
+					long baseUrlCount = seedBaseUrls();
 
-					delegate(() -> {
-						List<String> urlList = Collections.singletonList(baseUrls.pop());
-						urlService.updateRan(listingDataSource, urlList, true, true);
-						return urlList;
-					}, baseUrls, MasterMessage.LISTING_GATHER);
+					delegate(() -> urlService.leaseUrls(listingDataSource, true, 1), baseUrlCount, MasterMessage.LISTING_GATHER);
 					if(checkAndHandleInterrupt(MasterMessage.LISTING_GATHER)) {
 						return;
 					}
 					// clear out the base urls as we are now done with them
 					urlService.deleteAllUrls(listingDataSource, true);
 
-					// grab the new urls
-					newProductUrls = urlService.findAllNotRanUrls(listingDataSource, false);
+					// count the new urls
+					newProductUrlCount = urlService.countNotRanUrls(listingDataSource, false);
 
 				} catch(Exception e) {
 					handleRunException(e);
@@ -125,11 +112,11 @@ public class ListingDataSourceRunner implements Runnable {
 				}
 			} else {
 				logger.info("[ListingDataSourceRunner] - Resuming previous build for [{}] with [{}] URLs",
-						listingDataSource.getUrl(), newProductUrls.size());
+						listingDataSource.getUrl(), newProductUrlCount);
 			}
 			try {
-				generateUrlsToBuild(newProductUrls);
-				delegate(this::getAndUpdateUrlsToWork, productUrls, MasterMessage.LISTING_BUILD);
+				long buildUrlCount = queueUrlsToBuild(newProductUrlCount);
+				delegate(() -> urlService.leaseUrls(listingDataSource, false, buildUrlDelegationSize), buildUrlCount, MasterMessage.LISTING_BUILD);
 				if(checkAndHandleInterrupt(MasterMessage.LISTING_BUILD)) {
 					return;
 				}
@@ -182,10 +169,17 @@ public class ListingDataSourceRunner implements Runnable {
 		dataSourceOperations.endDataSourceRun(listingDataSource);
 	}
 
-	private void delegate(Supplier<Collection<String>> delegator, Collection<String> delegation, MasterMessage message) throws DataSourceRunFailureException {
-		int total = delegation.size(), sentSize = 0, queueSize = 0, statCounter = 0;
-
-		while(!delegation.isEmpty() || queueSize > 0 || sentSize > 0) {
+	/**
+	 * Queue work orders from the delegator until it returns an empty lease, then wait for every order to complete.
+	 *
+	 * @param total the URL count expected from the delegator, only used for progress logging
+	 */
+	private void delegate(Supplier<Collection<String>> delegator, long total, MasterMessage message) throws DataSourceRunFailureException {
+		long remaining = total;
+		int sentSize = 0, queueSize = 0, statCounter = 0;
+		boolean exhausted = false;
+
+		while(!exhausted || queueSize > 0 || sentSize > 0) {
 			queueSize = getQueuedListingDataSourcesSnapshot(listingDataSource.getId()).size();
 			sentSize = getSentWorkRequestsSnapshot(listingDataSource, message).size();
 			logger.debug("[ListingDataSourceRunner] - Listing queue size [{}] Listing sent size [{}] bot [{}]", queueSize, sentSize, listingDataSource.getUrl());
@@ -195,25 +189,30 @@ public class ListingDataSourceRunner implements Runnable {
 				maxQueuedOrders = defaultMaxQueuedOrders;
 			}
 			// listing runs cap total running per site by limiting orders in the work queue
-			while(queueSize + sentSize <= maxQueuedOrders) {
-				if(!delegation.isEmpty()) {
-					if(Thread.currentThread().isInterrupted()) {
-						logger.warn("[ListingDataSourceRunner] - Thread interrupt triggered from delegation (most likely shutdown), aborting [{}] run", listingDataSource.getUrl());
-						return;
-					}
-					ClusterTransmission workOrder = new ClusterTransmission();
-					workOrder.setDataSource(listingDataSource);
-					workOrder.setMessage(message);
-					workOrder.setUrlsToWork(new ArrayList<>(delegator.get()));
-					workQueue.offer(workOrder);
-					queueSize++;
-				} else {
+			while(queueSize + sentSize <= maxQueuedOrders && !exhausted) {
+				if(Thread.currentThread().isInterrupted()) {
+					logger.warn("[ListingDataSourceRunner] - Thread interrupt triggered from delegation (most likely shutdown), aborting [{}] run", listingDataSource.getUrl());
+					return;
+				}
+				Collection<String> urlsToWork = delegator.get();
+				if(urlsToWork.isEmpty()) {
+					exhausted = true;
 					break;
 				}
+				remaining = Math.max(0, remaining - urlsToWork.size());
+				ClusterTransmission workOrder = new ClusterTransmission();
+				workOrder.setDataSource(listingDataSource);
+				workOrder.setMessage(message);
+				workOrder.setUrlsToWork(new ArrayList<>(urlsToWork));
+				workQueue.offer(workOrder);
+				queueSize++;
+			}
+			if(exhausted && queueSize == 0 && sentSize == 0) {
+				break;
 			}
 			if(++statCounter % 4 == 0) {
 				statCounter = 0;
-				int adjustedSize = delegation.size(), adjustedTotal = total;
+				long adjustedSize = remaining, adjustedTotal = total;
 				// calculate the actual amount of work remaining (only for logging) based on the batch size for build and index gather orders
 				// this step is not required for non-index only listing gather orders as only a single base url is sent
 				switch(message) {
@@ -228,7 +227,7 @@ public class ListingDataSourceRunner implements Runnable {
 						}
 						break;
 				}
-				int completed = Math.abs(adjustedSize - adjustedTotal + queueSize) - sentSize;
+				long completed = Math.abs(adjustedSize - adjustedTotal + queueSize) - sentSize;
 				logger.info("[ListingDataSourceRunner] - Completed [{}/{}] {} work orders for [{}]", completed, adjustedTotal, message.name(), listingDataSource.getUrl());
 			}
 			if(hasDataSourceFailedMoreThanAllowed(listingDataSource)) {
@@ -244,26 +243,16 @@ public class ListingDataSourceRunner implements Runnable {
 		}
 	}
 
-	private List<String> getAndUpdateUrlsToWork() {
-		List<String> urlsToWork = new ArrayList<>();
-		short x = 0;
-		synchronized(productUrls) {
-			Iterator<String> iterator = productUrls.iterator();
-			while(x < buildUrlDelegationSize && iterator.hasNext()) {
-				String url = iterator.next();
-				urlsToWork.add(url);
-				x++;
-			}
-			productUrls.removeAll(urlsToWork);
-		}
-		urlService.updateRan(listingDataSource, urlsToWork, true, false);
-		return urlsToWork;
-	}
-
+	/**
+	 * Retrieve and store fresh base URLs from the bot unless a previous run left some not ran.
+	 *
+	 * @return the number of base URLs to work
+	 */
 	@SuppressWarnings("unchecked")
-	private Stack<String> getBaseUrls() throws Exception {
-		Set<String> urls = new LinkedHashSet<>(urlService.findAllNotRanUrls(listingDataSource, true));
-		if(urls.isEmpty()) {
+	private long seedBaseUrls() throws Exception {
+		long count = urlService.countNotRanUrls(listingDataSource, true);
+		if(count == 0) {
+			Set<String> urls = new LinkedHashSet<>();
 			try {
 				Class<?> clazz = Class.forName(listingDataSource.getBotClass());
 				if(com.findupon.commons.bot.ListingBot.class.isAssignableFrom(clazz)) {
@@ -279,38 +268,33 @@ public class ListingDataSourceRunner implements Runnable {
 				logger.error("[BaseUrlRetriever] - Error retrieving new base URLs for [{}]", listingDataSource.getBotClass(), e);
 				throw e;
 			}
+			count = urlService.countNotRanUrls(listingDataSource, true);
 		} else {
-			logger.info("[BaseUrlRetriever] - Resuming previous run for [{}] with [{}] base URLs", listingDataSource.getUrl(), urls.size());
-		}
-		List<String> temp = new ArrayList<>(urls);
-		urls.clear();
-		Collections.shuffle(temp);
-		Stack<String> urlStack = new Stack<>();
-		for(String url : temp) {
-			urlStack.push(url);
+			logger.info("[BaseUrlRetriever] - Resuming previous run for [{}] with [{}] base URLs", listingDataSource.getUrl(), count);
 		}
-		return urlStack;
+		return count;
 	}
 
-	private void generateUrlsToBuild(List<String> newProductUrls) {
-		productUrls.clear();
+	/**
+	 * Add existing products due for a revisit to the gathered product URLs, letting the URL store drop duplicates.
+	 *
+	 * @return the number of URLs to build
+	 */
+	private long queueUrlsToBuild(long newProductUrlCount) {
 		Calendar calendar = Calendar.getInstance();
 		calendar.add(Calendar.DATE, -listingDataSource.getDaysBetweenRuns());
 
-		Set<String> urlSet = new HashSet<>(
-				jdbcTemplate.queryForList("select url from " + getTable() + " p where p.source_url = ? and (p.visited_date is null or p.visited_date < ?)",
-						String.class, listingDataSource.getUrl(), calendar.getTime())
-		);
-		int existingUrlSize = urlSet.size();
-		int newProductUrlSize = newProductUrls.size();
-		urlSet.addAll(newProductUrls);
+		int existingUrlCount = urlService.insertFromSelect(listingDataSource, false,
+				"select url from " + getTable() + " p where p.source_url = ? and (p.visited_date is null or p.visited_date < ?)",
+				listingDataSource.getUrl(), calendar.getTime());
+		long combinedUrlCount = urlService.countNotRanUrls(listingDataSource, false);
 
 		slackMessenger.sendMessageWithArgs("*[ListingDataSourceRunner]* - %s gathering completed:%n```" +
 						"Gathered URLs  [%d]%n" +
 						"Existing URLs  [%d]%n" +
 						"Combined URLs  [%d]%n```",
-				listingDataSource.getUrl(), newProductUrlSize, existingUrlSize, urlSet.size());
-		productUrls.addAll(urlSet);
+				listingDataSource.getUrl(), newProductUrlCount, existingUrlCount, combinedUrlCount);
+		return combinedUrlCount;
 	}
 
 	private void handleRemoval() {
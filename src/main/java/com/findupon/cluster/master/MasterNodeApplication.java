@@ -24,6 +24,8 @@ import com.findupon.cluster.master.housekeeper.NodeRecruiter;
 import com.findupon.cluster.master.housekeeper.ShutdownNodeHandler;
 import com.findupon.cluster.master.housekeeper.TimedOutSentRequestHandler;
 import com.findupon.commons.entity.datasource.DataSource;
+import com.findupon.commons.metrics.MetricRegistry;
+import com.findupon.commons.metrics.MetricsEndpoint;
 import com.findupon.repository.MasterNodeRepo;
 import com.findupon.utilities.MemoryUtils;
 import org.slf4j.Logger;
@@ -35,6 +37,7 @@ import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -49,6 +52,8 @@ import static com.findupon.cluster.entity.master.MasterNodeObjects.*;
 public class MasterNodeApplication {
 	private static final Logger logger = LoggerFactory.getLogger(MasterNodeApplication.class);
 	@Value("${production}") private Boolean production;
+	@Value("${metrics.host:127.0.0.1}") private String metricsHost;
+	@Value("${metrics.masterPort:9400}") private Integer metricsPort;
 
 	@Autowired private com.findupon.commons.utilities.DataSourceOperations dataSourceOperations;
 	@Autowired private com.findupon.commons.repository.datasource.DataSourceRepo dataSourceRepo;
@@ -66,6 +71,7 @@ public class MasterNodeApplication {
 
 	private final ListingDatasourceScheduler listingDatasourceScheduler = new ListingDatasourceScheduler();
 	private final GenericDatasourceScheduler genericDatasourceScheduler = new GenericDatasourceScheduler();
+	private MetricsEndpoint metricsEndpoint;
 
 
 	public static void main(String... args) {
@@ -95,6 +101,7 @@ public class MasterNodeApplication {
 
 		new Thread(listingDatasourceScheduler).start();
 		new Thread(genericDatasourceScheduler).start();
+		startMetricsEndpoint();
 
 		Runtime.getRuntime().addShutdownHook(new Thread(this::shutdownHook));
 
@@ -105,6 +112,19 @@ public class MasterNodeApplication {
 				production ? "prod" : "dev", MemoryUtils.getCurrentHeapSizeStr(), MemoryUtils.getMaxHeapSizeStr(), System.getProperty("sun.arch.data.model"));
 	}
 
+	private void startMetricsEndpoint() {
+		MetricRegistry.INSTANCE.gauge("das_work_queue_depth", "Work orders waiting for a node", workQueue::size);
+		MetricRegistry.INSTANCE.gauges("das_orders_in_flight", "Work orders sent and not yet answered", "node",
+				() -> getSentWorkRequestsSnapshot().stream()
+						.collect(Collectors.groupingBy(r -> String.valueOf(r.getNode().getId()), Collectors.counting())));
+		try {
+			metricsEndpoint = MetricsEndpoint.start(metricsHost, metricsPort);
+			logger.info("[MasterNodeApplication] - Metrics available at [{}:{}/metrics]", metricsHost, metricsEndpoint.getPort());
+		} catch(IOException e) {
+			logger.warn("[MasterNodeApplication] - Could not start the metrics endpoint, continuing without it", e);
+		}
+	}
+
 	private void shutdownHook() {
 		master.setRunning(false);
 
@@ -117,6 +137,9 @@ public class MasterNodeApplication {
 		nodeAlivenessTester.shutdown();
 		shutdownNodeHandler.shutdown();
 		nodeRecruiter.shutdown();
+		if(metricsEndpoint != null) {
+			metricsEndpoint.close();
+		}
 
 		logger.info("[ShutdownHook] - Master shutdown sequence initiated");
 
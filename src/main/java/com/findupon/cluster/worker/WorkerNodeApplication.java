@@ -25,7 +25,10 @@ import com.findupon.cluster.entity.worker.NodeConnectionStatus;
 import com.findupon.cluster.entity.worker.NodeMessage;
 import com.findupon.cluster.entity.worker.TimedThread;
 import com.findupon.cluster.entity.worker.WorkerNode;
+import com.findupon.commons.dao.ProductWriteBuffer;
 import com.findupon.commons.entity.datasource.DataSource;
+import com.findupon.commons.metrics.MetricRegistry;
+import com.findupon.commons.metrics.MetricsEndpoint;
 import com.findupon.repository.MasterNodeRepo;
 import com.findupon.repository.WorkerNodeRepo;
 import com.findupon.utilities.MemoryUtils;
@@ -74,14 +77,18 @@ public class WorkerNodeApplication {
 	private static volatile WorkerNode node;
 
 	@Value("${production}") private Boolean production;
+	@Value("${metrics.host:127.0.0.1}") private String metricsHost;
+	@Value("${metrics.workerPort:9401}") private Integer metricsPort;
 
 	@Autowired private JdbcTemplate jdbcTemplate;
 	@Autowired private WorkerNodeRepo workerNodeRepo;
 	@Autowired private MasterNodeRepo masterNodeRepo;
+	@Autowired private ProductWriteBuffer productWriteBuffer;
 
 	private final MasterCommandListener masterCommandListener = new MasterCommandListener();
 	private final MasterUpdateHandler masterUpdateHandler = new MasterUpdateHandler();
 	private final NodeHousekeeper nodeHousekeeper = new NodeHousekeeper();
+	private MetricsEndpoint metricsEndpoint;
 
 
 	public static void main(String... args) {
@@ -99,6 +106,8 @@ public class WorkerNodeApplication {
 		new Thread(masterCommandListener).start();
 		new Thread(masterUpdateHandler).start();
 		new Thread(nodeHousekeeper).start();
+		new Thread(productWriteBuffer, "product-writer").start();
+		startMetricsEndpoint();
 
 		Runtime.getRuntime().addShutdownHook(new Thread(this::shutdownHook));
 
@@ -115,11 +124,26 @@ public class WorkerNodeApplication {
 		masterUpdateHandler.shutdown();
 		nodeHousekeeper.shutdown();
 		interruptAllWorkerThreadsIfAny();
+		productWriteBuffer.shutdown();
+		if(metricsEndpoint != null) {
+			metricsEndpoint.close();
+		}
 
 		jdbcTemplate.update("delete from worker_node where id = ?", node.getId());
 		logger.info(nodePre() + "Shutdown sequence complete");
 	}
 
+	private void startMetricsEndpoint() {
+		MetricRegistry.INSTANCE.gauge("das_work_orders_running", "Work orders running on this node", workerThreadMap::size);
+		MetricRegistry.INSTANCE.gauge("das_write_queue_depth", "Products waiting on the write buffer", productWriteBuffer::getQueueDepth);
+		try {
+			metricsEndpoint = MetricsEndpoint.start(metricsHost, metricsPort);
+			logger.info(nodePre() + "Metrics available at [{}:{}/metrics]", metricsHost, metricsEndpoint.getPort());
+		} catch(IOException e) {
+			logger.warn(nodePre() + "Could not start the metrics endpoint, continuing without it", e);
+		}
+	}
+
 	private void resetDatabaseIdsIfFirstToStart() {
 		if(workerNodeRepo.count() == 0) {
 			jdbcTemplate.update("alter table worker_node auto_increment = 1;");
@@ -20,6 +20,7 @@ import com.google.common.base.Stopwatch;
 import com.google.common.collect.Lists;
 import com.findupon.commons.building.ProductUtils;
 import com.findupon.commons.dao.ProductDao;
+import com.findupon.commons.dao.ProductWriteBuffer;
 import com.findupon.commons.entity.datasource.AssetType;
 import com.findupon.commons.entity.datasource.DataSource;
 import com.findupon.commons.entity.datasource.DataSourceType;
@@ -78,6 +79,7 @@ public abstract class ListingBot<P extends Product & Serializable> {
 
 	@Autowired protected ProductUtils productUtils;
 	@Autowired protected ListingDataSourceUrlService listingDataSourceUrlService;
+	@Autowired private ProductWriteBuffer productWriteBuffer;
 	@Autowired private DataSourceRepo dataSourceRepo;
 
 
@@ -222,7 +224,7 @@ public abstract class ListingBot<P extends Product & Serializable> {
 
 	protected void persistAndClear() {
 		if(!products.isEmpty() && !Thread.currentThread().isInterrupted()) {
-			productUtils.saveAll(products);
+			productWriteBuffer.offer(products);
 			products.clear();
 		}
 	}
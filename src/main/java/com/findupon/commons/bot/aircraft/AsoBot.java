@@ -160,8 +160,7 @@ public class AsoBot extends AbstractAircraftBot {
 				}
 				if("US".equals(country)) {
 					// this won't be accurate because we don't have an address, but better than nothing
-					PostalLookupService.getAllPlaces().stream()
-							.filter(p -> StringUtils.equalsIgnoreCase(region, p.getAdminCode1()))
+					PostalLookupService.placesByState(region).stream()
 							.findFirst()
 							.ifPresent(p -> {
 								Address a = AddressOperations.mapPlaceToAddress(p, region + ", " + country);
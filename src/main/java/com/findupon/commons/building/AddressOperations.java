@@ -16,12 +16,15 @@
 
 package com.findupon.commons.building;
 
-import com.findupon.utilities.ContainsCollectionOwnText;
 import com.google.common.base.Stopwatch;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.findupon.commons.entity.building.Address;
 import com.findupon.commons.entity.building.State;
+import com.findupon.commons.entity.building.TagWeight;
 import com.findupon.commons.utilities.ConsoleColors;
 import com.findupon.commons.utilities.JsoupUtils;
+import com.findupon.commons.utilities.MultiPatternMatcher;
 import com.findupon.commons.utilities.RegexConstants;
 import net.sourceforge.jgeocoder.AddressComponent;
 import net.sourceforge.jgeocoder.us.AddressParser;
@@ -29,14 +32,17 @@ import net.sourceforge.jgeocoder.us.AddressStandardizer;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.text.WordUtils;
+import org.jsoup.helper.StringUtil;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Collector;
+import org.jsoup.nodes.Node;
+import org.jsoup.nodes.TextNode;
 import org.jsoup.select.Evaluator;
 import org.quickgeo.Place;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
@@ -49,18 +55,35 @@ public final class AddressOperations {
 	private static final Logger logger = LoggerFactory.getLogger(AddressOperations.class);
 	private static final String[] falsePositives = {"email"};
 	private static final String[] extraKeywords = {"directions", "direction"};
+	private static final String[] attrValuesToRemove = {"relate", "similar", "recommend", "feature"};
+	private static final String[] addressKeywords = {"addr", "map", "direction", "location"};
 	private static final Set<String> streetSuffixes = loadStreetSuffixes();
 	private static final Set<String> streetSuffixAbbreviations = loadStreetSuffixAbbreviations();
+	private static final Set<String> stateTokens = upperCase(State.stateAbbreviations, State.stateNames);
+	private static final Set<String> streetTokens = upperCase(streetSuffixes, streetSuffixAbbreviations);
+
+	// address keywords and padded state abbreviations, evaluated together in one pass over an element's text
+	private static final int keywordMatch = 1;
+	private static final int stateMatch = 2;
+	private static final MultiPatternMatcher candidateMatcher = MultiPatternMatcher.builder()
+			.add(0, addressKeywords)
+			.add(1, State.paddedStateAbbreviations)
+			.build();
+	private static final MultiPatternMatcher removalMatcher = MultiPatternMatcher.builder().add(0, attrValuesToRemove).build();
+	private static final Set<String> auxiliaryTags = new HashSet<>(Arrays.asList(TagWeight.auxiliaryTags));
+	private static final int maxTextLength = 128;
+
+	private static final Pattern digitPattern = Pattern.compile(".*\\d+.*");
+	private static final Pattern leadingDigitsPattern = Pattern.compile("^\\d+");
+	private static final Pattern zipPattern = Pattern.compile(RegexConstants.ZIP_MATCH);
+	private static final Pattern tokenPattern = Pattern.compile("[ ,]");
+	private static final Pattern nonAsciiPattern = Pattern.compile("[^\\x00-\\x7F]");
+	private static final Cache<String, ParsedLine> parsedLineCache = CacheBuilder.newBuilder().maximumSize(20_000).build();
 
 
 	public static Optional<Address> getAddress(Document document) {
 		Stopwatch stopwatch = Stopwatch.createStarted();
 
-		String[] attrValuesToRemove = {"relate", "similar", "recommend", "feature"};
-		String[] addressKeywords = {"addr", "map", "direction", "location"};
-
-		Document strippedDocument = null;
-		List<Element> addressElements;
 		List<String> addressStrings = new ArrayList<>();
 
 		// look for schema.org postal address before anything else
@@ -74,39 +97,17 @@ public final class AddressOperations {
 				.filter(AddressOperations::isValidAddressLine)
 				.forEach(addressStrings::add);
 
-		// look for address strings in the base elements
-		if(addressStrings.isEmpty()) {
-			strippedDocument = JsoupUtils.defaultStripTags(document);
-			JsoupUtils.defaultRemoveByAttributeValueContaining(strippedDocument, attrValuesToRemove);
-			addressElements = JsoupUtils.defaultGetElementsByAttributeValueContaining(strippedDocument, addressKeywords);
-			addressStrings = getAddressStringsFromElements(addressElements);
-		}
-
-		// look for containing text then step out at least 2 parents
 		if(addressStrings.isEmpty()) {
-			addressElements = Collector.collect(new ContainsCollectionOwnText(Arrays.asList(addressKeywords)), strippedDocument)
-					.stream()
-					.filter(e -> e.parent() != null && e.parent().parent() != null)
-					.flatMap(e -> e.parent().parent().children().stream())
-					.collect(Collectors.toList());
-			addressStrings = getAddressStringsFromElements(addressElements);
-		}
-
-		// look for state abbreviations and zip code combinations in text
-		// abbreviations are padded to loosely evaluate *alone-ness* (this is why we need a predicate evaluator)
-		if(addressStrings.isEmpty()) {
-			// TODO: new evaluator that takes a predicate for both single strings and collections. this will mean converting jsoup to java 8 but worth it
-			addressElements = Collector.collect(new ContainsCollectionOwnText(State.paddedStateAbbreviations), strippedDocument);
-			addressStrings = getAddressStringsFromElements(addressElements);
+			addressStrings = getAddressStringsFromText(document);
 		}
 
 		Map<String, Map<AddressComponent, String>> addressMap = new LinkedHashMap<>();
-		for(String addressStr : addressStrings) {
+		for(String addressStr : new LinkedHashSet<>(addressStrings)) {
 			addressStr = trimAddressLine(addressStr);
 			if(StringUtils.isBlank(addressStr)) {
 				continue;
 			}
-			Map<AddressComponent, String> normalizedComponentMap = AddressStandardizer.normalizeParsedAddress(AddressParser.parseAddress(addressStr));
+			Map<AddressComponent, String> normalizedComponentMap = parseLine(addressStr).getNormalized();
 			String standardizedAddress = AddressStandardizer.toSingleLine(normalizedComponentMap);
 			addressMap.putIfAbsent(standardizedAddress, normalizedComponentMap);
 		}
@@ -166,7 +167,7 @@ public final class AddressOperations {
 			return Optional.empty();
 		} else {
 			try {
-				addressComponentMap = AddressStandardizer.normalizeParsedAddress(AddressParser.parseAddress(addressLine));
+				addressComponentMap = parseLine(addressLine).getNormalized();
 			} catch(Exception e) {
 				LoggerFactory.getLogger(AutoParsingOperations.class).debug("Could not parse address from [{}]", addressLine);
 				return Optional.empty();
@@ -191,37 +192,203 @@ public final class AddressOperations {
 		}
 	}
 
-	private static List<String> getAddressStringsFromElements(List<Element> addressElements) {
-		return addressElements
-				.stream()
-				.map(e -> JsoupUtils.filteringTextMapper.apply(e,
-						s -> Arrays.stream(falsePositives).noneMatch(f -> StringUtils.containsIgnoreCase(s, f))))
-				.filter(StringUtils::isNotEmpty)
-				.filter(s -> s.split(" ").length < 32)
-				.filter(containsState().or(containsStreet()))
-				.filter(s -> getZipFromAddressLine(s).isPresent())
-				.distinct()
-				.sorted()
-				.map(a -> AttributeOperations.getLargestValidValueInsideString(a, AddressOperations::isValidAddressLine))
-				.flatMap(o -> o.map(Stream::of).orElseGet(Stream::empty))
-				.collect(Collectors.toList());
+	/**
+	 * The fallbacks for a page without a schema.org address, in one walk over the document as it is. The auxiliary tags
+	 * (span, strong, br, etc.) are read through rather than stripped from a re-parsed copy of the page, their text joining the
+	 * element they sit in, and the sections whose class or id contains a value to remove (related listings, etc.) are skipped
+	 * rather than removed.
+	 */
+	static List<String> getAddressStringsFromText(Document document) {
+		TextWalk walk = new TextWalk();
+		walk.walk(document);
+
+		// look for address strings in the base elements
+		List<String> addressStrings = walk.getAddressStrings(walk.attributeMatches);
+
+		// look for containing text then step out at least 2 parents
+		if(addressStrings.isEmpty()) {
+			List<Element> addressElements = new ArrayList<>();
+			for(Element element : walk.keywordMatches) {
+				Element parent = TextWalk.parent(element);
+				Element grandparent = parent == null ? null : TextWalk.parent(parent);
+				if(grandparent != null) {
+					walk.children(grandparent, addressElements);
+				}
+			}
+			addressStrings = walk.getAddressStrings(addressElements);
+		}
+
+		// look for state abbreviations and zip code combinations in text
+		// abbreviations are padded to loosely evaluate *alone-ness*
+		if(addressStrings.isEmpty()) {
+			addressStrings = walk.getAddressStrings(walk.stateMatches);
+		}
+		return addressStrings;
 	}
 
 	private static boolean isValidAddressLine(String addressLine) {
 		if(StringUtils.isBlank(addressLine)) {
 			return false;
 		}
+		return parseLine(addressLine).isValid();
+	}
+
+	/**
+	 * The same lines are parsed over and over, as candidates, their trimmed forms and every substring tried by
+	 * {@link AttributeOperations#getLargestValidValueInsideString}, so results are cached by the exact line.
+	 */
+	private static ParsedLine parseLine(String addressLine) {
 		try {
-			Map<AddressComponent, String> parsed = AddressParser.parseAddress(addressLine);
-			if(MapUtils.isEmpty(parsed)) {
-				return false;
+			return parsedLineCache.get(addressLine, () -> new ParsedLine(addressLine));
+		} catch(ExecutionException e) {
+			throw new IllegalStateException(e.getCause()); // never thrown, parse failures are kept on the entry
+		}
+	}
+
+	/**
+	 * Collects the address candidates of a document, read as it would be with the auxiliary tags stripped and the sections to
+	 * remove taken out: elements with an address keyword in an integral attribute, and elements whose own text has an address
+	 * keyword or a padded state abbreviation. Text is read the way {@link Element#ownText()} and {@link Element#text()} read it,
+	 * with a space where an auxiliary tag opened or closed, and normalized as {@link com.findupon.commons.searchparty.ScoutServices#normalize}
+	 * would the page.
+	 */
+	private static final class TextWalk {
+		private final Set<Element> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+		private final List<Element> attributeMatches = new ArrayList<>();
+		private final List<Element> keywordMatches = new ArrayList<>();
+		private final List<Element> stateMatches = new ArrayList<>();
+
+
+		private void walk(Element element) {
+			for(String attributeKey : TagWeight.integralAttributeKeys) {
+				if(element.hasAttr(attributeKey) && candidateMatcher.match(element.attr(attributeKey), keywordMatch) == keywordMatch) {
+					attributeMatches.add(element);
+					break;
+				}
 			}
-			Map<AddressComponent, String> normalized = AddressStandardizer.normalizeParsedAddress(parsed);
-			if(MapUtils.isEmpty(normalized)) {
-				return false;
+			StringBuilder ownText = new StringBuilder();
+			appendOwnText(element, ownText);
+			String text = ownText.toString().trim();
+			if(!text.isEmpty()) {
+				int matched = candidateMatcher.match(text);
+				if((matched & keywordMatch) != 0) {
+					keywordMatches.add(element);
+				}
+				if((matched & stateMatch) != 0) {
+					stateMatches.add(element);
+				}
+			}
+			walkChildren(element);
+		}
+
+		private void walkChildren(Element element) {
+			for(Element child : element.children()) {
+				if(auxiliaryTags.contains(child.tagName())) {
+					walkChildren(child);
+				} else if(isRemoved(child)) {
+					removed.add(child);
+				} else {
+					walk(child);
+				}
+			}
+		}
+
+		/**
+		 * The elements that would be children of this one with the auxiliary tags stripped, less those taken out.
+		 */
+		private void children(Element element, List<Element> children) {
+			for(Element child : element.children()) {
+				if(auxiliaryTags.contains(child.tagName())) {
+					children(child, children);
+				} else if(!removed.contains(child)) {
+					children.add(child);
+				}
+			}
+		}
+
+		private static Element parent(Element element) {
+			Element parent = element.parent();
+			while(parent != null && auxiliaryTags.contains(parent.tagName())) {
+				parent = parent.parent();
+			}
+			return parent;
+		}
+
+		private List<String> getAddressStrings(List<Element> addressElements) {
+			return addressElements
+					.stream()
+					.distinct()
+					.filter(e -> !TagWeight.largeTagsToAvoid.contains(e.tagName()))
+					.map(this::text)
+					.filter(s -> !s.isEmpty() && s.length() < maxTextLength)
+					.filter(s -> Arrays.stream(falsePositives).noneMatch(f -> StringUtils.containsIgnoreCase(s, f)))
+					.distinct()
+					.filter(s -> s.split(" ").length < 32)
+					.filter(containsState().or(containsStreet()))
+					.filter(s -> getZipFromAddressLine(s).isPresent())
+					.sorted()
+					.map(a -> AttributeOperations.getLargestValidValueInsideString(a, AddressOperations::isValidAddressLine))
+					.flatMap(o -> o.map(Stream::of).orElseGet(Stream::empty))
+					.collect(Collectors.toList());
+		}
+
+		private String text(Element element) {
+			StringBuilder text = new StringBuilder();
+			appendText(element, text);
+			return text.toString().trim();
+		}
+
+		private void appendText(Element element, StringBuilder text) {
+			for(Node node : element.childNodes()) {
+				if(node instanceof TextNode) {
+					appendNormalized(((TextNode)node).getWholeText(), text);
+				} else if(node instanceof Element) {
+					Element child = (Element)node;
+					if(auxiliaryTags.contains(child.tagName())) {
+						appendNormalized(" ", text);
+						appendText(child, text);
+						appendNormalized(" ", text);
+					} else if(!removed.contains(child)) {
+						// block elements are spaced from the text around them
+						if(child.isBlock() && text.length() > 0 && !endsWithSpace(text)) {
+							text.append(' ');
+						}
+						appendText(child, text);
+						if(child.isBlock() && child.nextSibling() instanceof TextNode && !endsWithSpace(text)) {
+							text.append(' ');
+						}
+					}
+				}
+			}
+		}
+
+		private static void appendOwnText(Element element, StringBuilder text) {
+			for(Node node : element.childNodes()) {
+				if(node instanceof TextNode) {
+					appendNormalized(((TextNode)node).getWholeText(), text);
+				} else if(node instanceof Element && auxiliaryTags.contains(((Element)node).tagName())) {
+					appendNormalized(" ", text);
+					appendOwnText((Element)node, text);
+					appendNormalized(" ", text);
+				}
+			}
+		}
+
+		private static void appendNormalized(String string, StringBuilder text) {
+			string = nonAsciiPattern.matcher(StringUtils.stripAccents(string.replace('\u00A0', ' '))).replaceAll("").replace("*", "");
+			StringUtil.appendNormalisedWhitespace(text, string, endsWithSpace(text));
+		}
+
+		private static boolean endsWithSpace(StringBuilder text) {
+			return text.length() != 0 && text.charAt(text.length() - 1) == ' ';
+		}
+
+		private static boolean isRemoved(Element element) {
+			for(String attributeKey : TagWeight.classIdAttributeKeys) {
+				if(element.hasAttr(attributeKey) && removalMatcher.match(element.attr(attributeKey), 1) != 0) {
+					return true;
+				}
 			}
-			return normalized.get(AddressComponent.ZIP) != null;
-		} catch(Exception e) {
 			return false;
 		}
 	}
@@ -267,12 +434,12 @@ public final class AddressOperations {
 		if(cityStateStr.length() < 3) {
 			return Optional.empty();
 		}
-		for(Place p : PostalLookupService.placesByName(cityStateStr)) {
-			if(StringUtils.equalsIgnoreCase(state.getAbbreviation(), p.getAdminCode1())) {
-				return Optional.of(mapPlaceToAddress(p, p.getPlaceName() + ", " + state.getAbbreviation()));
-			}
+		List<Place> places = PostalLookupService.placesByCityState(cityStateStr, state.getAbbreviation());
+		if(places.isEmpty()) {
+			return Optional.empty();
 		}
-		return Optional.empty();
+		Place p = places.get(0);
+		return Optional.of(mapPlaceToAddress(p, p.getPlaceName() + ", " + state.getAbbreviation()));
 	}
 
 	// only use this as a last resort, as there will be conflicts with multiple city names
@@ -303,14 +470,8 @@ public final class AddressOperations {
 		if(city == null || state == null) {
 			return Optional.empty();
 		}
-		List<Place> places = getPlacesByCity(city);
-		for(Place p : places) {
-			if(StringUtils.equalsIgnoreCase(state.getAbbreviation(), p.getAdminCode1())
-					|| StringUtils.equalsIgnoreCase(state.getName(), p.getAdminName1())) {
-				return Optional.of(p);
-			}
-		}
-		return Optional.empty();
+		List<Place> places = PostalLookupService.placesByCityState(city, state.getAbbreviation());
+		return places.isEmpty() ? Optional.empty() : Optional.of(places.get(0));
 	}
 
 	private static List<Place> getPlacesByCity(String city) {
@@ -318,12 +479,6 @@ public final class AddressOperations {
 		if(city == null) {
 			return new ArrayList<>();
 		}
-		city = city.toLowerCase();
-		if(city.startsWith("st ")) {
-			city = "saint " + city.substring(3);
-		} else if(city.startsWith("st. ")) {
-			city = "saint " + city.substring(4);
-		}
 		return PostalLookupService.placesByName(city);
 	}
 
@@ -346,7 +501,7 @@ public final class AddressOperations {
 		if(trimmedAddress == null) {
 			return null;
 		}
-		if(!trimmedAddress.matches(".*\\d+.*")) {
+		if(!digitPattern.matcher(trimmedAddress).matches()) {
 			return null; // no numbers, boink off
 		}
 		trimmedAddress = trimmedAddress.toUpperCase(Locale.ENGLISH);
@@ -362,9 +517,9 @@ public final class AddressOperations {
 
 	private static Optional<String> getZipFromAddressLine(String addressLine) {
 		// replace first numbers (i.e. st num) to not throw off zip matching
-		addressLine = addressLine.replaceAll("^\\d+", "").trim();
+		addressLine = leadingDigitsPattern.matcher(addressLine).replaceFirst("").trim();
 		for(String s : addressLine.split(" ")) {
-			Matcher matcher = Pattern.compile(RegexConstants.ZIP_MATCH).matcher(s);
+			Matcher matcher = zipPattern.matcher(s);
 			if(matcher.find()) {
 				String zip = matcher.group();
 				return Optional.of(zip);
@@ -427,17 +582,31 @@ public final class AddressOperations {
 	}
 
 	public static Predicate<String> containsState() {
-		return address -> Arrays.stream(address.replace(".", "").split("[ ,]"))
-				.anyMatch(((Predicate<String>)s ->
-						State.stateAbbreviations.stream().anyMatch(x -> StringUtils.equalsIgnoreCase(s, x)))
-						.or(s -> State.stateNames.stream().anyMatch(x -> StringUtils.equalsIgnoreCase(s, x))));
+		return address -> containsToken(address, stateTokens);
 	}
 
 	public static Predicate<String> containsStreet() {
-		return address -> Arrays.stream(address.replace(".", "").split("[ ,]"))
-				.anyMatch(((Predicate<String>)s ->
-						streetSuffixes.stream().anyMatch(x -> StringUtils.equalsIgnoreCase(s, x)))
-						.or(s -> streetSuffixAbbreviations.stream().anyMatch(x -> StringUtils.equalsIgnoreCase(s, x))));
+		return address -> containsToken(address, streetTokens);
+	}
+
+	private static boolean containsToken(String address, Set<String> upperCaseTokens) {
+		for(String s : tokenPattern.split(address.replace(".", ""))) {
+			String upperCase = s.toUpperCase(Locale.ENGLISH);
+			// a change in length means special casing (i.e. a ligature) that equalsIgnoreCase would not have matched
+			if(upperCase.length() == s.length() && upperCaseTokens.contains(upperCase)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@SafeVarargs
+	private static Set<String> upperCase(Set<String>... sets) {
+		Set<String> upperCase = new HashSet<>();
+		for(Set<String> set : sets) {
+			set.forEach(s -> upperCase.add(s.toUpperCase(Locale.ENGLISH)));
+		}
+		return upperCase;
 	}
 
 	private static Set<String> loadStreetSuffixes() {
@@ -466,4 +635,46 @@ public final class AddressOperations {
 				"TPKE", "TRAK", "TRCE", "TRFY", "TRL", "TRLR", "TRWY", "TUNL", "UN", "UNS", "UPAS", "VIA", "VIS", "VL",
 				"VLG", "VLGS", "VLY", "VLYS", "VW", "VWS", "WALK", "WALL", "WAY", "WAYS", "XING", "XRD", "XRDS"));
 	}
+
+	private static final class ParsedLine {
+		private final Map<AddressComponent, String> parsed;
+		private final Map<AddressComponent, String> normalized;
+		private final RuntimeException error;
+
+		private ParsedLine(String addressLine) {
+			Map<AddressComponent, String> parsed = null;
+			Map<AddressComponent, String> normalized = null;
+			RuntimeException error = null;
+			try {
+				parsed = AddressParser.parseAddress(addressLine);
+				normalized = AddressStandardizer.normalizeParsedAddress(parsed);
+			} catch(RuntimeException e) {
+				error = e;
+			}
+			this.parsed = parsed;
+			this.normalized = normalized;
+			this.error = error;
+		}
+
+		/**
+		 * @return the normalized components, shared between callers so never to be modified
+		 * @throws RuntimeException what parsing or normalizing threw
+		 */
+		private Map<AddressComponent, String> getNormalized() {
+			if(error != null) {
+				throw error;
+			}
+			return normalized;
+		}
+
+		private boolean isValid() {
+			if(MapUtils.isEmpty(parsed)) {
+				return false;
+			}
+			if(error != null || MapUtils.isEmpty(normalized)) {
+				return false;
+			}
+			return normalized.get(AddressComponent.ZIP) != null;
+		}
+	}
 }
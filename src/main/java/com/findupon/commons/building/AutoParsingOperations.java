@@ -27,12 +27,7 @@ import java.util.function.Predicate;
 
 
 public class AutoParsingOperations {
-	private static final Set<String> motorcyleVinPrefixes = new HashSet<>(Arrays.asList("KMY", "LAE", "LBB", "LB2",
-			"LFG", "LMC", "LZP", "L5N", "L8X", "VBK", "VTH", "VTT", "ZKH", "KM1", "LAN", "LBP", "LCE", "LFY", "LPR",
-			"L4B", "L5Y", "SMT", "VG5", "VTL", "YU7", "538"));
 	private static final BigDecimal defaultMaxPrice = new BigDecimal("5000000");
-	private static final String[] singleDigitVins = {"00000000000000000", "11111111111111111", "22222222222222222", "33333333333333333",
-			"44444444444444444", "55555555555555555", "66666666666666666", "77777777777777777", "88888888888888888", "99999999999999999"};
 
 
 	public static void setAttribute(Automobile automobile, String key, String val) {
@@ -195,47 +190,15 @@ public class AutoParsingOperations {
 	}
 
 	public static Predicate<String> vinRecognizer() {
-		return v -> {
-			v = StringUtils.trimToNull(v);
-			if(v == null) {
-				return false;
-			}
-			if(v.length() != 17 || !StringUtils.isAlphanumeric(v)) {
-				return false;
-			}
-			for(String singleDigitVin : singleDigitVins) {
-				if(singleDigitVin.equals(v)) {
-					return false;
-				}
-			}
-			v = v.toUpperCase(Locale.ENGLISH);
-			String weights = "8765432X098765432";
-			String map = "0123456789X";
-			int sum = 0;
-			for(int x = 0; x < v.length(); ++x) {
-				sum += "0123456789.ABCDEFGH..JKLMN.P.R..STUVWXYZ".indexOf(v.charAt(x)) % 10 * map.indexOf(weights.charAt(x));
-			}
-			return map.charAt(sum % 11) == v.charAt(8) && isNotMotorcycleVin(v);
-		};
+		return v -> VinScanner.isVin(StringUtils.trimToNull(v));
 	}
 
+	/**
+	 * @return the first VIN anywhere in the container, which can be as long as a whole page of text
+	 */
 	public static Optional<String> getContainingVin(String container) {
-		int length;
-		if(StringUtils.isEmpty(container) || (length = container.length()) < 17) {
-			return Optional.empty();
-		}
-		for(int x = 0; x < length - 17 + 1; x++) {
-			String potential = container.substring(x, x + 17);
-			if(AutoParsingOperations.vinRecognizer().test(potential)) {
-				return Optional.of(potential);
-			}
-		}
-		return Optional.empty();
-	}
-
-	private static boolean isNotMotorcycleVin(String vin) {
-		String prefix = StringUtils.substring(vin, 0, 3);
-		return motorcyleVinPrefixes.stream().noneMatch(mvp -> StringUtils.equalsIgnoreCase(mvp, prefix));
+		int start = VinScanner.indexOf(container, 0);
+		return start < 0 ? Optional.empty() : Optional.of(container.substring(start, start + 17));
 	}
 
 	public static Integer parseMileage(String val) {
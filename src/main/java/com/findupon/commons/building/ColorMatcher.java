@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.findupon.commons.building;
+
+import com.findupon.commons.entity.product.attribute.Attribute;
+import com.findupon.commons.utilities.MultiPatternMatcher;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Every alias of every color compiled once for {@link ColorOperations}. Text is split on spaces a single time and each token is
+ * looked up in a case insensitive hash of the aliases, so finding colors costs one pass no matter how many colors and aliases
+ * there are. One {@link MultiPatternMatcher} pass over the same text answers the substring questions: whether any alias,
+ * avoid word or meta keyword appears at all. Results are the same as comparing every token against every alias with
+ * equalsIgnoreCase, in color order.
+ */
+final class ColorMatcher<C extends Enum<C> & Attribute.GenericMatching> {
+	private static final int aliasGroup = 1, avoidGroup = 1 << 1, metaGroup = 1 << 2;
+
+	private final C[] colors;
+	private final List<String> aliases = new ArrayList<>();
+	private final Alias[] buckets;
+	private final int mask;
+	private final int minLength, maxLength;
+	private final MultiPatternMatcher matcher;
+	private final List<String> unsupportedAliases = new ArrayList<>();
+	private final List<String> unsupportedAvoid = new ArrayList<>();
+	private final List<String> unsupportedMeta = new ArrayList<>();
+
+
+	ColorMatcher(C[] colors, Collection<String> avoid, Collection<String> meta) {
+		this.colors = colors;
+		Map<String, Alias> distinct = new LinkedHashMap<>();
+		for(C color : colors) {
+			for(String alias : color.getAllowedMatches()) {
+				aliases.add(alias);
+				// aliases equal ignoring case share an entry, listing the color once for each the way the old loops counted them
+				distinct.computeIfAbsent(fold(alias), k -> new Alias(alias)).add(color.ordinal());
+			}
+		}
+		int size = Integer.highestOneBit(Math.max(distinct.size(), 1) * 4);
+		this.buckets = new Alias[size];
+		this.mask = size - 1;
+		int min = Integer.MAX_VALUE, max = 0;
+		for(Alias alias : distinct.values()) {
+			int bucket = hash(alias.value, 0, alias.value.length()) & mask;
+			alias.next = buckets[bucket];
+			buckets[bucket] = alias;
+			min = Math.min(min, alias.value.length());
+			max = Math.max(max, alias.value.length());
+		}
+		this.minLength = min;
+		this.maxLength = max;
+
+		MultiPatternMatcher.Builder builder = MultiPatternMatcher.builder();
+		addAll(builder, 0, aliases, unsupportedAliases);
+		addAll(builder, 1, avoid, unsupportedAvoid);
+		addAll(builder, 2, meta, unsupportedMeta);
+		this.matcher = builder.build();
+	}
+
+	/**
+	 * @return every color whose alias equals a space separated token of the text, ignoring case. Grouped by color in enum
+	 * order and repeated once for each hit.
+	 */
+	List<C> findColors(String text) {
+		int[] counts = new int[colors.length];
+		for(Hit<C> hit : hits(text)) {
+			counts[hit.getColor().ordinal()]++;
+		}
+		List<C> found = new ArrayList<>();
+		for(int x = 0; x < counts.length; x++) {
+			for(int y = 0; y < counts[x]; y++) {
+				found.add(colors[x]);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @return each color an alias names and where the token starts, in text order
+	 */
+	List<Hit<C>> hits(String text) {
+		List<Hit<C>> hits = new ArrayList<>();
+		int length = text.length();
+		int start = 0;
+		while(start <= length) {
+			int end = text.indexOf(' ', start);
+			if(end < 0) {
+				end = length;
+			}
+			int tokenLength = end - start;
+			if(tokenLength >= minLength && tokenLength <= maxLength) {
+				for(Alias alias = buckets[hash(text, start, end) & mask]; alias != null; alias = alias.next) {
+					if(alias.value.length() == tokenLength && text.regionMatches(true, start, alias.value, 0, tokenLength)) {
+						for(int ordinal : alias.ordinals) {
+							hits.add(new Hit<>(colors[ordinal], start));
+						}
+						break;
+					}
+				}
+			}
+			start = end + 1;
+		}
+		return hits;
+	}
+
+	/**
+	 * Same as {@link AttributeOperations#containsLoneAttribute} against every alias, only text with an alias somewhere in it
+	 * is checked alias by alias.
+	 */
+	boolean containsLoneColor(String text) {
+		if(text == null || !mentionsColor(text)) {
+			return false;
+		}
+		return aliases.stream().anyMatch(c -> AttributeOperations.containsLoneAttribute(text, c));
+	}
+
+	/**
+	 * @return true when any alias appears anywhere in the text, even inside another word
+	 */
+	boolean mentionsColor(String text) {
+		return has(text, aliasGroup, unsupportedAliases);
+	}
+
+	/**
+	 * @return true when any of the avoid words appears anywhere in the text
+	 */
+	boolean avoids(String text) {
+		return has(text, avoidGroup, unsupportedAvoid);
+	}
+
+	/**
+	 * @return true when any of the meta keywords appears anywhere in the text
+	 */
+	boolean mentionsMeta(String text) {
+		return has(text, metaGroup, unsupportedMeta);
+	}
+
+	private boolean has(String text, int group, List<String> unsupported) {
+		return (matcher.match(text, group) & group) != 0 || unsupported.stream().anyMatch(s -> StringUtils.containsIgnoreCase(text, s));
+	}
+
+	private static void addAll(MultiPatternMatcher.Builder builder, int group, Collection<String> patterns, List<String> unsupported) {
+		for(String pattern : patterns) {
+			if(MultiPatternMatcher.isSupported(pattern)) {
+				builder.add(group, pattern);
+			} else {
+				unsupported.add(pattern);
+			}
+		}
+	}
+
+	/**
+	 * Characters equal ignoring case (the {@link String#regionMatches(boolean, int, String, int, int)} rules) fold the same.
+	 */
+	private static char fold(char c) {
+		return Character.toLowerCase(Character.toUpperCase(c));
+	}
+
+	private static String fold(String s) {
+		char[] folded = new char[s.length()];
+		for(int x = 0; x < folded.length; x++) {
+			folded[x] = fold(s.charAt(x));
+		}
+		return new String(folded);
+	}
+
+	private static int hash(String s, int start, int end) {
+		int hash = 0;
+		for(int x = start; x < end; x++) {
+			hash = 31 * hash + fold(s.charAt(x));
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	static final class Hit<T> {
+		private final T color;
+		private final int position;
+
+		Hit(T color, int position) {
+			this.color = color;
+			this.position = position;
+		}
+
+		T getColor() {
+			return color;
+		}
+
+		/**
+		 * @return the index the matching token starts at
+		 */
+		int getPosition() {
+			return position;
+		}
+	}
+
+	private static final class Alias {
+		private final String value;
+		private int[] ordinals = new int[0];
+		private Alias next;
+
+		private Alias(String value) {
+			this.value = value;
+		}
+
+		private void add(int ordinal) {
+			ordinals = Arrays.copyOf(ordinals, ordinals.length + 1);
+			ordinals[ordinals.length - 1] = ordinal;
+		}
+	}
+}
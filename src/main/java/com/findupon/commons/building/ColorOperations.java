@@ -38,28 +38,26 @@ public final class ColorOperations {
 	private static final List<String> extMetaAvoid = Arrays.asList("interior", "int color", "int. color", "kit", "caliper", "wheel", "tire",
 			"width", "height", "length", "grill", "exhaust", "mirror");
 	private static final List<String> extTrimAround = Collections.singletonList("roof");
-	private static final List<String> extMatches = Arrays.stream(ExteriorColor.values())
-			.flatMap(e -> e.getAllowedMatches().stream()).collect(Collectors.toList());
+	private static final ColorMatcher<ExteriorColor> extColors = new ColorMatcher<>(ExteriorColor.values(), extMetaAvoid, extMetaMatches);
 
 	private static final List<String> intMetaMatches = Arrays.asList("interior", "interior color", "int. color", "int color");
 	private static final List<String> intMetaAvoid = Arrays.asList("exterior", "ext", "ext.", "kit", "caliper", "wheel", "tire",
 			"width", "height", "length", "grill", "exhaust", "mirror", "accent", "lighting");
-	private static final List<String> intMatches = Arrays.stream(InteriorColor.values())
-			.flatMap(e -> e.getAllowedMatches().stream()).collect(Collectors.toList());
+	private static final ColorMatcher<InteriorColor> intColors = new ColorMatcher<>(InteriorColor.values(), intMetaAvoid, intMetaMatches);
 
 
 	public static ExteriorColor getExteriorColor(Document document) {
 		List<ExteriorColor> foundExtColors = new ArrayList<>();
 		List<Element> extColorElements = Collector.collect(new ContainsCollectionOwnText(extMetaMatches), document);
 		String extColorBlob = StringUtils.lowerCase(extColorElements.stream()
-				.map(e -> parentColorMapper(extMatches).apply(e))
+				.map(e -> parentColorMapper(extColors).apply(e))
 				.map(JsoupUtils.defaultFilteringTextMapper)
 				.map(StringUtils::trimToEmpty)
 				.filter(StringUtils::isNotEmpty)
 				.map(ScoutServices::pureTextNormalizer)
 				.filter(s -> s.length() > 2 && s.length() < 100)
-				.filter(s -> extMetaAvoid.stream().noneMatch(a -> StringUtils.containsIgnoreCase(s, a)))
-				.filter(s -> extMatches.stream().anyMatch(c -> AttributeOperations.containsLoneAttribute(s, c)))
+				.filter(s -> !extColors.avoids(s))
+				.filter(extColors::containsLoneColor)
 				.collect(Collectors.joining(" ")), Locale.ENGLISH);
 
 		if(StringUtils.isNotBlank(extColorBlob)) {
@@ -90,8 +88,8 @@ public final class ColorOperations {
 			for(int x = 0; x < extColorElements.size(); x++) {
 				String keyText = ScoutServices.pureTextNormalizer(extColorElements.get(x).text(), true);
 				if(keyText != null
-						&& extMetaMatches.stream().anyMatch(m -> StringUtils.containsIgnoreCase(keyText, m))
-						&& extMetaAvoid.stream().noneMatch(m -> StringUtils.containsIgnoreCase(keyText, m))) {
+						&& extColors.mentionsMeta(keyText)
+						&& !extColors.avoids(keyText)) {
 					// 1. check for color in same text
 					List<ExteriorColor> keyTextColors = findExteriorColors(keyText);
 					if(!keyTextColors.isEmpty()) {
@@ -100,7 +98,7 @@ public final class ColorOperations {
 						// 2. if not in the same text, check the next element
 						if(x + 1 < extColorElements.size()) {
 							String valueText = ScoutServices.pureTextNormalizer(extColorElements.get(x + 1).text(), true);
-							if(valueText != null && extMetaAvoid.stream().noneMatch(m -> StringUtils.containsIgnoreCase(valueText, m))) {
+							if(valueText != null && !extColors.avoids(valueText)) {
 								foundExtColors.addAll(findExteriorColors(valueText));
 							}
 						}
@@ -113,9 +111,11 @@ public final class ColorOperations {
 
 	public static InteriorColor getInteriorColor(Document document) {
 		List<InteriorColor> foundIntColors = new ArrayList<>();
-		List<Element> intColorElements = Collector.collect(new ContainsCollectionOwnText(intMatches), document);
+		List<Element> intColorElements = document.getAllElements().stream()
+				.filter(e -> e.hasText() && intColors.mentionsColor(e.ownText()))
+				.collect(Collectors.toList());
 		String intColorBlob = StringUtils.lowerCase(intColorElements.stream()
-				.map(e -> parentColorMapper(intMatches).apply(e))
+				.map(e -> parentColorMapper(intColors).apply(e))
 				.map(JsoupUtils.defaultFilteringTextMapper)
 				.filter(StringUtils::isNotBlank)
 				.map(ScoutServices::pureTextNormalizer)
@@ -138,8 +138,8 @@ public final class ColorOperations {
 				})
 				.map(StringUtils::trimToEmpty)
 				.filter(StringUtils::isNotEmpty)
-				.filter(s -> intMetaAvoid.stream().noneMatch(a -> StringUtils.containsIgnoreCase(s, a)))
-				.filter(s -> intMatches.stream().anyMatch(c -> AttributeOperations.containsLoneAttribute(s, c)))
+				.filter(s -> !intColors.avoids(s))
+				.filter(intColors::containsLoneColor)
 				.collect(Collectors.joining(" ")), Locale.ENGLISH);
 
 		if(StringUtils.isNotBlank(intColorBlob)) {
@@ -154,15 +154,15 @@ public final class ColorOperations {
 			for(int x = 0; x < intColorElements.size(); x++) {
 				String keyText = ScoutServices.pureTextNormalizer(intColorElements.get(x).text(), true);
 				if(keyText != null
-						&& intMetaMatches.stream().anyMatch(m -> StringUtils.containsIgnoreCase(keyText, m))
-						&& intMetaAvoid.stream().noneMatch(m -> StringUtils.containsIgnoreCase(keyText, m))) {
+						&& intColors.mentionsMeta(keyText)
+						&& !intColors.avoids(keyText)) {
 					List<InteriorColor> keyTextColors = findInteriorColors(keyText);
 					if(!keyTextColors.isEmpty()) {
 						foundIntColors.addAll(keyTextColors);
 					} else {
 						if(x + 1 < intColorElements.size()) {
 							String valueText = ScoutServices.pureTextNormalizer(intColorElements.get(x + 1).text(), true);
-							if(valueText != null && intMetaAvoid.stream().noneMatch(m -> StringUtils.containsIgnoreCase(valueText, m))) {
+							if(valueText != null && !intColors.avoids(valueText)) {
 								foundIntColors.addAll(findInteriorColors(valueText));
 							}
 						}
@@ -174,14 +174,14 @@ public final class ColorOperations {
 	}
 
 	// yes, this should be recursive
-	private static Function<? super Element, ? extends Element> parentColorMapper(List<String> matches) {
+	private static Function<? super Element, ? extends Element> parentColorMapper(ColorMatcher<?> colors) {
 		return e -> {
 			Element p0 = e.parent();
 			if(p0 == null) {
 				return e;
 			}
 			String p0t = p0.text();
-			if(matches.stream().anyMatch(c -> AttributeOperations.containsLoneAttribute(p0t, c))) {
+			if(colors.containsLoneColor(p0t)) {
 				return p0;
 			}
 			Element p1 = p0.parent();
@@ -189,7 +189,7 @@ public final class ColorOperations {
 				return e;
 			}
 			String p1t = p1.text();
-			if(matches.stream().anyMatch(c -> AttributeOperations.containsLoneAttribute(p1t, c))) {
+			if(colors.containsLoneColor(p1t)) {
 				return p1;
 			}
 			return e;
@@ -197,30 +197,10 @@ public final class ColorOperations {
 	}
 
 	private static List<ExteriorColor> findExteriorColors(String text) {
-		List<ExteriorColor> foundExtColors = new ArrayList<>();
-		for(ExteriorColor color : ExteriorColor.values()) {
-			for(String colorStr : color.getAllowedMatches()) {
-				for(String segment : text.split(" ")) {
-					if(StringUtils.equalsIgnoreCase(segment, colorStr)) {
-						foundExtColors.add(color);
-					}
-				}
-			}
-		}
-		return foundExtColors;
+		return extColors.findColors(text);
 	}
 
 	private static List<InteriorColor> findInteriorColors(String text) {
-		List<InteriorColor> foundIntColors = new ArrayList<>();
-		for(InteriorColor color : InteriorColor.values()) {
-			for(String colorStr : color.getAllowedMatches()) {
-				for(String segment : text.split(" ")) {
-					if(StringUtils.equalsIgnoreCase(segment, colorStr)) {
-						foundIntColors.add(color);
-					}
-				}
-			}
-		}
-		return foundIntColors;
+		return intColors.findColors(text);
 	}
 }
@@ -0,0 +1,303 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.building;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Read only lookups over the postal places, built once. Places are referred to by their position in the arrays passed in and
+ * every lookup returns positions in that same order, so the first match is the first place in the source file.
+ * <p>
+ * City names are normalized (case, spacing, and a leading "st" or "st." spelled out as "saint") the same way on both sides.
+ * Exact city and city + state lookups are a single hash probe, prefixes are a binary search over the sorted distinct names, and
+ * coordinates are bucketed into a {@link #cellDegrees} grid searched outwards ring by ring.
+ */
+final class PostalIndex {
+	private static final double cellDegrees = .5;
+	private static final int gridColumns = (int)(360 / cellDegrees);
+	private static final int maxRings = 40; // 20 degrees out, past that a scan is cheaper than walking empty cells
+	private static final double milesPerDegreeLat = 69.05;
+	private static final double milesPerDegreeLon = 69.17;
+	private static final double earthRadiusMiles = 3958.8;
+	private static final int[] none = new int[0];
+
+	private final int size;
+	private final float[] latitudes;
+	private final float[] longitudes;
+	private final Map<String, int[]> byCity;
+	private final Map<String, int[]> byCityState;
+	private final Map<String, int[]> byState;
+	private final String[] sortedCities;
+	private final int[][] sortedCityPlaces;
+	private final Map<Integer, int[]> grid;
+
+
+	/**
+	 * @param cities     place names, parallel to the other arrays
+	 * @param states     state abbreviations
+	 * @param latitudes  NaN when unknown, the place is then left out of the spatial lookups
+	 * @param longitudes NaN when unknown
+	 */
+	PostalIndex(String[] cities, String[] states, double[] latitudes, double[] longitudes) {
+		size = cities.length;
+		if(states.length != size || latitudes.length != size || longitudes.length != size) {
+			throw new IllegalArgumentException("Place arrays must be the same length");
+		}
+		this.latitudes = new float[size];
+		this.longitudes = new float[size];
+
+		Map<String, IdList> cityIds = new LinkedHashMap<>();
+		Map<String, IdList> cityStateIds = new HashMap<>();
+		Map<String, IdList> stateIds = new HashMap<>();
+		Map<Integer, IdList> cellIds = new HashMap<>();
+		for(int x = 0; x < size; x++) {
+			String city = normalizeCity(cities[x]);
+			String state = normalizeState(states[x]);
+			if(city != null) {
+				cityIds.computeIfAbsent(city, k -> new IdList()).add(x);
+				if(state != null) {
+					cityStateIds.computeIfAbsent(cityStateKey(city, state), k -> new IdList()).add(x);
+				}
+			}
+			if(state != null) {
+				stateIds.computeIfAbsent(state, k -> new IdList()).add(x);
+			}
+			this.latitudes[x] = (float)latitudes[x];
+			this.longitudes[x] = (float)longitudes[x];
+			if(!Double.isNaN(latitudes[x]) && !Double.isNaN(longitudes[x])) {
+				cellIds.computeIfAbsent(cell(latRow(latitudes[x]), lonColumn(longitudes[x])), k -> new IdList()).add(x);
+			}
+		}
+		byCity = freeze(cityIds);
+		byCityState = freeze(cityStateIds);
+		byState = freeze(stateIds);
+		grid = freeze(cellIds);
+
+		sortedCities = byCity.keySet().toArray(new String[0]);
+		Arrays.sort(sortedCities);
+		sortedCityPlaces = new int[sortedCities.length][];
+		for(int x = 0; x < sortedCities.length; x++) {
+			sortedCityPlaces[x] = byCity.get(sortedCities[x]);
+		}
+	}
+
+	int size() {
+		return size;
+	}
+
+	int[] byCity(String city) {
+		city = normalizeCity(city);
+		return city == null ? none : byCity.getOrDefault(city, none);
+	}
+
+	int[] byCityState(String city, String state) {
+		city = normalizeCity(city);
+		state = normalizeState(state);
+		if(city == null || state == null) {
+			return none;
+		}
+		return byCityState.getOrDefault(cityStateKey(city, state), none);
+	}
+
+	int[] byState(String state) {
+		state = normalizeState(state);
+		return state == null ? none : byState.getOrDefault(state, none);
+	}
+
+	/**
+	 * @return places whose city starts with the prefix, alphabetical by city, at most limit of them
+	 */
+	int[] byCityPrefix(String prefix, int limit) {
+		prefix = normalizeCity(prefix);
+		if(prefix == null || limit <= 0) {
+			return none;
+		}
+		int from = Arrays.binarySearch(sortedCities, prefix);
+		if(from < 0) {
+			from = -from - 1;
+		}
+		IdList ids = new IdList();
+		for(int x = from; x < sortedCities.length && ids.size < limit && sortedCities[x].startsWith(prefix); x++) {
+			for(int id : sortedCityPlaces[x]) {
+				if(ids.size == limit) {
+					break;
+				}
+				ids.add(id);
+			}
+		}
+		return ids.toArray();
+	}
+
+	/**
+	 * @return the closest place to the coordinates, -1 when there are none with coordinates
+	 */
+	int nearest(double latitude, double longitude) {
+		int row = latRow(latitude);
+		int column = lonColumn(longitude);
+		int best = -1;
+		double bestMiles = Double.MAX_VALUE;
+		for(int ring = 0; ring <= maxRings; ring++) {
+			for(int r = row - ring; r <= row + ring; r++) {
+				boolean edgeRow = r == row - ring || r == row + ring;
+				for(int c = column - ring; c <= column + ring; c += edgeRow || ring == 0 ? 1 : 2 * ring) {
+					int[] ids = grid.get(cell(r, c));
+					if(ids == null) {
+						continue;
+					}
+					for(int id : ids) {
+						double miles = miles(latitude, longitude, latitudes[id], longitudes[id]);
+						if(miles < bestMiles) {
+							bestMiles = miles;
+							best = id;
+						}
+					}
+				}
+			}
+			if(best >= 0 && bestMiles <= milesOutside(latitude, ring)) {
+				return best;
+			}
+		}
+		for(int id = 0; id < size; id++) {
+			if(Float.isNaN(latitudes[id]) || Float.isNaN(longitudes[id])) {
+				continue;
+			}
+			double miles = miles(latitude, longitude, latitudes[id], longitudes[id]);
+			if(miles < bestMiles) {
+				bestMiles = miles;
+				best = id;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return places within the radius, closest first
+	 */
+	int[] withinRadius(double latitude, double longitude, double radiusMiles) {
+		if(radiusMiles < 0) {
+			return none;
+		}
+		double latSpan = radiusMiles / milesPerDegreeLat;
+		double maxLat = Math.min(90, Math.abs(latitude) + latSpan);
+		double lonSpan = maxLat >= 90 ? 180 : Math.min(180, radiusMiles / (milesPerDegreeLon * Math.cos(Math.toRadians(maxLat))));
+		List<double[]> found = new ArrayList<>();
+		for(int r = latRow(latitude - latSpan); r <= latRow(latitude + latSpan); r++) {
+			for(int c = lonColumn(longitude - lonSpan); c <= lonColumn(longitude + lonSpan); c++) {
+				int[] ids = grid.get(cell(r, c));
+				if(ids == null) {
+					continue;
+				}
+				for(int id : ids) {
+					double miles = miles(latitude, longitude, latitudes[id], longitudes[id]);
+					if(miles <= radiusMiles) {
+						found.add(new double[]{miles, id});
+					}
+				}
+			}
+		}
+		found.sort((a, b) -> Double.compare(a[0], b[0]));
+		int[] ids = new int[found.size()];
+		for(int x = 0; x < ids.length; x++) {
+			ids[x] = (int)found.get(x)[1];
+		}
+		return ids;
+	}
+
+	static String normalizeCity(String city) {
+		city = StringUtils.normalizeSpace(city);
+		if(StringUtils.isEmpty(city)) {
+			return null;
+		}
+		city = city.toLowerCase();
+		if(city.startsWith("st ")) {
+			city = "saint " + city.substring(3);
+		} else if(city.startsWith("st. ")) {
+			city = "saint " + city.substring(4);
+		}
+		return city;
+	}
+
+	static double miles(double lat1, double lon1, double lat2, double lon2) {
+		double dLat = Math.toRadians(lat2 - lat1);
+		double dLon = Math.toRadians(lon2 - lon1);
+		double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+				+ Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+		return 2 * earthRadiusMiles * Math.asin(Math.min(1, Math.sqrt(a)));
+	}
+
+	private static String normalizeState(String state) {
+		state = StringUtils.trimToNull(state);
+		return state == null ? null : state.toUpperCase();
+	}
+
+	private static String cityStateKey(String city, String state) {
+		return city + '|' + state;
+	}
+
+	/**
+	 * A lower bound on the distance from the coordinates to anything outside the cells searched so far. The great circle bends
+	 * poleward so it is a little shorter than the longitude gap at the highest latitude reached, hence the slack.
+	 */
+	private static double milesOutside(double latitude, int ring) {
+		double degrees = ring * cellDegrees;
+		double maxLat = Math.min(90, Math.abs(latitude) + degrees + cellDegrees);
+		double lonMiles = degrees * milesPerDegreeLon * Math.cos(Math.toRadians(maxLat)) * .95;
+		return Math.min(degrees * milesPerDegreeLat, lonMiles);
+	}
+
+	private static int latRow(double latitude) {
+		return (int)Math.floor((Math.max(-90, Math.min(90, latitude)) + 90) / cellDegrees);
+	}
+
+	private static int lonColumn(double longitude) {
+		return (int)Math.floor((Math.max(-180, Math.min(180, longitude)) + 180) / cellDegrees);
+	}
+
+	private static int cell(int row, int column) {
+		return row * (gridColumns + 1) + column;
+	}
+
+	private static <K> Map<K, int[]> freeze(Map<K, IdList> lists) {
+		Map<K, int[]> frozen = lists instanceof LinkedHashMap ? new LinkedHashMap<>(lists.size() * 4 / 3 + 1) : new HashMap<>(lists.size() * 4 / 3 + 1);
+		lists.forEach((k, v) -> frozen.put(k, v.toArray()));
+		return frozen;
+	}
+
+	private static final class IdList {
+		private int[] ids = new int[2];
+		private int size;
+
+		private void add(int id) {
+			if(size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+
+		private int[] toArray() {
+			return Arrays.copyOf(ids, size);
+		}
+	}
+}
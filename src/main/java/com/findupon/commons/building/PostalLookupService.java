@@ -24,17 +24,29 @@ import org.slf4j.LoggerFactory;
 
 import java.io.BufferedReader;
 import java.io.InputStreamReader;
-import java.util.*;
-import java.util.regex.Pattern;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
 
 
+/**
+ * US postal places by zip, city, city + state, state, city prefix and coordinates. Everything is indexed once on load by
+ * {@link PostalIndex}, lookups never scan and nothing is cached per query. Returned lists are read only views.
+ */
 public final class PostalLookupService {
 
 	private static final Logger logger = LoggerFactory.getLogger(PostalLookupService.class);
-	private static final Map<String, Place> zipPlaceMap = new HashMap<>();
-	private static final Map<String, List<Place>> namePlaceCache = Collections.synchronizedMap(new HashMap<>());
+	private static final Map<String, Place> zipPlaceMap;
+	private static final Place[] places;
+	private static final PostalIndex index;
 
 	static {
+		Map<String, Place> zips = new LinkedHashMap<>(64 * 1024);
 		try(BufferedReader in = new BufferedReader(new InputStreamReader(PostalSource.class.getResourceAsStream("/US.txt")))) {
 			in.lines().forEach(line -> {
 				Place p = PlaceFactory.fromLine(line);
@@ -42,30 +54,62 @@ public final class PostalLookupService {
 					logger.error("[PostalLookupService] - No zip found on US postal data");
 					return;
 				}
-				zipPlaceMap.putIfAbsent(p.getPostalCode(), p);
+				zips.putIfAbsent(p.getPostalCode(), p);
 			});
 		} catch(Exception e) {
 			logger.error("[PostalLookupService] - Error reading source file", e);
 		}
+		places = zips.values().toArray(new Place[0]);
+		String[] cities = new String[places.length];
+		String[] states = new String[places.length];
+		double[] latitudes = new double[places.length];
+		double[] longitudes = new double[places.length];
+		for(int x = 0; x < places.length; x++) {
+			cities[x] = places[x].getPlaceName();
+			states[x] = places[x].getAdminCode1();
+			latitudes[x] = places[x].getLatitude();
+			longitudes[x] = places[x].getLongitude();
+		}
+		index = new PostalIndex(cities, states, latitudes, longitudes);
+		zipPlaceMap = zips;
+		logger.debug("[PostalLookupService] - Postal places indexed [{}]", places.length);
 	}
 
-	public static List<Place> placesByName(String regex) {
-		return namePlaceCache.computeIfAbsent(regex, l -> {
-			List<Place> matches = new ArrayList<>();
-			Pattern p;
-			try {
-				p = Pattern.compile(regex, Pattern.CASE_INSENSITIVE);
-			} catch(Exception e) {
-				logger.trace("[PostalLookupService] - Invalid regex. This will be improved with better, non-regex look ups");
-				return new ArrayList<>();
-			}
-			for(Place place : zipPlaceMap.values()) {
-				if(p.matcher(place.getPlaceName()).matches()) {
-					matches.add(place);
-				}
-			}
-			return matches;
-		});
+	/**
+	 * @param city matched whole, ignoring case and spacing. "St" and "St." are read as "Saint"
+	 */
+	public static List<Place> placesByName(String city) {
+		return view(index.byCity(city));
+	}
+
+	/**
+	 * @param state the two letter abbreviation
+	 */
+	public static List<Place> placesByCityState(String city, String state) {
+		return view(index.byCityState(city, state));
+	}
+
+	public static List<Place> placesByState(String state) {
+		return view(index.byState(state));
+	}
+
+	/**
+	 * @return places whose city starts with the prefix, alphabetical by city
+	 */
+	public static List<Place> placesByCityPrefix(String prefix, int limit) {
+		return view(index.byCityPrefix(prefix, limit));
+	}
+
+	public static Place nearestPlace(double latitude, double longitude) {
+		int id = index.nearest(latitude, longitude);
+		return id < 0 ? null : places[id];
+	}
+
+	/**
+	 * @return places within the radius, closest first
+	 */
+	public static List<Place> placesWithinRadius(double latitude, double longitude, double radiusMiles) {
+		return view(index.withinRadius(latitude, longitude, radiusMiles));
 	}
 
 	public static Place placeByZip(String zip) {
@@ -73,6 +117,28 @@ public final class PostalLookupService {
 	}
 
 	public static List<Place> getAllPlaces() {
-		return new ArrayList<>(zipPlaceMap.values());
+		return new ArrayList<>(Arrays.asList(places));
+	}
+
+	private static List<Place> view(int[] ids) {
+		return ids.length == 0 ? Collections.emptyList() : new PlaceList(ids);
+	}
+
+	private static final class PlaceList extends AbstractList<Place> implements RandomAccess {
+		private final int[] ids;
+
+		private PlaceList(int[] ids) {
+			this.ids = ids;
+		}
+
+		@Override
+		public Place get(int index) {
+			return places[ids[index]];
+		}
+
+		@Override
+		public int size() {
+			return ids.length;
+		}
 	}
 }
@@ -21,7 +21,6 @@ import com.findupon.commons.exceptions.SoldException;
 import com.findupon.commons.utilities.ConsoleColors;
 import com.findupon.commons.utilities.Functions;
 import com.findupon.commons.utilities.JsoupUtils;
-import com.findupon.commons.utilities.RegexConstants;
 import com.findupon.utilities.ContainsCollectionOwnText;
 import org.apache.commons.lang3.StringUtils;
 import org.jsoup.Jsoup;
@@ -33,9 +32,12 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -43,6 +45,8 @@ import java.util.stream.Collectors;
 public final class PriceOperations {
 	private static final Logger logger = LoggerFactory.getLogger(PriceOperations.class);
 	private static final List<String> unavailableKeywords = Arrays.asList("price unavailable", "price on request", "call for price", "contact for price");
+	private static final int priceContext = 1;
+	private static final int msrpContext = 2;
 
 	private static final Functions.ThrowingConsumer<String, SoldException> soldTextRecognizer = s -> {
 		if(s.length() < 12 && StringUtils.containsIgnoreCase(s, "sold")) {
@@ -85,31 +89,29 @@ public final class PriceOperations {
 
 		// remove spaces between $ and a numeric value
 		String html = JsoupUtils.stripTags(element.html(), TagWeight.formattingTags);
-		html = html.replaceAll("(?<=\\$)\\s+?(?=\\d)", ""); // replaces any spaces between $ and digits
-		html = html.replace("*", " ");
+		html = PriceTokenizer.joinDollarAmounts(html);
 		Document priceCleanedDoc = Jsoup.parse(html);
 
-		List<String> priceValues = getPriceValues(priceCleanedDoc, true);
+		Map<Element, Integer> contextFlags = new IdentityHashMap<>();
+		List<String> priceValues = getPriceValues(priceCleanedDoc, true, contextFlags);
 		priceScrubber.accept(priceValues);
 
 		if(priceValues.isEmpty()) {
-			priceValues = getPriceValues(priceCleanedDoc, false);
+			priceValues = getPriceValues(priceCleanedDoc, false, contextFlags);
 			priceScrubber.accept(priceValues);
 		}
 
 		if(priceValues.isEmpty()) {
 			// try with a different tactic, the $ is probably in a different tag so time to strip
-			priceValues = JsoupUtils.streamText(priceCleanedDoc)
-					.filter(s -> s.contains("$"))
-					.filter(s -> s.matches(RegexConstants.PRICE_MATCH))
+			List<String> strippedValues = new ArrayList<>();
+			JsoupUtils.streamText(priceCleanedDoc)
+					.filter(PriceTokenizer::isPrice)
 					.flatMap(s -> priceCleanedDoc.getElementsContainingOwnText(s).stream()) // need the elements for validation
 					.map(e1 -> JsoupUtils.dualFilteringTextMapper.apply(e1,
 							s -> s.length() < 32,
 							e2 -> !"a".equals(e2.tagName())))
-					.flatMap(s -> Arrays.stream(s.split(" "))) // back to getting the actual prices post-validation
-					.filter(s -> s.matches(RegexConstants.PRICE_MATCH))
-					.map(PriceOperations::priceStringCleaner)
-					.collect(Collectors.toList());
+					.forEach(s -> PriceTokenizer.collectPrices(s, strippedValues)); // back to getting the actual prices post-validation
+			priceValues = strippedValues;
 			priceScrubber.accept(priceValues);
 		}
 
@@ -163,24 +165,33 @@ public final class PriceOperations {
 		return lowestPriceStr;
 	}
 
-	private static List<String> getPriceValues(Document document, boolean filterMsrp) {
-		return document.getElementsContainingOwnText("$").stream()
-				.map(e1 -> JsoupUtils.dualFilteringTextMapper.apply(e1,
-						s -> s.matches(".*\\d+.*"),
-						e2 -> e2.parents()
-								.stream()
-								.filter(p -> !TagWeight.largeTagsToAvoid.contains(p.tagName()))
-								.anyMatch(p -> {
-									String outerHtml = p.outerHtml();
-									return StringUtils.containsIgnoreCase(outerHtml, "price")
-											&& (!filterMsrp || !StringUtils.containsIgnoreCase(outerHtml, "msrp"));
-								})))
-				.filter(s -> s.length() > 0 && s.length() < 32)
-				.flatMap(s -> Arrays.stream(s.split(" "))) // multiple prices can appear in a single text
-				.filter(s -> s.contains("$")) // avoid unnecessary, expensive regex with a quick contains
-				.filter(s -> s.matches(RegexConstants.PRICE_MATCH))
-				.map(PriceOperations::priceStringCleaner)
-				.collect(Collectors.toList());
+	/**
+	 * @param contextFlags which ancestors mention a price or an MSRP, kept across calls for the same document as serializing
+	 *                     the ancestors is by far the most expensive part
+	 */
+	private static List<String> getPriceValues(Document document, boolean filterMsrp, Map<Element, Integer> contextFlags) {
+		List<String> prices = new ArrayList<>();
+		for(Element element : document.getElementsContainingOwnText("$")) {
+			String text = JsoupUtils.dualFilteringTextMapper.apply(element,
+					PriceTokenizer::containsDigit,
+					e -> e.parents()
+							.stream()
+							.filter(p -> !TagWeight.largeTagsToAvoid.contains(p.tagName()))
+							.anyMatch(p -> {
+								int flags = contextFlags.computeIfAbsent(p, PriceOperations::priceContextFlags);
+								return (flags & priceContext) != 0 && (!filterMsrp || (flags & msrpContext) == 0);
+							}));
+			if(text.length() > 0 && text.length() < 32) {
+				PriceTokenizer.collectPrices(text, prices); // multiple prices can appear in a single text
+			}
+		}
+		return prices;
+	}
+
+	private static int priceContextFlags(Element element) {
+		String outerHtml = element.outerHtml();
+		return (StringUtils.containsIgnoreCase(outerHtml, "price") ? priceContext : 0)
+				| (StringUtils.containsIgnoreCase(outerHtml, "msrp") ? msrpContext : 0);
 	}
 
 	public static String priceStringCleaner(String price) {
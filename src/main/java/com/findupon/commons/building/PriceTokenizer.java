@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.building;
+
+import com.findupon.commons.utilities.RegexConstants;
+
+import java.util.List;
+
+
+/**
+ * Single pass price scanning for {@link PriceOperations}, no regex and no intermediate strings. Accepts exactly what
+ * {@link RegexConstants#PRICE_MATCH} does: a dollar sign, whole dollars with either no separators and no leading zero or with
+ * comma grouped thousands, and optionally two decimal places. Anything else in the token rejects it whole, so "k" suffixed
+ * amounts ($15k), ranges ($10,000-$12,000), per month figures ($299/mo) and other currencies are never read as a listing price.
+ */
+final class PriceTokenizer {
+
+	private PriceTokenizer() {
+	}
+
+	/**
+	 * Split the text on single spaces and add the whole dollar amount of every token that is a price, without the dollar sign,
+	 * separators or cents.
+	 */
+	static void collectPrices(String text, List<String> prices) {
+		int length = text.length();
+		int start = 0;
+		while(start <= length) {
+			int end = text.indexOf(' ', start);
+			if(end < 0) {
+				end = length;
+			}
+			int wholeEnd = priceEnd(text, start, end);
+			if(wholeEnd > 0) {
+				prices.add(wholeDollars(text, start + 1, wholeEnd));
+			}
+			start = end + 1;
+		}
+	}
+
+	static boolean isPrice(CharSequence text) {
+		return priceEnd(text, 0, text.length()) > 0;
+	}
+
+	/**
+	 * @return where the whole dollars end when the token [start, end) is a price, -1 otherwise
+	 */
+	static int priceEnd(CharSequence text, int start, int end) {
+		if(end - start < 2 || text.charAt(start) != '$') {
+			return -1;
+		}
+		int x = start + 1;
+		char first = text.charAt(x);
+		if(first == '0') {
+			x++;
+		} else if(first >= '1' && first <= '9') {
+			int run = digits(text, x, end);
+			x += run;
+			if(x < end && text.charAt(x) == ',') {
+				if(run > 3) {
+					return -1;
+				}
+				while(x < end && text.charAt(x) == ',') {
+					if(digits(text, x + 1, end) != 3) {
+						return -1;
+					}
+					x += 4;
+				}
+			}
+		} else {
+			return -1;
+		}
+		int wholeEnd = x;
+		if(x < end && text.charAt(x) == '.') {
+			if(digits(text, x + 1, end) != 2) {
+				return -1;
+			}
+			x += 3;
+		}
+		return x == end ? wholeEnd : -1;
+	}
+
+	static boolean containsDigit(CharSequence text) {
+		for(int x = 0; x < text.length(); x++) {
+			if(isDigit(text.charAt(x))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Drop whitespace between a dollar sign and the digits after it and blank out asterisks, in one pass over the HTML.
+	 */
+	static String joinDollarAmounts(String html) {
+		StringBuilder sb = null;
+		int length = html.length();
+		for(int x = 0; x < length; x++) {
+			char c = html.charAt(x);
+			if(c == '$' && x + 1 < length && isWhitespace(html.charAt(x + 1))) {
+				int y = x + 1;
+				while(y < length && isWhitespace(html.charAt(y))) {
+					y++;
+				}
+				if(y < length && isDigit(html.charAt(y))) {
+					if(sb == null) {
+						sb = new StringBuilder(length).append(html, 0, x);
+					}
+					sb.append('$');
+					x = y - 1;
+					continue;
+				}
+			}
+			if(c == '*' && sb == null) {
+				sb = new StringBuilder(length).append(html, 0, x);
+			}
+			if(sb != null) {
+				sb.append(c == '*' ? ' ' : c);
+			}
+		}
+		return sb == null ? html : sb.toString();
+	}
+
+	private static String wholeDollars(String text, int start, int end) {
+		int comma = text.indexOf(',', start);
+		if(comma < 0 || comma >= end) {
+			return text.substring(start, end);
+		}
+		StringBuilder sb = new StringBuilder(end - start);
+		for(int x = start; x < end; x++) {
+			char c = text.charAt(x);
+			if(c != ',') {
+				sb.append(c);
+			}
+		}
+		return sb.toString();
+	}
+
+	private static int digits(CharSequence text, int start, int end) {
+		int x = start;
+		while(x < end && isDigit(text.charAt(x))) {
+			x++;
+		}
+		return x - start;
+	}
+
+	private static boolean isDigit(char c) {
+		return c >= '0' && c <= '9';
+	}
+
+	/**
+	 * The same set as the regex \s.
+	 */
+	private static boolean isWhitespace(char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+	}
+}
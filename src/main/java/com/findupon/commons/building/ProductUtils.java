@@ -16,9 +16,11 @@
 
 package com.findupon.commons.building;
 
+import com.google.common.collect.Lists;
 import com.findupon.commons.bot.automotive.ListingAutomobileBot;
 import com.findupon.commons.dao.AircraftDao;
 import com.findupon.commons.dao.AutomobileDao;
+import com.findupon.commons.dao.ProductWriteBuffer;
 import com.findupon.commons.dao.RealEstateDao;
 import com.findupon.commons.dao.WatercraftDao;
 import com.findupon.commons.entity.datasource.DataSource;
@@ -61,6 +63,7 @@ public class ProductUtils {
 	@Autowired private RealEstateDao realEstateDao;
 	@Autowired private WatercraftDao watercraftDao;
 	@Autowired private AircraftDao aircraftDao;
+	@Autowired private ProductWriteBuffer productWriteBuffer;
 	@Autowired private DataSourceRepo dataSourceRepo;
 	@Autowired private AutomotiveGatherer automotiveGatherer; // more generification needed
 
@@ -118,6 +121,35 @@ public class ProductUtils {
 		}
 	}
 
+	/**
+	 * Set the merge info for a product headed into a {@link com.findupon.commons.dao.ProductImportSession}. The session keeps
+	 * creation info of existing rows and sets the modified info on a price change, so it is safe to treat everything as new.
+	 */
+	public void prepareForImport(Product product, Date now) {
+		Objects.requireNonNull(product, "Cannot prepare null product!");
+		if(product instanceof Automobile) {
+			automotiveGatherer.setAdditionalAttributes((Automobile)product);
+		}
+		product.setVisitedBy(chloe);
+		product.setVisitedDate(now);
+		product.setCreationDate(now);
+		product.setCreatedBy(chloe);
+	}
+
+	/**
+	 * Aggregate refresh for products whose price was changed by an import session, only automobiles aggregate.
+	 */
+	public void refreshAggregatesById(Class<? extends Product> type, List<Long> ids) {
+		if(!Automobile.class.equals(type) || ids.isEmpty()) {
+			return;
+		}
+		logger.debug("[ProductUtils] - Refreshing aggregates for [{}] price changes", ids.size());
+		for(List<Long> partition : Lists.partition(ids, 1000)) {
+			List<Automobile> automobiles = automobileDao.findAllById(partition);
+			automobiles.forEach(this::refreshAggregates);
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	public <P extends Product & Serializable> List<P> findExistingProducts(DataSource dataSource, String listingId) {
 		if(dataSource == null || dataSource.getUrl() == null || listingId == null) {
@@ -167,6 +199,7 @@ public class ProductUtils {
 	}
 
 	public void removeProductAndRefreshAggregates(Product product) {
+		productWriteBuffer.discard(product);
 		if(refreshAggregates(product)) {
 			if(product instanceof Automobile) {
 				automobileDao.delete((Automobile)product);
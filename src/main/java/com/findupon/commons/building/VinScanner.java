@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.building;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+
+/**
+ * Finds VINs in any length of text in one pass without allocating, for {@link AutoParsingOperations#vinRecognizer()} and
+ * {@link AutoParsingOperations#getContainingVin(String)}. A candidate is any 17 letters or digits in a row. The scan keeps a
+ * count of the current run, and every window of 17 inside the run is checked against tables that hold each character's
+ * transliteration value, its upper case and its case folded form. Results are the same as upper casing each window and
+ * checking it by hand, with one exception. Windows that made the original check throw (characters whose upper case is longer
+ * than one character, or a negative check digit remainder) are simply rejected.
+ */
+public final class VinScanner {
+	private static final int vinLength = 17;
+	private static final int checkDigitIndex = 8;
+	private static final int[] weights = {8, 7, 6, 5, 4, 3, 2, 10, 0, 9, 8, 7, 6, 5, 4, 3, 2};
+	private static final String checkDigits = "0123456789X";
+	private static final String transliteration = "0123456789.ABCDEFGH..JKLMN.P.R..STUVWXYZ";
+	private static final int[] motorcycleVinPrefixes = Arrays.stream(new String[]{"KMY", "LAE", "LBB", "LB2",
+			"LFG", "LMC", "LZP", "L5N", "L8X", "VBK", "VTH", "VTT", "ZKH", "KM1", "LAN", "LBP", "LCE", "LFY", "LPR",
+			"L4B", "L5Y", "SMT", "VG5", "VTL", "YU7", "538"}).mapToInt(p -> prefixKey(p.charAt(0), p.charAt(1), p.charAt(2))).sorted().toArray();
+
+	private static final byte notVin = -2; // breaks a run
+	private static final byte unknown = -1; // letters the check digit math has no value for (I, O, Q and most non-ASCII)
+	private static final byte rejected = -3; // letters that upper case to more than one character
+
+	private static final byte[] values = new byte[Character.MAX_VALUE + 1];
+	private static final byte[] uppers = new byte[Character.MAX_VALUE + 1];
+	private static final byte[] folds = new byte[Character.MAX_VALUE + 1];
+
+	static {
+		for(int c = 0; c <= Character.MAX_VALUE; c++) {
+			if(!Character.isLetterOrDigit((char)c)) {
+				values[c] = notVin;
+				continue;
+			}
+			String upper = c < 128 ? null : String.valueOf((char)c).toUpperCase(Locale.ENGLISH);
+			if(upper != null && upper.length() != 1) {
+				values[c] = rejected;
+				continue;
+			}
+			char u = upper == null ? Character.toUpperCase((char)c) : upper.charAt(0);
+			int index = u < 128 ? transliteration.indexOf(u) : -1;
+			values[c] = index < 0 ? unknown : (byte)(index % 10);
+			uppers[c] = u < 128 ? (byte)u : 0;
+			folds[c] = (byte)fold(u);
+		}
+	}
+
+
+	private VinScanner() {
+	}
+
+	/**
+	 * @return true when the text is exactly a VIN, no surrounding whitespace
+	 */
+	public static boolean isVin(CharSequence text) {
+		if(text == null || text.length() != vinLength) {
+			return false;
+		}
+		for(int x = 0; x < vinLength; x++) {
+			if(values[text.charAt(x)] == notVin) {
+				return false;
+			}
+		}
+		return check(text, 0);
+	}
+
+	/**
+	 * @return where the first VIN at or after the index starts, -1 for none
+	 */
+	public static int indexOf(CharSequence text, int fromIndex) {
+		if(text == null) {
+			return -1;
+		}
+		int run = 0;
+		for(int x = Math.max(fromIndex, 0); x < text.length(); x++) {
+			if(values[text.charAt(x)] == notVin) {
+				run = 0;
+			} else if(++run >= vinLength && check(text, x - vinLength + 1)) {
+				return x - vinLength + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return every VIN in the text in order, overlapping ones included
+	 */
+	public static List<String> findAll(CharSequence text) {
+		List<String> vins = new ArrayList<>();
+		int start = -1;
+		while((start = indexOf(text, start + 1)) >= 0) {
+			vins.add(text.subSequence(start, start + vinLength).toString());
+		}
+		return vins;
+	}
+
+	/**
+	 * The window at start is known to be all letters or digits.
+	 */
+	private static boolean check(CharSequence text, int start) {
+		int checkDigit = uppers[text.charAt(start + checkDigitIndex)];
+		if(checkDigit != 'X' && (checkDigit < '0' || checkDigit > '9')) {
+			return false;
+		}
+		int sum = 0;
+		for(int x = 0; x < vinLength; x++) {
+			int value = values[text.charAt(start + x)];
+			if(value == rejected) {
+				return false;
+			}
+			sum += value * weights[x];
+		}
+		int remainder = sum % 11;
+		if(remainder < 0 || checkDigits.charAt(remainder) != checkDigit) {
+			return false;
+		}
+		return !isSingleDigit(text, start) && !isMotorcycleVin(text, start);
+	}
+
+	private static boolean isSingleDigit(CharSequence text, int start) {
+		char first = text.charAt(start);
+		if(first < '0' || first > '9') {
+			return false;
+		}
+		for(int x = 1; x < vinLength; x++) {
+			if(text.charAt(start + x) != first) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isMotorcycleVin(CharSequence text, int start) {
+		int f1 = folds[text.charAt(start)], f2 = folds[text.charAt(start + 1)], f3 = folds[text.charAt(start + 2)];
+		return f1 != 0 && f2 != 0 && f3 != 0 && Arrays.binarySearch(motorcycleVinPrefixes, prefixKey(f1, f2, f3)) >= 0;
+	}
+
+	/**
+	 * The ASCII character an upper cased character is equal to ignoring case, the way {@link String#equalsIgnoreCase} compares
+	 * them, or 0 for none.
+	 */
+	private static int fold(char upper) {
+		char u = Character.toUpperCase(upper);
+		if(u < 128) {
+			return u;
+		}
+		char l = Character.toLowerCase(u);
+		return l < 128 ? Character.toUpperCase(l) : 0;
+	}
+
+	private static int prefixKey(int c1, int c2, int c3) {
+		return c1 << 14 | c2 << 7 | c3;
+	}
+}
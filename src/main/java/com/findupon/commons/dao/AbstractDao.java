@@ -27,6 +27,7 @@ import org.hibernate.cfg.AttributeConverterDefinition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.ResultSetExtractor;
 
 import javax.persistence.Convert;
@@ -74,7 +75,60 @@ public abstract class AbstractDao<A extends AbstractEntity<PK>, PK extends Numbe
 	}
 
 	private <E extends A> void saveAllInternal(Collection<E> entities) {
-		StringBuilder sql = new StringBuilder("insert into " + entityMetaData.getTableName());
+		try {
+			upsertRows(toParameterRows(entities));
+		} catch(DataAccessException e) {
+			logger.error("[AbstractDao] - Final error saving [{}] entities", entities.size(), e);
+		}
+	}
+
+	/**
+	 * Flattens the entities into their ordered column values, normalized to the types {@link JdbcFacade#setParam} binds.
+	 * The rows are detached from the entities so they can be buffered or spilled and written at a later time.
+	 *
+	 * @throws IllegalArgumentException for a column value that is not one of the plain JDBC types, rather than failing once
+	 *                                  the row is bound or spilled
+	 */
+	<E extends A> List<Object[]> toParameterRows(Collection<E> entities) {
+		List<Object[]> rows = new ArrayList<>(entities.size());
+		Collection<Field> fields = entityMetaData.getColumnFields().values();
+		for(E entity : entities) {
+			ensureEntityType(entity);
+			Object[] row = new Object[fields.size()];
+			int index = 0;
+			for(Field f : fields) {
+				Object value;
+				try {
+					value = JdbcFacade.toParam(f.get(entity));
+				} catch(Exception e) {
+					throw new RuntimeException("Error getting entity field value", e);
+				}
+				if(!JdbcFacade.isPlainParam(value)) {
+					throw new IllegalArgumentException("Unsupported column type " + value.getClass().getSimpleName() + " for field " + f.getName());
+				}
+				row[index++] = value;
+			}
+			rows.add(row);
+		}
+		return rows;
+	}
+
+	/**
+	 * @return the affected row count, zero when every row was already up to date
+	 * @throws DataAccessException when the final attempt failed
+	 */
+	int upsertRows(List<Object[]> rows) {
+		return upsertRows(entityMetaData.getTableName(), rows);
+	}
+
+	/**
+	 * Upsert into any table sharing this entity's columns, i.e. a staging table created like the entity table.
+	 */
+	int upsertRows(String tableName, List<Object[]> rows) {
+		if(rows == null || rows.isEmpty()) {
+			return 0;
+		}
+		StringBuilder sql = new StringBuilder("insert into " + tableName);
 		StringJoiner cs = new StringJoiner(",", "(", ")");
 		StringJoiner vs = new StringJoiner(",", "(", ")");
 		for(String column : entityMetaData.getColumnFields().keySet()) {
@@ -83,7 +137,7 @@ public abstract class AbstractDao<A extends AbstractEntity<PK>, PK extends Numbe
 		}
 		sql.append(cs.toString());
 		sql.append("values");
-		sql.append(entities.stream()
+		sql.append(rows.stream()
 				.map(a -> vs.toString())
 				.collect(Collectors.joining(",")));
 		sql.append("on duplicate key update ");
@@ -93,21 +147,31 @@ public abstract class AbstractDao<A extends AbstractEntity<PK>, PK extends Numbe
 				.collect(Collectors.joining(",")));
 		sql.append(";");
 
-		jdbcFacade.retryingUpdate(sql.toString(), ps -> {
+		return jdbcFacade.retryingUpdateOrThrow(sql.toString(), ps -> {
 			int index = 1;
-			for(E entity : entities) {
-				ensureEntityType(entity);
-				for(Field f : entityMetaData.getColumnFields().values()) {
-					try {
-						JdbcFacade.setParam(ps, f.get(entity), index++);
-					} catch(Exception e) {
-						throw new RuntimeException("Error setting entity field value", e);
-					}
+			for(Object[] row : rows) {
+				for(Object value : row) {
+					JdbcFacade.setParam(ps, value, index++);
 				}
 			}
 		});
 	}
 
+	int getColumnCount() {
+		return entityMetaData.getColumnFields().size();
+	}
+
+	/**
+	 * @return the column's position in the parameter rows, -1 if the entity has no such column
+	 */
+	int getColumnIndex(String column) {
+		return new ArrayList<>(entityMetaData.getColumnFields().keySet()).indexOf(column);
+	}
+
+	String getTableName() {
+		return entityMetaData.getTableName();
+	}
+
 	@Override
 	public <E extends A> Optional<E> findById(PK id) {
 		if(id == null) {
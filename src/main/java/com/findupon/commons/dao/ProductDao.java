@@ -104,6 +104,14 @@ public abstract class ProductDao<A extends Product> extends AbstractDao<A, Long>
 		return jdbcFacade.query(sql, getExtractor(), ps -> JdbcFacade.setParam(ps, dataSourceId, 1));
 	}
 
+	/**
+	 * Start a full feed import for the data source, see {@link ProductImportSession}. Close the session when done to drop
+	 * its staging table.
+	 */
+	public ProductImportSession<A> newImportSession(long dataSourceId) {
+		return new ProductImportSession<>(this, jdbcFacade, dataSourceId);
+	}
+
 	public long countByDataSourceId(Long dataSourceId) {
 		if(dataSourceId == null) {
 			return 0;
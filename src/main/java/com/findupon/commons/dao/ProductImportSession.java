@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.dao;
+
+import com.google.common.base.Stopwatch;
+import com.findupon.commons.dao.core.JdbcFacade;
+import com.findupon.commons.entity.product.Product;
+import com.findupon.commons.utilities.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+
+/**
+ * Bulk import of a full feed for a single data source. Products are streamed into a staging table created like the product
+ * table with large batched inserts, then reconciled against the live table with set based statements:
+ * <ol>
+ * <li>upsert everything staged, keeping creation info and the main image of existing rows and only moving the modified
+ * date when the price changed</li>
+ * <li>delete every live row for the data source that was not staged, never run if the upsert failed</li>
+ * </ol>
+ * This replaces holding the feed and the existing rows in memory to diff them. Not thread safe, {@link #add} from a single
+ * thread or synchronize externally.
+ */
+public class ProductImportSession<A extends Product> implements AutoCloseable {
+	private static final Logger logger = LoggerFactory.getLogger(ProductImportSession.class);
+	private static final int stageBatchSize = 4096;
+	private static final String modifiedBy = "Chloe";
+	private static final Set<String> preservedColumns = new HashSet<>(Arrays.asList("creation_date", "created_by", "modified_date", "modified_by"));
+
+	private final ProductDao<A> dao;
+	private final JdbcFacade jdbcFacade;
+	private final long dataSourceId;
+	private final String tableName;
+	private final String stagingTable;
+	private final List<A> batch = new ArrayList<>(stageBatchSize);
+	private final LongAdder staged = new LongAdder();
+	private final Stopwatch stageTimer = Stopwatch.createUnstarted();
+	private boolean reconciled = false;
+
+
+	ProductImportSession(ProductDao<A> dao, JdbcFacade jdbcFacade, long dataSourceId) {
+		this.dao = dao;
+		this.jdbcFacade = jdbcFacade;
+		this.dataSourceId = dataSourceId;
+		this.tableName = dao.getTableName();
+		this.stagingTable = JdbcFacade.stagingTablePrefix + tableName + "_" + dataSourceId;
+		jdbcFacade.recreateStagingTable(tableName, stagingTable);
+	}
+
+	public void add(A product) {
+		if(reconciled) {
+			throw new IllegalStateException("Import session already reconciled");
+		}
+		if(product.getDataSourceId() == null || product.getDataSourceId() != dataSourceId) {
+			throw new IllegalArgumentException("Product data source ID does not match the import session");
+		}
+		batch.add(product);
+		if(batch.size() >= stageBatchSize) {
+			flushBatch();
+		}
+	}
+
+	public long getStagedCount() {
+		return staged.longValue() + batch.size();
+	}
+
+	/**
+	 * Apply the staged feed to the live table. Should only be called once the full feed has been added, as anything for
+	 * the data source not staged is removed.
+	 */
+	public Result reconcile() {
+		flushBatch();
+		reconciled = true;
+		Result result = new Result(staged.longValue(), stageTimer.elapsed(TimeUnit.MILLISECONDS));
+		if(result.staged == 0) {
+			logger.warn("[ProductImportSession] - Nothing staged for [{}], not reconciling as it would remove every row", tableName);
+			return result;
+		}
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		List<String> columns = dao.entityMetaData.getColumnFields().keySet().stream()
+				.filter(c -> !"id".equals(c))
+				.collect(Collectors.toList());
+
+		// price changes, captured before the upsert overwrites them, drive aggregate refreshes and modified dates
+		result.priceChangedIds = jdbcFacade.queryForList("select t.id from " + tableName + " t " +
+				"join " + stagingTable + " s on s.data_source_id = t.data_source_id and s.listing_id = t.listing_id " +
+				"where t.data_source_id = ? and not (t.price <=> s.price)", Long.class, ps -> JdbcFacade.setParam(ps, dataSourceId, 1));
+
+		Date now = new Date();
+		String columnList = String.join(",", columns);
+		// modified info must be assigned before price, and in this order to match the parameters
+		String assignments = tableName + ".modified_date=if(" + tableName + ".price <=> s.price, " + tableName + ".modified_date, ?)," +
+				tableName + ".modified_by=if(" + tableName + ".price <=> s.price, " + tableName + ".modified_by, ?)," +
+				columns.stream()
+						.filter(c -> !preservedColumns.contains(c))
+						.map(c -> "main_img_url".equals(c)
+								? tableName + "." + c + "=coalesce(s." + c + ", " + tableName + "." + c + ")"
+								: tableName + "." + c + "=s." + c)
+						.collect(Collectors.joining(","));
+		String upsert = "insert into " + tableName + "(" + columnList + ") " +
+				"select * from (select " + columnList + " from " + stagingTable + " where data_source_id = ?) s " +
+				"on duplicate key update " + assignments;
+		try {
+			result.upserted = jdbcFacade.retryingUpdateOrThrow(upsert, ps -> {
+				JdbcFacade.setParam(ps, dataSourceId, 1);
+				JdbcFacade.setParam(ps, now, 2);
+				JdbcFacade.setParam(ps, modifiedBy, 3);
+			});
+		} catch(DataAccessException e) {
+			throw new IllegalStateException("Could not upsert " + stagingTable + " into " + tableName + ", nothing removed", e);
+		}
+
+		String delete = "delete from " + tableName + " where data_source_id = ? and not exists " +
+				"(select 1 from " + stagingTable + " s where s.data_source_id = " + tableName + ".data_source_id " +
+				"and s.listing_id = " + tableName + ".listing_id)";
+		result.removed = jdbcFacade.retryingUpdate(delete, ps -> JdbcFacade.setParam(ps, dataSourceId, 1));
+		result.reconcileMillis = stopwatch.elapsed(TimeUnit.MILLISECONDS);
+
+		logger.info("[ProductImportSession] - {} reconciled. Staged: [{}] at [{}] rows/sec Upsert affected: [{}] Removed: [{}] Reconcile time: [{}]",
+				tableName, result.staged, String.format("%,.0f", result.getStageRowsPerSecond()), result.upserted, result.removed,
+				TimeUtils.format(result.reconcileMillis));
+		return result;
+	}
+
+	@Override
+	public void close() {
+		batch.clear();
+		try {
+			jdbcFacade.dropStagingTable(stagingTable);
+		} catch(Exception e) {
+			logger.warn("[ProductImportSession] - Could not drop staging table [{}]", stagingTable, e);
+		}
+	}
+
+	private void flushBatch() {
+		if(batch.isEmpty()) {
+			return;
+		}
+		stageTimer.start();
+		int size = batch.size();
+		try {
+			dao.upsertRows(stagingTable, dao.toParameterRows(batch));
+		} catch(DataAccessException e) {
+			stageTimer.stop();
+			throw new IllegalStateException("Could not stage import batch of " + size + " into " + stagingTable, e);
+		}
+		staged.add(size);
+		batch.clear();
+		stageTimer.stop();
+	}
+
+	public static class Result {
+		private final long staged;
+		private final long stageMillis;
+		private long reconcileMillis;
+		private int upserted;
+		private int removed;
+		private List<Long> priceChangedIds = new ArrayList<>();
+
+		private Result(long staged, long stageMillis) {
+			this.staged = staged;
+			this.stageMillis = stageMillis;
+		}
+
+		public long getStaged() {
+			return staged;
+		}
+
+		public long getStageMillis() {
+			return stageMillis;
+		}
+
+		public long getReconcileMillis() {
+			return reconcileMillis;
+		}
+
+		/**
+		 * @return the MySQL affected row count, 1 per insert and 2 per changed row.
+		 */
+		public int getUpserted() {
+			return upserted;
+		}
+
+		public int getRemoved() {
+			return removed;
+		}
+
+		public List<Long> getPriceChangedIds() {
+			return priceChangedIds;
+		}
+
+		public double getStageRowsPerSecond() {
+			return stageMillis == 0 ? staged : staged * 1000D / stageMillis;
+		}
+
+		public double getTotalRowsPerSecond() {
+			long total = stageMillis + reconcileMillis;
+			return total == 0 ? staged : staged * 1000D / total;
+		}
+	}
+}
@@ -0,0 +1,566 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.dao;
+
+import com.google.common.collect.Lists;
+import com.findupon.commons.entity.product.Product;
+import com.findupon.commons.entity.product.aircraft.Aircraft;
+import com.findupon.commons.entity.product.automotive.Automobile;
+import com.findupon.commons.entity.product.realestate.RealEstate;
+import com.findupon.commons.entity.product.watercraft.Watercraft;
+import com.findupon.commons.metrics.Histogram;
+import com.findupon.commons.metrics.Labeled;
+import com.findupon.commons.metrics.MetricRegistry;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Worker wide write-behind buffer for built products. Crawl threads hand products off and move on while a single writer
+ * thread coalesces them by table, keeps only the latest product per data source and listing ID, and upserts on size or
+ * time. When the database is unavailable (or the hand-off queue stays full) rows are appended to a local spill file per
+ * table which is replayed after the next successful flush or on the next start. Only an error fails a write, an upsert of
+ * unchanged rows affects none of them. A spill file that can't be read back or replayed is set aside with the
+ * {@link #quarantineExtension} so the other tables still replay.
+ * <p>
+ * The writer is only running on worker nodes; until {@link #run()} has been started offers are written through
+ * synchronously, which keeps the manual runner and master behavior as it was. Nothing replays a spill file on a node that
+ * never ran the writer, a failed write through is dropped there as it always was.
+ */
+@Component
+public class ProductWriteBuffer implements Runnable {
+	private static final Logger logger = LoggerFactory.getLogger(ProductWriteBuffer.class);
+
+	private static final int queueCapacity = 8192;
+	private static final int flushThreshold = 512;
+	private static final long flushIntervalMillis = TimeUnit.SECONDS.toMillis(5);
+	private static final long offerTimeoutMillis = TimeUnit.SECONDS.toMillis(2);
+	private static final String spillExtension = ".spill";
+	private static final String replayExtension = ".replay";
+	private static final String quarantineExtension = ".bad";
+	private static final Labeled<Histogram> batchRows = MetricRegistry.INSTANCE.histogram("das_dao_batch_rows",
+			"Rows per product upsert batch", Histogram.units, flushThreshold, "table");
+	private static final Histogram persistSeconds = MetricRegistry.INSTANCE.histogram("das_product_persist_seconds",
+			"Upsert time per product, the batch time spread over its rows", Histogram.nanos, TimeUnit.MINUTES.toNanos(1));
+
+	@Autowired private AutomobileDao automobileDao;
+	@Autowired private RealEstateDao realEstateDao;
+	@Autowired private WatercraftDao watercraftDao;
+	@Autowired private AircraftDao aircraftDao;
+
+	private final Path spillDirectory;
+	private final BlockingQueue<Product> queue = new LinkedBlockingQueue<>(queueCapacity);
+	private final Map<Class<?>, Map<String, Product>> pending = new HashMap<>();
+	private final AtomicBoolean run = new AtomicBoolean();
+	private final AtomicBoolean running = new AtomicBoolean();
+	private final Object spillLock = new Object();
+	private final LongAdder writtenProducts = new LongAdder();
+	private final LongAdder spilledRows = new LongAdder();
+	private volatile Thread writerThread;
+	private long lastFlushMillis = System.currentTimeMillis();
+
+
+	public ProductWriteBuffer() {
+		this(Paths.get(System.getProperty("java.io.tmpdir"), "das-product-spill"));
+	}
+
+	ProductWriteBuffer(Path spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * Hand the products off to the writer. Blocks for at most {@link #offerTimeoutMillis} per product when the queue is full,
+	 * after which the product is spilled to disk rather than holding up the crawl.
+	 */
+	public void offer(Collection<? extends Product> products) {
+		if(products == null || products.isEmpty()) {
+			return;
+		}
+		if(!running.get()) {
+			writeThrough(products);
+			return;
+		}
+		List<Product> overflow = new ArrayList<>();
+		for(Product product : products) {
+			try {
+				if(!queue.offer(product, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+					overflow.add(product);
+				}
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				overflow.add(product);
+			}
+		}
+		if(!overflow.isEmpty()) {
+			logger.warn("[ProductWriteBuffer] - Write queue full, spilling [{}] products to disk", overflow.size());
+			groupByType(overflow).forEach(this::spill);
+		}
+	}
+
+	/**
+	 * Drop any buffered or spilled write for the product, used when a product is being removed so a stale upsert can't
+	 * resurrect it.
+	 */
+	public void discard(Product product) {
+		if(product == null) {
+			return;
+		}
+		String key = key(product);
+		queue.removeIf(p -> p.getClass().equals(product.getClass()) && key.equals(key(p)));
+		synchronized(pending) {
+			Map<String, Product> typed = pending.get(product.getClass());
+			if(typed != null) {
+				typed.remove(key);
+			}
+		}
+		discardSpilled(daoFor(product.getClass()), key);
+	}
+
+	@Override
+	public void run() {
+		if(!running.compareAndSet(false, true)) {
+			logger.warn("[ProductWriteBuffer] - Writer already running");
+			return;
+		}
+		writerThread = Thread.currentThread();
+		run.set(true);
+		logger.debug("[ProductWriteBuffer] - Writer started, replaying any existing spill files...");
+		replaySpillFiles();
+
+		try {
+			while(run.get()) {
+				Product product;
+				try {
+					product = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+				} catch(InterruptedException e) {
+					break;
+				}
+				int size;
+				synchronized(pending) {
+					if(product != null) {
+						stage(product);
+					}
+					List<Product> drained = new ArrayList<>();
+					queue.drainTo(drained);
+					drained.forEach(this::stage);
+					size = pending.values().stream().mapToInt(Map::size).sum();
+				}
+				if(size >= flushThreshold || System.currentTimeMillis() - lastFlushMillis >= flushIntervalMillis) {
+					flush();
+				}
+			}
+		} finally {
+			running.set(false);
+			synchronized(pending) {
+				List<Product> drained = new ArrayList<>();
+				queue.drainTo(drained);
+				drained.forEach(this::stage);
+			}
+			flush();
+			logger.debug("[ProductWriteBuffer] - Writer stopped. Written: [{}] Spilled: [{}]", writtenProducts.longValue(), spilledRows.longValue());
+		}
+	}
+
+	/**
+	 * Stop the writer, waiting for the final flush to complete.
+	 */
+	public void shutdown() {
+		run.set(false);
+		Thread thread = writerThread;
+		if(thread != null) {
+			try {
+				thread.join(TimeUnit.MINUTES.toMillis(2));
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		logger.debug("[ProductWriteBuffer] - Shutdown complete");
+	}
+
+	/**
+	 * @return products handed off and not yet staged by the writer
+	 */
+	public int getQueueDepth() {
+		return queue.size();
+	}
+
+	private void stage(Product product) {
+		Map<String, Product> typed = pending.computeIfAbsent(product.getClass(), c -> new LinkedHashMap<>());
+		String key = key(product);
+		Product previous = typed.put(key, product);
+		if(previous != null && product.getId() == null) {
+			// the newer build could not see the earlier one in the database yet, keep the original identity and creation
+			product.setId(previous.getId());
+			product.setCreationDate(previous.getCreationDate());
+			product.setCreatedBy(previous.getCreatedBy());
+		}
+	}
+
+	private void flush() {
+		lastFlushMillis = System.currentTimeMillis();
+		Map<Class<?>, List<Product>> batch = new HashMap<>();
+		synchronized(pending) {
+			pending.forEach((type, products) -> {
+				if(!products.isEmpty()) {
+					batch.put(type, new ArrayList<>(products.values()));
+				}
+			});
+			pending.clear();
+		}
+		boolean allWritten = true;
+		for(Map.Entry<Class<?>, List<Product>> entry : batch.entrySet()) {
+			ProductDao<?> dao = daoFor(entry.getKey());
+			try {
+				List<Object[]> rows = toRows(dao, entry.getValue());
+				if(write(dao, rows)) {
+					writtenProducts.add(rows.size());
+				} else {
+					allWritten = false;
+					spill(dao, rows);
+				}
+			} catch(RuntimeException e) {
+				// not the database being unavailable, spilling would only fail the same way on replay. the writer carries on
+				allWritten = false;
+				logger.error("[ProductWriteBuffer] - Could not write [{}] products to [{}], dropping them", entry.getValue().size(), dao.getTableName(), e);
+			}
+		}
+		if(allWritten && !batch.isEmpty()) {
+			replaySpillFiles();
+		}
+	}
+
+	private void writeThrough(Collection<? extends Product> products) {
+		groupByType(products).forEach((dao, rows) -> {
+			if(!write(dao, rows)) {
+				// a writer that ran here before replays the file on its next start
+				if(writerThread != null) {
+					spill(dao, rows);
+				} else {
+					logger.error("[ProductWriteBuffer] - No writer has run here to replay a spill file, [{}] rows for [{}] are lost", rows.size(), dao.getTableName());
+				}
+			}
+		});
+	}
+
+	private boolean write(ProductDao<?> dao, List<Object[]> rows) {
+		for(List<Object[]> partition : Lists.partition(rows, flushThreshold)) {
+			long start = System.nanoTime();
+			try {
+				dao.upsertRows(partition);
+			} catch(DataAccessException e) {
+				logger.warn("[ProductWriteBuffer] - Could not write [{}] rows to [{}]", rows.size(), dao.getTableName(), e);
+				return false;
+			}
+			persistSeconds.record((System.nanoTime() - start) / partition.size(), partition.size());
+			batchRows.labels(dao.getTableName()).record(partition.size());
+		}
+		return true;
+	}
+
+	private Map<ProductDao<?>, List<Object[]>> groupByType(Collection<? extends Product> products) {
+		Map<Class<?>, List<Product>> byType = new LinkedHashMap<>();
+		for(Product product : products) {
+			byType.computeIfAbsent(product.getClass(), c -> new ArrayList<>()).add(product);
+		}
+		Map<ProductDao<?>, List<Object[]>> rows = new LinkedHashMap<>();
+		byType.forEach((type, typed) -> {
+			ProductDao<?> dao = daoFor(type);
+			rows.put(dao, toRows(dao, typed));
+		});
+		return rows;
+	}
+
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	private List<Object[]> toRows(ProductDao<?> dao, List<Product> products) {
+		return ((ProductDao)dao).toParameterRows(products);
+	}
+
+	private ProductDao<?> daoFor(Class<?> type) {
+		if(Automobile.class.equals(type)) {
+			return automobileDao;
+		} else if(RealEstate.class.equals(type)) {
+			return realEstateDao;
+		} else if(Watercraft.class.equals(type)) {
+			return watercraftDao;
+		} else if(Aircraft.class.equals(type)) {
+			return aircraftDao;
+		}
+		throw new UnsupportedOperationException("No product DAO for type " + type.getSimpleName());
+	}
+
+	private ProductDao<?> daoForTable(String tableName) {
+		for(ProductDao<?> dao : Arrays.asList(automobileDao, realEstateDao, watercraftDao, aircraftDao)) {
+			if(dao.getTableName().equals(tableName)) {
+				return dao;
+			}
+		}
+		return null;
+	}
+
+	private static String key(Product product) {
+		return key(product.getDataSourceId(), product.getListingId(), product.getUrl());
+	}
+
+	private static String key(ProductDao<?> dao, Object[] row) {
+		return key(row[dao.getColumnIndex("data_source_id")], (String)row[dao.getColumnIndex("listing_id")], row[dao.getColumnIndex("url")]);
+	}
+
+	private static String key(Object dataSourceId, String listingId, Object url) {
+		if(StringUtils.isNotEmpty(listingId)) {
+			return dataSourceId + "~" + listingId;
+		}
+		return dataSourceId + "~" + url;
+	}
+
+	private void spill(ProductDao<?> dao, List<Object[]> rows) {
+		if(rows.isEmpty()) {
+			return;
+		}
+		synchronized(spillLock) {
+			Path file = spillDirectory.resolve(dao.getTableName() + spillExtension);
+			try {
+				Files.createDirectories(spillDirectory);
+				writeRows(file, rows, true);
+				spilledRows.add(rows.size());
+				logger.warn("[ProductWriteBuffer] - Spilled [{}] rows to [{}]", rows.size(), file);
+			} catch(IOException e) {
+				logger.error("[ProductWriteBuffer] - Could not spill [{}] rows to [{}], they are lost", rows.size(), file, e);
+			}
+		}
+	}
+
+	private void replaySpillFiles() {
+		if(!Files.isDirectory(spillDirectory)) {
+			return;
+		}
+		synchronized(spillLock) {
+			List<Path> files = new ArrayList<>();
+			try(DirectoryStream<Path> stream = Files.newDirectoryStream(spillDirectory, "*{" + spillExtension + "," + replayExtension + "}")) {
+				stream.forEach(files::add);
+			} catch(IOException e) {
+				logger.error("[ProductWriteBuffer] - Could not list spill directory [{}]", spillDirectory, e);
+				return;
+			}
+			for(Path file : files) {
+				String fileName = file.getFileName().toString();
+				String tableName = StringUtils.removeEnd(StringUtils.removeEnd(fileName, spillExtension), replayExtension);
+				ProductDao<?> dao = daoForTable(tableName);
+				if(dao == null) {
+					logger.error("[ProductWriteBuffer] - No product table for spill file [{}], leaving in place", file);
+					continue;
+				}
+				Path replay = file;
+				try {
+					if(fileName.endsWith(spillExtension)) {
+						// an existing replay file means a previous replay was cut short, append to it rather than overwrite
+						replay = spillDirectory.resolve(tableName + replayExtension);
+						if(Files.exists(replay)) {
+							Files.write(replay, Files.readAllBytes(file), StandardOpenOption.APPEND);
+							Files.delete(file);
+						} else {
+							Files.move(file, replay, StandardCopyOption.ATOMIC_MOVE);
+						}
+					}
+					List<Object[]> rows = readRows(replay, dao.getColumnCount());
+					logger.info("[ProductWriteBuffer] - Replaying [{}] spilled rows for [{}]", rows.size(), tableName);
+					if(write(dao, rows)) {
+						Files.delete(replay);
+						writtenProducts.add(rows.size());
+					} else {
+						logger.warn("[ProductWriteBuffer] - Replay failed for [{}], will try again after the next flush", tableName);
+					}
+				} catch(IOException | RuntimeException e) {
+					quarantine(replay, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove the rows for the product key from the table's spill and replay files, rewriting them only when they hold one.
+	 */
+	private void discardSpilled(ProductDao<?> dao, String key) {
+		synchronized(spillLock) {
+			for(String extension : new String[]{spillExtension, replayExtension}) {
+				Path file = spillDirectory.resolve(dao.getTableName() + extension);
+				if(!Files.exists(file)) {
+					continue;
+				}
+				List<Object[]> rows;
+				try {
+					rows = readRows(file, dao.getColumnCount());
+				} catch(IOException e) {
+					quarantine(file, e);
+					continue;
+				}
+				List<Object[]> kept = new ArrayList<>(rows.size());
+				for(Object[] row : rows) {
+					if(!key.equals(key(dao, row))) {
+						kept.add(row);
+					}
+				}
+				if(kept.size() < rows.size()) {
+					Path rewritten = spillDirectory.resolve(file.getFileName() + ".tmp");
+					try {
+						writeRows(rewritten, kept, false);
+						Files.move(rewritten, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+						logger.debug("[ProductWriteBuffer] - Discarded [{}] spilled rows from [{}]", rows.size() - kept.size(), file);
+					} catch(IOException e) {
+						logger.error("[ProductWriteBuffer] - Could not discard spilled rows from [{}], the replay will write them", file, e);
+					}
+				}
+			}
+		}
+	}
+
+	private void quarantine(Path file, Exception cause) {
+		Path quarantined = spillDirectory.resolve(file.getFileName() + "-" + System.currentTimeMillis() + quarantineExtension);
+		try {
+			Files.move(file, quarantined, StandardCopyOption.ATOMIC_MOVE);
+			logger.error("[ProductWriteBuffer] - Unreadable spill file set aside as [{}]", quarantined, cause);
+		} catch(IOException e) {
+			logger.error("[ProductWriteBuffer] - Unreadable spill file [{}] could not be set aside", file, cause);
+		}
+	}
+
+	private static List<Object[]> readRows(Path file, int columnCount) throws IOException {
+		List<Object[]> rows = new ArrayList<>();
+		try(DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+			while(true) {
+				int count;
+				try {
+					count = in.readInt();
+				} catch(EOFException e) {
+					break;
+				}
+				if(count != columnCount) {
+					throw new IOException(String.format("Spill row column count [%d] does not match table [%d]", count, columnCount));
+				}
+				Object[] row = new Object[count];
+				try {
+					for(int x = 0; x < count; x++) {
+						row[x] = readValue(in);
+					}
+				} catch(EOFException e) {
+					logger.warn("[ProductWriteBuffer] - Truncated row at the end of [{}], dropping it", file);
+					break;
+				}
+				rows.add(row);
+			}
+		}
+		return rows;
+	}
+
+	private static void writeRow(DataOutputStream out, Object[] row) throws IOException {
+		out.writeInt(row.length);
+		for(Object value : row) {
+			if(value == null) {
+				out.writeByte(0);
+			} else if(value instanceof Date) {
+				out.writeByte(1);
+				out.writeLong(((Date)value).getTime());
+			} else if(value instanceof Integer) {
+				out.writeByte(2);
+				out.writeInt((Integer)value);
+			} else if(value instanceof Long) {
+				out.writeByte(3);
+				out.writeLong((Long)value);
+			} else if(value instanceof Double) {
+				out.writeByte(4);
+				out.writeDouble((Double)value);
+			} else if(value instanceof Float) {
+				out.writeByte(5);
+				out.writeFloat((Float)value);
+			} else if(value instanceof BigDecimal) {
+				out.writeByte(6);
+				writeString(out, value.toString());
+			} else if(value instanceof Boolean) {
+				out.writeByte(7);
+				out.writeBoolean((Boolean)value);
+			} else if(value instanceof String) {
+				out.writeByte(8);
+				writeString(out, (String)value);
+			} else {
+				throw new IOException("Unsupported spilled value type " + value.getClass().getSimpleName());
+			}
+		}
+	}
+
+	private static void writeRows(Path file, List<Object[]> rows, boolean append) throws IOException {
+		try(FileOutputStream fos = new FileOutputStream(file.toFile(), append);
+		    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos))) {
+			for(Object[] row : rows) {
+				writeRow(out, row);
+			}
+			out.flush();
+			fos.getFD().sync();
+		}
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch(type) {
+			case 0:
+				return null;
+			case 1:
+				return new Date(in.readLong());
+			case 2:
+				return in.readInt();
+			case 3:
+				return in.readLong();
+			case 4:
+				return in.readDouble();
+			case 5:
+				return in.readFloat();
+			case 6:
+				return new BigDecimal(readString(in));
+			case 7:
+				return in.readBoolean();
+			case 8:
+				return readString(in);
+			default:
+				throw new IOException("Unknown spilled value type " + type);
+		}
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
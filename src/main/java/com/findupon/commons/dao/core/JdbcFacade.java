@@ -27,9 +27,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.InvalidDataAccessApiUsageException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.PreparedStatementSetter;
 import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
 import org.springframework.jdbc.support.SQLErrorCodeSQLExceptionTranslator;
 import org.springframework.jdbc.support.SQLExceptionTranslator;
 import org.springframework.stereotype.Component;
@@ -52,6 +54,7 @@ public class JdbcFacade {
 	private static final int maxRetryAttempts = 2;
 	private static final long retryWaitMinMillis = 0x4000L;
 	private static final long retryWaitMaxMillis = 0x8000L;
+	public static final String stagingTablePrefix = "import_stage_";
 
 	private final JdbcTemplate jdbcTemplate;
 	private final SQLExceptionTranslator fallbackTranslator = new SQLErrorCodeSQLExceptionTranslator() {
@@ -91,12 +94,60 @@ public class JdbcFacade {
 		return result == null ? 0 : result;
 	}
 
+	public <T> List<T> queryForList(String sql, Class<T> type, PreparedStatementSetter setter) {
+		if(invalidSql(sql)) {
+			return new ArrayList<>();
+		}
+		return jdbcTemplate.query(sql, setter, new SingleColumnRowMapper<>(type));
+	}
+
+	/**
+	 * (Re)create an empty staging table with the same definition, keys included, as the source table. Only tables using
+	 * the {@link #stagingTablePrefix} may be created or dropped through here.
+	 */
+	public void recreateStagingTable(String sourceTable, String stagingTable) {
+		validateStagingTable(stagingTable);
+		if(!sourceTable.matches("[a-zA-Z0-9_]+")) {
+			throw new IllegalArgumentException("Invalid source table name " + sourceTable);
+		}
+		jdbcTemplate.execute("create table if not exists " + stagingTable + " like " + sourceTable);
+		jdbcTemplate.execute("truncate table " + stagingTable);
+	}
+
+	public void dropStagingTable(String stagingTable) {
+		validateStagingTable(stagingTable);
+		jdbcTemplate.execute("drop table if exists " + stagingTable);
+	}
+
+	private static void validateStagingTable(String stagingTable) {
+		if(stagingTable == null || !stagingTable.startsWith(stagingTablePrefix) || !stagingTable.matches("[a-zA-Z0-9_]+")) {
+			throw new IllegalArgumentException("Invalid staging table name " + stagingTable);
+		}
+	}
+
 	public int retryingUpdate(String sql, PreparedStatementSetter setter) {
+		return retryingUpdate(sql, setter, false);
+	}
+
+	/**
+	 * Same as {@link #retryingUpdate(String, PreparedStatementSetter)} but the error of the final attempt is thrown rather than
+	 * logged, for callers that have to tell a failed update from one that changed nothing. An upsert of unchanged rows affects
+	 * zero of them.
+	 */
+	public int retryingUpdateOrThrow(String sql, PreparedStatementSetter setter) {
+		return retryingUpdate(sql, setter, true);
+	}
+
+	private int retryingUpdate(String sql, PreparedStatementSetter setter, boolean throwFinalError) {
 		int rowCount = 0;
 		if(invalidSql(sql)) {
+			if(throwFinalError) {
+				throw new InvalidDataAccessApiUsageException("Invalid or unsupported SQL");
+			}
 			return rowCount;
 		}
 		boolean success;
+		DataAccessException error = null;
 		for(int x = 0; x < maxRetryAttempts; x++) {
 			try {
 				Stopwatch stopwatch = Stopwatch.createStarted();
@@ -109,7 +160,11 @@ public class JdbcFacade {
 				success = true;
 			} catch(DataAccessException e) {
 				success = false;
+				error = e;
 				if(x + 1 == maxRetryAttempts) {
+					if(throwFinalError) {
+						throw e;
+					}
 					logger.error("[JdbcFacade] - Final error during insert/ update operation", e);
 					return rowCount;
 				} else {
@@ -123,6 +178,10 @@ public class JdbcFacade {
 					Thread.sleep(ThreadLocalRandom.current().nextLong(retryWaitMinMillis, retryWaitMaxMillis));
 				} catch(InterruptedException e) {
 					logger.warn("[JdbcFacade] - Thread interrupt during retry wait, aborting current operation");
+					if(throwFinalError) {
+						Thread.currentThread().interrupt();
+						throw error;
+					}
 					return rowCount;
 				}
 			}
@@ -228,6 +287,29 @@ public class JdbcFacade {
 		return b;
 	}
 
+	/**
+	 * Reduce an entity field value to the plain JDBC type {@link #setParam} would bind for it. Binding the result is
+	 * equivalent to binding the original value.
+	 */
+	public static Object toParam(Object arg) {
+		if(arg instanceof Attribute.GenericMatching) {
+			return ((Attribute.GenericMatching)arg).getId();
+		} else if(arg instanceof State) {
+			return ((State)arg).getAbbreviation();
+		} else if(arg instanceof ProductCondition) {
+			return ((ProductCondition)arg).getId();
+		}
+		return arg;
+	}
+
+	/**
+	 * @return {@code true} if the value is null or one of the plain JDBC types {@link #toParam} reduces to
+	 */
+	public static boolean isPlainParam(Object param) {
+		return param == null || param instanceof Date || param instanceof Integer || param instanceof Long || param instanceof Double
+				|| param instanceof Float || param instanceof BigDecimal || param instanceof Boolean || param instanceof String;
+	}
+
 	public static void setParam(PreparedStatement ps, Object arg, int index) throws SQLException {
 		if(arg instanceof Date) {
 			ps.setTimestamp(index, new Timestamp(((Date)arg).getTime()));
@@ -18,6 +18,7 @@ package com.findupon.commons.entity.datasource;
 
 import com.findupon.commons.netops.entity.AgentMode;
 import com.findupon.commons.netops.entity.ProxyMode;
+import com.findupon.commons.searchparty.ScoutServices;
 
 import javax.annotation.Nonnull;
 import javax.persistence.*;
@@ -42,6 +43,10 @@ public class DataSource implements Serializable, Comparable<DataSource> {
 	@Column(name = "url")
 	private String url;
 
+	// registrable domain of the url, indexed for duplicate lookups, see ScoutServices.getHostKey
+	@Column(name = "host_key")
+	private String hostKey;
+
 	@Column(name = "asset_type_id")
 	@Convert(converter = AssetType.ConverterImpl.class)
 	private AssetType assetType;
@@ -191,6 +196,12 @@ public class DataSource implements Serializable, Comparable<DataSource> {
 		return DataSourceType.GENERIC.equals(Objects.requireNonNull(dataSourceType));
 	}
 
+	@PrePersist
+	@PreUpdate
+	private void updateHostKey() {
+		hostKey = ScoutServices.getHostKey(url);
+	}
+
 	@Override
 	public int compareTo(@Nonnull DataSource o) {
 		if(this.getLastRun() == null && o.getLastRun() == null) {
@@ -252,6 +263,11 @@ public class DataSource implements Serializable, Comparable<DataSource> {
 
 	public void setUrl(String url) {
 		this.url = url;
+		this.hostKey = ScoutServices.getHostKey(url);
+	}
+
+	public String getHostKey() {
+		return hostKey;
 	}
 
 	public AssetType getAssetType() {
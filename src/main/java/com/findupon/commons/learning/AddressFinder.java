@@ -16,10 +16,8 @@
 
 package com.findupon.commons.learning;
 
-import com.findupon.commons.building.AddressOperations;
 import com.findupon.commons.entity.datasource.AssetType;
 import com.findupon.commons.entity.learning.PossibleAssetType;
-import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Component;
 
 import javax.validation.constraints.NotNull;
@@ -29,11 +27,11 @@ import javax.validation.constraints.NotNull;
 public class AddressFinder implements AssetDeterminer {
 
 	@Override
-	public PossibleAssetType getPossibleAssetType(@NotNull Document document) {
+	public PossibleAssetType getPossibleAssetType(@NotNull PageFeatures features) {
 		PossibleAssetType possibleAssetType = new PossibleAssetType();
 		possibleAssetType.setAssetType(AssetType.AUTOMOBILE);
 
-		if(AddressOperations.getAddress(document).isPresent()) {
+		if(features.hasAddress()) {
 			possibleAssetType.setGuess(true);
 			possibleAssetType.setRelativeProbability(1D);
 		} else {
@@ -17,12 +17,11 @@
 package com.findupon.commons.learning;
 
 import com.findupon.commons.entity.learning.PossibleAssetType;
-import org.jsoup.nodes.Document;
 
 import javax.validation.constraints.NotNull;
 
 
 public interface AssetDeterminer {
 
-	PossibleAssetType getPossibleAssetType(@NotNull Document document);
+	PossibleAssetType getPossibleAssetType(@NotNull PageFeatures features);
 }
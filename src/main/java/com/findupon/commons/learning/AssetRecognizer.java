@@ -27,6 +27,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.DoubleAdder;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
@@ -46,19 +50,26 @@ public class AssetRecognizer {
 	@Autowired private SchemaFinder schemaFinder;
 
 	private static final double correctGuessThreshold = 3D / 6D;
+	private static final int parallelHtmlLength = 256 * 1024; // pages past this score their determiners concurrently
+
+	// shared, the dealer bots build a recognizer per run and nothing would shut a pool of their own down
+	private static final ExecutorService determinerService = Executors.newFixedThreadPool(4, r -> {
+		Thread thread = new Thread(r, "asset-determiner");
+		thread.setDaemon(true);
+		return thread;
+	});
 
 
 	public Optional<AssetType> determineAssetType(Document document) {
 		if(document == null) {
 			return Optional.empty();
 		}
-		List<PossibleAssetType> possibleAssetTypes = new ArrayList<>();
-		possibleAssetTypes.add(keyAttributeFrequency.getPossibleAssetType(document));
-		possibleAssetTypes.add(basicKeywordFrequency.getPossibleAssetType(document));
-		possibleAssetTypes.add(urlKeywordFrequency.getPossibleAssetType(document));
-		possibleAssetTypes.add(metaFrequency.getPossibleAssetType(document));
-		possibleAssetTypes.add(addressFinder.getPossibleAssetType(document));
-		possibleAssetTypes.add(schemaFinder.getPossibleAssetType(document));
+		PageFeatures features = new PageFeatures(document);
+		List<AssetDeterminer> determiners = Arrays.asList(
+				keyAttributeFrequency, basicKeywordFrequency, urlKeywordFrequency, metaFrequency, addressFinder, schemaFinder);
+		List<PossibleAssetType> possibleAssetTypes = features.getHtml().length() >= parallelHtmlLength
+				? determineConcurrently(determiners, features)
+				: determiners.stream().map(d -> d.getPossibleAssetType(features)).collect(Collectors.toList());
 
 		Map<AssetType, List<PossibleAssetType>> correctAssetTypeGuesses = new LinkedHashMap<>();
 		for(PossibleAssetType possibleAssetType : possibleAssetTypes) {
@@ -106,4 +117,25 @@ public class AssetRecognizer {
 			return Optional.empty();
 		}
 	}
+
+	/**
+	 * The determiners only read the shared features, the caller waits for all of them and gets the results in the same order.
+	 */
+	private List<PossibleAssetType> determineConcurrently(List<AssetDeterminer> determiners, PageFeatures features) {
+		List<CompletableFuture<PossibleAssetType>> futures = determiners.stream()
+				.map(d -> CompletableFuture.supplyAsync(() -> d.getPossibleAssetType(features), determinerService))
+				.collect(Collectors.toList());
+		List<PossibleAssetType> possibleAssetTypes = new ArrayList<>();
+		for(CompletableFuture<PossibleAssetType> future : futures) {
+			try {
+				possibleAssetTypes.add(future.join());
+			} catch(CompletionException e) {
+				if(e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException)e.getCause();
+				}
+				throw e;
+			}
+		}
+		return possibleAssetTypes;
+	}
 }
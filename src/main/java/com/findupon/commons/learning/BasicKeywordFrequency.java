@@ -18,35 +18,26 @@ package com.findupon.commons.learning;
 
 import com.findupon.commons.entity.datasource.AssetType;
 import com.findupon.commons.entity.learning.PossibleAssetType;
-import org.apache.commons.lang3.StringUtils;
-import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Component;
 
 import javax.validation.constraints.NotNull;
-import java.util.Arrays;
-import java.util.concurrent.atomic.LongAdder;
 
 
 @Component
 public class BasicKeywordFrequency implements AssetDeterminer {
 
-	private static final String[] keywords = {
+	static final String[] keywords = {
 			"inventory", "service", "parts", "pre-owned", "cars", "vehicle", "auto", "dealer"
 	};
 	private final double frequencyThreshold = 3D / keywords.length; // where 3 is the num of matches needed
 
 
 	@Override
-	public PossibleAssetType getPossibleAssetType(@NotNull Document document) {
+	public PossibleAssetType getPossibleAssetType(@NotNull PageFeatures features) {
 		PossibleAssetType possibleAssetType = new PossibleAssetType();
 		possibleAssetType.setAssetType(AssetType.AUTOMOBILE);
 
-		LongAdder found = new LongAdder();
-		Arrays.stream(keywords)
-				.filter(keyword -> StringUtils.containsIgnoreCase(document.html(), keyword))
-				.forEach(keyword -> found.increment());
-
-		double frequency = found.doubleValue() / keywords.length;
+		double frequency = (double)features.getKeywordHits() / keywords.length;
 		possibleAssetType.setGuess(frequency >= frequencyThreshold);
 		possibleAssetType.setRelativeProbability(frequency);
 		return possibleAssetType;
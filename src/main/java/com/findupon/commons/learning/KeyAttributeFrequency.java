@@ -22,42 +22,51 @@ import com.findupon.commons.entity.datasource.AssetType;
 import com.findupon.commons.entity.learning.PossibleAssetType;
 import com.findupon.commons.utilities.AutomobileAttributeMatcher;
 import com.findupon.commons.utilities.JsoupUtils;
-import com.findupon.utilities.ContainsCollectionOwnText;
+import com.findupon.commons.utilities.MultiPatternMatcher;
 import com.findupon.utilities.PermutableAttribute;
-import org.jsoup.nodes.Document;
+import org.apache.commons.lang3.StringUtils;
 import org.jsoup.nodes.Element;
-import org.jsoup.select.Collector;
-import org.jsoup.select.Evaluator;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.validation.constraints.NotNull;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
 
 @Component
 public class KeyAttributeFrequency implements AssetDeterminer {
-	@Autowired private AutomobileAttributeMatcher attributeMatcher;
+	private final Set<String> makes;
+	private final MultiPatternMatcher makeMatcher;
+	private final List<String> unsupportedMakes;
 
-	@Override
-	public PossibleAssetType getPossibleAssetType(@NotNull Document document) {
-		List<Double> attributeWeights = new ArrayList<>();
-		Set<String> makes = attributeMatcher.getFullAttributeMap().values().stream()
+
+	@Autowired
+	public KeyAttributeFrequency(AutomobileAttributeMatcher attributeMatcher) {
+		makes = attributeMatcher.getFullAttributeMap().values().stream()
 				.map(PermutableAttribute::getAttribute)
 				.collect(Collectors.toSet());
+		makeMatcher = MultiPatternMatcher.builder()
+				.add(0, makes.stream().filter(MultiPatternMatcher::isSupported).collect(Collectors.toList()))
+				.build();
+		unsupportedMakes = makes.stream().filter(m -> !MultiPatternMatcher.isSupported(m)).collect(Collectors.toList());
+	}
 
-		List<Element> elements = Collector.collect(new ContainsCollectionOwnText(makes), document).stream()
-				.filter(JsoupUtils.defaultTextQualityGate)
+	@Override
+	public PossibleAssetType getPossibleAssetType(@NotNull PageFeatures features) {
+		List<Double> attributeWeights = new ArrayList<>();
+		List<Map.Entry<Element, String>> elements = features.getOwnTexts().stream()
+				.filter(e -> containsMake(e.getValue()))
+				.filter(e -> JsoupUtils.defaultTextQualityGate.test(e.getKey()))
 				.collect(Collectors.toList());
 
 		for(String attribute : makes) {
-			for(Element e : elements) {
-				String text = e.ownText();
-				if(AttributeOperations.containsLoneAttribute(text, attribute)) {
-					attributeWeights.add(TagWeight.getWeight(e));
+			for(Map.Entry<Element, String> e : elements) {
+				if(AttributeOperations.containsLoneAttribute(e.getValue(), attribute)) {
+					attributeWeights.add(TagWeight.getWeight(e.getKey()));
 				}
 			}
 		}
@@ -69,4 +78,8 @@ public class KeyAttributeFrequency implements AssetDeterminer {
 		possibleAssetType.setAssetType(AssetType.AUTOMOBILE);
 		return possibleAssetType;
 	}
+
+	private boolean containsMake(String text) {
+		return makeMatcher.match(text, 1) != 0 || unsupportedMakes.stream().anyMatch(m -> StringUtils.containsIgnoreCase(text, m));
+	}
 }
@@ -16,14 +16,12 @@
 
 package com.findupon.commons.learning;
 
-import com.findupon.commons.bot.PageMetaBot;
 import com.findupon.commons.entity.datasource.AssetType;
 import com.findupon.commons.entity.datasource.PageMeta;
 import com.findupon.commons.entity.learning.PossibleAssetType;
 import com.findupon.commons.searchparty.ScoutServices;
 import org.apache.commons.collections.MapUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.jsoup.nodes.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -73,9 +71,8 @@ public class MetaFrequency implements AssetDeterminer {
 	}
 
 	@Override
-	public PossibleAssetType getPossibleAssetType(@NotNull Document document) {
-		PageMeta pageMeta = PageMetaBot.buildPageMeta(document);
-		double frequency = determineFrequency(pageMeta);
+	public PossibleAssetType getPossibleAssetType(@NotNull PageFeatures features) {
+		double frequency = determineFrequency(features.getPageMeta());
 
 		PossibleAssetType possibleAssetType = new PossibleAssetType();
 		possibleAssetType.setRelativeProbability(frequency);
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.learning;
+
+import com.google.common.base.Suppliers;
+import com.findupon.commons.bot.PageMetaBot;
+import com.findupon.commons.building.AddressOperations;
+import com.findupon.commons.entity.datasource.PageMeta;
+import com.findupon.commons.utilities.MultiPatternMatcher;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+
+/**
+ * Everything the {@link AssetDeterminer}s score a page on, extracted from the document once. The page is serialized and
+ * scanned for the keyword and schema.org groups up front, the more expensive features (meta tags, own text, the address)
+ * are built on first use and then shared. Safe to read from several determiners at once.
+ */
+public final class PageFeatures {
+	private static final MultiPatternMatcher htmlMatcher = buildHtmlMatcher();
+	private static final int schemaGroup = BasicKeywordFrequency.keywords.length;
+
+	private final Document document;
+	private final String location;
+	private final String html;
+	private final int htmlHits;
+	private final Supplier<PageMeta> pageMeta;
+	private final Supplier<List<Map.Entry<Element, String>>> ownTexts;
+	private final Supplier<Boolean> address;
+
+
+	public PageFeatures(Document document) {
+		this.document = document;
+		this.location = document.location();
+		this.html = document.html();
+		this.htmlHits = htmlMatcher.match(html);
+		this.pageMeta = Suppliers.memoize(() -> PageMetaBot.buildPageMeta(document));
+		this.ownTexts = Suppliers.memoize(() -> collectOwnTexts(document));
+		this.address = Suppliers.memoize(() -> AddressOperations.getAddress(document).isPresent());
+	}
+
+	public Document getDocument() {
+		return document;
+	}
+
+	public String getLocation() {
+		return location;
+	}
+
+	public String getHtml() {
+		return html;
+	}
+
+	/**
+	 * @return how many of {@link BasicKeywordFrequency#keywords} appear anywhere in the HTML
+	 */
+	public int getKeywordHits() {
+		return Integer.bitCount(htmlHits & ((1 << schemaGroup) - 1));
+	}
+
+	/**
+	 * @return true when any of {@link SchemaFinder#schemas} appear anywhere in the HTML
+	 */
+	public boolean hasSchema() {
+		return (htmlHits & (1 << schemaGroup)) != 0;
+	}
+
+	public PageMeta getPageMeta() {
+		return pageMeta.get();
+	}
+
+	/**
+	 * @return every element with own text and that text, in document order
+	 */
+	public List<Map.Entry<Element, String>> getOwnTexts() {
+		return ownTexts.get();
+	}
+
+	public boolean hasAddress() {
+		return address.get();
+	}
+
+	private static List<Map.Entry<Element, String>> collectOwnTexts(Document document) {
+		List<Map.Entry<Element, String>> ownTexts = new ArrayList<>();
+		for(Element element : document.getAllElements()) {
+			String ownText = element.ownText();
+			if(!ownText.isEmpty()) {
+				ownTexts.add(new AbstractMap.SimpleImmutableEntry<>(element, ownText));
+			}
+		}
+		return Collections.unmodifiableList(ownTexts);
+	}
+
+	/**
+	 * A group per keyword so hits can be counted, then one group for all the schemas.
+	 */
+	private static MultiPatternMatcher buildHtmlMatcher() {
+		MultiPatternMatcher.Builder builder = MultiPatternMatcher.builder();
+		for(int x = 0; x < BasicKeywordFrequency.keywords.length; x++) {
+			builder.add(x, BasicKeywordFrequency.keywords[x]);
+		}
+		return builder.add(BasicKeywordFrequency.keywords.length, SchemaFinder.schemas).build();
+	}
+}
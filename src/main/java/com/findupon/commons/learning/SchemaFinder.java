@@ -18,25 +18,22 @@ package com.findupon.commons.learning;
 
 import com.findupon.commons.entity.datasource.AssetType;
 import com.findupon.commons.entity.learning.PossibleAssetType;
-import org.apache.commons.lang3.StringUtils;
-import org.jsoup.nodes.Document;
 import org.springframework.stereotype.Component;
 
 import javax.validation.constraints.NotNull;
-import java.util.Arrays;
 
 
 @Component
 public class SchemaFinder implements AssetDeterminer {
 
-	private final String[] schemas = {"schema.org/AutoDealer", "schema.org/AutomotiveBusiness", "schema.org/Car", "schema.org/Vehicle"};
+	static final String[] schemas = {"schema.org/AutoDealer", "schema.org/AutomotiveBusiness", "schema.org/Car", "schema.org/Vehicle"};
 
 	@Override
-	public PossibleAssetType getPossibleAssetType(@NotNull Document document) {
+	public PossibleAssetType getPossibleAssetType(@NotNull PageFeatures features) {
 		PossibleAssetType possibleAssetType = new PossibleAssetType();
 		possibleAssetType.setAssetType(AssetType.AUTOMOBILE);
 
-		if(Arrays.stream(schemas).anyMatch(s -> StringUtils.containsIgnoreCase(document.html(), s))) {
+		if(features.hasSchema()) {
 			possibleAssetType.setGuess(true);
 			possibleAssetType.setRelativeProbability(1D);
 		} else {
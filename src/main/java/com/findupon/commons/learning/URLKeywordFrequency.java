@@ -19,29 +19,39 @@ package com.findupon.commons.learning;
 import com.findupon.commons.entity.datasource.AssetType;
 import com.findupon.commons.entity.learning.PossibleAssetType;
 import com.findupon.commons.utilities.AutomobileAttributeMatcher;
+import com.findupon.commons.utilities.MultiPatternMatcher;
 import org.apache.commons.lang3.StringUtils;
-import org.jsoup.nodes.Document;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import javax.validation.constraints.NotNull;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.stream.Collectors;
 
 
 @Component
 public class URLKeywordFrequency implements AssetDeterminer {
-	@Autowired private AutomobileAttributeMatcher attributeMatcher;
-	private final Set<String> keywords = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+	private final MultiPatternMatcher keywordMatcher;
+	private final List<String> unsupportedKeywords;
+
+
+	@Autowired
+	public URLKeywordFrequency(AutomobileAttributeMatcher attributeMatcher) {
+		Set<String> keywords = buildKeywords(attributeMatcher);
+		keywordMatcher = MultiPatternMatcher.builder()
+				.add(0, keywords.stream().filter(MultiPatternMatcher::isSupported).collect(Collectors.toList()))
+				.build();
+		unsupportedKeywords = keywords.stream().filter(k -> !MultiPatternMatcher.isSupported(k)).collect(Collectors.toList());
+	}
 
 	@Override
-	public PossibleAssetType getPossibleAssetType(@NotNull Document document) {
+	public PossibleAssetType getPossibleAssetType(@NotNull PageFeatures features) {
 		PossibleAssetType possibleAssetType = new PossibleAssetType();
 		possibleAssetType.setAssetType(AssetType.AUTOMOBILE);
-		if(keywords.isEmpty()) {
-			buildKeywords();
-		}
-		if(keywords.stream().anyMatch(s -> StringUtils.containsIgnoreCase(document.location(), s))) {
+		String location = features.getLocation();
+		if(keywordMatcher.match(location, 1) != 0 || unsupportedKeywords.stream().anyMatch(s -> StringUtils.containsIgnoreCase(location, s))) {
 			possibleAssetType.setGuess(true);
 			possibleAssetType.setRelativeProbability(1D);
 		} else {
@@ -51,7 +61,8 @@ public class URLKeywordFrequency implements AssetDeterminer {
 		return possibleAssetType;
 	}
 
-	private void buildKeywords() {
+	static Set<String> buildKeywords(AutomobileAttributeMatcher attributeMatcher) {
+		Set<String> keywords = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
 		attributeMatcher.getFullAttributeMap().entrySet().stream()
 				.map(e -> e.getValue().getAttribute()).forEach(s -> {
 			keywords.add(s);
@@ -69,5 +80,6 @@ public class URLKeywordFrequency implements AssetDeterminer {
 		keywords.add("vehicle");
 		keywords.add("dealer");
 		keywords.add("drive");
+		return keywords;
 	}
 }
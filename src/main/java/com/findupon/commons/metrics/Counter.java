@@ -0,0 +1,54 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.commons.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * A monotonically increasing count, striped so concurrent increments never contend.
+ */
+public final class Counter extends Metric {
+	private final LongAdder count = new LongAdder();
+
+
+	Counter() {
+	}
+
+	public void increment() {
+		count.increment();
+	}
+
+	public void add(long amount) {
+		count.add(amount);
+	}
+
+	public long get() {
+		return count.sum();
+	}
+
+	@Override
+	String type() {
+		return "counter";
+	}
+
+	@Override
+	void write(StringBuilder out, String name, String labels) {
+		sample(out, name, labels, null, count.sum());
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.commons.metrics;
+
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Connection pool waits and occupancy, set as the {@code metricsTrackerFactory} of the Hikari config. There is one pool per
+ * node, so the pool is not a label.
+ */
+public class HikariMetricsTrackerFactory implements MetricsTrackerFactory {
+	private static final Histogram acquireWait = MetricRegistry.INSTANCE.histogram("das_db_connection_wait_seconds",
+			"Time spent waiting on the pool for a connection", Histogram.nanos, TimeUnit.MINUTES.toNanos(5));
+	private static final Histogram usage = MetricRegistry.INSTANCE.histogram("das_db_connection_usage_seconds",
+			"Time a connection was held before being returned", Histogram.millis, TimeUnit.HOURS.toMillis(1));
+	private static final Counter timeouts = MetricRegistry.INSTANCE.counter("das_db_connection_timeouts_total",
+			"Connection requests that timed out waiting on the pool");
+
+
+	@Override
+	public IMetricsTracker create(String poolName, PoolStats poolStats) {
+		MetricRegistry.INSTANCE.gauge("das_db_connections_active", "Connections in use", poolStats::getActiveConnections);
+		MetricRegistry.INSTANCE.gauge("das_db_connections_idle", "Connections idle in the pool", poolStats::getIdleConnections);
+		MetricRegistry.INSTANCE.gauge("das_db_threads_pending", "Threads waiting on the pool for a connection", poolStats::getPendingThreads);
+		return new IMetricsTracker() {
+			@Override
+			public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+				acquireWait.record(elapsedAcquiredNanos);
+			}
+
+			@Override
+			public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+				usage.record(elapsedBorrowedMillis);
+			}
+
+			@Override
+			public void recordConnectionTimeout() {
+				timeouts.increment();
+			}
+		};
+	}
+}
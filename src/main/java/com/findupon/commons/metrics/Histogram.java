@@ -0,0 +1,160 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.commons.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Distribution of non-negative values in log-linear buckets, the same layout as an HDR histogram with 16 sub-buckets per
+ * power of two: values under 16 are exact, everything above lands in a bucket no wider than 1/16th of its lower bound, so a
+ * reported quantile is within about 3% of the true value. Recording is one atomic increment and one striped add, nothing is
+ * allocated and nothing locks.
+ * <p>
+ * Values are recorded in whatever unit is cheapest at the call site (nanos, millis, bytes) and multiplied by the scale on the
+ * way out, so latencies are exposed in seconds. Values past the max given at construction are clamped into the last bucket.
+ * Written as a summary with {@link #quantiles}, a sum and a count.
+ */
+public final class Histogram extends Metric {
+	public static final double nanos = 1e-9;
+	public static final double millis = 1e-3;
+	public static final double units = 1;
+
+	private static final int subBucketBits = 4;
+	private static final int subBuckets = 1 << subBucketBits;
+	private static final double[] quantiles = {0.5, 0.9, 0.99, 0.999};
+	private static final String[] quantileLabels = {"quantile=\"0.5\"", "quantile=\"0.9\"", "quantile=\"0.99\"", "quantile=\"0.999\""};
+
+	private final double scale;
+	private final AtomicLongArray buckets;
+	private final LongAdder sum = new LongAdder();
+
+
+	Histogram(double scale, long maxValue) {
+		this.scale = scale;
+		this.buckets = new AtomicLongArray(index(Math.max(maxValue, subBuckets)) + 1);
+	}
+
+	public void record(long value) {
+		record(value, 1);
+	}
+
+	/**
+	 * Record the same value several times, i.e. the per row time of a batch once for every row.
+	 */
+	public void record(long value, long count) {
+		if(value < 0 || count <= 0) {
+			return;
+		}
+		buckets.getAndAdd(Math.min(index(value), buckets.length() - 1), count);
+		sum.add(value * count);
+	}
+
+	/**
+	 * @param startNanos from {@link System#nanoTime()}
+	 */
+	public void recordSince(long startNanos) {
+		record(System.nanoTime() - startNanos);
+	}
+
+	public long getCount() {
+		long count = 0;
+		for(int x = 0; x < buckets.length(); x++) {
+			count += buckets.get(x);
+		}
+		return count;
+	}
+
+	/**
+	 * @return the scaled value at the quantile (0-1), the midpoint of the bucket it falls in. 0 when nothing is recorded
+	 */
+	public double getQuantile(double quantile) {
+		long[] counts = snapshot();
+		long total = 0;
+		for(long count : counts) {
+			total += count;
+		}
+		return quantile(counts, total, quantile);
+	}
+
+	@Override
+	String type() {
+		return "summary";
+	}
+
+	@Override
+	void write(StringBuilder out, String name, String labels) {
+		long[] counts = snapshot();
+		long total = 0;
+		for(long count : counts) {
+			total += count;
+		}
+		for(int x = 0; x < quantiles.length; x++) {
+			sample(out, name, labels, quantileLabels[x], quantile(counts, total, quantiles[x]));
+		}
+		sample(out, name + "_sum", labels, null, sum.sum() * scale);
+		sample(out, name + "_count", labels, null, total);
+	}
+
+	private long[] snapshot() {
+		long[] counts = new long[buckets.length()];
+		for(int x = 0; x < counts.length; x++) {
+			counts[x] = buckets.get(x);
+		}
+		return counts;
+	}
+
+	private double quantile(long[] counts, long total, double quantile) {
+		if(total == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long)Math.ceil(quantile * total));
+		long seen = 0;
+		for(int x = 0; x < counts.length; x++) {
+			seen += counts[x];
+			if(seen >= rank) {
+				return midpoint(x) * scale;
+			}
+		}
+		return midpoint(counts.length - 1) * scale;
+	}
+
+	static int index(long value) {
+		if(value < subBuckets) {
+			return (int)value;
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int subBucket = (int)(value >>> (exponent - subBucketBits)) & (subBuckets - 1);
+		return (exponent - subBucketBits + 1) * subBuckets + subBucket;
+	}
+
+	static long lowerBound(int index) {
+		if(index < subBuckets) {
+			return index;
+		}
+		return (long)(subBuckets + index % subBuckets) << (index / subBuckets - 1);
+	}
+
+	private static double midpoint(int index) {
+		if(index < subBuckets) {
+			return index;
+		}
+		return lowerBound(index) + ((1L << (index / subBuckets - 1)) - 1) / 2.0;
+	}
+}
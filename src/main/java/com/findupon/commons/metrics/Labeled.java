@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.commons.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+
+/**
+ * One metric per value of a single label, i.e. fetch latency per host. Created on first use and kept for the life of the
+ * registry, so the number of values is capped at {@link #maxValues}: once full every new value shares the {@link #overflow}
+ * child rather than growing the scrape (and the heap) with every host ever crawled. A place under the cap is claimed inside the
+ * compute, so values first seen at the same time can't push past it.
+ */
+public final class Labeled<M extends Metric> extends Metric {
+	static final int maxValues = 1024;
+	static final String overflow = "other";
+
+	private final String labelName;
+	private final Supplier<M> factory;
+	private final String type;
+	private final ConcurrentMap<String, M> children = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, String> renderedLabels = new ConcurrentHashMap<>();
+	private final AtomicInteger values = new AtomicInteger();
+
+
+	Labeled(String labelName, Supplier<M> factory) {
+		this.labelName = labelName;
+		this.factory = factory;
+		this.type = factory.get().type();
+	}
+
+	public M labels(String value) {
+		if(value == null) {
+			value = "none";
+		}
+		M child = children.get(value);
+		if(child != null) {
+			return child;
+		}
+		child = children.computeIfAbsent(value, v -> values.getAndUpdate(n -> n < maxValues ? n + 1 : n) < maxValues ? factory.get() : null);
+		return child != null ? child : children.computeIfAbsent(overflow, v -> factory.get());
+	}
+
+	@Override
+	String type() {
+		return type;
+	}
+
+	@Override
+	void write(StringBuilder out, String name, String labels) {
+		for(Map.Entry<String, M> entry : children.entrySet()) {
+			String rendered = renderedLabels.computeIfAbsent(entry.getKey(), v -> label(labelName, v));
+			entry.getValue().write(out, name, labels.isEmpty() ? rendered : labels + "," + rendered);
+		}
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.commons.metrics;
+
+
+/**
+ * Anything the {@link MetricRegistry} can write in the text exposition format. Labels arrive already rendered (i.e.
+ * {@code host="example.com"}) or empty.
+ */
+abstract class Metric {
+
+	abstract String type();
+
+	abstract void write(StringBuilder out, String name, String labels);
+
+	static void sample(StringBuilder out, String name, String labels, String extraLabel, double value) {
+		out.append(name);
+		if(!labels.isEmpty() || extraLabel != null) {
+			out.append('{').append(labels);
+			if(extraLabel != null) {
+				out.append(labels.isEmpty() ? "" : ",").append(extraLabel);
+			}
+			out.append('}');
+		}
+		out.append(' ');
+		if(value == (long)value) {
+			out.append((long)value);
+		} else {
+			out.append(value);
+		}
+		out.append('\n');
+	}
+
+	static String label(String name, String value) {
+		StringBuilder sb = new StringBuilder(name.length() + value.length() + 3).append(name).append("=\"");
+		for(int x = 0; x < value.length(); x++) {
+			char c = value.charAt(x);
+			if(c == '\\' || c == '"') {
+				sb.append('\\').append(c);
+			} else if(c == '\n') {
+				sb.append("\\n");
+			} else {
+				sb.append(c);
+			}
+		}
+		return sb.append('"').toString();
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.commons.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+
+/**
+ * Process wide metrics, written on scrape in the Prometheus text exposition format (version 0.0.4) by {@link MetricsEndpoint}.
+ * Counters and histograms are lock-free and allocation free to record, so they are safe on the crawl hot path; gauges are
+ * read only when scraped. Hold the returned metric in a static field rather than looking it up per use.
+ * <p>
+ * Registering a name a second time returns the metric already registered, except for gauges which take the new supplier.
+ * Names follow the Prometheus conventions: a {@code das_} prefix, base units (seconds, bytes) and {@code _total} on counters.
+ */
+public final class MetricRegistry {
+	public static final MetricRegistry INSTANCE = new MetricRegistry();
+
+	private final Map<String, Family> families = new ConcurrentSkipListMap<>();
+
+
+	MetricRegistry() {
+	}
+
+	public Counter counter(String name, String help) {
+		return register(name, help, Counter::new);
+	}
+
+	public Labeled<Counter> counter(String name, String help, String labelName) {
+		return register(name, help, () -> new Labeled<>(labelName, Counter::new));
+	}
+
+	/**
+	 * @param scale multiplier from the recorded unit to the exposed one, i.e. {@link Histogram#nanos} to expose seconds
+	 * @param maxValue largest value worth telling apart, in the recorded unit. Sizes the buckets
+	 */
+	public Histogram histogram(String name, String help, double scale, long maxValue) {
+		return register(name, help, () -> new Histogram(scale, maxValue));
+	}
+
+	public Labeled<Histogram> histogram(String name, String help, double scale, long maxValue, String labelName) {
+		return register(name, help, () -> new Labeled<>(labelName, () -> new Histogram(scale, maxValue)));
+	}
+
+	public void gauge(String name, String help, DoubleSupplier value) {
+		families.put(name, new Family(help, new Gauge(value)));
+	}
+
+	/**
+	 * A gauge per label value, all read from one snapshot on scrape. For things that come and go, i.e. orders per node.
+	 */
+	public void gauges(String name, String help, String labelName, Supplier<Map<String, ? extends Number>> values) {
+		families.put(name, new Family(help, new LabeledGauge(labelName, values)));
+	}
+
+	/**
+	 * Every registered metric in the text exposition format, ordered by name.
+	 */
+	public String scrape() {
+		StringBuilder out = new StringBuilder(8192);
+		for(Map.Entry<String, Family> entry : families.entrySet()) {
+			Family family = entry.getValue();
+			out.append("# HELP ").append(entry.getKey()).append(' ').append(family.help).append('\n');
+			out.append("# TYPE ").append(entry.getKey()).append(' ').append(family.metric.type()).append('\n');
+			family.metric.write(out, entry.getKey(), "");
+		}
+		return out.toString();
+	}
+
+	@SuppressWarnings("unchecked")
+	private <M extends Metric> M register(String name, String help, Supplier<M> factory) {
+		return (M)families.computeIfAbsent(name, n -> new Family(help, factory.get())).metric;
+	}
+
+	private static final class Family {
+		private final String help;
+		private final Metric metric;
+
+		private Family(String help, Metric metric) {
+			this.help = help.replace("\\", "\\\\").replace("\n", "\\n");
+			this.metric = metric;
+		}
+	}
+
+	private static final class Gauge extends Metric {
+		private final DoubleSupplier value;
+
+		private Gauge(DoubleSupplier value) {
+			this.value = value;
+		}
+
+		@Override
+		String type() {
+			return "gauge";
+		}
+
+		@Override
+		void write(StringBuilder out, String name, String labels) {
+			sample(out, name, labels, null, value.getAsDouble());
+		}
+	}
+
+	private static final class LabeledGauge extends Metric {
+		private final String labelName;
+		private final Supplier<Map<String, ? extends Number>> values;
+
+		private LabeledGauge(String labelName, Supplier<Map<String, ? extends Number>> values) {
+			this.labelName = labelName;
+			this.values = values;
+		}
+
+		@Override
+		String type() {
+			return "gauge";
+		}
+
+		@Override
+		void write(StringBuilder out, String name, String labels) {
+			for(Map.Entry<String, ? extends Number> entry : values.get().entrySet()) {
+				String rendered = label(labelName, entry.getKey());
+				sample(out, name, labels.isEmpty() ? rendered : labels + "," + rendered, null, entry.getValue().doubleValue());
+			}
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.commons.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+
+/**
+ * Serves {@link MetricRegistry#INSTANCE} at {@code /metrics} for a scraper running on the node. One daemon thread, the JDK
+ * HTTP server, nothing else to deploy. When the configured port is taken (two nodes on one box) an ephemeral port is used and
+ * logged instead of failing the node start.
+ */
+public final class MetricsEndpoint implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(MetricsEndpoint.class);
+	private static final String contentType = "text/plain; version=0.0.4; charset=utf-8";
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+
+
+	private MetricsEndpoint(HttpServer server, ExecutorService executor) {
+		this.server = server;
+		this.executor = executor;
+	}
+
+	public static MetricsEndpoint start(String host, int port) throws IOException {
+		HttpServer server;
+		try {
+			server = HttpServer.create(new InetSocketAddress(host, port), 0);
+		} catch(BindException e) {
+			logger.warn("[MetricsEndpoint] - Port [{}] in use, falling back to an ephemeral port", port);
+			server = HttpServer.create(new InetSocketAddress(host, 0), 0);
+		}
+		server.createContext("/metrics", MetricsEndpoint::scrape);
+		ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+			Thread thread = new Thread(r, "metrics-endpoint");
+			thread.setDaemon(true);
+			return thread;
+		});
+		server.setExecutor(executor);
+		server.start();
+		logger.info("[MetricsEndpoint] - Serving metrics at [http://{}:{}/metrics]", host, server.getAddress().getPort());
+		return new MetricsEndpoint(server, executor);
+	}
+
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	private static void scrape(HttpExchange exchange) throws IOException {
+		try {
+			if(!"GET".equals(exchange.getRequestMethod()) || !"/metrics".equals(exchange.getRequestURI().getPath())) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			byte[] body;
+			try {
+				body = MetricRegistry.INSTANCE.scrape().getBytes(StandardCharsets.UTF_8);
+			} catch(RuntimeException e) {
+				logger.warn("[MetricsEndpoint] - Scrape failed", e);
+				exchange.sendResponseHeaders(500, -1);
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Type", contentType);
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream os = exchange.getResponseBody()) {
+				os.write(body);
+			}
+		} finally {
+			exchange.close();
+		}
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+}
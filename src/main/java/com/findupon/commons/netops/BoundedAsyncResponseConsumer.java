@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import com.findupon.commons.netops.entity.HttpStatusCode;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentDecoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.entity.ContentBufferEntity;
+import org.apache.http.nio.protocol.AbstractAsyncResponseConsumer;
+import org.apache.http.nio.util.HeapByteBufferAllocator;
+import org.apache.http.nio.util.SimpleInputBuffer;
+import org.apache.http.protocol.HttpContext;
+
+import java.io.IOException;
+
+
+/**
+ * The async client's counterpart of {@link BoundedBodyReader}, buffering the raw body under the same content type check, cap
+ * and deadline. Failing the exchange closes the connection, so nothing more is read. A rejected error response keeps its status
+ * and headers on the exception, see {@link ResponseBodyRejectedException#getErrorResponse}. Decompression and decoding are left
+ * to {@link ChloeResponseHandler}.
+ */
+class BoundedAsyncResponseConsumer extends AbstractAsyncResponseConsumer<HttpResponse> {
+	private final String url;
+	private volatile HttpResponse response;
+	private volatile SimpleInputBuffer buffer;
+	private BoundedBodyReader.BodyType type;
+	private long deadline;
+
+
+	BoundedAsyncResponseConsumer(String url) {
+		this.url = url;
+	}
+
+	@Override
+	protected void onResponseReceived(HttpResponse response) {
+		this.response = response;
+		this.deadline = BoundedBodyReader.deadlineFromNow();
+	}
+
+	@Override
+	protected void onEntityEnclosed(HttpEntity entity, ContentType contentType) throws IOException {
+		type = BoundedBodyReader.typeOf(contentType == null ? null : contentType.getMimeType(), url);
+		if(type == null) {
+			throw rejected(new ResponseBodyRejectedException("Unsupported content type [" + contentType.getMimeType() + "]"));
+		}
+		long length = entity.getContentLength();
+		try {
+			BoundedBodyReader.checkLimits(length, type, deadline);
+		} catch(ResponseBodyRejectedException e) {
+			throw rejected(e);
+		}
+		buffer = new SimpleInputBuffer(length <= 0 ? 16 * 1024 : (int)Math.min(length, 4 * 1024 * 1024), HeapByteBufferAllocator.INSTANCE);
+		response.setEntity(new ContentBufferEntity(entity, buffer));
+	}
+
+	@Override
+	protected void onContentReceived(ContentDecoder decoder, IOControl ioControl) throws IOException {
+		buffer.consumeContent(decoder);
+		try {
+			BoundedBodyReader.checkLimits(buffer.length(), type, deadline);
+		} catch(ResponseBodyRejectedException e) {
+			throw rejected(e);
+		}
+	}
+
+	private ResponseBodyRejectedException rejected(ResponseBodyRejectedException e) {
+		HttpResponse rejected = response;
+		if(rejected == null || HttpStatusCode.isSuccessful(rejected.getStatusLine().getStatusCode())) {
+			return e;
+		}
+		rejected.setEntity(null);
+		return new ResponseBodyRejectedException(e.getMessage(), rejected);
+	}
+
+	@Override
+	protected HttpResponse buildResult(HttpContext context) {
+		return response;
+	}
+
+	@Override
+	protected void releaseResources() {
+		response = null;
+		buffer = null;
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import com.findupon.utilities.PropertyLoader;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.entity.DeflateInputStream;
+import org.apache.http.entity.ContentType;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ * Streams a response body into memory no larger than the cap for its content type and no longer than {@link #maxBodyMillis},
+ * decompressing and decoding it once. Content types we never parse are refused before a byte is read.
+ * <p>
+ * Caps are in MB and can be set per type with the agent.max-body-mb.[html|xml|text|json] properties, the deadline in seconds
+ * with agent.max-body-seconds.
+ */
+final class BoundedBodyReader {
+	private static final long maxBodyMillis = TimeUnit.SECONDS.toMillis(property("agent.max-body-seconds", 90));
+	private static final int sniffLength = 2048;
+	private static final Pattern metaCharset = Pattern.compile("<meta[^>]+charset\\s*=\\s*[\"']?\\s*([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+	private static final Pattern xmlEncoding = Pattern.compile("<\\?xml[^>]+encoding\\s*=\\s*[\"']([\\w.:-]+)", Pattern.CASE_INSENSITIVE);
+
+
+	enum BodyType {
+		HTML(8), XML(64), TEXT(2), JSON(16);
+
+		private final long maxBytes;
+
+		BodyType(int defaultMb) {
+			this.maxBytes = property("agent.max-body-mb." + name().toLowerCase(), defaultMb) * 1024L * 1024L;
+		}
+
+		long getMaxBytes() {
+			return maxBytes;
+		}
+	}
+
+	static final class Body {
+		private final String content;
+		private final long wireBytes;
+
+		private Body(String content, long wireBytes) {
+			this.content = content;
+			this.wireBytes = wireBytes;
+		}
+
+		String getContent() {
+			return content;
+		}
+
+		/**
+		 * @return the body bytes as received, before decompression
+		 */
+		long getWireBytes() {
+			return wireBytes;
+		}
+	}
+
+
+	private BoundedBodyReader() {
+	}
+
+	static long deadlineFromNow() {
+		return System.currentTimeMillis() + maxBodyMillis;
+	}
+
+	/**
+	 * @param mimeType the response content type, null when not sent
+	 * @return the type to read the body as, null when it is something we never parse (images, PDFs, archives, etc.)
+	 */
+	static BodyType typeOf(String mimeType, String url) {
+		boolean gzipFile = StringUtils.endsWithIgnoreCase(url, ".gz");
+		if(StringUtils.isBlank(mimeType)) {
+			return gzipFile ? BodyType.XML : BodyType.HTML;
+		}
+		String type = mimeType.trim().toLowerCase();
+		if("text/html".equals(type) || "application/xhtml+xml".equals(type)) {
+			return BodyType.HTML;
+		}
+		if(type.endsWith("/xml") || type.endsWith("+xml")) {
+			return BodyType.XML;
+		}
+		if(type.endsWith("/json") || type.endsWith("+json")) {
+			return BodyType.JSON;
+		}
+		if(type.startsWith("text/")) {
+			return BodyType.TEXT;
+		}
+		if(gzipFile && (type.contains("gzip") || "application/octet-stream".equals(type))) {
+			return BodyType.XML; // compressed sitemaps
+		}
+		return null;
+	}
+
+	static BodyType typeOf(HttpEntity entity, String url) {
+		Header contentType = entity.getContentType();
+		return typeOf(contentType == null ? null : StringUtils.substringBefore(contentType.getValue(), ";"), url);
+	}
+
+	/**
+	 * @param abort closes the connection without reading the rest of the body, run before the stream is closed on any failure
+	 *              since closing it would otherwise drain the body for connection reuse
+	 * @throws ResponseBodyRejectedException over the cap or past the deadline
+	 */
+	static Body read(HttpEntity entity, BodyType type, String url, long deadline, Runnable abort) throws IOException {
+		CountingInputStream wire = new CountingInputStream(entity.getContent());
+		InputStream in = wire;
+		try {
+			in = decode(wire, entity.getContentEncoding(), url);
+			ByteArrayOutputStream out = new ByteArrayOutputStream(initialSize(entity, type));
+			byte[] buffer = new byte[8192];
+			int read;
+			while((read = in.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+				checkLimits(out.size(), type, deadline);
+			}
+			in.close();
+			byte[] bytes = out.toByteArray();
+			return new Body(new String(bytes, charsetOf(entity, bytes)), wire.getByteCount());
+		} catch(IOException | RuntimeException e) {
+			abort.run();
+			IOUtils.closeQuietly(in);
+			throw e;
+		}
+	}
+
+	static void checkLimits(long bytes, BodyType type, long deadline) throws ResponseBodyRejectedException {
+		if(bytes > type.getMaxBytes()) {
+			throw new ResponseBodyRejectedException(String.format("Response body over the [%dMB] %s cap", type.getMaxBytes() / (1024 * 1024), type));
+		}
+		if(System.currentTimeMillis() > deadline) {
+			throw new ResponseBodyRejectedException(String.format("Response body not complete within [%ds]", TimeUnit.MILLISECONDS.toSeconds(maxBodyMillis)));
+		}
+	}
+
+	/**
+	 * Content-Encoding first, then a gzip file that was not served as such (checked by its magic bytes, never by exception).
+	 */
+	private static InputStream decode(InputStream in, Header encoding, String url) throws IOException {
+		if(encoding != null) {
+			String codec = encoding.getValue().trim();
+			if("gzip".equalsIgnoreCase(codec) || "x-gzip".equalsIgnoreCase(codec)) {
+				in = new GZIPInputStream(in, 8192);
+			} else if("deflate".equalsIgnoreCase(codec)) {
+				in = new DeflateInputStream(in);
+			}
+		}
+		if(StringUtils.endsWithIgnoreCase(url, ".gz")) {
+			BufferedInputStream buffered = new BufferedInputStream(in);
+			buffered.mark(2);
+			int first = buffered.read();
+			int second = buffered.read();
+			buffered.reset();
+			in = first == 0x1f && second == 0x8b ? new GZIPInputStream(buffered, 8192) : buffered;
+		}
+		return in;
+	}
+
+	/**
+	 * The charset from the Content-Type header, else a meta tag or XML declaration in the first bytes, else ISO-8859-1 as HTTP/1.1
+	 * defaults text to.
+	 */
+	static Charset charsetOf(HttpEntity entity, byte[] bytes) {
+		try {
+			ContentType contentType = ContentType.get(entity);
+			if(contentType != null && contentType.getCharset() != null) {
+				return contentType.getCharset();
+			}
+		} catch(Exception e) {
+			// malformed or unsupported charset in the header, fall through to sniffing
+		}
+		String head = new String(bytes, 0, Math.min(bytes.length, sniffLength), StandardCharsets.ISO_8859_1);
+		for(Pattern pattern : new Pattern[]{metaCharset, xmlEncoding}) {
+			Matcher matcher = pattern.matcher(head);
+			if(matcher.find()) {
+				try {
+					return Charset.forName(matcher.group(1));
+				} catch(Exception e) {
+					// unknown name, keep looking
+				}
+			}
+		}
+		return StandardCharsets.ISO_8859_1;
+	}
+
+	private static int initialSize(HttpEntity entity, BodyType type) {
+		long length = entity.getContentLength();
+		if(length <= 0 || entity.getContentEncoding() != null) {
+			return 16 * 1024;
+		}
+		return (int)Math.min(length, Math.min(type.getMaxBytes(), 4 * 1024 * 1024));
+	}
+
+	private static int property(String key, int defaultValue) {
+		Integer value = PropertyLoader.optInteger(key);
+		return value == null || value <= 0 ? defaultValue : value;
+	}
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import com.findupon.commons.netops.entity.RequestMeta;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.protocol.HttpContext;
+
+
+/**
+ * Sets the request headers of {@link ChloeHttpRequestExecutor} on the non-blocking client, which has no pluggable executor.
+ * Counts requests against the {@link RequestMeta} session and captures proxy IP responses. The HTTPS CONNECT never passes
+ * through here, its headers and response are handled by {@link ChloeProxyScheme}.
+ */
+public class ChloeAsyncInterceptor implements HttpRequestInterceptor, HttpResponseInterceptor {
+	public static final ChloeAsyncInterceptor INSTANCE = new ChloeAsyncInterceptor();
+
+	private static final String ctxSessionSwitched = "agent.async-session-switched";
+
+
+	@Override
+	public void process(HttpRequest request, HttpContext context) {
+		RequestMeta requestMeta = (RequestMeta)context.getAttribute(ContextOps.CTX_AGENT_REQUEST_META);
+		if(requestMeta == null) {
+			return;
+		}
+		boolean switchNextSession = requestMeta.incrementAndCheckSessionExpired();
+		if(switchNextSession) {
+			requestMeta.switchNextSession(context);
+		}
+		context.setAttribute(ctxSessionSwitched, switchNextSession);
+		ChloeHttpRequestExecutor.INSTANCE.setRequestHeaders(request, requestMeta, ContextOps.session(context));
+	}
+
+	@Override
+	public void process(HttpResponse response, HttpContext context) {
+		RequestMeta requestMeta = (RequestMeta)context.getAttribute(ContextOps.CTX_AGENT_REQUEST_META);
+		if(requestMeta == null) {
+			return;
+		}
+		/* no need to handle any proxy headers if the next session is set to switch */
+		if(ContextOps.session(context).proxyUsed(requestMeta.getProxyMode()) && !Boolean.TRUE.equals(context.getAttribute(ctxSessionSwitched))) {
+			ChloeHttpRequestExecutor.INSTANCE.processProxyIpResponse(response, context, requestMeta);
+		}
+	}
+}
@@ -16,43 +16,44 @@
 
 package com.findupon.commons.netops;
 
-import com.findupon.commons.netops.entity.RequestMeta;
+import com.findupon.commons.netops.strategies.ChloeCongestionController;
 import com.findupon.commons.utilities.ConsoleColors;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
-import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 
 /**
  * Relying on the HttpClient to check if a connection is stale before executing a request is expensive and not always reliable.
- * This monitor is also in charge of clearing out old requests from the hostRequestMetaMap.
+ * This monitor is also in charge of clearing out idle sessions from the session pool and idle hosts from the congestion
+ * controller.
  */
 public class ChloeConnectionPoolMonitor extends Thread {
 	private static final Logger logger = LoggerFactory.getLogger(ChloeConnectionPoolMonitor.class);
 
-	private final PoolingHttpClientConnectionManager connectionManager;
-	private final Map<String, RequestMeta> hostRequestMetaMap;
+	private final PoolingNHttpClientConnectionManager connectionManager;
+	private final RequestSessionPool sessionPool;
+	private final ChloeCongestionController congestionController;
 	private final AtomicBoolean run = new AtomicBoolean(true);
 
 
-	ChloeConnectionPoolMonitor(PoolingHttpClientConnectionManager connectionManager, Map<String, RequestMeta> hostRequestMetaMap) {
+	ChloeConnectionPoolMonitor(PoolingNHttpClientConnectionManager connectionManager, RequestSessionPool sessionPool,
+	                           ChloeCongestionController congestionController) {
 		super();
 		this.connectionManager = connectionManager;
-		this.hostRequestMetaMap = hostRequestMetaMap;
+		this.sessionPool = sessionPool;
+		this.congestionController = congestionController;
 		this.setName("cp-monitor");
 	}
 
 	@Override
 	public void run() {
 		AtomicInteger logPoolStats = new AtomicInteger();
-		AtomicInteger hostRequestMapClearer = new AtomicInteger();
+		AtomicInteger sessionPoolClearer = new AtomicInteger();
 		while(run.get()) {
 			try {
 				synchronized(this) {
@@ -72,19 +73,15 @@ public class ChloeConnectionPoolMonitor extends Thread {
 					logger.trace("[ChloeConnectionPoolMonitor] - Stats {}",
 							ConsoleColors.green(connectionManager.getTotalStats().toString()));
 				}
-				// clear expired host requests every 60 seconds
-				if(hostRequestMapClearer.incrementAndGet() % 6 == 0) {
-					logger.debug("[ChloeConnectionPoolMonitor] - Clearing expired host requests...");
-					Set<String> expiredHosts;
-					synchronized(hostRequestMetaMap) {
-						expiredHosts = hostRequestMetaMap.entrySet().stream()
-								.filter(r -> RequestHelper.isRequestStateExpired(r.getValue()))
-								.map(Map.Entry::getKey)
-								.collect(Collectors.toSet());
-						expiredHosts.forEach(hostRequestMetaMap::remove);
-					}
-					logger.debug("[ChloeConnectionPoolMonitor] - Expired host requests removed [{}]", expiredHosts.size());
-					hostRequestMapClearer.set(0);
+				// clear idle sessions every 60 seconds
+				if(sessionPoolClearer.incrementAndGet() % 6 == 0) {
+					int expiredSessions = sessionPool.evictIdle();
+					logger.debug("[ChloeConnectionPoolMonitor] - Expired sessions removed [{}] Sessions [{}] Hosts [{}]",
+							expiredSessions, sessionPool.getSessionCount(), sessionPool.getHostCount());
+					int idleHosts = congestionController.evictIdle(TimeUnit.MINUTES.toMillis(10L));
+					logger.debug("[ChloeConnectionPoolMonitor] - Idle congestion controlled hosts removed [{}] Limited hosts {}",
+							idleHosts, congestionController.getLimits());
+					sessionPoolClearer.set(0);
 				}
 			}
 		}
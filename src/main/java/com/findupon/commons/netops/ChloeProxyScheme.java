@@ -0,0 +1,64 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import com.findupon.commons.netops.entity.RequestMeta;
+import org.apache.http.Header;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.auth.AuthenticationException;
+import org.apache.http.auth.Credentials;
+import org.apache.http.impl.auth.BasicScheme;
+import org.apache.http.protocol.HttpContext;
+
+
+/**
+ * Preemptive basic auth to the proxy that also sets the proxy headers of {@link ChloeHttpRequestExecutor} on the HTTPS CONNECT.
+ * The non-blocking client builds the CONNECT itself with a fixed set of headers and no interceptors, the proxy auth is the one
+ * part of it that is handed the request context. The response to the CONNECT is picked up the same way, through the proxy
+ * {@link com.findupon.commons.netops.strategies.ChloeProxyAuthenticationStrategy}.
+ */
+public class ChloeProxyScheme extends BasicScheme {
+	private static final long serialVersionUID = 5381729165040958215L;
+
+	private static final String ctxConnectSent = "agent.proxy-connect-sent";
+
+
+	@Override
+	public Header authenticate(Credentials credentials, HttpRequest request, HttpContext context) throws AuthenticationException {
+		RequestMeta requestMeta = (RequestMeta)context.getAttribute(ContextOps.CTX_AGENT_REQUEST_META);
+		if(requestMeta != null && "CONNECT".equalsIgnoreCase(request.getRequestLine().getMethod())) {
+			ChloeHttpRequestExecutor.INSTANCE.setConnectHeaders(request, requestMeta, ContextOps.session(context));
+			context.setAttribute(ctxConnectSent, Boolean.TRUE);
+		}
+		return super.authenticate(credentials, request, context);
+	}
+
+	/**
+	 * Capture the proxy IP from the response to a CONNECT sent with this scheme. Every other response is left to
+	 * {@link ChloeAsyncInterceptor}, an HTTPS response from the target carries no proxy headers.
+	 */
+	public static void processConnectResponse(HttpResponse response, HttpContext context) {
+		if(!Boolean.TRUE.equals(context.removeAttribute(ctxConnectSent))) {
+			return;
+		}
+		RequestMeta requestMeta = (RequestMeta)context.getAttribute(ContextOps.CTX_AGENT_REQUEST_META);
+		if(ContextOps.session(context).proxyUsed(requestMeta.getProxyMode())) {
+			ChloeHttpRequestExecutor.INSTANCE.processProxyIpResponse(response, context, requestMeta);
+		}
+	}
+}
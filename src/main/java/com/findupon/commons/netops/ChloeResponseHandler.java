@@ -17,25 +17,21 @@
 package com.findupon.commons.netops;
 
 import com.findupon.commons.netops.entity.*;
+import com.findupon.commons.netops.strategies.ChloeCongestionController;
 import com.findupon.commons.searchparty.ScoutServices;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.http.Header;
 import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.util.EntityUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.nio.charset.StandardCharsets;
 import java.util.Objects;
-import java.util.zip.GZIPInputStream;
 
 import static com.findupon.commons.utilities.ConsoleColors.red;
 import static com.findupon.commons.utilities.ConsoleColors.yellow;
@@ -47,30 +43,57 @@ public class ChloeResponseHandler implements ResponseHandler<AgentResponse> {
 	private final HttpClientContext context;
 	private final RequestMeta requestMeta;
 	private final String requestUrl;
+	private final Runnable abort;
 
 
-	ChloeResponseHandler(HttpClientContext context) {
+	/**
+	 * @param abort closes the connection without reading the rest of the body, the client would otherwise drain it for reuse
+	 */
+	ChloeResponseHandler(HttpClientContext context, Runnable abort) {
 		this.requestMeta = Objects.requireNonNull(context.getAttribute(ContextOps.CTX_AGENT_REQUEST_META, RequestMeta.class));
 		this.requestUrl = Objects.requireNonNull(context.getAttribute(ContextOps.CTX_AGENT_CURRENT_URL, String.class));
 		this.context = context;
+		this.abort = abort;
 	}
 
+	/**
+	 * The status is classified and Retry-After read before the body, so an error page that is rejected or cut short never hides
+	 * them from congestion control and the proxy pool. Such a page is dropped, only a successful response fails for its body.
+	 */
 	@Override
 	public AgentResponse handleResponse(HttpResponse response) throws IOException {
-		String content;
-		try {
-			if(requestUrl.endsWith(".gz")) {
-				content = decompressGzip(response.getEntity());
-			} else {
-				content = EntityUtils.toString(response.getEntity());
-			}
-		} finally {
-			EntityUtils.consumeQuietly(response.getEntity());
-		}
 		AgentDecision agentDecision = getAndProcessResponseDecision(response);
-		AgentResponse agentResponse = new AgentResponse(agentDecision, content);
+		Long retryAfterMillis = ChloeCongestionController.parseRetryAfterMillis(headerValue(response, HttpHeaders.RETRY_AFTER), System.currentTimeMillis());
+		boolean successful = HttpStatusCode.isSuccessful(response.getStatusLine().getStatusCode());
 
-		handleBotBlockers(agentResponse);
+		String content = null;
+		long bytesReceived = 0L;
+		HttpEntity entity = response.getEntity();
+		if(entity != null) {
+			try {
+				BoundedBodyReader.BodyType type = BoundedBodyReader.typeOf(entity, requestUrl);
+				if(type == null) {
+					throw new ResponseBodyRejectedException("Unsupported content type [" + entity.getContentType().getValue() + "]");
+				}
+				BoundedBodyReader.Body body = BoundedBodyReader.read(entity, type, requestUrl, BoundedBodyReader.deadlineFromNow(), abort);
+				content = body.getContent();
+				bytesReceived = body.getWireBytes();
+			} catch(ResponseBodyRejectedException e) {
+				logger.debug("{}[ChloeResponseHandler] - {}{} URL: [{}]", ContextOps.nodePre(context), e.getMessage(),
+						successful ? "" : ", error page dropped", requestUrl);
+				abort.run();
+				if(successful) {
+					throw e;
+				}
+			}
+		}
+		AgentResponse agentResponse = new AgentResponse(handleBotBlockers(agentDecision, content), content);
+		agentResponse.setBytesReceived(bytesReceived);
+		if(RobotRulesCache.isRobotsUrl(requestUrl)) {
+			agentResponse.setMaxAgeMillis(RobotRulesCache.parseMaxAgeMillis(headerValue(response, HttpHeaders.CACHE_CONTROL),
+					headerValue(response, HttpHeaders.EXPIRES), headerValue(response, HttpHeaders.DATE)));
+		}
+		agentResponse.setRetryAfterMillis(retryAfterMillis);
 		return agentResponse;
 	}
 
@@ -81,10 +104,10 @@ public class ChloeResponseHandler implements ResponseHandler<AgentResponse> {
 
 		if(HttpStatusCode.isSuccessful(status)) {
 			// all systems go
-			agentDecision = new AgentDecision(RequestedAction.PROCEED, status);
+			agentDecision = ServerResponseProcessor.getSuccessDecision(status);
 		} else {
 			ServerResponse serverResponse;
-			if(requestMeta.proxyUsed() && response.getFirstHeader(ChloeHttpRequestExecutor.proxyErrorResponseHeader) != null) {
+			if(ContextOps.session(context).proxyUsed(requestMeta.getProxyMode()) && response.getFirstHeader(ChloeHttpRequestExecutor.proxyErrorResponseHeader) != null) {
 				// proxy error
 				serverResponse = ServerResponseProcessor.getProxyResponse(line);
 				if(HttpStatusCode.isProxyIgnorable(status)) {
@@ -93,11 +116,19 @@ public class ChloeResponseHandler implements ResponseHandler<AgentResponse> {
 					logger.error("{}[ChloeResponseHandler] - ProxyMesh error! Code: [{}] Message: [{}] URL: [{}]",
 							ContextOps.nodePre(context), status, serverResponse.getAgentDecision().getMessage(), requestUrl);
 				}
+				// the proxy answered in place of the site, whatever the code. undocumented codes translate to SUCCESS for the session
+				// but still mean the proxy failed. a blacklisted site is the pairing's problem, not the proxy's
+				context.setAttribute(ContextOps.CTX_AGENT_PROXY_OUTCOME, serverResponse.getProxyState() == ProxyState.OPEN_PROXY_NEEDED
+						? ProxyPool.Outcome.BLOCKED : ProxyPool.Outcome.PROXY_ERROR);
 				handleProxyState(serverResponse.getProxyState());
 			} else {
 				// remote site error
-				serverResponse = ServerResponseProcessor.getRemoteResponse(line);
+				serverResponse = ServerResponseProcessor.getRemoteResponse(line, requestMeta.getHost());
 				reportStatusError(status, line, serverResponse, false);
+				if(ProxyState.IP_SWITCH_NEEDED.equals(serverResponse.getProxyState()) && ServerResponseProcessor.isOverridden(line, requestMeta.getHost())) {
+					// the built-in remote states are informational, the other states only mean something coming from the proxy
+					requestMeta.switchNextSession(context);
+				}
 			}
 			// muy rare case
 			if(RequestedAction.ABORT_CRAWL.equals(serverResponse.getAgentDecision().getAction())) {
@@ -125,30 +156,15 @@ public class ChloeResponseHandler implements ResponseHandler<AgentResponse> {
 		}
 	}
 
-	private void handleBotBlockers(AgentResponse agentResponse) {
-		if(StringUtils.containsIgnoreCase(agentResponse.getContent(), "distilnetworks")) {
+	/**
+	 * Decisions are shared, replace rather than change the one for the status code.
+	 */
+	private AgentDecision handleBotBlockers(AgentDecision agentDecision, String content) {
+		if(StringUtils.containsIgnoreCase(content, "distilnetworks")) {
 			String error = String.format(ContextOps.nodePre(context) + "Found Distil Networks managed site, abort! [%s]", requestUrl);
-			agentResponse.getDecision().setAction(RequestedAction.ABORT_CRAWL);
-			agentResponse.getDecision().setMessage(error + " Raw HTML: \n\n" + agentResponse.getContent());
+			return new AgentDecision(RequestedAction.ABORT_CRAWL, error + " Raw HTML: \n\n" + content, agentDecision.getStatusCode());
 		}
-	}
-
-	private String decompressGzip(HttpEntity entity) throws IOException {
-		String content = null;
-		boolean badCompression = false;
-		try(InputStream gzipStream = new GZIPInputStream(entity.getContent())) {
-			content = IOUtils.toString(gzipStream, StandardCharsets.UTF_8);
-		} catch(Exception e) {
-			logger.warn("{}[ChloeResponseHandler] - Error decompressing gzip file. Attempting w/o compression. File: [{}] Error: [{}]",
-					ContextOps.nodePre(context), requestUrl, ExceptionUtils.getRootCauseMessage(e));
-			badCompression = true;
-		}
-		if(!badCompression) {
-			EntityUtils.consumeQuietly(entity);
-		} else {
-			content = EntityUtils.toString(entity);
-		}
-		return content;
+		return agentDecision;
 	}
 
 	private void reportStatusError(int statusCode, StatusLine statusLine, ServerResponse serverResponse, boolean fromProxy) {
@@ -165,6 +181,11 @@ public class ChloeResponseHandler implements ResponseHandler<AgentResponse> {
 		}
 	}
 
+	private static String headerValue(HttpResponse response, String name) {
+		Header header = response.getFirstHeader(name);
+		return header == null ? null : header.getValue();
+	}
+
 	private String getFormattedHeadersAndReason(HttpResponse response) {
 		StringBuilder headerBuilder = new StringBuilder();
 		headerBuilder.append("Reason: [").append(response.getStatusLine().getReasonPhrase()).append("] ");
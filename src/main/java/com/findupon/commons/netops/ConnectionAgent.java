@@ -16,8 +16,11 @@
 
 package com.findupon.commons.netops;
 
-import com.findupon.cluster.entity.master.MasterNodeObjects;
 import com.findupon.commons.entity.datasource.DataSource;
+import com.findupon.commons.metrics.Counter;
+import com.findupon.commons.metrics.Histogram;
+import com.findupon.commons.metrics.Labeled;
+import com.findupon.commons.metrics.MetricRegistry;
 import com.findupon.commons.netops.entity.*;
 import com.findupon.commons.netops.strategies.*;
 import com.findupon.commons.searchparty.ScoutServices;
@@ -32,20 +35,28 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.commons.lang3.tuple.Pair;
 import org.apache.http.ConnectionClosedException;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
 import org.apache.http.client.ClientProtocolException;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpRequestBase;
 import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.config.RegistryBuilder;
-import org.apache.http.config.SocketConfig;
 import org.apache.http.conn.ConnectTimeoutException;
-import org.apache.http.conn.socket.ConnectionSocketFactory;
-import org.apache.http.conn.socket.PlainConnectionSocketFactory;
-import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
-import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.conn.routing.RouteInfo;
 import org.apache.http.impl.client.CookieSpecRegistries;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.conn.NoopIOSessionStrategy;
+import org.apache.http.nio.conn.SchemeIOSessionStrategy;
+import org.apache.http.nio.conn.ssl.SSLIOSessionStrategy;
+import org.apache.http.nio.reactor.IOReactorException;
 import org.apache.http.ssl.SSLContextBuilder;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -64,61 +75,105 @@ import java.security.KeyManagementException;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 
 public class ConnectionAgent implements Closeable {
 	public static final ConnectionAgent INSTANCE = new ConnectionAgent();
 
+	private static final Labeled<Histogram> fetchSeconds = MetricRegistry.INSTANCE.histogram("das_fetch_seconds",
+			"Download time by host, pacing excluded", Histogram.millis, TimeUnit.MINUTES.toMillis(10), "host");
+	private static final Labeled<Counter> fetchResponses = MetricRegistry.INSTANCE.counter("das_fetch_responses_total",
+			"Downloads by status class, error when no status was received", "status");
+	private static final Histogram pageBytes = MetricRegistry.INSTANCE.histogram("das_page_bytes",
+			"Bytes received per download", Histogram.units, 1L << 30);
+	private static final Histogram parseSeconds = MetricRegistry.INSTANCE.histogram("das_page_parse_seconds",
+			"Time to parse a downloaded page into a document", Histogram.nanos, TimeUnit.MINUTES.toNanos(1));
+	private static final String[] statusClasses = {"error", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
 	private final Logger logger = LoggerFactory.getLogger(ConnectionAgent.class);
-	private final CloseableHttpClient client;
-	private final PoolingHttpClientConnectionManager connectionManager;
 	private final ChloeConnectionPoolMonitor connectionPoolMonitor;
-	private final Map<String, RequestMeta> hostRequestMetaMap = new ConcurrentHashMap<>();
+	private final CloseableHttpAsyncClient asyncClient;
+	private final PoolingNHttpClientConnectionManager asyncConnectionManager;
+	private final ExecutorService asyncResponseService;
+	private final ScheduledExecutorService asyncPacingService;
+	private final ChloeCongestionController congestionController;
+	private final RequestSessionPool sessionPool;
+	private final ProxyPool proxyPool;
+	private final RobotRulesCache robotRulesCache = new RobotRulesCache();
 	private final int maxConnectionsPerRoute = 16;
-	private final HostRequestStateMode hostRequestStateMode = HostRequestStateMode.HOST_THREAD;
+	private final int maxAsyncConnections = 512;
+	private final int asyncThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
 
 	private final boolean proxyModeOverride;
 
 
 	private ConnectionAgent() {
+		this(ProxyPool.INSTANCE);
+	}
+
+	/**
+	 * @param proxyPool the private proxies sessions are given and exchanges through them are reported to
+	 */
+	ConnectionAgent(ProxyPool proxyPool) {
 		logger.debug("[ConnectionAgent] - Starting...");
+		this.proxyPool = proxyPool;
 		SSLContext sslContext;
 		try {
 			sslContext = new SSLContextBuilder().loadTrustMaterial(null, (certificate, authType) -> true).build();
 		} catch(NoSuchAlgorithmException | KeyManagementException | KeyStoreException e) {
 			throw new RuntimeException(e);
 		}
-		connectionManager = new PoolingHttpClientConnectionManager(RegistryBuilder.<ConnectionSocketFactory>create()
-				.register("http", PlainConnectionSocketFactory.getSocketFactory())
-				.register("https", new SSLConnectionSocketFactory(sslContext, (s, session) -> true))
-				.build());
-		connectionManager.setDefaultSocketConfig(SocketConfig.custom()
-				.setTcpNoDelay(true)
-				.build());
-		connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
-		connectionManager.setMaxTotal(maxConnectionsPerRoute / 4 *
-				(MasterNodeObjects.MAX_GENERIC_WORK_ORDERS_PER_NODE + MasterNodeObjects.MAX_LISTING_WORK_ORDERS_PER_NODE));
-
-		HttpClientBuilder httpClientBuilder = HttpClientBuilder.create()
-				.setRequestExecutor(ChloeHttpRequestExecutor.INSTANCE)
+		// requests wait on the reactor, not on threads. response handling and parsing is moved off the reactor threads
+		try {
+			asyncConnectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(IOReactorConfig.custom()
+					.setIoThreadCount(asyncThreads)
+					.setTcpNoDelay(true)
+					.build()), RegistryBuilder.<SchemeIOSessionStrategy>create()
+					.register("http", NoopIOSessionStrategy.INSTANCE)
+					.register("https", new SSLIOSessionStrategy(sslContext, (s, session) -> true))
+					.build());
+		} catch(IOReactorException e) {
+			throw new RuntimeException(e);
+		}
+		asyncConnectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+		asyncConnectionManager.setMaxTotal(maxAsyncConnections);
+		congestionController = new ChloeCongestionController(asyncConnectionManager);
+		sessionPool = new RequestSessionPool(maxConnectionsPerRoute, proxyPool);
+		connectionPoolMonitor = new ChloeConnectionPoolMonitor(asyncConnectionManager, sessionPool, congestionController);
+		connectionPoolMonitor.start();
+
+		asyncClient = HttpAsyncClients.custom()
+				.setConnectionManager(asyncConnectionManager)
 				.setRedirectStrategy(ChloeRedirectStrategy.INSTANCE)
 				.setDefaultCookieSpecRegistry(CookieSpecRegistries.createDefault())
-				.setUserTokenHandler(context -> Thread.currentThread().getId())
+				.setUserTokenHandler(context -> HttpClientContext.adapt(context).getUserToken())
 				.setKeepAliveStrategy(ChloeKeepAliveStrategy.INSTANCE)
-				.setServiceUnavailableRetryStrategy(ChloeRetryStrategy.INSTANCE)
-				.setRetryHandler(ChloeHttpRequestRetryHandler.INSTANCE)
-				.setConnectionBackoffStrategy(ChloeBackoffStrategy.INSTANCE)
-				.setBackoffManager(new ChloeBackoffManager(connectionManager))
 				.setConnectionReuseStrategy(ChloeConnectionReuseStrategy.INSTANCE)
-				.setConnectionManager(connectionManager)
-				.setProxyAuthenticationStrategy(ChloeProxyAuthenticationStrategy.INSTANCE);
+				.setProxyAuthenticationStrategy(ChloeProxyAuthenticationStrategy.INSTANCE)
+				.addInterceptorLast((HttpRequestInterceptor)ChloeAsyncInterceptor.INSTANCE)
+				.addInterceptorLast((HttpResponseInterceptor)ChloeAsyncInterceptor.INSTANCE)
+				.build();
+		asyncClient.start();
+		asyncResponseService = Executors.newFixedThreadPool(asyncThreads, r -> {
+			Thread thread = new Thread(r, "agent-async-response");
+			thread.setDaemon(true);
+			return thread;
+		});
+		asyncPacingService = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread thread = new Thread(r, "agent-async-pacing");
+			thread.setDaemon(true);
+			return thread;
+		});
 
-		client = httpClientBuilder.build();
-		connectionPoolMonitor = new ChloeConnectionPoolMonitor(connectionManager, hostRequestMetaMap);
-		connectionPoolMonitor.start();
 		Runtime.getRuntime().addShutdownHook(new Thread(this::closeQuietly));
 		proxyModeOverride = !PropertyLoader.getBoolean("production");
 		logger.debug("[ConnectionAgent] - Start completed. {}", proxyModeOverride ? "Public connections will be intercepted for non-production." : "");
@@ -150,52 +205,139 @@ public class ConnectionAgent implements Closeable {
 	 * @implNote MAKE SURE YOU KNOW WHAT YOU ARE DOING AND UNDERSTAND THE EXPOSURE OF USING THIS METHOD AND ITS OVERLOADED CALLERS
 	 */
 	public AgentResponse download(String url, ProxyMode proxyMode, AgentMode agentMode, boolean retryRequest, Long nodeId) {
-		URI uri = ScoutServices.getUriFromString(url);
-		if(uri == null && proxyModeOverride) {
-			logger.debug("[ConnectionAgent] - Non-production manual URI formation for request [{}]", url);
-			try {
-				uri = new URI(url);
-			} catch(URISyntaxException e) {
-				logger.debug("[ConnectionAgent] - Could not manually parse URI from [{}]", url);
-			}
-		}
+		return downloadAsync(url, proxyMode, agentMode, retryRequest, nodeId).join();
+	}
+
+	public CompletableFuture<AgentResponse> downloadAsync(String url, DataSource dataSource) {
+		return downloadAsync(url, dataSource.getProxyMode(), dataSource.getAgentMode(), null);
+	}
+
+	public CompletableFuture<AgentResponse> downloadAsync(String url, ProxyMode proxyMode, AgentMode agentMode) {
+		return downloadAsync(url, proxyMode, agentMode, null);
+	}
+
+	public CompletableFuture<AgentResponse> downloadAsync(String url, ProxyMode proxyMode, AgentMode agentMode, Long nodeId) {
+		return downloadAsync(url, proxyMode, agentMode, false, nodeId);
+	}
+
+	/**
+	 * Every download goes through here, the blocking ones join the future. No thread is held while the request is in flight, so
+	 * thousands can be outstanding at once; completion and document parsing run on a small fixed pool. The future always
+	 * completes normally, failures are described by the response decision.
+	 * <p>
+	 * Retries follow {@link ChloeRetryStrategy} and {@link ChloeHttpRequestRetryHandler}, the wait between them is scheduled
+	 * rather than slept. The host's pacing is waited out the same way, the session is only borrowed once it has passed.
+	 *
+	 * @implNote the same exposure warning as the blocking download applies
+	 */
+	public CompletableFuture<AgentResponse> downloadAsync(String url, ProxyMode proxyMode, AgentMode agentMode, boolean retryRequest, Long nodeId) {
+		URI uri = toUri(url);
 		if(uri == null) {
-			return new AgentResponse(new AgentDecision(RequestedAction.PROCEED, "Malformed URI", HttpStatusCode.ELSE));
+			return CompletableFuture.completedFuture(malformedUriResponse());
+		}
+		long pacing = congestionController.reserve(uri.getHost());
+		if(pacing == 0) {
+			return send(uri, url, proxyMode, agentMode, retryRequest, nodeId);
 		}
+		CompletableFuture<Void> paced = new CompletableFuture<>();
+		asyncPacingService.schedule(() -> paced.complete(null), pacing, TimeUnit.MILLISECONDS);
+		return paced.thenCompose(v -> send(uri, url, proxyMode, agentMode, retryRequest, nodeId));
+	}
+
+	private CompletableFuture<AgentResponse> send(URI uri, String url, ProxyMode proxyMode, AgentMode agentMode, boolean retryRequest, Long nodeId) {
 		HttpGet request = new HttpGet(uri);
-		RequestMeta requestMeta = setupRequestMeta(request, uri, proxyMode, agentMode);
-		HttpClientContext context = ContextOps.create(requestMeta, url, nodeId, retryRequest);
+		HttpClientContext context = setupContext(request, uri, url, proxyMode, agentMode, nodeId, retryRequest);
+		RequestMeta requestMeta = context.getAttribute(ContextOps.CTX_AGENT_REQUEST_META, RequestMeta.class);
+		long[] start = new long[1];
 
-		AgentResponse agentResponse;
-		try {
-			long start = System.currentTimeMillis();
-			agentResponse = client.execute(request, new ChloeResponseHandler(context), context);
-			requestLog(context, System.currentTimeMillis() - start);
-
-			boolean switchOverride = false;
-			if(requestMeta.proxyUsed()) {
-				boolean captcha = StringUtils.containsIgnoreCase(agentResponse.getContent(), "Please verify you're a human");
-				boolean openProxy = ProxyMode.ROTATE_OPEN.equals(proxyMode);
-				boolean badStatus = HttpStatusCode.isNotSuccessful(agentResponse.getDecision().getStatusCode());
-
-				if(captcha || openProxy && badStatus) {
-					requestMeta.switchNextSession(context);
-					switchOverride = true;
+		return exchange(request, url, context, 0L, start, 1, 1).handleAsync((response, throwable) -> {
+			if(throwable instanceof CompletionException && throwable.getCause() != null) {
+				throwable = throwable.getCause();
+			}
+			HttpResponse errorResponse = rejectedErrorResponse(throwable);
+			if(errorResponse != null) {
+				logger.debug("{}[ConnectionAgent] - {}, error page dropped URL: [{}]", ContextOps.nodePre(context), throwable.getMessage(), url);
+				response = errorResponse; // the status still counts
+				throwable = null;
+			}
+			AgentResponse agentResponse;
+			if(throwable != null) {
+				agentResponse = failedResponse(throwable instanceof Exception ? (Exception)throwable : new RuntimeException(throwable), uri, proxyMode, context);
+			} else {
+				try {
+					requestLog(context, System.currentTimeMillis() - start[0]);
+					agentResponse = processResponse(new ChloeResponseHandler(context, () -> {}).handleResponse(response), uri, proxyMode, context);
+				} catch(Exception e) {
+					agentResponse = failedResponse(e, uri, proxyMode, context);
 				}
 			}
-			if(!switchOverride && isSuccessfulResponse(agentResponse, true)) {
-				agentResponse.setContent(ScoutServices.normalize(agentResponse.getContent(), false));
-				Document document = Jsoup.parse(agentResponse.getContent(), lastRedirect(uri, context).toString());
-				agentResponse.setDocument(document);
+			recordOutcome(uri, context, agentResponse, System.currentTimeMillis() - start[0]);
+			sessionPool.release(requestMeta);
+			return agentResponse;
+		}, asyncResponseService);
+	}
+
+	/**
+	 * Send the request once the delay has passed and again for as long as the retry strategies call for it. The execution counts
+	 * are kept apart for responses and I/O failures, as each strategy counts its own. Retries are never sent from the reactor
+	 * thread completing the previous attempt.
+	 *
+	 * @param start set to when the first attempt is sent
+	 */
+	private CompletableFuture<HttpResponse> exchange(HttpGet request, String url, HttpClientContext context, long delayMillis,
+	                                                 long[] start, int responseExecutions, int failedExecutions) {
+		boolean retry = responseExecutions > 1 || failedExecutions > 1;
+		CompletableFuture<HttpResponse> exchange = new CompletableFuture<>();
+		Runnable execute = () -> {
+			if(!retry) {
+				start[0] = System.currentTimeMillis();
 			}
-		} catch(Exception e) {
-			AgentDecision agentDecision = new AgentDecision(RequestedAction.PROCEED, ExceptionUtils.getRootCauseMessage(e), exceptionStatusTranslator(e, uri));
-			agentResponse = new AgentResponse(agentDecision);
-			if(ProxyMode.ROTATE_OPEN.equals(proxyMode)) {
-				requestMeta.switchNextSession(context);
+			try {
+				asyncClient.execute(HttpAsyncMethods.create(request), new BoundedAsyncResponseConsumer(url), context, new FutureCallback<HttpResponse>() {
+					@Override
+					public void completed(HttpResponse response) {
+						exchange.complete(response);
+					}
+
+					@Override
+					public void failed(Exception e) {
+						exchange.completeExceptionally(e);
+					}
+
+					@Override
+					public void cancelled() {
+						exchange.completeExceptionally(new CancellationException("Request cancelled"));
+					}
+				});
+			} catch(Exception e) {
+				exchange.completeExceptionally(e);
 			}
+		};
+		if(retry || delayMillis > 0) {
+			asyncPacingService.schedule(execute, delayMillis, TimeUnit.MILLISECONDS);
+		} else {
+			execute.run();
 		}
-		return agentResponse;
+		return exchange.handle((response, throwable) -> {
+			HttpResponse received = response != null ? response : rejectedErrorResponse(throwable);
+			if(received != null) {
+				if(ChloeRetryStrategy.INSTANCE.retryRequest(received, responseExecutions, context)) {
+					return exchange(request, url, context, ChloeRetryStrategy.INSTANCE.getRetryInterval(), start, responseExecutions + 1, failedExecutions);
+				}
+			} else if(throwable instanceof IOException && ChloeHttpRequestRetryHandler.INSTANCE.retryRequest((IOException)throwable, failedExecutions, context)) {
+				logger.debug("{}[ConnectionAgent] - Retry request [{}] after I/O failure [{}] URL: [{}]",
+						ContextOps.nodePre(context), failedExecutions, ExceptionUtils.getRootCauseMessage(throwable), url);
+				return exchange(request, url, context, 0L, start, responseExecutions, failedExecutions + 1);
+			}
+			return exchange;
+		}).thenCompose(Function.identity());
+	}
+
+	/**
+	 * The response of a body rejected by {@link BoundedAsyncResponseConsumer}, when the status alone is still worth handling.
+	 */
+	private static HttpResponse rejectedErrorResponse(Throwable throwable) {
+		return throwable instanceof ResponseBodyRejectedException ? ((ResponseBodyRejectedException)throwable).getErrorResponse() : null;
 	}
 
 	public Document xmlDownload(String url, DataSource dataSource) {
@@ -203,7 +345,14 @@ public class ConnectionAgent implements Closeable {
 	}
 
 	public Document xmlDownload(String url, ProxyMode proxyMode, AgentMode agentMode) {
-		Document document = download(url, proxyMode, agentMode).getDocument();
+		return toXmlDocument(download(url, proxyMode, agentMode).getDocument(), url);
+	}
+
+	public CompletableFuture<Document> xmlDownloadAsync(String url, ProxyMode proxyMode, AgentMode agentMode) {
+		return downloadAsync(url, proxyMode, agentMode).thenApply(response -> toXmlDocument(response.getDocument(), url));
+	}
+
+	private Document toXmlDocument(Document document, String url) {
 		if(document == null) {
 			return null;
 		} else {
@@ -220,11 +369,10 @@ public class ConnectionAgent implements Closeable {
 		return downloadRobotRules(url, dataSource.getProxyMode(), dataSource.getAgentMode());
 	}
 
+	/**
+	 * Robots rules for the scheme and host of the URL, served from {@link #robotRulesCache} when possible.
+	 */
 	public Pair<BaseRobotRules, String> downloadRobotRules(String url, ProxyMode proxyMode, AgentMode agentMode) {
-		SimpleRobotRulesParser rulesParser = new SimpleRobotRulesParser();
-		BaseRobotRules rules = null;
-		String content = StringUtils.EMPTY;
-
 		String robotsUrl = ScoutServices.parseByProtocolAndHost(url);
 		if(robotsUrl != null) {
 			robotsUrl += "robots.txt";
@@ -232,36 +380,44 @@ public class ConnectionAgent implements Closeable {
 		URI robotsUri = ScoutServices.getUriFromString(robotsUrl);
 		if(robotsUri == null) {
 			logger.debug("[ConnectionAgent] - Invalid robots.txt URI, assuming allow all [{}]", url);
-			rules = new SimpleRobotRules(SimpleRobotRules.RobotRulesMode.ALLOW_ALL);
+			return Pair.of(new SimpleRobotRules(SimpleRobotRules.RobotRulesMode.ALLOW_ALL), StringUtils.EMPTY);
 		}
-		if(rules == null) {
-			AgentResponse response = download(robotsUri.toString(), proxyMode, agentMode, true);
+		String botName = ProxyMode.PUBLIC.equals(proxyMode) ? UserAgent.getPublic().getAgent() : "Vo4nidN4LpeOU8xTdEcNPZm6kLdbURG8";
+		String cacheKey = robotsUri.getScheme() + "://" + robotsUri.getHost() + (robotsUri.getPort() == -1 ? "" : ":" + robotsUri.getPort()) + "~" + botName;
+		return robotRulesCache.get(cacheKey, () -> fetchRobotRules(url, robotsUri, proxyMode, agentMode, botName));
+	}
 
-			if(!isSuccessfulResponse(response, false)) {
-				int statusCode = response.getDecision().getStatusCode();
-				logger.debug("[ConnectionAgent] - Error downloading robots.txt, handling failed fetch rules. Status code: [{}] Error: [{}] URL: [{}]",
-						statusCode, response.getDecision().getMessage(), robotsUrl);
+	private RobotRulesCache.Fetch fetchRobotRules(String url, URI robotsUri, ProxyMode proxyMode, AgentMode agentMode, String botName) {
+		SimpleRobotRulesParser rulesParser = new SimpleRobotRulesParser();
+		BaseRobotRules rules = null;
+		String content = StringUtils.EMPTY;
+		String robotsUrl = robotsUri.toString();
 
-				if(HttpStatusCode.ELSE == statusCode) {
-					logger.debug("[ConnectionAgent] - Unhandled exception downloading robots.txt, assuming allow all [{}]", robotsUrl);
-					rules = new SimpleRobotRules(SimpleRobotRules.RobotRulesMode.ALLOW_ALL);
+		AgentResponse response = download(robotsUrl, proxyMode, agentMode, true);
+		boolean failure = !isSuccessfulResponse(response, false);
+		if(failure) {
+			int statusCode = response.getDecision().getStatusCode();
+			logger.debug("[ConnectionAgent] - Error downloading robots.txt, handling failed fetch rules. Status code: [{}] Error: [{}] URL: [{}]",
+					statusCode, response.getDecision().getMessage(), robotsUrl);
 
-				} else if(HttpStatusCode.isNotSuccessful(statusCode)) {
-					rules = rulesParser.failedFetch(response.getDecision().getStatusCode());
+			if(HttpStatusCode.ELSE == statusCode) {
+				logger.debug("[ConnectionAgent] - Unhandled exception downloading robots.txt, assuming allow all [{}]", robotsUrl);
+				rules = new SimpleRobotRules(SimpleRobotRules.RobotRulesMode.ALLOW_ALL);
 
-				} else {
-					rules = new SimpleRobotRules(SimpleRobotRules.RobotRulesMode.ALLOW_NONE);
-					rules.setDeferVisits(true);
-				}
+			} else if(HttpStatusCode.isNotSuccessful(statusCode)) {
+				rules = rulesParser.failedFetch(response.getDecision().getStatusCode());
+
+			} else {
+				rules = new SimpleRobotRules(SimpleRobotRules.RobotRulesMode.ALLOW_NONE);
+				rules.setDeferVisits(true);
 			}
-			// great success
-			if(rules == null) {
-				if(response.getContent() != null) {
-					content = response.getContent();
-				}
-				String botName = ProxyMode.PUBLIC.equals(proxyMode) ? UserAgent.getPublic().getAgent() : "Vo4nidN4LpeOU8xTdEcNPZm6kLdbURG8";
-				rules = rulesParser.parseContent(url, content.getBytes(), "text/html", botName);
+		}
+		// great success
+		if(rules == null) {
+			if(response.getContent() != null) {
+				content = response.getContent();
 			}
+			rules = rulesParser.parseContent(url, content.getBytes(), "text/html", botName);
 		}
 		if(!rules.isAllowed("/")) {
 			logger.debug("[ConnectionAgent] - Root directory not allowed, treating as defer visits [{}]", url);
@@ -275,10 +431,95 @@ public class ConnectionAgent implements Closeable {
 		}
 		logger.debug("[ConnectionAgent] - Robots.txt stats: Defer visits [{}] Allow none [{}] Allow all [{}] Crawl delay [{}] URL [{}]",
 				rules.isDeferVisits(), rules.isAllowNone(), rules.isAllowAll(), rules.getCrawlDelay(), robotsUrl);
-		return Pair.of(rules, content);
+		return new RobotRulesCache.Fetch(Pair.of(rules, content), failure, response.getMaxAgeMillis());
+	}
+
+	private URI toUri(String url) {
+		URI uri = ScoutServices.getUriFromString(url);
+		if(uri == null && proxyModeOverride) {
+			logger.debug("[ConnectionAgent] - Non-production manual URI formation for request [{}]", url);
+			try {
+				uri = new URI(url);
+			} catch(URISyntaxException e) {
+				logger.debug("[ConnectionAgent] - Could not manually parse URI from [{}]", url);
+			}
+		}
+		return uri;
+	}
+
+	private AgentResponse malformedUriResponse() {
+		return new AgentResponse(new AgentDecision(RequestedAction.PROCEED, "Malformed URI", HttpStatusCode.ELSE));
 	}
 
-	private RequestMeta setupRequestMeta(HttpRequestBase request, URI uri, ProxyMode proxyMode, AgentMode agentMode) {
+	/**
+	 * Session switching on proxy captcha or failure and document parsing.
+	 */
+	private AgentResponse processResponse(AgentResponse agentResponse, URI uri, ProxyMode proxyMode, HttpClientContext context) {
+		RequestMeta requestMeta = context.getAttribute(ContextOps.CTX_AGENT_REQUEST_META, RequestMeta.class);
+		boolean switchOverride = false;
+		if(ContextOps.session(context).proxyUsed(proxyMode)) {
+			boolean captcha = StringUtils.containsIgnoreCase(agentResponse.getContent(), "Please verify you're a human");
+			boolean openProxy = ProxyMode.ROTATE_OPEN.equals(proxyMode);
+			boolean badStatus = HttpStatusCode.isNotSuccessful(agentResponse.getDecision().getStatusCode());
+
+			if(captcha || openProxy && badStatus) {
+				if(captcha) {
+					context.setAttribute(ContextOps.CTX_AGENT_PROXY_OUTCOME, ProxyPool.Outcome.BLOCKED);
+				}
+				requestMeta.switchNextSession(context);
+				switchOverride = true;
+			}
+		}
+		if(!switchOverride && isSuccessfulResponse(agentResponse, true)) {
+			long parseStart = System.nanoTime();
+			agentResponse.setContent(ScoutServices.normalize(agentResponse.getContent(), false));
+			Document document = Jsoup.parse(agentResponse.getContent(), lastRedirect(uri, context).toString());
+			agentResponse.setDocument(document);
+			parseSeconds.recordSince(parseStart);
+		}
+		return agentResponse;
+	}
+
+	private AgentResponse failedResponse(Exception e, URI uri, ProxyMode proxyMode, HttpClientContext context) {
+		if(e instanceof InterruptedException) {
+			Thread.currentThread().interrupt();
+		}
+		AgentDecision agentDecision = new AgentDecision(RequestedAction.PROCEED, ExceptionUtils.getRootCauseMessage(e), exceptionStatusTranslator(e, uri));
+		context.setAttribute(ContextOps.CTX_AGENT_PROXY_OUTCOME, ProxyPool.Outcome.ofException(e));
+		if(ProxyMode.ROTATE_OPEN.equals(proxyMode)) {
+			context.getAttribute(ContextOps.CTX_AGENT_REQUEST_META, RequestMeta.class).switchNextSession(context);
+		}
+		return new AgentResponse(agentDecision);
+	}
+
+	private void recordOutcome(URI uri, HttpClientContext context, AgentResponse agentResponse, long latencyMillis) {
+		int statusCode = agentResponse.getDecision() == null ? HttpStatusCode.ELSE : agentResponse.getDecision().getStatusCode();
+		congestionController.onResponse(uri.getHost(), context.getHttpRoute(), statusCode, latencyMillis, agentResponse.getRetryAfterMillis());
+		RouteInfo route = context.getHttpRoute(); // the session may have moved to another proxy by now, the route has the one used
+		if(route != null && route.getProxyHost() != null) {
+			ProxyPool.Outcome outcome = context.getAttribute(ContextOps.CTX_AGENT_PROXY_OUTCOME, ProxyPool.Outcome.class);
+			proxyPool.onResponse(route.getProxyHost(), uri.getHost(),
+					outcome == null ? ProxyPool.Outcome.ofStatus(statusCode) : outcome, latencyMillis);
+		}
+		fetchSeconds.labels(uri.getHost()).record(latencyMillis);
+		fetchResponses.labels(statusClasses[statusCode >= 100 && statusCode < 600 ? statusCode / 100 : 0]).increment();
+		if(agentResponse.getBytesReceived() > 0) {
+			pageBytes.record(agentResponse.getBytesReceived());
+		}
+	}
+
+	/**
+	 * The pool limit and request pacing currently applied to the host.
+	 */
+	public Pair<Integer, Long> getCongestionLimits(String host) {
+		return Pair.of(congestionController.getLimit(host), congestionController.getIntervalMillis(host));
+	}
+
+	/**
+	 * Borrow the session and take the state the request is sent with, see {@link ContextOps#create}.
+	 */
+	private HttpClientContext setupContext(HttpRequestBase request, URI uri, String url, ProxyMode proxyMode, AgentMode agentMode,
+	                                       Long nodeId, boolean retryRequest) {
 		Objects.requireNonNull(proxyMode, "Proxy mode must be set! Request URI attempted: " + uri.toString());
 		Objects.requireNonNull(agentMode, "Agent mode must be set! Request URI attempted: " + uri.toString());
 
@@ -288,47 +529,28 @@ public class ConnectionAgent implements Closeable {
 		if(proxyModeOverride && AgentMode.PUBLIC.equals(agentMode)) {
 			agentMode = AgentMode.ROTATE;
 		}
-		RequestMeta requestMeta;
-		String key;
-		switch(hostRequestStateMode) {
-			case HOST_THREAD:
-				key = uri.getHost() + "~" + Thread.currentThread().getId();
-				break;
-			case HOST_ONLY:
-				key = uri.getHost();
-				break;
-			default:
-				throw new IllegalStateException("Invalid hostRequestStateMode");
-		}
-		synchronized(hostRequestMetaMap) {
-			if((requestMeta = hostRequestMetaMap.get(key)) == null) {
-				requestMeta = new RequestMeta(proxyMode, agentMode, uri);
-				hostRequestMetaMap.put(key, requestMeta);
-
-			} else if(requestMeta.differentMode(proxyMode, agentMode)) {
-				requestMeta = new RequestMeta(proxyMode, agentMode, uri);
-				if(hostRequestMetaMap.replace(key, requestMeta) == null) {
-					logger.error("[ConnectionAgent] - Host request meta map replace came back null! " +
-							"There must be a previous key mapping at this stage. Connection attempted: [{}]", uri.toString());
-				}
-			}
+		RequestMeta requestMeta = sessionPool.borrow(uri, proxyMode, agentMode);
+		RequestMeta.SessionState state = requestMeta.getState();
+		if(state.proxyUsed(proxyMode) && !proxyPool.isAvailable(state.getConfig().getProxy(), uri.getHost())) {
+			state = requestMeta.switchProxy(state);
 		}
-		request.setConfig(requestMeta.getConfig());
-		requestMeta.setLastRequestTime(System.currentTimeMillis());
-		return requestMeta;
+		request.setConfig(state.getConfig());
+		return ContextOps.create(requestMeta, state, url, nodeId, retryRequest);
 	}
 
 	private void requestLog(HttpClientContext context, long downloadTimeMillis) {
 		RequestMeta requestMeta = context.getAttribute(ContextOps.CTX_AGENT_REQUEST_META, RequestMeta.class);
+		RequestMeta.SessionState state = ContextOps.session(context);
+		boolean proxyUsed = state.proxyUsed(requestMeta.getProxyMode());
 		String url = context.getAttribute(ContextOps.CTX_AGENT_CURRENT_URL, String.class);
-		String ip = requestMeta.proxyUsed() ? requestMeta.getProxyIp() == null ? "undetermined" : requestMeta.getProxyIp() : NetworkUtils.getExternalIp();
+		String ip = proxyUsed ? state.getProxyIp() == null ? "undetermined" : state.getProxyIp() : NetworkUtils.getExternalIp();
 		ip = StringUtils.substringBefore(ip, ":");
 		logger.debug(String.format("%s%-24s %-26s %-22s %-52s %s",
 				ContextOps.nodePre(context),
 				"DL: [" + TimeUtils.formatConditionalSeconds(downloadTimeMillis, 2000) + "]",
-				"PX: [" + (requestMeta.proxyUsed() ? requestMeta.getConfig().getProxy().getHostName() : "not in use") + "]",
+				"PX: [" + (proxyUsed ? state.getConfig().getProxy().getHostName() : "not in use") + "]",
 				"IP: [" + ip + "]",
-				"AG: [" + requestMeta.getUserAgent().getDescription() + "]",
+				"AG: [" + state.getUserAgent().getDescription() + "]",
 				"URL: [" + url + "]"));
 	}
 
@@ -350,7 +572,9 @@ public class ConnectionAgent implements Closeable {
 
 	private int exceptionStatusTranslator(Exception e, URI uri) {
 		int statusCode;
-		if(e instanceof IllegalStateException) {
+		if(e instanceof ResponseBodyRejectedException) {
+			statusCode = HttpStatusCode.ELSE; // logged by the response handler or the async consumer failure
+		} else if(e instanceof IllegalStateException) {
 			logger.trace(ConsoleColors.red("[ConnectionAgent] - Illegal state, shutdown was probably triggered [{}]"), ExceptionUtils.getRootCauseMessage(e));
 			statusCode = HttpStatusCode.ELSE;
 		} else if(e instanceof ConnectTimeoutException) {
@@ -379,8 +603,9 @@ public class ConnectionAgent implements Closeable {
 	public void close() throws IOException {
 		logger.info("[ConnectionAgent] - Shutting down...");
 		connectionPoolMonitor.shutdown();
-		client.close();
-		connectionManager.close();
+		asyncClient.close();
+		asyncResponseService.shutdownNow();
+		asyncPacingService.shutdownNow();
 		logger.info("[ConnectionAgent] - Shutdown completed.");
 	}
 
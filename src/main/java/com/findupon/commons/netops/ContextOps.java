@@ -22,7 +22,6 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.http.auth.AuthScope;
 import org.apache.http.client.CredentialsProvider;
 import org.apache.http.client.protocol.HttpClientContext;
-import org.apache.http.impl.auth.BasicScheme;
 import org.apache.http.impl.client.BasicAuthCache;
 import org.apache.http.impl.client.BasicCredentialsProvider;
 import org.apache.http.protocol.HttpContext;
@@ -34,6 +33,8 @@ public interface ContextOps {
 	String CTX_AGENT_NODE_ID = "agent.node-id";
 	String CTX_AGENT_RETRY = "agent.retry-request";
 	String CTX_AGENT_REQUEST_META = "agent.request-meta";
+	String CTX_AGENT_SESSION = "agent.session"; // the session state the request was sent with
+	String CTX_AGENT_PROXY_OUTCOME = "agent.proxy-outcome"; // set when the status code alone would misjudge the proxy
 
 
 	static String nodePre(HttpContext context) {
@@ -50,24 +51,32 @@ public interface ContextOps {
 		return "[Node " + (nodeId < 10 ? "0" : "") + nodeId + "] - ";
 	}
 
-	static HttpClientContext create(RequestMeta requestMeta, String url, Long nodeId, boolean retryRequest) {
+	/**
+	 * @param state the session state to send the request with, taken once so every stage of the request sees the same one
+	 */
+	static HttpClientContext create(RequestMeta requestMeta, RequestMeta.SessionState state, String url, Long nodeId, boolean retryRequest) {
 		HttpClientContext context = HttpClientContext.create();
 		context.setAttribute(ContextOps.CTX_AGENT_REQUEST_META, requestMeta);
+		context.setAttribute(ContextOps.CTX_AGENT_SESSION, state);
 		context.setAttribute(ContextOps.CTX_AGENT_CURRENT_URL, url);
 		context.setAttribute(ContextOps.CTX_AGENT_NODE_ID, nodeId);
 		context.setAttribute(ContextOps.CTX_AGENT_RETRY, retryRequest);
-		context.setUserToken(Thread.currentThread().getId());
+		context.setUserToken(state.getSessionId()); // pooled connections follow the session, not the thread
 
-		if(requestMeta.proxyUsed()) {
+		if(state.proxyUsed(requestMeta.getProxyMode())) {
 			// remove to disable preemptive auth
 			BasicAuthCache authCache = new BasicAuthCache();
-			authCache.put(requestMeta.getConfig().getProxy(), new BasicScheme());
+			authCache.put(state.getConfig().getProxy(), new ChloeProxyScheme()); // also carries the HTTPS CONNECT headers
 			context.setAuthCache(authCache);
 
 			CredentialsProvider provider = new BasicCredentialsProvider();
-			provider.setCredentials(new AuthScope(requestMeta.getConfig().getProxy()), Proxy.getCredentials());
+			provider.setCredentials(new AuthScope(state.getConfig().getProxy()), Proxy.getCredentials());
 			context.setCredentialsProvider(provider);
 		}
 		return context;
 	}
+
+	static RequestMeta.SessionState session(HttpContext context) {
+		return (RequestMeta.SessionState)context.getAttribute(CTX_AGENT_SESSION);
+	}
 }
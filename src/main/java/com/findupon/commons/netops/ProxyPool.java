@@ -0,0 +1,455 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.commons.netops;
+
+import com.google.common.base.Suppliers;
+import com.maxmind.geoip.Location;
+import com.findupon.commons.metrics.Counter;
+import com.findupon.commons.metrics.Labeled;
+import com.findupon.commons.metrics.MetricRegistry;
+import com.findupon.commons.netops.entity.HttpStatusCode;
+import com.findupon.commons.netops.entity.Proxy;
+import com.findupon.commons.utilities.LocationUtils;
+import org.apache.http.HttpHost;
+import org.apache.http.NoHttpResponseException;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.impl.execchain.TunnelRefusedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+
+/**
+ * Chooses a private proxy for each request session by how the proxies have been doing, rather than by distance alone. Every
+ * exchange is reported back with its latency and {@link Outcome} and kept in a window of the last {@link #window} exchanges,
+ * once for the proxy and once for the proxy and target host pair. A new session draws two random proxies and takes one with
+ * odds by the inverse square of their costs, the cost being the 90th percentile latency over the squared success ratio, so
+ * traffic leans hard to the healthiest proxy while proxies about as good share it. A proxy without {@link #minSamples} recent exchanges is cheaper than any that has them, the closest to
+ * this node first, so every proxy is tried and judged and a proxy left idle long enough is given another chance.
+ * <p>
+ * Both levels have a circuit. A proxy opens on its own failures (errors from the proxy, no connection to it) and a pair opens
+ * on anything that kept the page from arriving, so one bad target host never takes a proxy away from the others. An open
+ * circuit takes no sessions, and moves the ones it has on, for {@link #baseOpenMillis}, doubled for every trip in a row. It then
+ * takes a share of new sessions that grows back to the full amount over {@link #rampMillis}; failing again while recovering
+ * opens it right away.
+ */
+public class ProxyPool {
+	private static final Logger logger = LoggerFactory.getLogger(ProxyPool.class);
+	private static final Labeled<Counter> outcomes = MetricRegistry.INSTANCE.counter("das_proxy_exchanges_total",
+			"Exchanges through a private proxy by outcome", "outcome");
+
+	private static final int window = 64;
+	private static final int minSamples = 16;
+	private static final double tripRatio = 0.5d; // of the window failing
+	private static final int tripConsecutive = 8;
+	private static final int tripConsecutiveRecovering = 2;
+	private static final long baseOpenMillis = TimeUnit.SECONDS.toMillis(30);
+	private static final long maxOpenMillis = TimeUnit.MINUTES.toMillis(10);
+	private static final long rampMillis = TimeUnit.MINUTES.toMillis(2);
+	private static final double minAdmitted = 0.1d;
+	private static final long staleMillis = TimeUnit.MINUTES.toMillis(10); // windows untouched this long no longer count
+	private static final double unknownCostStep = 0.001d; // per place further from this node, all under the 1ms a known costs
+	private static final int maxHosts = 4096;
+	private static final long hostTtlMillis = TimeUnit.MINUTES.toMillis(30);
+	public static final ProxyPool INSTANCE = create(); // after the settings it is built with
+
+	private final Proxy[] proxies;
+	private final Health[] proxyHealth;
+	private final Map<String, HostHealth> hostHealth = new ConcurrentHashMap<>();
+	private final Supplier<double[]> unknownCosts;
+	private final LongSupplier clock;
+
+
+	/**
+	 * @param origin where this node is, for costing proxies that have not been used yet. May supply null
+	 */
+	public ProxyPool(List<Proxy> proxies, Supplier<Location> origin) {
+		this(proxies, origin, System::currentTimeMillis);
+	}
+
+	ProxyPool(List<Proxy> proxies, Supplier<Location> origin, LongSupplier clock) {
+		if(proxies.isEmpty()) {
+			throw new IllegalArgumentException("At least one proxy required");
+		}
+		this.proxies = proxies.toArray(new Proxy[0]);
+		this.proxyHealth = new Health[this.proxies.length];
+		for(int x = 0; x < proxyHealth.length; x++) {
+			proxyHealth[x] = new Health(true);
+		}
+		this.unknownCosts = Suppliers.memoize(() -> unknownCosts(origin));
+		this.clock = clock;
+	}
+
+	private static ProxyPool create() {
+		ProxyPool pool = new ProxyPool(Proxy.getPrivateProxies(), LocationUtils::getCurrentLocation);
+		MetricRegistry.INSTANCE.gauges("das_proxy_success_ratio", "Share of recent exchanges each private proxy delivered", "proxy",
+				pool::getSuccessRatios);
+		MetricRegistry.INSTANCE.gauges("das_proxy_circuit_open", "1 while a private proxy takes no sessions", "proxy",
+				pool::getOpenCircuits);
+		return pool;
+	}
+
+	/**
+	 * The proxy for a new session to the target host.
+	 */
+	public Proxy select(String targetHost) {
+		long now = clock.getAsLong();
+		Health[] pairs = pairs(targetHost, now);
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int[] candidates = new int[proxies.length];
+		int count = 0;
+		for(int x = 0; x < proxies.length; x++) {
+			if(allows(x, pairs, now) && random.nextDouble() < admitted(x, pairs, now)) {
+				candidates[count++] = x;
+			}
+		}
+		if(count == 0) {
+			return proxies[soonestClosed(pairs, now)];
+		}
+		int first = random.nextInt(count);
+		if(count == 1) {
+			return proxies[candidates[first]];
+		}
+		int second = random.nextInt(count - 1);
+		if(second >= first) {
+			second++;
+		}
+		first = candidates[first];
+		second = candidates[second];
+		double firstCost = cost(first, pairs, now);
+		double secondCost = cost(second, pairs, now);
+		if(Math.min(firstCost, secondCost) < 1d) {
+			return proxies[firstCost <= secondCost ? first : second]; // not yet tried
+		}
+		double firstShare = secondCost * secondCost / (firstCost * firstCost + secondCost * secondCost);
+		return proxies[random.nextDouble() < firstShare ? first : second];
+	}
+
+	/**
+	 * @return false when the proxy or its pairing with the target host has an open circuit, the session should move on
+	 */
+	public boolean isAvailable(HttpHost proxy, String targetHost) {
+		int x = indexOf(proxy);
+		if(x < 0) {
+			return true;
+		}
+		long now = clock.getAsLong();
+		HostHealth host = targetHost == null ? null : hostHealth.get(targetHost);
+		return allows(x, host == null ? null : host.pairs, now);
+	}
+
+	/**
+	 * Report a completed exchange. Proxies not in the pool (the open proxy) are ignored.
+	 */
+	public void onResponse(HttpHost proxy, String targetHost, Outcome outcome, long latencyMillis) {
+		int x = indexOf(proxy);
+		if(x < 0) {
+			return;
+		}
+		long now = clock.getAsLong();
+		outcomes.labels(outcome.name()).increment();
+		if(proxyHealth[x].record(outcome, latencyMillis, now)) {
+			logger.warn("[ProxyPool] - Circuit opened for proxy [{}] after [{}], moving its sessions to other proxies",
+					proxy.getHostName(), outcome);
+		}
+		Health[] pairs = pairs(targetHost, now);
+		if(pairs != null && pairs[x].record(outcome, latencyMillis, now)) {
+			logger.debug("[ProxyPool] - Circuit opened for proxy [{}] to host [{}] after [{}]", proxy.getHostName(), targetHost, outcome);
+		}
+	}
+
+	public Map<String, Double> getSuccessRatios() {
+		Map<String, Double> ratios = new LinkedHashMap<>();
+		for(int x = 0; x < proxies.length; x++) {
+			ratios.put(proxies[x].getHost().toHostString(), proxyHealth[x].successRatio());
+		}
+		return ratios;
+	}
+
+	public Map<String, Integer> getOpenCircuits() {
+		long now = clock.getAsLong();
+		Map<String, Integer> open = new LinkedHashMap<>();
+		for(int x = 0; x < proxies.length; x++) {
+			open.put(proxies[x].getHost().toHostString(), proxyHealth[x].isOpen(now) ? 1 : 0);
+		}
+		return open;
+	}
+
+	private boolean allows(int x, Health[] pairs, long now) {
+		return proxyHealth[x].allows(now) && (pairs == null || pairs[x].allows(now));
+	}
+
+	private double admitted(int x, Health[] pairs, long now) {
+		double admitted = proxyHealth[x].admitted(now);
+		return pairs == null ? admitted : Math.min(admitted, pairs[x].admitted(now));
+	}
+
+	private double cost(int x, Health[] pairs, long now) {
+		double cost = pairs == null ? Double.NaN : pairs[x].cost(now);
+		if(Double.isNaN(cost)) {
+			cost = proxyHealth[x].cost(now);
+		}
+		return Double.isNaN(cost) ? unknownCosts.get()[x] : cost;
+	}
+
+	/**
+	 * Every circuit is open, better the one closest to trying again than no proxy at all.
+	 */
+	private int soonestClosed(Health[] pairs, long now) {
+		int soonest = 0;
+		long soonestMillis = Long.MAX_VALUE;
+		for(int x = 0; x < proxies.length; x++) {
+			long closes = Math.max(proxyHealth[x].openUntil(), pairs == null ? 0L : pairs[x].openUntil());
+			if(closes < soonestMillis) {
+				soonest = x;
+				soonestMillis = closes;
+			}
+		}
+		logger.debug("[ProxyPool] - No proxy available, using [{}] which retries in [{}ms]",
+				proxies[soonest].getHost().getHostName(), Math.max(0L, soonestMillis - now));
+		return soonest;
+	}
+
+	private Health[] pairs(String targetHost, long now) {
+		if(targetHost == null) {
+			return null;
+		}
+		HostHealth host = hostHealth.get(targetHost);
+		if(host == null) {
+			if(hostHealth.size() >= maxHosts) {
+				hostHealth.values().removeIf(h -> now - h.lastTouched > hostTtlMillis);
+				if(hostHealth.size() >= maxHosts) {
+					return null; // judged on the proxy alone until hosts age out
+				}
+			}
+			host = hostHealth.computeIfAbsent(targetHost, h -> new HostHealth(proxies.length));
+		}
+		host.lastTouched = now;
+		return host.pairs;
+	}
+
+	private int indexOf(HttpHost proxy) {
+		if(proxy != null) {
+			for(int x = 0; x < proxies.length; x++) {
+				if(proxies[x].getHost().equals(proxy)) {
+					return x;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Closest first, then proxies without a location (or all of them if this node's is unknown) in the order they were given.
+	 */
+	private double[] unknownCosts(Supplier<Location> origin) {
+		Location location = null;
+		try {
+			location = origin.get();
+		} catch(RuntimeException e) {
+			logger.warn("[ProxyPool] - Could not determine the current location, proxies will be tried in order", e);
+		}
+		Integer[] order = new Integer[proxies.length];
+		double[] distances = new double[proxies.length];
+		for(int x = 0; x < proxies.length; x++) {
+			order[x] = x;
+			Location proxyLocation = proxies[x].getLocation();
+			distances[x] = location == null || proxyLocation == null ? Double.MAX_VALUE : location.distance(proxyLocation);
+		}
+		Arrays.sort(order, Comparator.comparingDouble(x -> distances[x]));
+		double[] costs = new double[proxies.length];
+		for(int rank = 0; rank < order.length; rank++) {
+			costs[order[rank]] = rank * unknownCostStep;
+		}
+		return costs;
+	}
+
+	/**
+	 * What became of an exchange through a proxy, as far as the proxy can be held to it.
+	 */
+	public enum Outcome {
+		SUCCESS, // the proxy delivered the target's response, whatever its status
+		BLOCKED, // the target refused the proxy's IP: a backoff status or a captcha
+		TIMEOUT, // the target did not answer in time or dropped the connection
+		PROXY_ERROR; // the proxy itself failed: an error from the proxy or no connection to it
+
+		public static Outcome ofStatus(int statusCode) {
+			if(statusCode == HttpStatusCode.SC_REQUEST_TIMEOUT || statusCode == HttpStatusCode.SC_GATEWAY_TIMEOUT) {
+				return TIMEOUT;
+			}
+			if(statusCode == HttpStatusCode.SC_FORBIDDEN || HttpStatusCode.isBackoffCode(statusCode)) {
+				return BLOCKED;
+			}
+			return SUCCESS;
+		}
+
+		/**
+		 * With a proxy every connection is to the proxy, so failing to connect is the proxy's failure.
+		 *
+		 * @return null when the exception says nothing about the network
+		 */
+		public static Outcome ofException(Exception e) {
+			if(e instanceof ConnectTimeoutException || e instanceof ConnectException || e instanceof TunnelRefusedException) {
+				return PROXY_ERROR;
+			}
+			if(e instanceof SocketTimeoutException || e instanceof SocketException || e instanceof NoHttpResponseException) {
+				return TIMEOUT;
+			}
+			return null;
+		}
+	}
+
+	private static final class HostHealth {
+		private final Health[] pairs;
+		private volatile long lastTouched;
+
+		private HostHealth(int proxies) {
+			pairs = new Health[proxies];
+			for(int x = 0; x < proxies; x++) {
+				pairs[x] = new Health(false);
+			}
+		}
+	}
+
+	/**
+	 * The window, circuit and recovery of one proxy or pair. Locked per instance, held only for a few array writes.
+	 */
+	private static final class Health {
+		private final boolean proxyErrorsOnly;
+		private final int[] latencies = new int[window];
+		private final boolean[] failures = new boolean[window];
+		private int next;
+		private int size;
+		private int failed;
+		private int consecutive;
+		private int p90 = -1;
+		private long lastRecorded;
+		private long openUntil;
+		private long openMillis = baseOpenMillis;
+		private long recoveringSince;
+
+		private Health(boolean proxyErrorsOnly) {
+			this.proxyErrorsOnly = proxyErrorsOnly;
+		}
+
+		/**
+		 * @return true when this opened the circuit
+		 */
+		synchronized boolean record(Outcome outcome, long latencyMillis, long now) {
+			boolean failure = proxyErrorsOnly ? outcome == Outcome.PROXY_ERROR : outcome != Outcome.SUCCESS;
+			if(size == window) {
+				if(failures[next]) {
+					failed--;
+				}
+			} else {
+				size++;
+			}
+			failures[next] = failure;
+			latencies[next] = (int)Math.min(Math.max(latencyMillis, 0L), Integer.MAX_VALUE);
+			next = (next + 1) % window;
+			p90 = -1;
+			lastRecorded = now;
+			if(!failure) {
+				consecutive = 0;
+				return false;
+			}
+			failed++;
+			consecutive++;
+			boolean trip = recoveringSince > 0
+					? consecutive >= tripConsecutiveRecovering
+					: consecutive >= tripConsecutive || size >= minSamples && failed > size * tripRatio;
+			if(openUntil == 0 && trip) {
+				openUntil = now + openMillis;
+				openMillis = Math.min(openMillis * 2, maxOpenMillis);
+				recoveringSince = 0;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Once the open period is over the failures that opened the circuit are forgotten and recovery starts.
+		 */
+		synchronized boolean allows(long now) {
+			if(openUntil == 0) {
+				return true;
+			}
+			if(now < openUntil) {
+				return false;
+			}
+			openUntil = 0;
+			recoveringSince = now;
+			next = size = failed = consecutive = 0;
+			p90 = -1;
+			return true;
+		}
+
+		/**
+		 * @return the share of new sessions to take, 1 unless recovering
+		 */
+		synchronized double admitted(long now) {
+			if(recoveringSince == 0) {
+				return 1d;
+			}
+			long elapsed = now - recoveringSince;
+			if(elapsed >= rampMillis) {
+				recoveringSince = 0;
+				openMillis = baseOpenMillis;
+				return 1d;
+			}
+			return Math.max(minAdmitted, (double)elapsed / rampMillis);
+		}
+
+		/**
+		 * @return NaN without enough recent exchanges to judge by
+		 */
+		synchronized double cost(long now) {
+			if(size < minSamples || now - lastRecorded > staleMillis) {
+				return Double.NaN;
+			}
+			if(p90 < 0) {
+				int[] sorted = Arrays.copyOf(latencies, size);
+				Arrays.sort(sorted);
+				p90 = sorted[(int)Math.ceil(0.9d * size) - 1];
+			}
+			double ratio = (size - failed + 1d) / (size + 2d);
+			return Math.max(p90, 1) / (ratio * ratio);
+		}
+
+		synchronized double successRatio() {
+			return size == 0 ? 1d : (size - failed) / (double)size;
+		}
+
+		synchronized boolean isOpen(long now) {
+			return openUntil != 0 && now < openUntil;
+		}
+
+		synchronized long openUntil() {
+			return openUntil;
+		}
+	}
+}
@@ -33,16 +33,19 @@ public final class RequestHelper {
 	private static final long requestMapTTL = 1000 * 60 * 5L;
 
 
-	public static RequestConfig fromProxyMode(ProxyMode proxyMode) {
+	/**
+	 * @param targetHost the host the session is for, see {@link Proxy#getByMode}
+	 */
+	public static RequestConfig fromProxyMode(ProxyMode proxyMode, String targetHost, ProxyPool privateProxies) {
 		RequestConfig.Builder builder = RequestConfig.custom()
 				.setConnectTimeout(connectTimeout)
 				.setSocketTimeout(socketTimeout)
 				.setMaxRedirects(maxRedirects)
-				.setContentCompressionEnabled(true)
+				.setContentCompressionEnabled(false) // requested by the executor, decompressed while counting by the response handler
 				.setCircularRedirectsAllowed(false);
 
 		if(proxyMode.isTunneled()) {
-			builder.setProxy(Proxy.getByMode(proxyMode).getHost());
+			builder.setProxy(Proxy.getByMode(proxyMode, targetHost, privateProxies).getHost());
 		}
 		return builder.build();
 	}
@@ -68,7 +71,11 @@ public final class RequestHelper {
 	}
 
 	static boolean isRequestStateExpired(RequestMeta requestMeta) {
-		return System.currentTimeMillis() - requestMeta.getLastRequestTime() > requestMapTTL;
+		return isRequestStateExpired(requestMeta, System.currentTimeMillis());
+	}
+
+	static boolean isRequestStateExpired(RequestMeta requestMeta, long now) {
+		return now - requestMeta.getLastRequestTime() > requestMapTTL;
 	}
 
 	static int getConnectTimeoutSeconds() {
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import com.findupon.commons.netops.entity.AgentMode;
+import com.findupon.commons.netops.entity.ProxyMode;
+import com.findupon.commons.netops.entity.RequestMeta;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Request sessions ({@link RequestMeta}: user agent, proxy IP and session rotation) pooled by host, scheme and request modes
+ * rather than by thread. A request borrows a session for its duration and returns it when complete, so any thread can pick
+ * up a warm session and a thread that goes away leaves nothing behind.
+ * <p>
+ * Each host has at most {@link #maxSessionsPerHost} sessions. Past that, concurrent requests share the least busy one. Locking
+ * is striped per host, requests to different hosts never contend. Sessions still rotate every 64-128 requests on their own and
+ * sessions idle longer than {@link RequestHelper#isRequestStateExpired} allows are dropped, along with hosts left without any.
+ */
+public class RequestSessionPool {
+	private static final Logger logger = LoggerFactory.getLogger(RequestSessionPool.class);
+
+	private final Map<String, HostSessions> hosts = new ConcurrentHashMap<>();
+	private final int maxSessionsPerHost;
+	private final ProxyPool privateProxies;
+	private final LongSupplier clock;
+
+
+	/**
+	 * @param privateProxies where new sessions choose their private proxies from
+	 */
+	public RequestSessionPool(int maxSessionsPerHost, ProxyPool privateProxies) {
+		this(maxSessionsPerHost, privateProxies, System::currentTimeMillis);
+	}
+
+	RequestSessionPool(int maxSessionsPerHost, ProxyPool privateProxies, LongSupplier clock) {
+		if(maxSessionsPerHost < 1) {
+			throw new IllegalArgumentException("At least one session per host required");
+		}
+		this.maxSessionsPerHost = maxSessionsPerHost;
+		this.privateProxies = privateProxies;
+		this.clock = clock;
+	}
+
+	/**
+	 * Borrow a session for a single request, it must be passed to {@link #release} when the request completes.
+	 */
+	public RequestMeta borrow(URI uri, ProxyMode proxyMode, AgentMode agentMode) {
+		String key = key(uri.getHost(), !"https".equalsIgnoreCase(uri.getScheme()), proxyMode, agentMode);
+		while(true) {
+			HostSessions sessions = hosts.get(key);
+			if(sessions == null) {
+				sessions = hosts.computeIfAbsent(key, k -> new HostSessions());
+			}
+			synchronized(sessions) {
+				if(sessions.retired) {
+					continue; // evicted between the lookup and the lock
+				}
+				long now = clock.getAsLong();
+				Session session = sessions.choose(now);
+				if(session == null) {
+					session = new Session(new RequestMeta(proxyMode, agentMode, uri, privateProxies));
+					sessions.sessions.add(session);
+				}
+				session.borrowers++;
+				session.meta.setLastRequestTime(now);
+				return session.meta;
+			}
+		}
+	}
+
+	public void release(RequestMeta requestMeta) {
+		if(requestMeta == null) {
+			return;
+		}
+		HostSessions sessions = hosts.get(key(requestMeta.getHost(), requestMeta.nonSSL(), requestMeta.getProxyMode(), requestMeta.getAgentMode()));
+		if(sessions == null) {
+			return;
+		}
+		synchronized(sessions) {
+			for(Session session : sessions.sessions) {
+				if(session.meta == requestMeta) {
+					session.borrowers = Math.max(0, session.borrowers - 1);
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drop expired sessions nobody is using and hosts left empty.
+	 *
+	 * @return the number of sessions removed
+	 */
+	public int evictIdle() {
+		long now = clock.getAsLong();
+		int removed = 0;
+		for(Iterator<HostSessions> iterator = hosts.values().iterator(); iterator.hasNext(); ) {
+			HostSessions sessions = iterator.next();
+			synchronized(sessions) {
+				removed += sessions.removeExpired(now);
+				if(sessions.sessions.isEmpty()) {
+					sessions.retired = true;
+					iterator.remove();
+				}
+			}
+		}
+		return removed;
+	}
+
+	public int getHostCount() {
+		return hosts.size();
+	}
+
+	public int getSessionCount() {
+		int count = 0;
+		for(HostSessions sessions : hosts.values()) {
+			synchronized(sessions) {
+				count += sessions.sessions.size();
+			}
+		}
+		return count;
+	}
+
+	private static String key(String host, boolean nonSSL, ProxyMode proxyMode, AgentMode agentMode) {
+		return host + "~" + (nonSSL ? "http" : "https") + "~" + proxyMode + "~" + agentMode;
+	}
+
+	private class HostSessions {
+		private final List<Session> sessions = new ArrayList<>(maxSessionsPerHost);
+		private boolean retired = false;
+
+		/**
+		 * The most recently used idle session, keeping the fewest sessions warm, or a new one while under the limit, or the least
+		 * busy when at it.
+		 *
+		 * @return null when a new session should be created
+		 */
+		private Session choose(long now) {
+			removeExpired(now);
+			Session idle = null;
+			Session leastBusy = null;
+			for(Session session : sessions) {
+				if(session.borrowers == 0) {
+					if(idle == null || session.meta.getLastRequestTime() > idle.meta.getLastRequestTime()) {
+						idle = session;
+					}
+				} else if(leastBusy == null || session.borrowers < leastBusy.borrowers) {
+					leastBusy = session;
+				}
+			}
+			if(idle != null) {
+				return idle;
+			}
+			if(sessions.size() < maxSessionsPerHost) {
+				return null;
+			}
+			return leastBusy;
+		}
+
+		private int removeExpired(long now) {
+			int removed = 0;
+			for(Iterator<Session> iterator = sessions.iterator(); iterator.hasNext(); ) {
+				Session session = iterator.next();
+				if(session.borrowers == 0 && RequestHelper.isRequestStateExpired(session.meta, now)) {
+					iterator.remove();
+					removed++;
+				}
+			}
+			if(removed > 0) {
+				logger.trace("[RequestSessionPool] - Expired sessions removed [{}]", removed);
+			}
+			return removed;
+		}
+	}
+
+	private static class Session {
+		private final RequestMeta meta;
+		private int borrowers;
+
+		private Session(RequestMeta meta) {
+			this.meta = meta;
+		}
+	}
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import org.apache.http.HttpResponse;
+
+import java.io.IOException;
+
+
+/**
+ * A response body refused for its content type, or abandoned for going over its size cap or read deadline.
+ */
+public class ResponseBodyRejectedException extends IOException {
+	private static final long serialVersionUID = -3190542766375287315L;
+
+	private final transient HttpResponse errorResponse;
+
+
+	public ResponseBodyRejectedException(String message) {
+		this(message, null);
+	}
+
+	/**
+	 * @param errorResponse a non-2xx response the body was rejected for, its status and headers still count without the body
+	 */
+	public ResponseBodyRejectedException(String message, HttpResponse errorResponse) {
+		super(message);
+		this.errorResponse = errorResponse;
+	}
+
+	/**
+	 * @return the non-2xx response without its body, null when the rejected response was successful
+	 */
+	public HttpResponse getErrorResponse() {
+		return errorResponse;
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.CacheBuilder;
+import crawlercommons.robots.BaseRobotRules;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.apache.http.client.utils.DateUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+
+/**
+ * Parsed robots.txt rules shared across all crawl threads, keyed by scheme and host.
+ * <p>
+ * Successful fetches live for the response's cache lifetime (Cache-Control max-age or Expires) bounded between
+ * {@link #minTtlMillis} and {@link #maxTtlMillis}, defaulting to the max. Failed fetches (4xx, 5xx, network) are kept for
+ * the much shorter {@link #failureTtlMillis} so a broken host is not asked on every call but recovers quickly. Loads are
+ * single flight: concurrent callers for a host missing from the cache wait on the one download in progress. Past the entry limit
+ * the least recently used hosts are dropped, robots rules are cheap to reload.
+ */
+public class RobotRulesCache {
+	private static final Logger logger = LoggerFactory.getLogger(RobotRulesCache.class);
+
+	private final long maxTtlMillis;
+	private final long minTtlMillis;
+	private final long failureTtlMillis;
+	private final LongSupplier clock;
+	private final Map<String, CompletableFuture<Entry>> entries;
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder loads = new LongAdder();
+
+
+	public RobotRulesCache() {
+		this(TimeUnit.HOURS.toMillis(24), TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(15), 20_000);
+	}
+
+	public RobotRulesCache(long maxTtlMillis, long minTtlMillis, long failureTtlMillis, int maxEntries) {
+		this(maxTtlMillis, minTtlMillis, failureTtlMillis, maxEntries, System::currentTimeMillis);
+	}
+
+	RobotRulesCache(long maxTtlMillis, long minTtlMillis, long failureTtlMillis, int maxEntries, LongSupplier clock) {
+		this.maxTtlMillis = maxTtlMillis;
+		this.minTtlMillis = minTtlMillis;
+		this.failureTtlMillis = failureTtlMillis;
+		this.clock = clock;
+		this.entries = CacheBuilder.newBuilder()
+				.maximumSize(maxEntries)
+				.expireAfterWrite(maxTtlMillis, TimeUnit.MILLISECONDS) // nothing lives longer, shorter lifetimes are checked on read
+				.ticker(new Ticker() {
+					@Override
+					public long read() {
+						return TimeUnit.MILLISECONDS.toNanos(clock.getAsLong());
+					}
+				})
+				.<String, CompletableFuture<Entry>>build()
+				.asMap();
+	}
+
+	/**
+	 * @param key    scheme and host, plus anything else the parsed rules depend on (i.e. the agent name)
+	 * @param loader downloads and parses the rules, only called on a miss and by a single thread per key
+	 */
+	public Pair<BaseRobotRules, String> get(String key, Supplier<Fetch> loader) {
+		while(true) {
+			CompletableFuture<Entry> future = entries.get(key);
+			if(future == null) {
+				CompletableFuture<Entry> loading = new CompletableFuture<>();
+				if((future = entries.putIfAbsent(key, loading)) == null) {
+					return load(key, loading, loader).rules;
+				}
+			}
+			Entry entry = future.join(); // a failed load was already removed by its loading thread
+			if(entry.expiresAt <= clock.getAsLong()) {
+				entries.remove(key, future);
+				continue;
+			}
+			hits.increment();
+			return entry.rules;
+		}
+	}
+
+	public void invalidate(String key) {
+		entries.remove(key);
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getHitCount() {
+		return hits.longValue();
+	}
+
+	public long getLoadCount() {
+		return loads.longValue();
+	}
+
+	private Entry load(String key, CompletableFuture<Entry> loading, Supplier<Fetch> loader) {
+		loads.increment();
+		Fetch fetch;
+		try {
+			fetch = loader.get();
+		} catch(RuntimeException | Error e) {
+			entries.remove(key, loading);
+			loading.completeExceptionally(e);
+			throw e;
+		}
+		long ttl;
+		if(fetch.failure) {
+			ttl = failureTtlMillis;
+		} else if(fetch.maxAgeMillis == null) {
+			ttl = maxTtlMillis;
+		} else {
+			ttl = Math.min(maxTtlMillis, Math.max(minTtlMillis, fetch.maxAgeMillis));
+		}
+		Entry entry = new Entry(fetch.rules, clock.getAsLong() + ttl);
+		loading.complete(entry);
+		logger.debug("[RobotRulesCache] - Cached robots rules for [{}] Failure [{}] TTL [{}s]", key, fetch.failure, TimeUnit.MILLISECONDS.toSeconds(ttl));
+		return entry;
+	}
+
+	static boolean isRobotsUrl(String url) {
+		return StringUtils.endsWithIgnoreCase(url, "/robots.txt");
+	}
+
+	/**
+	 * Cache lifetime of a response from its headers, Cache-Control taking precedence over Expires.
+	 *
+	 * @return the lifetime in millis, zero if the response must not be cached, or null if there is no cache directive.
+	 */
+	public static Long parseMaxAgeMillis(String cacheControl, String expires, String date) {
+		if(StringUtils.isNotBlank(cacheControl)) {
+			for(String directive : StringUtils.split(cacheControl.toLowerCase(), ',')) {
+				directive = directive.trim();
+				if("no-store".equals(directive) || "no-cache".equals(directive)) {
+					return 0L;
+				}
+				if(directive.startsWith("max-age=")) {
+					String seconds = StringUtils.strip(directive.substring("max-age=".length()), "\" ");
+					if(StringUtils.isNumeric(seconds)) {
+						try {
+							return TimeUnit.SECONDS.toMillis(Long.parseLong(seconds));
+						} catch(NumberFormatException e) {
+							return null;
+						}
+					}
+				}
+			}
+		}
+		if(StringUtils.isNotBlank(expires)) {
+			Date expiresDate = DateUtils.parseDate(expires);
+			if(expiresDate == null) {
+				return 0L; // invalid dates, i.e. "0", mean already expired
+			}
+			Date responseDate = StringUtils.isBlank(date) ? null : DateUtils.parseDate(date);
+			long from = responseDate == null ? System.currentTimeMillis() : responseDate.getTime();
+			return Math.max(0L, expiresDate.getTime() - from);
+		}
+		return null;
+	}
+
+	public static class Fetch {
+		private final Pair<BaseRobotRules, String> rules;
+		private final boolean failure;
+		private final Long maxAgeMillis;
+
+		/**
+		 * @param failure      the fetch failed and the rules are the fallback for it
+		 * @param maxAgeMillis the response cache lifetime, see {@link #parseMaxAgeMillis}
+		 */
+		public Fetch(Pair<BaseRobotRules, String> rules, boolean failure, Long maxAgeMillis) {
+			this.rules = rules;
+			this.failure = failure;
+			this.maxAgeMillis = maxAgeMillis;
+		}
+	}
+
+	private static class Entry {
+		private final Pair<BaseRobotRules, String> rules;
+		private final long expiresAt;
+
+		private Entry(Pair<BaseRobotRules, String> rules, long expiresAt) {
+			this.rules = rules;
+			this.expiresAt = expiresAt;
+		}
+	}
+}
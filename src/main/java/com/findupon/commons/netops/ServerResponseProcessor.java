@@ -20,20 +20,139 @@ import com.findupon.commons.netops.entity.AgentDecision;
 import com.findupon.commons.netops.entity.ProxyState;
 import com.findupon.commons.netops.entity.RequestedAction;
 import com.findupon.commons.netops.entity.ServerResponse;
+import com.findupon.utilities.PropertyLoader;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.StatusLine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.findupon.commons.netops.entity.HttpStatusCode.*;
 
 
+/**
+ * Classifies status codes into what the proxy session and the crawl should do next. Every code from 0 to 999 is classified
+ * once up front, responses share the {@link ServerResponse} for their code and origin (the proxy or the remote site) so
+ * nothing is allocated per response.
+ * <p>
+ * Remote classifications can be overridden per host for sites that use codes their own way, i.e. a 403 that is really a soft
+ * block and should switch the IP. Set with {@link #override} or the {@code response.overrides} property, comma separated
+ * {@code host:code=PROXY_STATE[/REQUESTED_ACTION]}. Of the proxy states only {@link ProxyState#IP_SWITCH_NEEDED} is acted on
+ * for a remote code, and only when overridden, the response handler starts a new session.
+ */
 public final class ServerResponseProcessor {
+	private static final Logger logger = LoggerFactory.getLogger(ServerResponseProcessor.class);
+	private static final int tableSize = 1000;
+	private static final ServerResponse[] proxyResponses = new ServerResponse[tableSize];
+	private static final ServerResponse[] remoteResponses = new ServerResponse[tableSize];
+	private static final AgentDecision[] successDecisions = new AgentDecision[SC_MULTIPLE_CHOICES];
+	private static final ServerResponse proxyTooManyErrors = new ServerResponse(ProxyState.FATAL, new AgentDecision(RequestedAction.ABORT_CRAWL,
+			"Your requests have generated more than 60 response errors (with a status code of 400 or greater) over the past 30 seconds. " +
+					"You need to fix what you're doing to stop producing so many errors.", SC_SERVICE_UNAVAILABLE));
+	private static final Map<String, ServerResponse[]> remoteOverrides = new ConcurrentHashMap<>();
+
+
+	static {
+		for(int code = 0; code < tableSize; code++) {
+			proxyResponses[code] = proxyResponse(code);
+			remoteResponses[code] = remoteResponse(code);
+		}
+		for(int code = 0; code < successDecisions.length; code++) {
+			successDecisions[code] = new AgentDecision(RequestedAction.PROCEED, code);
+		}
+		loadOverrides(PropertyLoader.optString("response.overrides"));
+	}
+
+	private ServerResponseProcessor() {
+	}
+
+	static AgentDecision getSuccessDecision(int statusCode) {
+		if(statusCode >= 0 && statusCode < successDecisions.length) {
+			return successDecisions[statusCode];
+		}
+		return new AgentDecision(RequestedAction.PROCEED, statusCode);
+	}
 
 	static ServerResponse getProxyResponse(StatusLine statusLine) {
+		int statusCode = statusLine.getStatusCode();
+		if(statusCode == SC_SERVICE_UNAVAILABLE && StringUtils.containsIgnoreCase(statusLine.getReasonPhrase(), "too many errors")) {
+			return proxyTooManyErrors;
+		}
+		return statusCode >= 0 && statusCode < tableSize ? proxyResponses[statusCode] : proxyResponse(statusCode);
+	}
+
+	/**
+	 * @param host the request host, its overrides are used when it has any
+	 */
+	static ServerResponse getRemoteResponse(StatusLine statusLine, String host) {
+		int statusCode = statusLine.getStatusCode();
+		if(statusCode < 0 || statusCode >= tableSize) {
+			return remoteResponse(statusCode);
+		}
+		ServerResponse[] responses = host == null || remoteOverrides.isEmpty() ? null : remoteOverrides.get(host.toLowerCase());
+		return (responses == null ? remoteResponses : responses)[statusCode];
+	}
+
+	/**
+	 * @return {@code true} if the host has its own classification of the status code
+	 */
+	static boolean isOverridden(StatusLine statusLine, String host) {
+		int statusCode = statusLine.getStatusCode();
+		if(host == null || statusCode < 0 || statusCode >= tableSize) {
+			return false;
+		}
+		ServerResponse[] responses = remoteOverrides.get(host.toLowerCase());
+		return responses != null && responses[statusCode] != remoteResponses[statusCode];
+	}
+
+	/**
+	 * Classify a remote status code differently for one host. The host's table is copied on write, lookups never see it
+	 * half done.
+	 */
+	public static void override(String host, int statusCode, ProxyState proxyState, RequestedAction action) {
+		if(StringUtils.isBlank(host) || statusCode < 0 || statusCode >= tableSize || proxyState == null || action == null) {
+			throw new IllegalArgumentException("Invalid override for host [" + host + "] status code [" + statusCode + "]");
+		}
+		remoteOverrides.compute(host.toLowerCase(), (h, responses) -> {
+			ServerResponse[] overridden = (responses == null ? remoteResponses : responses).clone();
+			String message = remoteResponses[statusCode].getAgentDecision().getMessage() + " - overridden for this host";
+			overridden[statusCode] = new ServerResponse(proxyState, new AgentDecision(action, message, statusCode));
+			return overridden;
+		});
+	}
+
+	public static void removeOverrides(String host) {
+		if(host != null) {
+			remoteOverrides.remove(host.toLowerCase());
+		}
+	}
+
+	static void loadOverrides(String overrides) {
+		if(StringUtils.isBlank(overrides)) {
+			return;
+		}
+		for(String override : overrides.split(",")) {
+			try {
+				String[] hostAndRest = StringUtils.split(override.trim(), ":", 2);
+				String[] codeAndOutcome = StringUtils.split(hostAndRest[1], "=", 2);
+				String[] stateAndAction = StringUtils.split(codeAndOutcome[1], "/", 2);
+				override(hostAndRest[0].trim(), Integer.parseInt(codeAndOutcome[0].trim()),
+						ProxyState.valueOf(stateAndAction[0].trim()),
+						stateAndAction.length > 1 ? RequestedAction.valueOf(stateAndAction[1].trim()) : RequestedAction.PROCEED);
+			} catch(RuntimeException e) {
+				logger.warn("[ServerResponseProcessor] - Ignoring invalid response override [{}], expected host:code=PROXY_STATE[/ACTION]", override.trim());
+			}
+		}
+	}
+
+	private static ServerResponse proxyResponse(int statusCode) {
 		RequestedAction action;
 		ProxyState proxyState;
 		String message;
 
-		switch(statusLine.getStatusCode()) {
+		switch(statusCode) {
 			case SC_REQUEST_TIMEOUT:
 				message = "Request timeout";
 				proxyState = ProxyState.SUCCESS;
@@ -60,16 +179,10 @@ public final class ServerResponseProcessor {
 				action = RequestedAction.PROCEED;
 				break;
 			case SC_SERVICE_UNAVAILABLE:
-				if(StringUtils.containsIgnoreCase(statusLine.getReasonPhrase(), "too many errors")) {
-					message = "Your requests have generated more than 60 response errors (with a status code of 400 or greater) over the past 30 seconds. " +
-							"You need to fix what you're doing to stop producing so many errors.";
-					proxyState = ProxyState.FATAL;
-					action = RequestedAction.ABORT_CRAWL;
-				} else {
-					message = "Service unavailable - refer to reason for details, this should be temporary";
-					proxyState = ProxyState.IP_SWITCH_NEEDED;
-					action = RequestedAction.PROCEED;
-				}
+				// too many errors is told apart by the reason, see getProxyResponse
+				message = "Service unavailable - refer to reason for details, this should be temporary";
+				proxyState = ProxyState.IP_SWITCH_NEEDED;
+				action = RequestedAction.PROCEED;
 				break;
 			case SC_BANDWIDTH_LIMIT_EXCEEDED:
 				message = "You have exceeded your bandwidth limit. This response will continue until your next bill has been processed, or you raise the limit";
@@ -82,15 +195,15 @@ public final class ServerResponseProcessor {
 				action = RequestedAction.PROCEED;
 				break;
 		}
-		return new ServerResponse(proxyState, new AgentDecision(action, message, statusLine.getStatusCode()));
+		return new ServerResponse(proxyState, new AgentDecision(action, message, statusCode));
 	}
 
-	static ServerResponse getRemoteResponse(StatusLine statusLine) {
+	private static ServerResponse remoteResponse(int statusCode) {
 		RequestedAction action = RequestedAction.PROCEED;
 		ProxyState proxyState = ProxyState.SUCCESS;
 		String message;
 
-		switch(statusLine.getStatusCode()) {
+		switch(statusCode) {
 			case SC_BAD_REQUEST:
 				message = "Bad request";
 				break;
@@ -135,14 +248,14 @@ public final class ServerResponseProcessor {
 				proxyState = ProxyState.IP_SWITCH_NEEDED;
 				break;
 			default:
-				switch(String.valueOf(statusLine.getStatusCode()).charAt(0)) {
-					case '3':
+				switch(leadingDigit(statusCode)) {
+					case 3:
 						message = "Non-handled redirection code";
 						break;
-					case '4':
+					case 4:
 						message = "Non-handled client error";
 						break;
-					case '5':
+					case 5:
 						message = "Non-handled server error";
 						break;
 					default:
@@ -150,6 +263,19 @@ public final class ServerResponseProcessor {
 						break;
 				}
 		}
-		return new ServerResponse(proxyState, new AgentDecision(action, message, statusLine.getStatusCode()));
+		return new ServerResponse(proxyState, new AgentDecision(action, message, statusCode));
+	}
+
+	/**
+	 * @return the first digit as written, -1 for negatives (a minus sign)
+	 */
+	private static int leadingDigit(int statusCode) {
+		if(statusCode < 0) {
+			return -1;
+		}
+		while(statusCode >= 10) {
+			statusCode /= 10;
+		}
+		return statusCode;
 	}
 }
@@ -17,14 +17,16 @@
 package com.findupon.commons.netops.entity;
 
 
+/**
+ * Immutable, the decisions for HTTP status codes are shared between responses.
+ */
 public class AgentDecision {
-	private RequestedAction action;
-	private String message;
+	private final RequestedAction action;
+	private final String message;
 	private final int statusCode;
 
 	public AgentDecision(RequestedAction action, int statusCode) {
-		this.action = action;
-		this.statusCode = statusCode;
+		this(action, null, statusCode);
 	}
 
 	public AgentDecision(RequestedAction action, String message, int statusCode) {
@@ -37,18 +39,10 @@ public class AgentDecision {
 		return action;
 	}
 
-	public void setAction(RequestedAction action) {
-		this.action = action;
-	}
-
 	public String getMessage() {
 		return message;
 	}
 
-	public void setMessage(String message) {
-		this.message = message;
-	}
-
 	public int getStatusCode() {
 		return statusCode;
 	}
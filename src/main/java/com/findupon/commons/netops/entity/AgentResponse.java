@@ -23,6 +23,9 @@ public class AgentResponse {
 	private final AgentDecision decision;
 	private Document document;
 	private String content;
+	private Long maxAgeMillis;
+	private Long retryAfterMillis;
+	private long bytesReceived;
 
 	public AgentResponse(AgentDecision decision) {
 		this.decision = decision;
@@ -52,4 +55,37 @@ public class AgentResponse {
 	public void setContent(String content) {
 		this.content = content;
 	}
+
+	/**
+	 * @return the cache lifetime given by the response headers, null if there were none. Only read for robots.txt requests.
+	 */
+	public Long getMaxAgeMillis() {
+		return maxAgeMillis;
+	}
+
+	public void setMaxAgeMillis(Long maxAgeMillis) {
+		this.maxAgeMillis = maxAgeMillis;
+	}
+
+	/**
+	 * @return the wait requested by a Retry-After header, null if there was none.
+	 */
+	public Long getRetryAfterMillis() {
+		return retryAfterMillis;
+	}
+
+	public void setRetryAfterMillis(Long retryAfterMillis) {
+		this.retryAfterMillis = retryAfterMillis;
+	}
+
+	/**
+	 * @return the body size as transferred, compressed if it was sent compressed.
+	 */
+	public long getBytesReceived() {
+		return bytesReceived;
+	}
+
+	public void setBytesReceived(long bytesReceived) {
+		this.bytesReceived = bytesReceived;
+	}
 }
@@ -17,21 +17,27 @@
 package com.findupon.commons.netops.entity;
 
 import com.maxmind.geoip.Location;
-import com.findupon.commons.utilities.LocationUtils;
+import com.findupon.commons.netops.ProxyPool;
 import com.findupon.utilities.PropertyLoader;
+import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpHost;
 import org.apache.http.auth.Credentials;
 import org.apache.http.auth.UsernamePasswordCredentials;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
 
 public final class Proxy {
-	private static final Logger logger = LoggerFactory.getLogger(Proxy.class);
+	private static final String defaultPrivate = "us.proxymesh.com@29.760427/-95.369803," +
+			"us-il.proxymesh.com@41.878114/-87.629798," +
+			"us-dc.proxymesh.com@38.907192/-77.036871," +
+			"us-ny.proxymesh.com@40.712775/-74.005973," +
+			"us-fl.proxymesh.com@25.761680/-80.19179," +
+			"us-wa.proxymesh.com@47.606209/-122.332071," +
+			"us-ca.proxymesh.com@37.338208/-121.886329";
 
 	private static final int port = PropertyLoader.getInteger("proxy.port");
 	private static final Credentials credentials = loadCredentials();
@@ -42,16 +48,14 @@ public final class Proxy {
 	private Location location;
 
 
-	public static Proxy getByMode(ProxyMode proxyMode) {
+	/**
+	 * @param targetHost     the host the proxy will be used for, private proxies are chosen by their health for it
+	 * @param privateProxies the pool private proxies are chosen from, normally {@link ProxyPool#INSTANCE}
+	 */
+	public static Proxy getByMode(ProxyMode proxyMode, String targetHost, ProxyPool privateProxies) {
 		switch(Objects.requireNonNull(proxyMode)) {
 			case ROTATE_LOCATION:
-				Proxy proxy = LocationUtils.findClosestProxyToCurrentLocation();
-				if(proxy == null) {
-					proxy = privateProxies.get(0);
-					logger.warn("[ProxyLoader] - Could not determine location to find closest proxy, defaulting to [{}]",
-							proxy.getHost().getHostName());
-				}
-				return proxy;
+				return privateProxies.select(targetHost);
 			case ROTATE_OPEN:
 				return openProxy;
 			default:
@@ -69,16 +73,43 @@ public final class Proxy {
 		return new UsernamePasswordCredentials(proxyUser, proxyPass);
 	}
 
+	/**
+	 * From the comma separated {@code proxy.hosts} property when set, the ProxyMesh US servers otherwise.
+	 */
 	private static List<Proxy> loadPrivate() {
-		return Arrays.asList(
-				new Proxy(new HttpHost("us.proxymesh.com", port), 29.760427F, -95.369803F),
-				new Proxy(new HttpHost("us-il.proxymesh.com", port), 41.878114F, -87.629798F),
-				new Proxy(new HttpHost("us-dc.proxymesh.com", port), 38.907192F, -77.036871F),
-				new Proxy(new HttpHost("us-ny.proxymesh.com", port), 40.712775F, -74.005973F),
-				new Proxy(new HttpHost("us-fl.proxymesh.com", port), 25.761680F, -80.19179F),
-				new Proxy(new HttpHost("us-wa.proxymesh.com", port), 47.606209F, -122.332071F),
-				new Proxy(new HttpHost("us-ca.proxymesh.com", port), 37.338208F, -121.886329F)
-		);
+		String hosts = StringUtils.trimToNull(PropertyLoader.optString("proxy.hosts"));
+		return parse(hosts == null ? defaultPrivate : hosts, port);
+	}
+
+	/**
+	 * Parse a comma separated list of {@code host[:port][@latitude/longitude]}, i.e. {@code us-il.proxymesh.com@41.87/-87.62}.
+	 * The location is only a hint for choosing a proxy before any have been used.
+	 *
+	 * @param defaultPort for entries without a port
+	 */
+	public static List<Proxy> parse(String hosts, int defaultPort) {
+		List<Proxy> proxies = new ArrayList<>();
+		for(String entry : StringUtils.split(hosts, ',')) {
+			entry = entry.trim();
+			if(entry.isEmpty()) {
+				continue;
+			}
+			String address = StringUtils.substringBefore(entry, "@");
+			String hostName = StringUtils.substringBefore(address, ":");
+			int hostPort = address.contains(":") ? Integer.parseInt(StringUtils.substringAfter(address, ":")) : defaultPort;
+			Location location = null;
+			if(entry.contains("@")) {
+				String coordinates = StringUtils.substringAfter(entry, "@");
+				location = new Location();
+				location.latitude = Float.parseFloat(StringUtils.substringBefore(coordinates, "/"));
+				location.longitude = Float.parseFloat(StringUtils.substringAfter(coordinates, "/"));
+			}
+			proxies.add(new Proxy(new HttpHost(hostName, hostPort), location));
+		}
+		if(proxies.isEmpty()) {
+			throw new IllegalArgumentException("No proxies in [" + hosts + "]");
+		}
+		return Collections.unmodifiableList(proxies);
 	}
 
 	public static List<Proxy> getPrivateProxies() {
@@ -97,6 +128,11 @@ public final class Proxy {
 		this.location = location;
 	}
 
+	private Proxy(HttpHost host, Location location) {
+		this.host = host;
+		this.location = location;
+	}
+
 	public HttpHost getHost() {
 		return host;
 	}
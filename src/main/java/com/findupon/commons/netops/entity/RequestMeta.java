@@ -17,6 +17,7 @@
 package com.findupon.commons.netops.entity;
 
 import com.findupon.commons.netops.ContextOps;
+import com.findupon.commons.netops.ProxyPool;
 import com.findupon.commons.netops.RequestHelper;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.client.config.RequestConfig;
@@ -32,92 +33,139 @@ import java.net.URI;
 import java.util.Date;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 
+/**
+ * A request session shared by every request borrowing it from the {@link com.findupon.commons.netops.RequestSessionPool},
+ * from any number of threads at once. What a request is sent with (proxy config, user agent, session ID, the proxy assigned
+ * IP) is one immutable {@link SessionState} swapped as a whole, so a request never pairs the config of one session with the
+ * IP or credentials of another. Take the state once per request, see {@link ContextOps#create}, rather than reading the
+ * getters here piecemeal.
+ */
 public class RequestMeta implements Serializable {
 	private static final long serialVersionUID = -2722221010446085840L;
 	private static final Logger logger = LoggerFactory.getLogger(RequestMeta.class);
 
 	private final AtomicInteger sessionCount;
-	private boolean forceProxyReAuth;
-	private int sessionThreshold;
-	private long lastRequestTime;
-	private String sessionId;
+	private final AtomicReference<SessionState> state;
+	private volatile long lastRequestTime;
 
 	private final ProxyMode proxyMode;
 	private final AgentMode agentMode;
 	private final URI requestUri;
-	private RequestConfig config;
-	private UserAgent userAgent;
-	private String proxyIp;
+	private final transient ProxyPool privateProxies;
+
 
+	/**
+	 * @param privateProxies where the session's private proxies are chosen from
+	 */
+	public RequestMeta(ProxyMode proxyMode, AgentMode agentMode, URI uri, ProxyPool privateProxies) {
+		this.proxyMode = Objects.requireNonNull(proxyMode);
+		this.agentMode = Objects.requireNonNull(agentMode);
+		this.requestUri = Objects.requireNonNull(uri);
+		this.privateProxies = Objects.requireNonNull(privateProxies);
+		this.state = new AtomicReference<>(new SessionState(RequestHelper.fromProxyMode(proxyMode, requestUri.getHost(), privateProxies),
+				RequestHelper.fromAgentMode(agentMode, null), RequestHelper.generateSessionId(), RequestHelper.generateSessionThreshold(),
+				null, false));
+		this.sessionCount = new AtomicInteger();
+	}
 
 	public boolean incrementAndCheckSessionExpired() {
-		return sessionCount.incrementAndGet() > sessionThreshold;
+		return sessionCount.incrementAndGet() > state.get().sessionThreshold;
 	}
 
+	/**
+	 * Start a new session: user agent, proxy, threshold and ID, clearing the host's cookies. When the context carries the state
+	 * its request was sent with, only that state is switched from. Requests that saw the same state fail or expire together
+	 * switch once, not once each.
+	 */
 	public void switchNextSession(HttpContext context) {
-		this.userAgent = RequestHelper.fromAgentMode(agentMode, userAgent);
-		this.config = RequestHelper.fromProxyMode(proxyMode);
-		this.sessionThreshold = RequestHelper.generateSessionThreshold();
-		this.sessionCount.set(0);
-		this.sessionId = RequestHelper.generateSessionId();
-		this.proxyIp = null;
-		this.forceProxyReAuth = true;
+		SessionState from = context.getAttribute(ContextOps.CTX_AGENT_SESSION) instanceof SessionState
+				? (SessionState)context.getAttribute(ContextOps.CTX_AGENT_SESSION) : null;
+		SessionState current = state.get();
+		if(from != null && current != from) {
+			return;
+		}
+		SessionState next = new SessionState(RequestHelper.fromProxyMode(proxyMode, requestUri.getHost(), privateProxies),
+				RequestHelper.fromAgentMode(agentMode, current.userAgent), RequestHelper.generateSessionId(),
+				RequestHelper.generateSessionThreshold(), null, true);
+		if(!state.compareAndSet(current, next)) {
+			return; // switched by another request meanwhile
+		}
+		sessionCount.set(0);
 
 		HttpClientContext clientContext = HttpClientContext.adapt(context);
 		Date now = new Date();
 		int cookiesCleared = 0;
 
-		for(Cookie cookie : clientContext.getCookieStore().getCookies()) {
-			if(StringUtils.containsIgnoreCase(cookie.getDomain(), requestUri.getHost())) {
-				((SetCookie)cookie).setExpiryDate(now);
-				cookiesCleared++;
+		if(clientContext.getCookieStore() != null) {
+			for(Cookie cookie : clientContext.getCookieStore().getCookies()) {
+				if(StringUtils.containsIgnoreCase(cookie.getDomain(), requestUri.getHost())) {
+					((SetCookie)cookie).setExpiryDate(now);
+					cookiesCleared++;
+				}
 			}
 		}
 		logger.debug("{}[RequestMeta] - Session switch triggered. Cookies cleared [{}] Next after [{}] requests. Host [{}]",
-				ContextOps.nodePre(clientContext), cookiesCleared, sessionThreshold, requestUri.getHost());
+				ContextOps.nodePre(clientContext), cookiesCleared, next.sessionThreshold, requestUri.getHost());
+	}
+
+	/**
+	 * Move to another proxy and keep the rest of the session, for when the proxy in use has had its circuit opened.
+	 *
+	 * @return the state to send with, someone else's switch when the state had already moved on from {@code from}
+	 */
+	public SessionState switchProxy(SessionState from) {
+		SessionState next = new SessionState(RequestHelper.fromProxyMode(proxyMode, requestUri.getHost(), privateProxies),
+				from.userAgent, from.sessionId, from.sessionThreshold, null, true);
+		return state.compareAndSet(from, next) ? next : state.get();
+	}
+
+	/**
+	 * Pin the IP the proxy assigned to the state that was sent to it. Dropped when the session has switched since, the IP
+	 * belongs to the proxy of the old state.
+	 */
+	public boolean assignProxyIp(SessionState from, String proxyIp) {
+		return from.proxyIp == null && state.compareAndSet(from,
+				new SessionState(from.config, from.userAgent, from.sessionId, from.sessionThreshold, proxyIp, true));
+	}
+
+	/**
+	 * @return true when a re-auth was pending and this call took it
+	 */
+	public boolean takeForceProxyReAuth() {
+		SessionState current;
+		do {
+			current = state.get();
+			if(!current.forceProxyReAuth) {
+				return false;
+			}
+		} while(!state.compareAndSet(current, new SessionState(current.config, current.userAgent, current.sessionId,
+				current.sessionThreshold, current.proxyIp, false)));
+		return true;
 	}
 
-	public RequestMeta(ProxyMode proxyMode, AgentMode agentMode, URI uri) {
-		this.proxyMode = Objects.requireNonNull(proxyMode);
-		this.agentMode = Objects.requireNonNull(agentMode);
-		this.requestUri = Objects.requireNonNull(uri);
-		this.userAgent = RequestHelper.fromAgentMode(agentMode, null);
-		this.config = RequestHelper.fromProxyMode(proxyMode);
-		this.sessionThreshold = RequestHelper.generateSessionThreshold();
-		this.sessionId = RequestHelper.generateSessionId();
-		this.sessionCount = new AtomicInteger();
+	public SessionState getState() {
+		return state.get();
 	}
 
 	public boolean proxyUsed() {
-		return !ProxyMode.PUBLIC.equals(proxyMode) && config.getProxy() != null;
+		return state.get().proxyUsed(proxyMode);
 	}
 
 	public ProxyMode getProxyMode() {
 		return proxyMode;
 	}
 
-	public String getProxyIp() {
-		return proxyIp;
-	}
-
-	public void setProxyIp(String proxyIp) {
-		this.proxyIp = proxyIp;
-	}
-
-	public RequestConfig getConfig() {
-		return config;
+	public AgentMode getAgentMode() {
+		return agentMode;
 	}
 
 	public String getHost() {
 		return requestUri.getHost();
 	}
 
-	public UserAgent getUserAgent() {
-		return userAgent;
-	}
-
 	public long getLastRequestTime() {
 		return lastRequestTime;
 	}
@@ -126,23 +174,61 @@ public class RequestMeta implements Serializable {
 		this.lastRequestTime = lastRequestTime;
 	}
 
-	public boolean isForceProxyReAuth() {
-		return forceProxyReAuth;
-	}
-
-	public void setForceProxyReAuth(boolean forceProxyReAuth) {
-		this.forceProxyReAuth = forceProxyReAuth;
-	}
-
 	public boolean nonSSL() {
 		return !"https".equalsIgnoreCase(requestUri.getScheme());
 	}
 
-	public boolean differentMode(ProxyMode proxyMode, AgentMode agentMode) {
-		return !this.proxyMode.equals(proxyMode) || !this.agentMode.equals(agentMode);
-	}
-
 	public int getSessionCount() {
 		return sessionCount.get();
 	}
+
+	public static final class SessionState implements Serializable {
+		private static final long serialVersionUID = 3141276400920446713L;
+
+		private final RequestConfig config;
+		private final UserAgent userAgent;
+		private final String sessionId;
+		private final int sessionThreshold;
+		private final String proxyIp;
+		private final boolean forceProxyReAuth;
+
+
+		private SessionState(RequestConfig config, UserAgent userAgent, String sessionId, int sessionThreshold, String proxyIp,
+		                     boolean forceProxyReAuth) {
+			this.config = config;
+			this.userAgent = userAgent;
+			this.sessionId = sessionId;
+			this.sessionThreshold = sessionThreshold;
+			this.proxyIp = proxyIp;
+			this.forceProxyReAuth = forceProxyReAuth;
+		}
+
+		public boolean proxyUsed(ProxyMode proxyMode) {
+			return !ProxyMode.PUBLIC.equals(proxyMode) && config.getProxy() != null;
+		}
+
+		public RequestConfig getConfig() {
+			return config;
+		}
+
+		public UserAgent getUserAgent() {
+			return userAgent;
+		}
+
+		public String getSessionId() {
+			return sessionId;
+		}
+
+		public int getSessionThreshold() {
+			return sessionThreshold;
+		}
+
+		public String getProxyIp() {
+			return proxyIp;
+		}
+
+		public boolean isForceProxyReAuth() {
+			return forceProxyReAuth;
+		}
+	}
 }
@@ -0,0 +1,296 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops.strategies;
+
+import com.findupon.commons.netops.entity.HttpStatusCode;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.client.BackoffManager;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.routing.RouteInfo;
+import org.apache.http.pool.ConnPoolControl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+
+/**
+ * Additive increase, multiplicative decrease of the connections and request pacing for each target host. Replaces the single
+ * monitor of the old backoff manager with atomic per-host state, so responses for different hosts never contend and
+ * responses for the same host only race on a compare and set.
+ * <p>
+ * Congestion is a backoff status (429, 503, etc.), a connect or socket timeout, or a response slower than
+ * {@link #latencyFactor} times the host's average. On congestion the host's pool limit is halved and the pause between requests
+ * doubled. Every uncongested response, at most once per {@link #coolDown}, adds one connection back up to the pool default and
+ * shortens the pause by {@link #intervalStepMillis}. A Retry-After holds every request to the host until it has passed.
+ */
+public class ChloeCongestionController implements BackoffManager {
+	private static final Logger logger = LoggerFactory.getLogger(ChloeCongestionController.class);
+
+	private final List<ConnPoolControl<HttpRoute>> pools;
+	private final Map<String, HostState> hostStates = new ConcurrentHashMap<>();
+	private final LongSupplier clock;
+	private final int cap; // absolute maximum per-host connection pool size to probe up to (set to defaultMaxPerRoute)
+	private final long coolDown = 5 * 1000L; // wait between adjustments for a given host, to allow enough time for them to take effect
+	private final double backoffFactor = 0.5d; // the new per-host limit will be roughly the current max times this factor
+	private final long minIntervalMillis = 250L; // the first pause between requests after congestion
+	private final long maxIntervalMillis = 8 * 1000L;
+	private final long intervalStepMillis = 100L;
+	private final long maxRetryAfterMillis = 2 * 60 * 1000L;
+	private final double latencyFactor = 3d;
+	private final long latencyFloorMillis = 2 * 1000L; // never congested by latency under this
+	private final double latencyWeight = 0.2d;
+
+
+	@SafeVarargs
+	public ChloeCongestionController(ConnPoolControl<HttpRoute>... pools) {
+		this(System::currentTimeMillis, pools);
+	}
+
+	@SafeVarargs
+	ChloeCongestionController(LongSupplier clock, ConnPoolControl<HttpRoute>... pools) {
+		if(pools.length == 0) {
+			throw new IllegalArgumentException("At least one connection pool required");
+		}
+		this.pools = Arrays.asList(pools);
+		this.clock = clock;
+		this.cap = pools[0].getDefaultMaxPerRoute();
+	}
+
+	@Override
+	public void backOff(HttpRoute route) {
+		decrease(state(hostOf(route), route));
+	}
+
+	@Override
+	public void probe(HttpRoute route) {
+		increase(state(hostOf(route), route));
+	}
+
+	/**
+	 * Report a completed exchange.
+	 *
+	 * @param route            the route used if known, so its pool limit can be adjusted
+	 * @param statusCode       the response status, or the status an exception was translated to
+	 * @param retryAfterMillis the Retry-After of the response if there was one, see {@link #parseRetryAfterMillis}
+	 */
+	public void onResponse(String host, RouteInfo route, int statusCode, long latencyMillis, Long retryAfterMillis) {
+		if(StringUtils.isBlank(host)) {
+			return;
+		}
+		HostState state = state(host, route instanceof HttpRoute ? (HttpRoute)route : null);
+		if(retryAfterMillis != null && retryAfterMillis > 0) {
+			long until = clock.getAsLong() + Math.min(retryAfterMillis, maxRetryAfterMillis);
+			state.nextRequestAt.accumulateAndGet(until, Math::max);
+			logger.debug("[ChloeCongestionController] - Retry-After of [{}ms] honored for host [{}]", retryAfterMillis, host);
+		}
+		boolean congested = HttpStatusCode.isBackoffCode(statusCode);
+		if(statusCode > 0 && latencyMillis > 0) {
+			double average = state.recordLatency(latencyMillis, latencyWeight);
+			congested |= latencyMillis > latencyFloorMillis && average > 0 && latencyMillis > average * latencyFactor;
+		}
+		if(congested) {
+			decrease(state);
+		} else if(statusCode > 0 && HttpStatusCode.isSuccessful(statusCode)) {
+			increase(state);
+		}
+	}
+
+	/**
+	 * Claim the next request slot for the host.
+	 *
+	 * @return how long to wait before sending, zero to send now
+	 */
+	public long reserve(String host) {
+		HostState state = hostStates.get(host);
+		if(state == null) {
+			return 0L;
+		}
+		long now = clock.getAsLong();
+		state.lastTouched = now;
+		long interval = state.intervalMillis.get();
+		while(true) {
+			long next = state.nextRequestAt.get();
+			if(interval == 0L && next <= now) {
+				return 0L;
+			}
+			long slot = Math.max(now, next);
+			if(state.nextRequestAt.compareAndSet(next, slot + interval)) {
+				return slot - now;
+			}
+		}
+	}
+
+	/**
+	 * @return the current pool limit for the host, the default when it has not been adjusted
+	 */
+	public int getLimit(String host) {
+		HostState state = hostStates.get(host);
+		return state == null ? cap : state.limit.get();
+	}
+
+	public long getIntervalMillis(String host) {
+		HostState state = hostStates.get(host);
+		return state == null ? 0L : state.intervalMillis.get();
+	}
+
+	/**
+	 * @return a snapshot of every host currently limited below the default, by host
+	 */
+	public Map<String, Integer> getLimits() {
+		Map<String, Integer> limits = new TreeMap<>();
+		hostStates.forEach((host, state) -> {
+			int limit = state.limit.get();
+			if(limit < cap) {
+				limits.put(host, limit);
+			}
+		});
+		return limits;
+	}
+
+	/**
+	 * Forget hosts not used within the idle time, restoring the default limit on their routes.
+	 *
+	 * @return the number of hosts removed
+	 */
+	public int evictIdle(long idleMillis) {
+		long now = clock.getAsLong();
+		int removed = 0;
+		for(Iterator<Map.Entry<String, HostState>> iterator = hostStates.entrySet().iterator(); iterator.hasNext(); ) {
+			HostState state = iterator.next().getValue();
+			if(now - state.lastTouched > idleMillis) {
+				iterator.remove();
+				if(state.limit.get() != cap) {
+					state.routes.forEach(r -> applyLimit(r, cap));
+				}
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	private void decrease(HostState state) {
+		long now = clock.getAsLong();
+		long lastDecrease = state.lastDecrease.get();
+		if(now - lastDecrease < coolDown || !state.lastDecrease.compareAndSet(lastDecrease, now)) {
+			return;
+		}
+		int limit = state.limit.updateAndGet(current -> current <= 1 ? 1 : (int)Math.floor(backoffFactor * current));
+		long interval = state.intervalMillis.updateAndGet(current -> Math.min(maxIntervalMillis, current == 0L ? minIntervalMillis : current * 2));
+		state.routes.forEach(r -> applyLimit(r, limit));
+		logger.debug("[ChloeCongestionController] - Backed off host [{}] Limit [{}] Interval [{}ms]", state.host, limit, interval);
+	}
+
+	private void increase(HostState state) {
+		long now = clock.getAsLong();
+		long lastIncrease = state.lastIncrease.get();
+		if(now - lastIncrease < coolDown || now - state.lastDecrease.get() < coolDown) {
+			return;
+		}
+		if(state.limit.get() >= cap && state.intervalMillis.get() == 0L) {
+			return;
+		}
+		if(!state.lastIncrease.compareAndSet(lastIncrease, now)) {
+			return;
+		}
+		int limit = state.limit.updateAndGet(current -> Math.min(cap, current + 1));
+		state.intervalMillis.updateAndGet(current -> Math.max(0L, current - intervalStepMillis));
+		state.routes.forEach(r -> applyLimit(r, limit));
+	}
+
+	private HostState state(String host, HttpRoute route) {
+		HostState state = hostStates.get(host);
+		if(state == null) {
+			state = hostStates.computeIfAbsent(host, HostState::new);
+		}
+		state.lastTouched = clock.getAsLong();
+		if(route != null && state.routes.add(route)) {
+			int limit = state.limit.get();
+			if(limit != cap) {
+				applyLimit(route, limit);
+			}
+		}
+		return state;
+	}
+
+	private void applyLimit(HttpRoute route, int limit) {
+		for(ConnPoolControl<HttpRoute> pool : pools) {
+			pool.setMaxPerRoute(route, limit);
+		}
+	}
+
+	private static String hostOf(HttpRoute route) {
+		return route.getTargetHost().getHostName();
+	}
+
+	/**
+	 * The wait given by a Retry-After header, in either its seconds or HTTP date form.
+	 *
+	 * @return the wait in millis, or null if there was no valid header value
+	 */
+	public static Long parseRetryAfterMillis(String retryAfter, long now) {
+		if(StringUtils.isBlank(retryAfter)) {
+			return null;
+		}
+		retryAfter = retryAfter.trim();
+		if(StringUtils.isNumeric(retryAfter)) {
+			try {
+				return TimeUnit.SECONDS.toMillis(Long.parseLong(retryAfter));
+			} catch(NumberFormatException e) {
+				return null;
+			}
+		}
+		Date date = DateUtils.parseDate(retryAfter);
+		return date == null ? null : Math.max(0L, date.getTime() - now);
+	}
+
+	private class HostState {
+		private final String host;
+		private final Set<HttpRoute> routes = ConcurrentHashMap.newKeySet();
+		private final AtomicInteger limit = new AtomicInteger(cap);
+		private final AtomicLong intervalMillis = new AtomicLong();
+		private final AtomicLong nextRequestAt = new AtomicLong();
+		private final AtomicLong lastDecrease = new AtomicLong(Long.MIN_VALUE / 2);
+		private final AtomicLong lastIncrease = new AtomicLong(Long.MIN_VALUE / 2);
+		private final AtomicLong averageLatencyBits = new AtomicLong(Double.doubleToLongBits(0d));
+		private volatile long lastTouched;
+
+		private HostState(String host) {
+			this.host = host;
+		}
+
+		/**
+		 * @return the average before this sample
+		 */
+		private double recordLatency(long latencyMillis, double weight) {
+			while(true) {
+				long bits = averageLatencyBits.get();
+				double average = Double.longBitsToDouble(bits);
+				double next = average == 0d ? latencyMillis : average + weight * (latencyMillis - average);
+				if(averageLatencyBits.compareAndSet(bits, Double.doubleToLongBits(next))) {
+					return average;
+				}
+			}
+		}
+	}
+}
@@ -20,8 +20,6 @@ import com.findupon.commons.netops.ChloeHttpRequestExecutor;
 import com.findupon.commons.netops.ContextOps;
 import com.findupon.commons.netops.entity.HttpStatusCode;
 import com.findupon.commons.netops.entity.RequestMeta;
-import org.apache.http.HttpClientConnection;
-import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 import org.apache.http.impl.DefaultConnectionReuseStrategy;
 import org.apache.http.protocol.HttpContext;
@@ -31,8 +29,8 @@ public class ChloeConnectionReuseStrategy extends DefaultConnectionReuseStrategy
 	public static final ChloeConnectionReuseStrategy INSTANCE = new ChloeConnectionReuseStrategy();
 
 	/**
-	 * If a proxied request was executed and IP response headers were received ({@link RequestMeta#forceProxyReAuth} will be {@code true}) from
-	 * {@link com.findupon.commons.netops.ChloeHttpRequestExecutor#doReceiveResponse(HttpRequest, HttpClientConnection, HttpContext)}),
+	 * If a proxied request was executed and IP response headers were received (see {@link RequestMeta#takeForceProxyReAuth}) from
+	 * {@link com.findupon.commons.netops.ChloeHttpRequestExecutor}),
 	 * do not persist the connection, forcing re-auth to the proxy where we can safely set our new request headers.
 	 */
 	@Override
@@ -44,8 +42,7 @@ public class ChloeConnectionReuseStrategy extends DefaultConnectionReuseStrategy
 			return false;
 		}
 		if(statusCode == HttpStatusCode.SC_OK) {
-			if(requestMeta.isForceProxyReAuth()) {
-				requestMeta.setForceProxyReAuth(false);
+			if(requestMeta.takeForceProxyReAuth()) {
 				return false;
 			}
 		}
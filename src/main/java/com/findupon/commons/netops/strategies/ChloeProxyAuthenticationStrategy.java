@@ -16,6 +16,7 @@
 
 package com.findupon.commons.netops.strategies;
 
+import com.findupon.commons.netops.ChloeProxyScheme;
 import com.findupon.commons.netops.ContextOps;
 import org.apache.http.*;
 import org.apache.http.auth.*;
@@ -39,8 +40,12 @@ public class ChloeProxyAuthenticationStrategy implements AuthenticationStrategy
 	private final Logger logger = LoggerFactory.getLogger(ChloeProxyAuthenticationStrategy.class);
 
 
+	/**
+	 * Every response from the proxy passes through here, including the response to the HTTPS CONNECT which nothing else sees.
+	 */
 	@Override
 	public boolean isAuthenticationRequested(HttpHost host, HttpResponse response, HttpContext context) {
+		ChloeProxyScheme.processConnectResponse(response, context);
 		return response.getStatusLine().getStatusCode() == HttpStatus.SC_PROXY_AUTHENTICATION_REQUIRED;
 	}
 
@@ -17,12 +17,16 @@
 package com.findupon.commons.repository.datasource;
 
 import com.findupon.commons.entity.datasource.DataSource;
+import com.findupon.commons.searchparty.ScoutServices;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.stream.Collectors;
 
 
 @Repository
@@ -55,50 +59,23 @@ public interface DataSourceRepo extends JpaRepository<DataSource, Long> {
 	@Query(value = "select * from data_source where url = :url limit 1", nativeQuery = true)
 	DataSource findByExactUrl(@Param("url") String url);
 
-	@Query(value = "select * " +
-			"from data_source " +
-			"where id in ( " +
-			"    select id " +
-			"    from ( " +
-			"             select " +
-			"                 id, " +
-			"                 substring_index( " +
-			"                     reverse( " +
-			"                         substr( " +
-			"                             reverse(no_protocol_ds_url), 1 + locate('/', reverse(no_protocol_ds_url)) " +
-			"                         ) " +
-			"                     ), 'www.', -1 " +
-			"                 ) stripped_ds_url, " +
-			"                 substring_index( " +
-			"                     reverse( " +
-			"                         substr( " +
-			"                             reverse(no_protocol_search_url), 1 + locate('/', reverse(no_protocol_search_url)) " +
-			"                         ) " +
-			"                     ), 'www.', -1 " +
-			"                 ) stripped_search_url " +
-			"             from ( " +
-			"                      select " +
-			"                          id, " +
-			"                          lower( " +
-			"                              substring_index( " +
-			"                                  (case when right(url, 1) = '/' " +
-			"                                      then url " +
-			"                                   else concat(url, '/') end), " +
-			"                                  '://', -1 " +
-			"                              ) " +
-			"                          ) no_protocol_ds_url, " +
-			"                          lower( " +
-			"                              substring_index( " +
-			"                                  (case when right(:url, 1) = '/' " +
-			"                                      then :url " +
-			"                                   else concat(:url, '/') end), " +
-			"                                  '://', -1 " +
-			"                              ) " +
-			"                          ) no_protocol_search_url " +
-			"                      from data_source " +
-			"                  ) protocol_stripped " +
-			"         ) prefix_stripped " +
-			"    where binary stripped_ds_url = binary stripped_search_url " +
-			")", nativeQuery = true)
-	List<DataSource> searchByUrl(@Param("url") String url);
+	@Query(value = "select * from data_source where host_key = :hostKey", nativeQuery = true)
+	List<DataSource> findByHostKey(@Param("hostKey") String hostKey);
+
+	@Query(value = "select url from data_source where host_key in (:hostKeys)", nativeQuery = true)
+	List<String> findUrlsByHostKeyIn(@Param("hostKeys") Collection<String> hostKeys);
+
+	/**
+	 * Data sources for the same site as the URL, ignoring protocol, www. and trailing slashes. Served by the host key index.
+	 */
+	default List<DataSource> searchByUrl(String url) {
+		String hostKey = ScoutServices.getHostKey(url);
+		String comparableUrl = ScoutServices.getComparableUrl(url);
+		if(hostKey == null || comparableUrl == null) {
+			return new ArrayList<>();
+		}
+		return findByHostKey(hostKey).stream()
+				.filter(d -> comparableUrl.equals(ScoutServices.getComparableUrl(d.getUrl())))
+				.collect(Collectors.toList());
+	}
 }
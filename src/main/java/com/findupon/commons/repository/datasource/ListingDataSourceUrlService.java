@@ -16,6 +16,7 @@
 
 package com.findupon.commons.repository.datasource;
 
+import com.google.common.collect.Iterables;
 import com.findupon.commons.entity.datasource.DataSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -23,14 +24,23 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
-import java.util.Collection;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.*;
 
 
+/**
+ * Work state of listing data source URLs, uniquely keyed by {@code (data_source_id, base, url_hash)} where the hash is a
+ * generated column of {@code unhex(md5(url))}. All statements are parameterized and chunked so the packet size does not
+ * grow with the URL set.
+ * <p>
+ * Work is handed out by leasing: {@link #leaseUrls} marks up to N not ran URLs as ran under a new lease ID in a single
+ * statement and returns them, so callers never need to hold the full set. Lease order is by hash, giving a stable shuffle.
+ */
 @Component
 public class ListingDataSourceUrlService {
 	private static final Logger logger = LoggerFactory.getLogger(ListingDataSourceUrlService.class);
+	private static final int chunkSize = 500;
+	private static final String urlHash = "unhex(md5(?))";
+
 	@Autowired private JdbcTemplate jdbcTemplate;
 
 
@@ -39,19 +49,56 @@ public class ListingDataSourceUrlService {
 				listingDataSource.getId(), base ? 1 : 0);
 	}
 
-	public List<String> findAllNotRanUrls(DataSource listingDataSource, boolean base) {
-		return jdbcTemplate.queryForList("select url from listing_data_source_urls " +
-				"where data_source_id = ? and ran = 0 and base = ?", String.class, listingDataSource.getId(), base ? 1 : 0);
+	public long countNotRanUrls(DataSource listingDataSource, boolean base) {
+		Long count = jdbcTemplate.queryForObject("select count(1) from listing_data_source_urls " +
+				"where data_source_id = ? and ran = 0 and base = ?", Long.class, listingDataSource.getId(), base ? 1 : 0);
+		return count == null ? 0 : count;
+	}
+
+	/**
+	 * Atomically claim up to {@code limit} not ran URLs, marking them as ran.
+	 *
+	 * @return the claimed URLs, empty once there is nothing left to work.
+	 */
+	public List<String> leaseUrls(DataSource listingDataSource, boolean base, int limit) {
+		String leaseId = UUID.randomUUID().toString();
+		int leased = jdbcTemplate.update("update listing_data_source_urls set ran = 1, lease_id = ? " +
+				"where data_source_id = ? and ran = 0 and base = ? order by url_hash limit ?", leaseId, listingDataSource.getId(), base ? 1 : 0, limit);
+		if(leased == 0) {
+			return new ArrayList<>();
+		}
+		return jdbcTemplate.queryForList("select url from listing_data_source_urls where lease_id = ?", String.class, leaseId);
+	}
+
+	/**
+	 * Insert URLs from another table, ignoring any already present.
+	 *
+	 * @param selectUrls a select of a single url column, parameterized with {@code args}
+	 * @return the number of URLs inserted
+	 */
+	public int insertFromSelect(DataSource listingDataSource, boolean base, String selectUrls, Object... args) {
+		Object[] params = new Object[args.length + 2];
+		params[0] = listingDataSource.getId();
+		params[1] = base ? 1 : 0;
+		System.arraycopy(args, 0, params, 2, args.length);
+		return jdbcTemplate.update("insert ignore into listing_data_source_urls(data_source_id, base, url) " +
+				"select ?, ?, u.url from (" + selectUrls + ") u", params);
 	}
 
 	public void updateRan(DataSource listingDataSource, Collection<String> urls, boolean ran, boolean base) {
-		if(!urls.isEmpty()) {
-			String stmt = "update listing_data_source_urls set ran = " + (ran ? 1 : 0) + " where data_source_id = "
-					+ listingDataSource.getId() + " and base = " + (base ? 1 : 0) + " and url in ";
+		for(List<String> chunk : Iterables.partition(urls, chunkSize)) {
+			StringJoiner in = new StringJoiner(",", "(", ")");
+			List<Object> params = new ArrayList<>(chunk.size() + 3);
+			params.add(ran ? 1 : 0);
+			params.add(listingDataSource.getId());
+			params.add(base ? 1 : 0);
+			for(String url : chunk) {
+				in.add(urlHash);
+				params.add(url);
+			}
 			try {
-				jdbcTemplate.update(urls.stream()
-						.map(v -> v = "'" + v.replace("'", "\\\'") + "'")
-						.collect(Collectors.joining(",", stmt + "(", ")")));
+				jdbcTemplate.update("update listing_data_source_urls set ran = ?, lease_id = null " +
+						"where data_source_id = ? and base = ? and url_hash in " + in, params.toArray());
 			} catch(Exception e) {
 				logger.error("Error during bulk update-as-ran", e);
 				throw e; // le fatal
@@ -60,14 +107,17 @@ public class ListingDataSourceUrlService {
 	}
 
 	public void bulkInsert(DataSource listingDataSource, Collection<String> urls, boolean base) {
-		if(!urls.isEmpty()) {
-			String stmt = "insert ignore into listing_data_source_urls(data_source_id, url, base) values ";
+		for(List<String> chunk : Iterables.partition(urls, chunkSize)) {
+			StringJoiner values = new StringJoiner(",");
+			List<Object> params = new ArrayList<>(chunk.size() * 3);
+			for(String url : chunk) {
+				values.add("(?,?,?)");
+				params.add(listingDataSource.getId());
+				params.add(url);
+				params.add(base ? 1 : 0);
+			}
 			try {
-				jdbcTemplate.update(urls.stream()
-						.map(v -> v = "(" + listingDataSource.getId() + ",'"
-								+ v.replace("'", "\\\'") + "',"
-								+ (base ? 1 : 0) + ")")
-						.collect(Collectors.joining(",", stmt, ";")));
+				jdbcTemplate.update("insert ignore into listing_data_source_urls(data_source_id, url, base) values " + values, params.toArray());
 			} catch(Exception e) {
 				logger.error("Error during bulk URL insert", e);
 				throw e;
@@ -21,12 +21,15 @@ import com.findupon.cluster.entity.master.MasterMessage;
 import com.findupon.commons.bot.PageMetaBot;
 import com.findupon.commons.building.ProductUtils;
 import com.findupon.commons.dao.AutomobileDao;
+import com.findupon.commons.dao.ProductWriteBuffer;
 import com.findupon.commons.dao.core.JdbcFacade;
 import com.findupon.commons.entity.datasource.DataSource;
 import com.findupon.commons.entity.datasource.DataSourceStatus;
 import com.findupon.commons.entity.datasource.DataSourceStatusReason;
 import com.findupon.commons.entity.product.Product;
 import com.findupon.commons.entity.product.automotive.Automobile;
+import com.findupon.commons.metrics.Histogram;
+import com.findupon.commons.metrics.MetricRegistry;
 import com.findupon.commons.netops.ConnectionAgent;
 import com.findupon.commons.netops.entity.AgentResponse;
 import com.findupon.commons.netops.entity.HttpStatusCode;
@@ -70,9 +73,12 @@ import static com.findupon.commons.utilities.ConsoleColors.*;
 @Component
 @Scope(value = ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public abstract class AbstractProductGatherer<P extends Product & Serializable> {
+	private static final Histogram buildSeconds = MetricRegistry.INSTANCE.histogram("das_product_build_seconds",
+			"Time to build products from a downloaded page", Histogram.nanos, TimeUnit.MINUTES.toNanos(1));
+
 	protected final Logger logger = LoggerFactory.getLogger(getClass());
 
-	private final Map<String, Queue<String>> adjacencyMap = Collections.synchronizedMap(new TreeMap<>(parentPriority()));
+	private final Map<PrioritizedUrl, Queue<PrioritizedUrl>> adjacencyMap = Collections.synchronizedMap(new TreeMap<>(PrioritizedUrl.order));
 	private final int maxParentSize = 512;
 	private final int maxEdgeSize = 4096;
 	private final int maxPoolSize = 1;
@@ -124,11 +130,18 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 	@Autowired private JdbcTemplate jdbcTemplate;
 	@Autowired protected ProductUtils productUtils;
 	@Autowired protected AutomobileDao automobileDao;
+	@Autowired private ProductWriteBuffer productWriteBuffer;
 
 
-	protected abstract Comparator<String> edgePriority();
+	/**
+	 * Called once for each URL found, edges with lower priorities are visited first.
+	 */
+	protected abstract int edgePriority(String url);
 
-	protected abstract Comparator<String> parentPriority();
+	/**
+	 * Called once for each page whose edges are queued, pages with lower priorities have their edges visited first.
+	 */
+	protected abstract int parentPriority(String url);
 
 	protected abstract String[] keywordsToAvoid();
 
@@ -359,25 +372,25 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 
 		// don't add edges of the root url if we already picked it up from the site map
 		if(adjacencyMap.entrySet().stream().noneMatch(e ->
-				StringUtils.equalsIgnoreCase(e.getKey(), currentDataSource.getUrl()) &&
+				StringUtils.equalsIgnoreCase(e.getKey().getUrl(), currentDataSource.getUrl()) &&
 						e.getValue().stream().noneMatch(s ->
-								StringUtils.equalsIgnoreCase(s, currentDataSource.getUrl())))) {
+								StringUtils.equalsIgnoreCase(s.getUrl(), currentDataSource.getUrl())))) {
 			adjacentEdges(landingPage).ifPresent(edges -> updateAdjacencyMap(edges, currentDataSource.getUrl()));
 		}
 
 		while(true) {
 			if(workingFutures() < maxPoolSize && !adjacencyMap.isEmpty()) {
-				final Queue<String> edgesToVisit;
-				final String nextUrl;
+				final Queue<PrioritizedUrl> edgesToVisit;
+				final PrioritizedUrl nextUrl;
 				synchronized(adjacencyMap) {
 					nextUrl = adjacencyMap.entrySet().iterator().next().getKey();
 					edgesToVisit = adjacencyMap.remove(nextUrl);
 				}
-				if(insensitiveVisitedUrls.add(nextUrl)) {
+				if(insensitiveVisitedUrls.add(nextUrl.getUrl())) {
 					futures.add(gatheringService.submit(() -> {
 						int preDrillSize = insensitiveProductIds.size();
 						while(!edgesToVisit.isEmpty()) {
-							final String edge = edgesToVisit.poll();
+							final String edge = edgesToVisit.poll().getUrl();
 							if(Thread.currentThread().isInterrupted()) {
 								abort.set(true);
 								return;
@@ -427,7 +440,7 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 				drillLog = 1;
 				int workingEdges = 0, workingParents = 0;
 				synchronized(adjacencyMap) {
-					for(Map.Entry<String, Queue<String>> entry : adjacencyMap.entrySet()) {
+					for(Map.Entry<PrioritizedUrl, Queue<PrioritizedUrl>> entry : adjacencyMap.entrySet()) {
 						workingParents++;
 						workingEdges += entry.getValue().size();
 					}
@@ -544,7 +557,9 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 					if(!StringUtils.equalsIgnoreCase(edge, nextPage.location())) {
 						insensitiveVisitedUrls.add(nextPage.location());
 					}
+					long buildStart = System.nanoTime();
 					createProductIfFound(nextPage);
+					buildSeconds.recordSince(buildStart);
 
 					if(nextPage.location().endsWith(".xml")) {
 						getEdgesFromSitemap(Jsoup.parse(nextPage.html(), nextPage.location(), Parser.xmlParser()))
@@ -557,7 +572,7 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 		};
 	}
 
-	private void updateAdjacencyMap(Queue<String> edges, String url) {
+	private void updateAdjacencyMap(Queue<PrioritizedUrl> edges, String url) {
 		synchronized(adjacencyMap) {
 			final long currentEdgeTotal = totalEdges.longValue();
 			final long currentDepth;
@@ -571,7 +586,7 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 				if(currentEdgeTotal + edges.size() > maxEdgeSize) {
 					// trim the edge list to fit the max
 					long edgeCapacity = maxEdgeSize - currentEdgeTotal;
-					Queue<String> trimmedEdges = new PriorityQueue<>(edgePriority());
+					Queue<PrioritizedUrl> trimmedEdges = new PriorityQueue<>(PrioritizedUrl.order);
 
 					for(int x = 0; x < edgeCapacity && edges.peek() != null; x++) {
 						trimmedEdges.offer(edges.poll());
@@ -580,7 +595,7 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 				}
 				totalEdges.add(edges.size());
 				totalParents.increment();
-				adjacencyMap.putIfAbsent(url, edges);
+				adjacencyMap.putIfAbsent(new PrioritizedUrl(url, parentPriority(url)), edges);
 			}
 		}
 	}
@@ -589,7 +604,7 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 		if(!products.isEmpty()) {
 			synchronized(products) {
 				persistedProducts.add(products.size());
-				automobileDao.saveAll((Collection<Automobile>)products);
+				productWriteBuffer.offer(products);
 				products.clear();
 			}
 		}
@@ -631,8 +646,8 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 		}
 
 		/* calculate and add to total downloaded */
-		if(StringUtils.isNotEmpty(agentResponse.getContent())) {
-			downloadedMb.add((double)agentResponse.getContent().getBytes().length / (1024 * 1024));
+		if(agentResponse.getBytesReceived() > 0) {
+			downloadedMb.add((double)agentResponse.getBytesReceived() / (1024 * 1024));
 		}
 
 		switch(agentResponse.getDecision().getAction()) {
@@ -670,7 +685,7 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 		return abort.get() || Thread.currentThread().isInterrupted();
 	}
 
-	private Optional<Queue<String>> getEdgesFromSitemap(Document siteMap) {
+	private Optional<Queue<PrioritizedUrl>> getEdgesFromSitemap(Document siteMap) {
 		if(siteMap != null) {
 			Elements siteMapLinks = siteMap.select("loc");
 			return siteMapLinks.stream()
@@ -678,18 +693,19 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 					.filter(this::shouldVisit)
 					.filter(edge -> !edge.equals(siteMap.location()))
 					.map(s -> ScoutServices.encodeSpacing(s, true))
-					.collect(Collectors.collectingAndThen(Collectors.toCollection(() -> new PriorityQueue<>(edgePriority())),
+					.map(s -> new PrioritizedUrl(s, edgePriority(s)))
+					.collect(Collectors.collectingAndThen(Collectors.toCollection(() -> new PriorityQueue<>(PrioritizedUrl.order)),
 							edges -> edges.isEmpty() ? Optional.empty() : Optional.of(edges)));
 		}
 		return Optional.empty();
 	}
 
-	private Optional<Queue<String>> adjacentEdges(Document document) {
+	private Optional<Queue<PrioritizedUrl>> adjacentEdges(Document document) {
 		Elements anchors = document.select("a[href]");
 		if(anchors.isEmpty()) {
 			return Optional.empty();
 		}
-		Queue<String> nextUrls = new PriorityQueue<>(edgePriority());
+		Queue<PrioritizedUrl> nextUrls = new PriorityQueue<>(PrioritizedUrl.order);
 		int stale = 0, fresh = 0, invalid = 0, found = anchors.size();
 
 		for(Element anchor : anchors) {
@@ -704,8 +720,8 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 					if(nextUrl != null) {
 						String query = nextUrl.getQuery();
 						if(query != null && query.length() > 24) {
-							for(String url : nextUrls) {
-								int distance = LevenshteinDistance.getDefaultInstance().apply(link, url);
+							for(PrioritizedUrl url : nextUrls) {
+								int distance = LevenshteinDistance.getDefaultInstance().apply(link, url.getUrl());
 								if(distance < 3) {
 									tooSimilar = true;
 									break;
@@ -715,7 +731,7 @@ public abstract class AbstractProductGatherer<P extends Product & Serializable>
 					}
 					fresh++;
 					if(!tooSimilar && shouldVisit(link)) {
-						nextUrls.offer(link);
+						nextUrls.offer(new PrioritizedUrl(link, edgePriority(link)));
 					}
 				}
 			} else {
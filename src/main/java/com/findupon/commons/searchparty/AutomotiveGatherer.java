@@ -86,35 +86,23 @@ public class AutomotiveGatherer extends AbstractProductGatherer<Automobile> {
 
 
 	@Override
-	protected Comparator<String> edgePriority() {
-		return (s1, s2) -> {
-			boolean s1containsKeyword = false;
-			for(String k : edgePriorityKeywords) {
-				if(StringUtils.containsIgnoreCase(s1, k)) {
-					s1containsKeyword = true;
-					break;
-				}
-			}
-			boolean priority1 = s1containsKeyword || AutoParsingOperations.getContainingVin(s1).isPresent();
-			boolean s2containsKeyword = false;
-			for(String k : edgePriorityKeywords) {
-				if(StringUtils.containsIgnoreCase(s2, k)) {
-					s2containsKeyword = true;
-					break;
-				}
+	protected int edgePriority(String url) {
+		for(String k : edgePriorityKeywords) {
+			if(StringUtils.containsIgnoreCase(url, k)) {
+				return 0;
 			}
-			boolean priority2 = s2containsKeyword || AutoParsingOperations.getContainingVin(s2).isPresent();
-			return priority1 && !priority2 ? -1 : priority1 == priority2 ? 0 : 1;
-		};
+		}
+		return AutoParsingOperations.getContainingVin(url).isPresent() ? 0 : 1;
 	}
 
 	@Override
-	protected Comparator<String> parentPriority() {
-		return (s1, s2) -> {
-			boolean priority1 = parentPriorityKeywords.stream().anyMatch(s -> StringUtils.containsIgnoreCase(s1, s));
-			boolean priority2 = parentPriorityKeywords.stream().anyMatch(s -> StringUtils.containsIgnoreCase(s2, s));
-			return priority1 && !priority2 ? -1 : priority1 == priority2 ? 0 : 1;
-		};
+	protected int parentPriority(String url) {
+		for(String k : parentPriorityKeywords) {
+			if(StringUtils.containsIgnoreCase(url, k)) {
+				return 0;
+			}
+		}
+		return 1;
 	}
 
 	@Override
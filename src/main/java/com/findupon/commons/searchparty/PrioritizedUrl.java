@@ -0,0 +1,51 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.searchparty;
+
+import java.util.Comparator;
+
+
+/**
+ * A URL in the crawl frontier along with its priority, worked out once when the URL is found. Lower keys are visited first and
+ * URLs with equal keys compare as equal, the same as the keyword comparators this replaced. The adjacency map keeps one
+ * parent per priority because of it, as it always has.
+ */
+final class PrioritizedUrl {
+	static final Comparator<PrioritizedUrl> order = (u1, u2) -> Integer.compare(u1.priority, u2.priority);
+
+	private final String url;
+	private final int priority;
+
+
+	PrioritizedUrl(String url, int priority) {
+		this.url = url;
+		this.priority = priority;
+	}
+
+	String getUrl() {
+		return url;
+	}
+
+	int getPriority() {
+		return priority;
+	}
+
+	@Override
+	public String toString() {
+		return url;
+	}
+}
@@ -16,6 +16,7 @@
 
 package com.findupon.commons.searchparty;
 
+import com.google.common.net.InternetDomainName;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 import org.apache.commons.validator.routines.DomainValidator;
@@ -381,6 +382,54 @@ public final class ScoutServices {
 		return domain.startsWith("www.") ? domain.substring(4) : domain;
 	}
 
+	/**
+	 * The indexed data source lookup key: the registrable domain of the URL's host, lowercased without www.
+	 * (shop.example.co.uk -> example.co.uk). Hosts not under a known public suffix (IPs, localhost) are kept whole.
+	 *
+	 * @return null if no host could be parsed
+	 */
+	public static String getHostKey(String url) {
+		if(StringUtils.isBlank(url)) {
+			return null;
+		}
+		String host;
+		try {
+			host = new URL(url.contains("://") ? encodeSpacing(url.trim(), true) : "http://" + encodeSpacing(url.trim(), true)).getHost();
+		} catch(MalformedURLException e) {
+			return null;
+		}
+		if(StringUtils.isBlank(host)) {
+			return null;
+		}
+		host = StringUtils.removeStart(StringUtils.removeEnd(host.toLowerCase(), "."), "www.");
+		if(InternetDomainName.isValid(host)) {
+			InternetDomainName domainName = InternetDomainName.from(host);
+			if(domainName.isUnderPublicSuffix()) {
+				return domainName.topPrivateDomain().toString();
+			}
+		}
+		return host;
+	}
+
+	/**
+	 * What data source URLs are compared by when checking for duplicates: lowercased, without the protocol, www. or a trailing
+	 * slash. Two URLs are the same site when these are equal, the {@link #getHostKey host key} narrows down the candidates.
+	 */
+	public static String getComparableUrl(String url) {
+		if(StringUtils.isBlank(url)) {
+			return null;
+		}
+		String comparable = url.trim().toLowerCase();
+		if(comparable.contains("://")) {
+			comparable = StringUtils.substringAfter(comparable, "://");
+		}
+		comparable = StringUtils.removeStart(comparable, "www.");
+		while(comparable.endsWith("/")) {
+			comparable = comparable.substring(0, comparable.length() - 1);
+		}
+		return comparable;
+	}
+
 	public static String getDomainName(String url) {
 		URL urlObj = getUrlFromString(url, false);
 		if(urlObj == null) {
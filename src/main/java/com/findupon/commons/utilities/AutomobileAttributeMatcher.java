@@ -26,11 +26,14 @@ import com.findupon.commons.entity.product.automotive.AutomobileModel;
 import com.findupon.commons.entity.product.automotive.AutomobileTrim;
 import com.findupon.utilities.PermutableAttribute;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.math.NumberUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
-import java.sql.SQLException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
@@ -58,6 +61,27 @@ public class AutomobileAttributeMatcher {
 		checkLoad();
 	}
 
+	/**
+	 * Load from a fixture instead of the database, for running the parsers offline. One row per line, tab separated, the first
+	 * column names the table the rest of the row comes from:
+	 * <pre>
+	 * attribute  make_id make model_id model allow_direct_trim_match allow_trim_concat_match price_min price_max year_min year_max trim_id trim
+	 * fuel       model_id fuel_id
+	 * transmission / drivetrain / body  model_id id
+	 * </pre>
+	 * Blank lines and lines starting with # are skipped, a missing trim is an empty trim_id and trim. The attributes are static,
+	 * whichever of the database or a fixture loads first is what every instance sees.
+	 */
+	public AutomobileAttributeMatcher(Reader fixture) throws IOException {
+		this.jdbcTemplate = null;
+		synchronized(loadLock) {
+			if(!loadLock.get()) {
+				loadLock.set(true);
+				loadFixture(fixture);
+			}
+		}
+	}
+
 	private void loadAttributes() {
 		if(loadLock.get()) {
 			return;
@@ -70,34 +94,12 @@ public class AutomobileAttributeMatcher {
 				" left join automobile_model_trim tr on mo.id = tr.model_id" +
 				" left join automobile_model_price_range pr on mo.id = pr.model_id" +
 				" left join automobile_model_year_range yr on mo.id = yr.model_id", rs -> {
-			int makeId = rs.getInt("make_id");
-			int modelId = rs.getInt("model_id");
-			int trimId = rs.getInt("trim_id");
-			String trim = rs.getString("trim");
-			fullAttributeMap.computeIfAbsent(makeId, x -> {
-				try {
-					String make = rs.getString("make");
-					quickMakeMap.putIfAbsent(makeId, make);
-					return new AutomobileMake(make);
-				} catch(SQLException e) {
-					throw new RuntimeException(e);
-				}
-			}).getChildren().computeIfAbsent(modelId, x -> {
-				try {
-					AutomobileModel automobileModel = new AutomobileModel(rs.getString("model"), rs.getBoolean("dtm"), rs.getBoolean("acm"));
-					automobileModel.setMinYear(rs.getInt("year_min"));
-					automobileModel.setMaxYear(rs.getInt("year_max"));
-					automobileModel.setMinPrice(rs.getInt("price_min"));
-					automobileModel.setMaxPrice(rs.getInt("price_max"));
-					quickModelMap.putIfAbsent(modelId, automobileModel.getAttribute());
-					return automobileModel;
-				} catch(SQLException e) {
-					throw new RuntimeException(e);
-				}
-			}).getChildren().computeIfAbsent(trimId, x -> {
-				quickTrimMap.putIfAbsent(trimId, trim);
-				return new AutomobileTrim(trim);
-			});
+			AutomobileModel model = new AutomobileModel(rs.getString("model"), rs.getBoolean("dtm"), rs.getBoolean("acm"));
+			model.setMinYear(rs.getInt("year_min"));
+			model.setMaxYear(rs.getInt("year_max"));
+			model.setMinPrice(rs.getInt("price_min"));
+			model.setMaxPrice(rs.getInt("price_max"));
+			putAttribute(rs.getInt("make_id"), rs.getString("make"), rs.getInt("model_id"), model, rs.getInt("trim_id"), rs.getString("trim"));
 		});
 		computePermutations(fullAttributeMap);
 		jdbcTemplate.query("select model_id, fuel_id from automobile_model_fuel_xref", rs -> {
@@ -114,6 +116,55 @@ public class AutomobileAttributeMatcher {
 		});
 	}
 
+	private void loadFixture(Reader fixture) throws IOException {
+		BufferedReader reader = new BufferedReader(fixture);
+		String line;
+		while((line = reader.readLine()) != null) {
+			if(StringUtils.isBlank(line) || line.startsWith("#")) {
+				continue;
+			}
+			String[] row = line.split("\t", -1);
+			switch(row[0]) {
+				case "attribute":
+					AutomobileModel model = new AutomobileModel(row[4], "1".equals(row[5]), "1".equals(row[6]));
+					model.setMinPrice(NumberUtils.toInt(row[7]));
+					model.setMaxPrice(NumberUtils.toInt(row[8]));
+					model.setMinYear(NumberUtils.toInt(row[9]));
+					model.setMaxYear(NumberUtils.toInt(row[10]));
+					putAttribute(Integer.parseInt(row[1]), row[2], Integer.parseInt(row[3]), model, NumberUtils.toInt(row[11]), StringUtils.trimToNull(row[12]));
+					break;
+				case "fuel":
+					modelFuelMap.computeIfAbsent(Integer.parseInt(row[1]), x -> new ArrayList<>()).add(Fuel.of(Integer.parseInt(row[2])));
+					break;
+				case "transmission":
+					modelTransmissionMap.computeIfAbsent(Integer.parseInt(row[1]), x -> new ArrayList<>()).add(Transmission.of(Integer.parseInt(row[2])));
+					break;
+				case "drivetrain":
+					modelDrivetrainMap.computeIfAbsent(Integer.parseInt(row[1]), x -> new ArrayList<>()).add(Drivetrain.of(Integer.parseInt(row[2])));
+					break;
+				case "body":
+					modelBodyMap.computeIfAbsent(Integer.parseInt(row[1]), x -> new ArrayList<>()).add(Body.of(Integer.parseInt(row[2])));
+					break;
+				default:
+					throw new IOException("Unknown fixture table [" + row[0] + "]");
+			}
+		}
+		computePermutations(fullAttributeMap);
+	}
+
+	private static void putAttribute(int makeId, String make, int modelId, AutomobileModel model, int trimId, String trim) {
+		fullAttributeMap.computeIfAbsent(makeId, x -> {
+			quickMakeMap.putIfAbsent(makeId, make);
+			return new AutomobileMake(make);
+		}).getChildren().computeIfAbsent(modelId, x -> {
+			quickModelMap.putIfAbsent(modelId, model.getAttribute());
+			return model;
+		}).getChildren().computeIfAbsent(trimId, x -> {
+			quickTrimMap.putIfAbsent(trimId, trim);
+			return new AutomobileTrim(trim);
+		});
+	}
+
 	private void computePermutations(Map<Integer, PermutableAttribute> attributeMap) {
 		for(Map.Entry<Integer, PermutableAttribute> entry : attributeMap.entrySet()) {
 			PermutableAttribute a = entry.getValue();
@@ -16,12 +16,19 @@
 
 package com.findupon.commons.utilities;
 
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.findupon.cluster.entity.ClusterTransmission;
 import com.findupon.cluster.entity.worker.NodeMessage;
+import com.findupon.commons.entity.datasource.AssetType;
 import com.findupon.commons.entity.datasource.DataSource;
 import com.findupon.commons.entity.datasource.DataSourceStatus;
 import com.findupon.commons.entity.datasource.DataSourceStatusReason;
+import com.findupon.commons.entity.datasource.DataSourceType;
+import com.findupon.commons.netops.entity.AgentMode;
+import com.findupon.commons.netops.entity.ProxyMode;
 import com.findupon.commons.repository.datasource.DataSourceRepo;
+import com.findupon.commons.searchparty.ScoutServices;
 import org.apache.commons.lang3.BooleanUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,8 +37,12 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Objects;
+import java.util.StringJoiner;
 import java.util.concurrent.atomic.LongAdder;
 
 import static com.findupon.cluster.entity.master.MasterNodeObjects.*;
@@ -204,6 +215,76 @@ public class DataSourceOperations {
 		jdbcTemplate.update("update data_source set staged = 0 where staged = 1");
 	}
 
+	/**
+	 * Insert new data sources with multi-row inserts, leaving any whose URL is already present as it is. Only the unique URL key
+	 * is let through, a truncated value or a missing column still fails the chunk. The driver counts a row it found as affected
+	 * whether or not it was inserted, so the ones already present are counted on the URL key before each chunk is written.
+	 *
+	 * @return the number actually inserted, give or take another writer inserting the same URLs in between
+	 */
+	public int bulkInsertNew(Collection<DataSource> dataSources) {
+		int inserted = 0;
+		for(List<DataSource> chunk : Iterables.partition(dataSources, 500)) {
+			StringJoiner values = new StringJoiner(",");
+			StringJoiner hashes = new StringJoiner(",");
+			List<Object> urls = new ArrayList<>(chunk.size());
+			List<Object> params = new ArrayList<>(chunk.size() * 15);
+			for(DataSource dataSource : chunk) {
+				values.add("(?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
+				hashes.add("unhex(md5(?))");
+				urls.add(dataSource.getUrl());
+				params.add(dataSource.getCreated());
+				params.add(dataSource.getUrl());
+				params.add(dataSource.getHostKey());
+				params.add(new AssetType.ConverterImpl().convertToDatabaseColumn(dataSource.getAssetType()));
+				params.add(new DataSourceType.ConverterImpl().convertToDatabaseColumn(dataSource.getDataSourceType()));
+				params.add(dataSource.getTotalRuns());
+				params.add(dataSource.getStaged());
+				params.add(dataSource.getRunning());
+				params.add(dataSource.getIndexOnly());
+				params.add(dataSource.getTemporaryDisable());
+				params.add(dataSource.getPermanentDisable());
+				params.add(dataSource.getDaysBetweenRuns());
+				params.add(dataSource.getCrawlRate());
+				params.add(new ProxyMode.ConverterImpl().convertToDatabaseColumn(dataSource.getProxyMode()));
+				params.add(new AgentMode.ConverterImpl().convertToDatabaseColumn(dataSource.getAgentMode()));
+			}
+			try {
+				Integer present = jdbcTemplate.queryForObject("select count(*) from data_source where url_hash in (" + hashes + ")",
+						Integer.class, urls.toArray());
+				jdbcTemplate.update("insert into data_source(created, url, host_key, asset_type_id, data_source_type_id, " +
+						"total_runs, staged, running, index_only, temp_disabled, perm_disabled, days_between_runs, crawl_rate, proxy_mode, agent_mode) " +
+						"values " + values + " on duplicate key update id = id", params.toArray());
+				inserted += chunk.size() - (present == null ? 0 : present);
+			} catch(Exception e) {
+				logger.error("[DataSourceOperations] - Error during bulk data source insert", e);
+				throw e;
+			}
+		}
+		return inserted;
+	}
+
+	/**
+	 * Fill in the host key of data sources written before it existed or by plain SQL. The key needs the public suffix list, so
+	 * it is computed here rather than in the migration.
+	 *
+	 * @return the number of data sources updated
+	 */
+	public int backfillHostKeys() {
+		List<Object[]> updates = new ArrayList<>();
+		jdbcTemplate.query("select id, url from data_source where host_key is null", rs -> {
+			String hostKey = ScoutServices.getHostKey(rs.getString("url"));
+			if(hostKey != null) {
+				updates.add(new Object[]{hostKey, rs.getLong("id")});
+			}
+		});
+		for(List<Object[]> batch : Lists.partition(updates, 1000)) {
+			jdbcTemplate.batchUpdate("update data_source set host_key = ? where id = ?", batch);
+		}
+		logger.info("[DataSourceOperations] - Host keys backfilled [{}]", updates.size());
+		return updates.size();
+	}
+
 	public void calculateAndUpdateDataSourceStats(DataSource dataSource, long secondsTaken, int productsBuilt,
 	                                              long visitedUrls, long analyzedUrls, BigDecimal downloadedMb) {
 		if(dataSource.getTotalRuns() == null) {
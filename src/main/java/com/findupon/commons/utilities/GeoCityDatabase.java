@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.utilities;
+
+import com.maxmind.geoip.InvalidDatabaseException;
+import com.maxmind.geoip.Location;
+import com.maxmind.geoip.LookupService;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+
+/**
+ * Read only view of a legacy GeoIP City database (rev0 or rev1) mapped straight from the file, the same answers as
+ * {@link LookupService#getLocation(String)} without copying the file onto the heap or taking its monitor. Every read is an
+ * absolute get on the shared mapping so any number of threads can look up at once. IPv4 only, other addresses have no
+ * location.
+ */
+public final class GeoCityDatabase {
+	private static final int cityRev0 = 6;
+	private static final int cityRev1 = 2;
+	private static final int recordLength = 3;
+	private static final int maxRecordLength = 60;
+	private static final int structureInfoMaxSize = 20;
+
+	private final ByteBuffer buffer;
+	private final int type;
+	private final int segments;
+	private final String[] countryCodes;
+	private final String[] countryNames;
+
+
+	private GeoCityDatabase(ByteBuffer buffer, int type, int segments, String[] countryCodes, String[] countryNames) {
+		this.buffer = buffer;
+		this.type = type;
+		this.segments = segments;
+		this.countryCodes = countryCodes;
+		this.countryNames = countryNames;
+	}
+
+	public static GeoCityDatabase open(Path path) throws IOException {
+		ByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		// the country tables are static in the library, borrow them from a throwaway instance rather than copy them here
+		LookupService lookupService = new LookupService(path.toFile(), LookupService.GEOIP_STANDARD);
+		List<String> codes, names;
+		try {
+			codes = lookupService.getAllCountryCodes();
+			names = lookupService.getAllCountryNames();
+		} finally {
+			lookupService.close();
+		}
+		for(int x = buffer.limit() - 3, tries = 0; x >= 0 && tries < structureInfoMaxSize; x--, tries++) {
+			if(unsigned(buffer, x) == 0xFF && unsigned(buffer, x + 1) == 0xFF && unsigned(buffer, x + 2) == 0xFF) {
+				int type = unsigned(buffer, x + 3);
+				if(type >= 106) {
+					type -= 105;
+				}
+				if(type != cityRev0 && type != cityRev1) {
+					throw new IOException("Not a GeoIP City database, type " + type + " [" + path + "]");
+				}
+				return new GeoCityDatabase(buffer, type, readInt(buffer, x + 4, 3),
+						codes.toArray(new String[0]), names.toArray(new String[0]));
+			}
+		}
+		throw new IOException("No structure info, not a GeoIP City database [" + path + "]");
+	}
+
+	/**
+	 * @return null when the address does not resolve, is not IPv4 or is not in the database
+	 */
+	public Location getLocation(String host) {
+		try {
+			return getLocation(InetAddress.getByName(host));
+		} catch(UnknownHostException e) {
+			return null;
+		}
+	}
+
+	public Location getLocation(InetAddress address) {
+		if(!(address instanceof Inet4Address)) {
+			return null;
+		}
+		byte[] bytes = address.getAddress();
+		long ip = 0;
+		for(byte b : bytes) {
+			ip = ip << 8 | (b & 0xFF);
+		}
+		return getLocation(ip);
+	}
+
+	public Location getLocation(long ip) {
+		return readCityRecord(seekCountry(ip));
+	}
+
+	private int seekCountry(long ip) {
+		int offset = 0;
+		for(int depth = 31; depth >= 0; depth--) {
+			int node = 2 * recordLength * offset;
+			int next = (ip & (1L << depth)) > 0
+					? readInt(buffer, node + recordLength, recordLength)
+					: readInt(buffer, node, recordLength);
+			if(next >= segments) {
+				return next;
+			}
+			offset = next;
+		}
+		throw new InvalidDatabaseException("Error seeking country while searching for " + ip);
+	}
+
+	private Location readCityRecord(int seek) {
+		if(seek == segments) {
+			return null;
+		}
+		int start = seek + (2 * recordLength - 1) * segments;
+		int limit = Math.min(buffer.limit(), start + maxRecordLength);
+
+		Location location = new Location();
+		int country = unsigned(buffer, start);
+		location.countryCode = countryCodes[country];
+		location.countryName = countryNames[country];
+		int x = start + 1;
+		int end = terminator(x, limit);
+		location.region = readString(x, end);
+		x = end + 1;
+		end = terminator(x, limit);
+		location.city = readString(x, end);
+		x = end + 1;
+		end = terminator(x, limit);
+		location.postalCode = readString(x, end);
+		x = end + 1;
+		location.latitude = readAngle(x, limit);
+		location.longitude = readAngle(x + 3, limit);
+		if(type == cityRev1 && "US".equals(location.countryCode)) {
+			if(x + 9 > limit) {
+				throw new InvalidDatabaseException("Unexpected end of data record when reading metro area");
+			}
+			int combo = readInt(buffer, x + 6, 3);
+			location.dma_code = location.metro_code = combo / 1000;
+			location.area_code = combo % 1000;
+		}
+		return location;
+	}
+
+	private int terminator(int from, int limit) {
+		int end = from;
+		while(end < limit && buffer.get(end) != 0) {
+			end++;
+		}
+		return end;
+	}
+
+	/**
+	 * ISO-8859-1 between the offsets, empty strings are null like the library has them.
+	 */
+	private String readString(int start, int end) {
+		if(end <= start) {
+			return null;
+		}
+		byte[] bytes = new byte[end - start];
+		for(int x = 0; x < bytes.length; x++) {
+			bytes[x] = buffer.get(start + x);
+		}
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	private float readAngle(int position, int limit) {
+		if(position + 3 > limit) {
+			throw new InvalidDatabaseException("Unexpected end of data record when reading angle");
+		}
+		return readInt(buffer, position, 3) / 10000f - 180f;
+	}
+
+	private static int readInt(ByteBuffer buffer, int position, int length) {
+		int value = 0;
+		for(int x = 0; x < length; x++) {
+			value += unsigned(buffer, position + x) << (x * 8);
+		}
+		return value;
+	}
+
+	private static int unsigned(ByteBuffer buffer, int position) {
+		return buffer.get(position) & 0xFF;
+	}
+}
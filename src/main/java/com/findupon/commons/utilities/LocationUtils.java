@@ -16,32 +16,47 @@
 
 package com.findupon.commons.utilities;
 
-import com.findupon.commons.utilities.NetworkUtils;
-import com.maxmind.geoip.Location;
-import com.maxmind.geoip.LookupService;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.findupon.commons.netops.entity.Proxy;
+import com.maxmind.geoip.Location;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.File;
 import java.io.IOException;
+import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
 
 
 public final class LocationUtils {
-	private static final LookupService lookupService = loadLookupService();
-	private static final Map<String, Location> ipLocationCache = Collections.synchronizedMap(new HashMap<>());
+	private static final Logger logger = LoggerFactory.getLogger(LocationUtils.class);
+	private static final GeoCityDatabase database = loadDatabase();
+	private static final Cache<String, Optional<Location>> ipLocationCache = CacheBuilder.newBuilder()
+			.maximumSize(50_000)
+			.concurrencyLevel(16)
+			.build();
 	private static final Set<String> local = new HashSet<>(Arrays.asList("127.0.0.1", "0:0:0:0:0:0:0:1"));
 	private static Location currentLocation;
-	private static Proxy currentClosestProxy;
 
 
-	private static LookupService loadLookupService() {
+	/**
+	 * Mapped rather than read into memory, it is read only and shared by every lookup without a lock. Without the resource
+	 * every lookup is null, nothing depends on a location to run.
+	 */
+	private static GeoCityDatabase loadDatabase() {
 		URL url = LocationUtils.class.getResource("/geo-city.dat");
-		File geo = new File(url.getFile());
+		if(url == null) {
+			logger.error("[LocationUtils] - No geo-city.dat resource, IP locations are unavailable");
+			return null;
+		}
 		try {
-			return new LookupService(geo, LookupService.GEOIP_MEMORY_CACHE | LookupService.GEOIP_CHECK_CACHE);
-		} catch(IOException e) {
+			return GeoCityDatabase.open(Paths.get(url.toURI()));
+		} catch(IOException | URISyntaxException e) {
 			throw new RuntimeException("Could not load geo-city.dat resource", e);
 		}
 	}
@@ -54,17 +69,14 @@ public final class LocationUtils {
 	}
 
 	public static Location getLocation(String ipAddress) {
-		if(StringUtils.isBlank(ipAddress)) {
+		if(StringUtils.isBlank(ipAddress) || database == null) {
 			return null;
 		}
-		return ipLocationCache.computeIfAbsent(ipAddress, l -> lookupService.getLocation(ipAddress));
-	}
-
-	public static Proxy findClosestProxyToCurrentLocation() {
-		if(currentClosestProxy == null) {
-			currentClosestProxy = findClosestProxy(getCurrentLocation());
+		try {
+			return ipLocationCache.get(ipAddress, () -> Optional.ofNullable(database.getLocation(ipAddress))).orElse(null);
+		} catch(ExecutionException | UncheckedExecutionException e) {
+			throw new RuntimeException("Error looking up location of [" + ipAddress + "]", e.getCause());
 		}
-		return currentClosestProxy;
 	}
 
 	public static Proxy findClosestProxy(Location location) {
@@ -74,6 +86,9 @@ public final class LocationUtils {
 		Proxy closest = null;
 		double minDistance = Double.MAX_VALUE;
 		for(Proxy proxy : Proxy.getPrivateProxies()) {
+			if(proxy.getLocation() == null) {
+				continue;
+			}
 			double dist = location.distance(proxy.getLocation());
 			if(dist < minDistance) {
 				closest = proxy;
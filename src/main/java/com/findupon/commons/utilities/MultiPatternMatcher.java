@@ -0,0 +1,200 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.utilities;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+
+
+/**
+ * Case insensitive substring search for many patterns at once (Aho-Corasick), one pass over the text no matter how many
+ * patterns. Patterns are registered in groups of up to 32 and {@link #match} answers which groups had any pattern appear, the
+ * same as calling {@code StringUtils.containsIgnoreCase} for every pattern of every group. Patterns must be ASCII (see
+ * {@link #isSupported}), text is folded per character the way {@link String#regionMatches(boolean, int, String, int, int)}
+ * does so non-ASCII look-alikes (i.e. the Kelvin sign) still match.
+ * <p>
+ * Build once and share, matching is thread safe.
+ */
+public final class MultiPatternMatcher {
+	private static final int alphabet = 128;
+
+	private final short[] classes;
+	private final int width;
+	private final int[] transitions;
+	private final int[] outputs;
+
+
+	private MultiPatternMatcher(short[] classes, int width, int[] transitions, int[] outputs) {
+		this.classes = classes;
+		this.width = width;
+		this.transitions = transitions;
+		this.outputs = outputs;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return the bits of every group with a pattern in the text, 0 for none
+	 */
+	public int match(CharSequence text) {
+		return match(text, -1);
+	}
+
+	/**
+	 * @param stopGroups return as soon as all of these groups have matched
+	 */
+	public int match(CharSequence text, int stopGroups) {
+		if(text == null) {
+			return 0;
+		}
+		int state = 0;
+		int found = 0;
+		for(int x = 0; x < text.length(); x++) {
+			char c = fold(text.charAt(x));
+			state = c < alphabet ? transitions[state * width + classes[c]] : 0;
+			found |= outputs[state];
+			if((found & stopGroups) == stopGroups) {
+				break;
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * @return false for patterns the builder will not take, check them with containsIgnoreCase instead
+	 */
+	public static boolean isSupported(String pattern) {
+		if(pattern == null || pattern.isEmpty()) {
+			return false;
+		}
+		for(int x = 0; x < pattern.length(); x++) {
+			if(pattern.charAt(x) >= alphabet) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static char fold(char c) {
+		if(c < alphabet) {
+			return c >= 'A' && c <= 'Z' ? (char)(c + ('a' - 'A')) : c;
+		}
+		char folded = Character.toLowerCase(Character.toUpperCase(c));
+		return folded < alphabet ? folded : c;
+	}
+
+	/**
+	 * Patterns are held until {@link #build} so the transition table only needs a column for the characters they use, every
+	 * other character (class 0) sends the matcher back to the root. Keeps tens of thousands of patterns to a few megabytes.
+	 */
+	public static final class Builder {
+		private final List<String> patterns = new ArrayList<>();
+		private final List<Integer> groups = new ArrayList<>();
+
+		private Builder() {
+		}
+
+		/**
+		 * @param group 0-31, the bit set in {@link #match} results when any of the patterns is found
+		 */
+		public Builder add(int group, Collection<String> patterns) {
+			if(group < 0 || group > 31) {
+				throw new IllegalArgumentException("Group must be between 0 and 31");
+			}
+			for(String pattern : patterns) {
+				if(pattern == null || pattern.isEmpty()) {
+					throw new IllegalArgumentException("Empty pattern");
+				}
+				char[] folded = new char[pattern.length()];
+				for(int x = 0; x < pattern.length(); x++) {
+					folded[x] = fold(pattern.charAt(x));
+					if(folded[x] >= alphabet) {
+						throw new IllegalArgumentException("Patterns must be ASCII [" + pattern + "]");
+					}
+				}
+				this.patterns.add(new String(folded));
+				this.groups.add(group);
+			}
+			return this;
+		}
+
+		public Builder add(int group, String... patterns) {
+			return add(group, Arrays.asList(patterns));
+		}
+
+		/**
+		 * Build the trie, then fill in the failure links so every state has a transition for every character class.
+		 */
+		public MultiPatternMatcher build() {
+			short[] classes = new short[alphabet]; // a byte would wrap past 127 classes
+			int width = 1;
+			for(String pattern : patterns) {
+				for(int x = 0; x < pattern.length(); x++) {
+					if(classes[pattern.charAt(x)] == 0) {
+						classes[pattern.charAt(x)] = (short)width++;
+					}
+				}
+			}
+			int[] transitions = new int[16 * width];
+			int[] outputs = new int[16];
+			int size = 1;
+			for(int p = 0; p < patterns.size(); p++) {
+				String pattern = patterns.get(p);
+				int state = 0;
+				for(int x = 0; x < pattern.length(); x++) {
+					int index = state * width + classes[pattern.charAt(x)];
+					if(transitions[index] == 0) {
+						if(size == outputs.length) {
+							transitions = Arrays.copyOf(transitions, size * 2 * width);
+							outputs = Arrays.copyOf(outputs, size * 2);
+						}
+						transitions[index] = size++;
+					}
+					state = transitions[index];
+				}
+				outputs[state] |= 1 << groups.get(p);
+			}
+			int[] failure = new int[size];
+			Deque<Integer> queue = new ArrayDeque<>();
+			for(int c = 1; c < width; c++) {
+				if(transitions[c] != 0) {
+					queue.add(transitions[c]);
+				}
+			}
+			while(!queue.isEmpty()) {
+				int state = queue.poll();
+				outputs[state] |= outputs[failure[state]];
+				for(int c = 1; c < width; c++) {
+					int next = transitions[state * width + c];
+					if(next != 0) {
+						failure[next] = transitions[failure[state] * width + c];
+						queue.add(next);
+					} else {
+						transitions[state * width + c] = transitions[failure[state] * width + c];
+					}
+				}
+			}
+			return new MultiPatternMatcher(classes, width, Arrays.copyOf(transitions, size * width), Arrays.copyOf(outputs, size));
+		}
+	}
+}
@@ -17,8 +17,10 @@
 package com.findupon.datasource.bot;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Striped;
 import com.findupon.commons.entity.datasource.AssetType;
-import com.findupon.commons.entity.datasource.DataSource;
+import com.findupon.commons.searchparty.ScoutServices;
 import com.findupon.commons.utilities.*;
 import crawlercommons.robots.BaseRobotRules;
 import org.apache.commons.lang3.StringUtils;
@@ -30,6 +32,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.stream.Collectors;
 
 import static com.findupon.commons.utilities.ConsoleColors.red;
 
@@ -38,15 +48,28 @@ import static com.findupon.commons.utilities.ConsoleColors.red;
 public abstract class AbstractDealerRetrievalBot {
 	protected final Logger logger = LoggerFactory.getLogger(getClass());
 	protected long baseCrawlRateMillis = 2000L;
+	// least time between the verification connections to one registrable domain
+	protected long verificationDelayMillis = 2000L;
 	protected BaseRobotRules rules;
-	private final int batchUpdateThreshold = 200;
+	protected int batchUpdateThreshold = 200;
+	private final int hostKeyLookupSize = 500;
+	private final int verificationThreads = 16;
 
 	protected final Set<String> potentialUrls = Collections.synchronizedSet(new TreeSet<>(String.CASE_INSENSITIVE_ORDER));
 	private final Set<String> dealerUrls = Collections.synchronizedSet(new TreeSet<>(String.CASE_INSENSITIVE_ORDER));
+	// comparable URLs (see ScoutServices.getComparableUrl) of the sites in the DB under the host keys looked up so far, plus those created
+	private final Set<String> knownSites = ConcurrentHashMap.newKeySet();
+	private final Set<String> loadedHostKeys = ConcurrentHashMap.newKeySet();
+	// one verification connection at a time per registrable domain
+	private final Striped<Lock> hostLocks = Striped.lazyWeakLock(1024);
+	private final Map<String, Long> lastVerifications = new ConcurrentHashMap<>();
+	private final Semaphore verificationPermits = new Semaphore(verificationThreads * 4);
+	private volatile ExecutorService verificationService;
 	private long previousCount = 0;
 	private int created = 0, existing = 0;
 
 	@Autowired protected com.findupon.commons.repository.datasource.DataSourceRepo dataSourceRepo;
+	@Autowired private com.findupon.commons.utilities.DataSourceOperations dataSourceOperations;
 	@Autowired protected com.findupon.commons.utilities.AutomobileAttributeMatcher attributeMatcher;
 	@Autowired private com.findupon.commons.utilities.SlackMessenger slackMessenger;
 	private com.findupon.commons.learning.AssetRecognizer assetRecognizer = null;
@@ -65,11 +88,11 @@ public abstract class AbstractDealerRetrievalBot {
 	public void run() {
 		Stopwatch stopwatch = Stopwatch.createStarted();
 		previousCount = dataSourceRepo.count();
+		verificationService = Executors.newFixedThreadPool(verificationThreads);
 		try {
 			obtainDatasourceUrls();
-			if(!dealerUrls.isEmpty()) {
-				createOrUpdateBatch();
-			}
+			awaitVerification();
+			flushDealerUrls();
 			slackMessenger.sendMessageWithArgs("Dealer Retrieval (%s) run complete. %n```" +
 							"Previous total:  [%d] %n" +
 							"New total:       [%d] %n" +
@@ -77,6 +100,10 @@ public abstract class AbstractDealerRetrievalBot {
 					getSourceName(), previousCount, dataSourceRepo.count(), com.findupon.commons.utilities.TimeUtils.format(stopwatch));
 		} catch(Exception e) {
 			logger.error(red("[AbstractDealerRetrievalBot] - Unhandled exception during [{}] run! Time taken [{}]"), getSourceName(), com.findupon.commons.utilities.TimeUtils.format(stopwatch), e);
+		} finally {
+			verificationService.shutdownNow();
+			verificationService = null;
+			lastVerifications.clear();
 		}
 	}
 
@@ -88,17 +115,8 @@ public abstract class AbstractDealerRetrievalBot {
 			String url = com.findupon.commons.searchparty.ScoutServices.parseByProtocolAndHost(potentialUrl);
 			if(url != null) {
 				// search the pre-redirected url first to save a connection if we already have it
-				if(dataSourceRepo.searchByUrl(url).isEmpty()) {
-					url = connectAndVerifyDealerUrl(url);
-					if(url != null && dealerUrls.add(url)) {
-						logger.debug("[AbstractDealerRetrievalBot] - Connected & verified dealer: [{}] ", url);
-					}
-					synchronized(dealerUrls) {
-						if(dealerUrls.size() >= batchUpdateThreshold) {
-							createOrUpdateBatch();
-							dealerUrls.clear();
-						}
-					}
+				if(!isKnownSite(url)) {
+					submitVerification(url);
 				} else {
 					logger.debug("[AbstractDealerRetrievalBot] - URL already existing in DB, not adding [{}] ", url);
 				}
@@ -106,19 +124,124 @@ public abstract class AbstractDealerRetrievalBot {
 		}
 	}
 
-	private void createOrUpdateBatch() {
-		for(String dataSourceUrl : dealerUrls) {
-			List<DataSource> dataSources = dataSourceRepo.searchByUrl(dataSourceUrl);
-			if(dataSources.isEmpty()) {
-				dataSourceRepo.save(com.findupon.commons.entity.datasource.DataSource.createNew(dataSourceUrl, com.findupon.commons.entity.datasource.AssetType.AUTOMOBILE, com.findupon.commons.entity.datasource.DataSourceType.GENERIC));
-				created++;
-				if(created % 25 == 0) {
-					logger.debug("[AbstractDealerRetrievalBot] - Created [{}]", created);
+	/**
+	 * Hand the URL to the verification pool, blocking the caller once enough are queued so discovery can't run ahead of it.
+	 * Outside of a run the URL is verified on the calling thread.
+	 */
+	private void submitVerification(String url) {
+		ExecutorService service = verificationService;
+		if(service == null) {
+			verify(url);
+			return;
+		}
+		verificationPermits.acquireUninterruptibly();
+		try {
+			service.execute(() -> {
+				try {
+					verify(url);
+				} catch(Exception e) {
+					logger.warn("[AbstractDealerRetrievalBot] - Error verifying dealer [{}]", url, e);
+				} finally {
+					verificationPermits.release();
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			verificationPermits.release();
+			verify(url);
+		}
+	}
+
+	/**
+	 * Verify under the lock of the URL's registrable domain, waiting out the delay since its last verification first. The wait
+	 * holds a pool thread, the other domains carry on with the rest.
+	 */
+	private void verify(String url) {
+		String hostKey = StringUtils.defaultString(ScoutServices.getHostKey(url), url);
+		Lock lock = hostLocks.get(hostKey);
+		lock.lock();
+		try {
+			Long last = lastVerifications.get(hostKey);
+			if(last != null) {
+				long wait = last + verificationDelayMillis - System.currentTimeMillis();
+				if(wait > 0) {
+					Thread.sleep(wait);
 				}
+			}
+			url = connectAndVerifyDealerUrl(url);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} finally {
+			lastVerifications.put(hostKey, System.currentTimeMillis());
+			lock.unlock();
+		}
+		if(url != null && dealerUrls.add(url)) {
+			logger.debug("[AbstractDealerRetrievalBot] - Connected & verified dealer: [{}] ", url);
+			if(dealerUrls.size() >= batchUpdateThreshold) {
+				try {
+					flushDealerUrls();
+				} catch(RuntimeException e) {
+					logger.warn("[AbstractDealerRetrievalBot] - Could not write the dealer batch, keeping it for the next flush", e);
+				}
+			}
+		}
+	}
+
+	private void awaitVerification() throws InterruptedException {
+		verificationService.shutdown();
+		if(!verificationService.awaitTermination(7, TimeUnit.DAYS)) {
+			logger.warn("[AbstractDealerRetrievalBot] - Verification did not complete for [{}]", getSourceName());
+		}
+	}
+
+	/**
+	 * A batch that fails to write goes back into the dealer URLs, the final flush of the run throws if it still can't be written.
+	 */
+	private void flushDealerUrls() {
+		List<String> batch;
+		synchronized(dealerUrls) {
+			if(dealerUrls.isEmpty()) {
+				return;
+			}
+			batch = new ArrayList<>(dealerUrls);
+			dealerUrls.clear();
+		}
+		try {
+			createOrUpdateBatch(batch);
+		} catch(RuntimeException e) {
+			dealerUrls.addAll(batch);
+			throw e;
+		}
+	}
+
+	/**
+	 * Writes the new data sources in multi-row inserts. Sites already known are skipped, and the insert leaves alone the URLs
+	 * another writer got to first, so replaying a batch never creates a duplicate. If the insert fails the sites it claimed
+	 * are known no longer.
+	 */
+	private synchronized void createOrUpdateBatch(List<String> dataSourceUrls) {
+		loadKnownSites(dataSourceUrls);
+		List<com.findupon.commons.entity.datasource.DataSource> newDataSources = new ArrayList<>();
+		List<String> claimed = new ArrayList<>();
+		int skipped = 0;
+		for(String dataSourceUrl : dataSourceUrls) {
+			String comparableUrl = ScoutServices.getComparableUrl(dataSourceUrl);
+			if(knownSites.add(comparableUrl)) {
+				claimed.add(comparableUrl);
+				newDataSources.add(com.findupon.commons.entity.datasource.DataSource.createNew(dataSourceUrl, com.findupon.commons.entity.datasource.AssetType.AUTOMOBILE, com.findupon.commons.entity.datasource.DataSourceType.GENERIC));
 			} else {
-				existing++;
+				skipped++;
 			}
 		}
+		int inserted;
+		try {
+			inserted = dataSourceOperations.bulkInsertNew(newDataSources);
+		} catch(RuntimeException e) {
+			knownSites.removeAll(claimed);
+			throw e;
+		}
+		created += inserted;
+		existing += skipped + newDataSources.size() - inserted;
 		logger.info("[AbstractDealerRetrievalBot] - {} run stats:\n" +
 						"Created:    [{}]\n" +
 						"Existing:   [{}]\n" +
@@ -127,6 +250,34 @@ public abstract class AbstractDealerRetrievalBot {
 				getSourceName(), created, existing, previousCount, dataSourceRepo.count());
 	}
 
+	private boolean isKnownSite(String url) {
+		loadKnownSites(Collections.singletonList(url));
+		return knownSites.contains(ScoutServices.getComparableUrl(url));
+	}
+
+	/**
+	 * Indexed lookups, in batches, for the host keys not seen yet this run. Each host key is only ever queried once a run, so
+	 * the dedupe cost is per distinct host rather than per candidate and does not grow with the data source table.
+	 */
+	private void loadKnownSites(Collection<String> urls) {
+		List<String> hostKeys;
+		synchronized(urls) {
+			hostKeys = urls.stream()
+					.map(ScoutServices::getHostKey)
+					.filter(Objects::nonNull)
+					.filter(k -> !loadedHostKeys.contains(k))
+					.distinct()
+					.collect(Collectors.toList());
+		}
+		for(List<String> batch : Lists.partition(hostKeys, hostKeyLookupSize)) {
+			dataSourceRepo.findUrlsByHostKeyIn(batch).stream()
+					.map(ScoutServices::getComparableUrl)
+					.filter(Objects::nonNull)
+					.forEach(knownSites::add);
+			loadedHostKeys.addAll(batch);
+		}
+	}
+
 	private String connectAndVerifyDealerUrl(String url) {
 		// make sure the url is valid
 		if(!UrlValidator.getInstance().isValid(url)) {
@@ -139,7 +290,7 @@ public abstract class AbstractDealerRetrievalBot {
 			return null;
 		}
 		// connect to the url allowing re-directs and grab the new location
-		Document potentialDealerSite = com.findupon.commons.netops.ConnectionAgent.INSTANCE.stealthDownload(url).getDocument();
+		Document potentialDealerSite = download(url);
 		if(potentialDealerSite == null) {
 			return null;
 		}
@@ -162,13 +313,21 @@ public abstract class AbstractDealerRetrievalBot {
 		}
 	}
 
+	Document download(String url) {
+		return com.findupon.commons.netops.ConnectionAgent.INSTANCE.stealthDownload(url).getDocument();
+	}
+
 	private boolean isAutomobileAsset(Document potentialDealerSite) {
+		Optional<AssetType> assetType = getAssetRecognizer().determineAssetType(potentialDealerSite);
+		return assetType.isPresent() && com.findupon.commons.entity.datasource.AssetType.AUTOMOBILE.equals(assetType.get());
+	}
+
+	private synchronized com.findupon.commons.learning.AssetRecognizer getAssetRecognizer() {
 		if(assetRecognizer == null) {
 			assetRecognizer = new com.findupon.commons.learning.AssetRecognizer();
 			com.findupon.commons.utilities.SpringUtils.autowire(assetRecognizer);
 		}
-		Optional<AssetType> assetType = assetRecognizer.determineAssetType(potentialDealerSite);
-		return assetType.isPresent() && com.findupon.commons.entity.datasource.AssetType.AUTOMOBILE.equals(assetType.get());
+		return assetRecognizer;
 	}
 
 	protected Document connectAndDownload(String url, BaseRobotRules rules, long baseCrawlRateMillis) {
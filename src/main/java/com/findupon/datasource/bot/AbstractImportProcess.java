@@ -17,6 +17,8 @@
 package com.findupon.datasource.bot;
 
 import com.google.common.collect.Lists;
+import com.findupon.commons.dao.ProductDao;
+import com.findupon.commons.dao.ProductImportSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -25,6 +27,7 @@ import org.springframework.stereotype.Component;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -95,4 +98,40 @@ public abstract class AbstractImportProcess<P extends com.findupon.commons.entit
 			futures.stream().filter(f -> !f.isDone()).forEach(f -> f.cancel(true));
 		}
 	}
+
+	/**
+	 * Start a staged import for this data source. Everything passed to {@link #stage} replaces the current rows once
+	 * {@link #reconcile} is called, anything not staged is removed.
+	 */
+	protected ProductImportSession<P> openImportSession(ProductDao<P> dao) {
+		return dao.newImportSession(getDataSource().getId());
+	}
+
+	/**
+	 * @return {@code true} if the product was valid and staged, {@code false} otherwise.
+	 */
+	protected boolean stage(ProductImportSession<P> session, P product, Date now) {
+		product.setSourceUrl(getDataSource().getUrl());
+		product.setDataSourceId(getDataSource().getId());
+		if(productUtils.basicInvalidator(product)) {
+			return false;
+		}
+		productUtils.prepareForImport(product, now);
+		synchronized(session) {
+			session.add(product);
+		}
+		return true;
+	}
+
+	protected ProductImportSession.Result reconcile(ProductImportSession<P> session, Class<P> type) {
+		ProductImportSession.Result result;
+		synchronized(session) {
+			result = session.reconcile();
+		}
+		productUtils.refreshAggregatesById(type, result.getPriceChangedIds());
+		logger.info("[{}] - Import reconciled. Staged [{}] rows at [{}] rows/sec, [{}] rows/sec overall. Price changes [{}] Removed [{}]",
+				getClass().getSimpleName(), result.getStaged(), String.format("%,.0f", result.getStageRowsPerSecond()),
+				String.format("%,.0f", result.getTotalRowsPerSecond()), result.getPriceChangedIds().size(), result.getRemoved());
+		return result;
+	}
 }
@@ -18,6 +18,7 @@ package com.findupon.datasource.bot.aircraft;
 
 import com.google.common.base.Stopwatch;
 import com.neovisionaries.i18n.CountryCode;
+import com.findupon.commons.dao.ProductImportSession;
 import com.findupon.commons.entity.product.aircraft.Aircraft;
 import com.findupon.datasource.bot.AbstractImportProcess;
 import org.apache.commons.lang3.StringUtils;
@@ -29,6 +30,8 @@ import java.io.BufferedReader;
 import java.io.InputStreamReader;
 import java.net.URL;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
@@ -48,78 +51,170 @@ public class FaaImportProcess extends AbstractImportProcess<com.findupon.commons
 
 	// The URL of the FAA's zip file containing all relevant aircraft data
 	private final String sourcePath = "database/ReleasableAircraft.zip";
+	private static final int parseThreads = 4;
+	private static final int parseChunkSize = 2048;
+	private static final int progressInterval = 50_000;
+
+	// master file columns read, see the layout above parseAircraft
+	private static final int colNNumber = 0, colSerial = 1, colMmsCode = 2, colYear = 4, colName = 6, colStreet = 7,
+			colStreet2 = 8, colCity = 9, colState = 10, colZip = 11, colUniqueId = 30;
+	private static final boolean[] masterColumns = new boolean[colUniqueId + 1];
+
+	static {
+		for(int col : new int[]{colNNumber, colSerial, colMmsCode, colYear, colName, colStreet, colStreet2, colCity, colState, colZip, colUniqueId}) {
+			masterColumns[col] = true;
+		}
+	}
 
 
 	@Override
 	public void init() {
 		Stopwatch stopwatch = Stopwatch.createStarted();
-
-		List<String> ediRows = getEdiRows();
-		if(ediRows.isEmpty()) {
-			logger.error("[FaaImportProcess] - No rows parsed from aircraft file!");
-			return;
+		Set<String> mmsCodes = jdbcTemplate.queryForList("select mfr_mdl_srs_code from aircraft_faa_acftref", String.class).stream()
+				.filter(Objects::nonNull)
+				.map(String::trim)
+				.collect(Collectors.toSet());
+
+		ProductImportSession.Result result;
+		try(ProductImportSession<Aircraft> session = openImportSession(aircraftDao)) {
+			if(!streamMasterFile(session, mmsCodes)) {
+				logger.error("[FaaImportProcess] - Aircraft file not read in full, not reconciling");
+				return;
+			}
+			if(session.getStagedCount() == 0) {
+				logger.error("[FaaImportProcess] - No rows parsed from aircraft file!");
+				return;
+			}
+			result = reconcile(session, Aircraft.class);
 		}
-		List<Aircraft> aircrafts = parseAircraftEdi(ediRows);
-
-		setMeta(aircrafts);
-		logger.debug("[FaaImportProcess] - Aircraft meta setting complete, getting IDs we did not pick up");
-
-		List<Long> idsToDelete = idsWeDidNotPickup(aircrafts);
-		logger.debug("[FaaImportProcess] - IDs queued for deletion ({}), moving on to persistence", idsToDelete.size());
-
-		aircraftDao.saveAll(aircrafts);
-		logger.debug("[FaaImportProcess] - Persistence process complete, removing [{}] old aircrafts", idsToDelete.size());
-
-		aircraftDao.deleteAllById(idsToDelete);
 
 		slackMessenger.sendMessageWithArgs("FAA load process complete. %n```" +
-						"Created/ Updated:  [%s] %n" +
+						"Staged:            [%s] %n" +
+						"Price changes:     [%s] %n" +
 						"Removed:           [%s] %n" +
+						"Rows/ sec:         [%s] %n" +
 						"Total time taken:  [%s] ```",
-				String.format("%,d", aircrafts.size()), String.format("%,d", idsToDelete.size()), com.findupon.commons.utilities.TimeUtils.format(stopwatch));
+				String.format("%,d", result.getStaged()), String.format("%,d", result.getPriceChangedIds().size()),
+				String.format("%,d", result.getRemoved()), String.format("%,.0f", result.getTotalRowsPerSecond()),
+				com.findupon.commons.utilities.TimeUtils.format(stopwatch));
 	}
 
-	private List<String> getEdiRows() {
-		List<String> mmsCodes = jdbcTemplate.queryForList("select mfr_mdl_srs_code from aircraft_faa_acftref", String.class);
+	/**
+	 * Read MASTER.txt line by line off the zip stream, handing chunks of lines to a small pool which parses and stages
+	 * them. The number of chunks in flight is bounded so the file is never held in memory.
+	 *
+	 * @return {@code false} if the file could not be read in full, in which case nothing should be reconciled.
+	 */
+	private boolean streamMasterFile(ProductImportSession<Aircraft> session, Set<String> mmsCodes) {
 		String url = getDataSource().getUrl() + sourcePath;
-		logger.info("Downloading FAA files from: {}...", url);
+		logger.info("[FaaImportProcess] - Streaming FAA master file from [{}]", url);
+
+		Date now = new Date();
+		ExecutorService service = Executors.newFixedThreadPool(parseThreads);
+		Semaphore inFlight = new Semaphore(parseThreads * 2);
+		List<Future<?>> futures = new ArrayList<>();
+		LongAdder matched = new LongAdder(), staged = new LongAdder();
+		long lineNum = 0;
+		boolean complete = false;
 
-		List<String> rows = new ArrayList<>();
 		try(ZipInputStream zis = new ZipInputStream(new URL(url).openStream())) {
-			ZipEntry zipEntry = zis.getNextEntry();
-			while(zipEntry != null) {
-				if("MASTER.txt".equals(zipEntry.getName())) {
-					rows = new BufferedReader(new InputStreamReader(zis))
-							.lines()
-							.skip(0) // title row
-							.filter(row -> mmsCodes.contains(StringUtils.split(row, ",")[2]))
-							.parallel()
-							.collect(Collectors.toList());
-					logger.info("FAA rows size: [{}]", rows.size());
-					zipEntry = null;
-				} else {
-					zipEntry = zis.getNextEntry();
+			ZipEntry zipEntry;
+			while((zipEntry = zis.getNextEntry()) != null) {
+				if(!"MASTER.txt".equals(zipEntry.getName())) {
+					continue;
+				}
+				BufferedReader reader = new BufferedReader(new InputStreamReader(zis));
+				List<String> chunk = new ArrayList<>(parseChunkSize);
+				String line;
+				while((line = reader.readLine()) != null) {
+					chunk.add(line);
+					if(chunk.size() == parseChunkSize) {
+						futures.add(submitChunk(service, inFlight, chunk, lineNum - chunk.size() + 1, session, mmsCodes, now, matched, staged));
+						chunk = new ArrayList<>(parseChunkSize);
+					}
+					lineNum++;
+					if(lineNum % progressInterval == 0) {
+						logger.debug("[FaaImportProcess] - Lines read [{}] Matched [{}] Staged [{}]", lineNum, matched.longValue(), staged.longValue());
+					}
+				}
+				if(!chunk.isEmpty()) {
+					futures.add(submitChunk(service, inFlight, chunk, lineNum - chunk.size(), session, mmsCodes, now, matched, staged));
 				}
+				complete = true;
+				break;
 			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warn("[FaaImportProcess] - Interrupted streaming master file");
 		} catch(Exception e) {
-			logger.error("updateReferenceData fack", e);
+			logger.error("[FaaImportProcess] - Error streaming master file", e);
+		}
+		service.shutdown();
+		for(Future<?> future : futures) {
+			try {
+				future.get();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				service.shutdownNow();
+				return false;
+			} catch(ExecutionException e) {
+				logger.error("[FaaImportProcess] - Error parsing master file chunk", e.getCause());
+				complete = false;
+			}
 		}
-		return rows;
+		logger.info("[FaaImportProcess] - Master file lines [{}] Matched MMS codes [{}] Staged [{}]", lineNum, matched.longValue(), staged.longValue());
+		return complete;
 	}
 
-	private List<Long> idsWeDidNotPickup(List<Aircraft> aircrafts) {
-		Set<String> newListingIds = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
-		List<Long> idsToDelete = new ArrayList<>();
-		aircrafts.stream().map(com.findupon.commons.entity.product.aircraft.Aircraft::getListingId).forEach(newListingIds::add);
-		List<Aircraft> existingAircrafts = aircraftDao.findAllByDataSourceId(getDataSource().getId());
-		logger.debug("[FaaImportProcess] - Existing aircraft size [{}]", existingAircrafts.size());
-		existingAircrafts.forEach(a -> {
-			if(!newListingIds.contains(a.getListingId())) {
-				idsToDelete.add(a.getId());
+	private Future<?> submitChunk(ExecutorService service, Semaphore inFlight, List<String> rows, long firstLineNum,
+	                              ProductImportSession<Aircraft> session, Set<String> mmsCodes, Date now,
+	                              LongAdder matched, LongAdder staged) throws InterruptedException {
+		inFlight.acquire();
+		return service.submit(() -> {
+			try {
+				String[] cols = new String[masterColumns.length];
+				long lineNum = firstLineNum;
+				for(String row : rows) {
+					lineNum++;
+					if(!splitMasterColumns(row, cols)) {
+						continue;
+					}
+					String mms = cols[colMmsCode].trim();
+					if(!mmsCodes.contains(mms)) {
+						continue; // title row included
+					}
+					matched.increment();
+					Aircraft aircraft = parseAircraft(cols, mms, lineNum);
+					if(aircraft != null && stage(session, aircraft, now)) {
+						staged.increment();
+					}
+				}
+			} finally {
+				inFlight.release();
 			}
 		});
-		existingAircrafts.clear();
-		return idsToDelete;
+	}
+
+	/**
+	 * Split a master file row into only the columns we read, leaving the rest null. Columns past the last one used are
+	 * never scanned.
+	 *
+	 * @return {@code false} if the row is short any used column.
+	 */
+	static boolean splitMasterColumns(String row, String[] cols) {
+		int start = 0;
+		for(int x = 0; x < cols.length; x++) {
+			int end = row.indexOf(',', start);
+			if(end == -1) {
+				if(x < cols.length - 1) {
+					return false;
+				}
+				end = row.length();
+			}
+			cols[x] = masterColumns[x] ? row.substring(start, end) : null;
+			start = end + 1;
+		}
+		return true;
 	}
 
 	// N-NUMBER,
@@ -162,112 +257,91 @@ public class FaaImportProcess extends AbstractImportProcess<com.findupon.commons
 	// KIT MFR,
 	// KIT MODEL,
 	// MODE S CODE HEX,
-	private List<Aircraft> parseAircraftEdi(List<String> ediRows) {
-		List<Aircraft> aircrafts = new ArrayList<>();
-
-		for(int i = 0; i < ediRows.size(); i++) {
-			String row = ediRows.get(i);
-			com.findupon.commons.entity.product.aircraft.Aircraft aircraft = new com.findupon.commons.entity.product.aircraft.Aircraft();
-			String[] cols = StringUtils.split(row, ",");
+	private Aircraft parseAircraft(String[] cols, String mms, long lineNum) {
+		String regNumber = StringUtils.trimToNull(cols[colNNumber]);
+		if(regNumber == null) {
+			logger.debug("[FaaImportProcess] - Missing reg number on line [{}]", lineNum);
+			return null;
+		}
+		regNumber = "N" + regNumber;
+		Aircraft aircraft = new Aircraft();
 
-			String street1 = StringUtils.trimToNull(cols[7]);
-			String street2 = StringUtils.trimToNull(cols[8]);
-			String city = StringUtils.trimToNull(cols[9]);
-			String state = StringUtils.trimToNull(cols[10]);
+		String street1 = StringUtils.trimToNull(cols[colStreet]);
+		String street2 = StringUtils.trimToNull(cols[colStreet2]);
+		String city = StringUtils.trimToNull(cols[colCity]);
+		String state = StringUtils.trimToNull(cols[colState]);
 
-			if(street1 != null) {
-				if(street2 != null) {
-					street1 += " " + street2;
-				}
-				if(city != null) {
-					street1 += ", " + city;
-				}
-				if(state != null) {
-					com.findupon.commons.entity.building.State s = com.findupon.commons.entity.building.State.valueOfAbbreviation(state);
-					if(s != null) {
-						state = s.getAbbreviation();
-					}
-					street1 += ", " + state;
-				}
+		if(street1 != null) {
+			if(street2 != null) {
+				street1 += " " + street2;
+			}
+			if(city != null) {
+				street1 += ", " + city;
 			}
-			String zip = StringUtils.trimToNull(cols[11]);
-			Double lat = null;
-			Double lng = null;
-			if(zip != null) {
-				if(zip.length() > 5) {
-					zip = zip.substring(0, 5);
+			if(state != null) {
+				com.findupon.commons.entity.building.State s = com.findupon.commons.entity.building.State.valueOfAbbreviation(state);
+				if(s != null) {
+					state = s.getAbbreviation();
 				}
+				street1 += ", " + state;
+			}
+		}
+		String zip = StringUtils.trimToNull(cols[colZip]);
+		if(zip != null) {
+			if(zip.length() > 5) {
+				zip = zip.substring(0, 5);
+			}
+			if(street1 != null) {
 				street1 += ", " + zip;
-				Optional<Place> place = com.findupon.commons.building.AddressOperations.getNearestPlaceFromZip(zip);
-				if(place.isPresent()) {
-					lat = place.get().getLatitude();
-					lng = place.get().getLongitude();
-				}
 			}
-
-			aircraft.setListingId(StringUtils.trimToNull(cols[30]));
-
-			if(lat != null) {
+			Optional<Place> place = com.findupon.commons.building.AddressOperations.getNearestPlaceFromZip(zip);
+			if(place.isPresent()) {
+				Double lat = place.get().getLatitude();
+				Double lng = place.get().getLongitude();
 				aircraft.setLatitude(lat.floatValue());
 				aircraft.setLongitude(lng.floatValue());
 			}
-			aircraft.setCountryCode(CountryCode.US.getAlpha3());
-			aircraft.setAddress(street1);
-			aircraft.setCity(city);
-			aircraft.setZip(zip);
-			aircraft.setContactName(StringUtils.trimToNull(cols[6]));
-
-			String regNumber = StringUtils.trimToNull(cols[0]);
-			if(regNumber == null) {
-				logger.debug("[FaaImportProcess] - Missing reg number on line [{}]", i);
-				continue;
-			}
-			regNumber = "N" + regNumber;
-
-			aircraft.setRegNumber(regNumber);
-			aircraft.setUrl(getDataSource().getUrl() + "aircraftinquiry/NNum_Results.aspx?NNumbertxt=" + regNumber);
-			aircraft.setSrlNumber(cols[1].trim());
-
-			String year = StringUtils.trimToNull(cols[4]);
-			if(StringUtils.isNumeric(year) && year.matches("^\\d{4}$")) {
-				aircraft.setYear(Integer.parseInt(year));
-			}
+		}
 
-			// make model series code
-			String mms = StringUtils.trimToNull(cols[2]);
-			int catId = attributeMatcher.getCatIdFromMMS(mms);
-			if(catId > -1) {
-				aircraft.setCategoryId(catId);
-			}
-			int mkeId = attributeMatcher.getMkeIdFromMMS(mms);
-			if(mkeId > -1) {
-				aircraft.setMakeId(mkeId);
-			}
-			int mdlId = attributeMatcher.getMdlIdFromMMS(mms);
-			if(mdlId > -1) {
-				aircraft.setModelId(mdlId);
-			}
-			aircraft.setProductCondition(com.findupon.commons.entity.product.ProductCondition.USED);
+		aircraft.setListingId(StringUtils.trimToNull(cols[colUniqueId]));
+		aircraft.setCountryCode(CountryCode.US.getAlpha3());
+		aircraft.setAddress(street1);
+		aircraft.setCity(city);
+		aircraft.setZip(zip);
+		aircraft.setContactName(StringUtils.trimToNull(cols[colName]));
 
-			// num of seats
-			if(mms != null) {
-				int seats = attributeMatcher.getSeatsFromMMS(mms);
-				if(seats > -1) {
-					aircraft.setNumberOfSeats(seats);
-				}
-			}
+		aircraft.setRegNumber(regNumber);
+		aircraft.setUrl(getDataSource().getUrl() + "aircraftinquiry/NNum_Results.aspx?NNumbertxt=" + regNumber);
+		aircraft.setSrlNumber(cols[colSerial].trim());
 
-			aircrafts.add(aircraft);
+		String year = StringUtils.trimToNull(cols[colYear]);
+		if(StringUtils.isNumeric(year) && year.matches("^\\d{4}$")) {
+			aircraft.setYear(Integer.parseInt(year));
+		}
 
-			if(i % (ediRows.size() / 10) == 0 || i == ediRows.size()) {
-				logger.debug("[FaaImportProcess] - Aircraft EDI load percent complete [{}]",
-						com.findupon.commons.utilities.ConsoleColors.green(String.format("%.2f", ((float)i / ediRows.size()) * 100)));
-			}
+		// make model series code
+		int catId = attributeMatcher.getCatIdFromMMS(mms);
+		if(catId > -1) {
+			aircraft.setCategoryId(catId);
+		}
+		int mkeId = attributeMatcher.getMkeIdFromMMS(mms);
+		if(mkeId > -1) {
+			aircraft.setMakeId(mkeId);
+		}
+		int mdlId = attributeMatcher.getMdlIdFromMMS(mms);
+		if(mdlId > -1) {
+			aircraft.setModelId(mdlId);
+		}
+		aircraft.setProductCondition(com.findupon.commons.entity.product.ProductCondition.USED);
 
-			// todo, prod term id, there is an faa code for this
+		// num of seats
+		int seats = attributeMatcher.getSeatsFromMMS(mms);
+		if(seats > -1) {
+			aircraft.setNumberOfSeats(seats);
 		}
 
-		return aircrafts;
+		// todo, prod term id, there is an faa code for this
+		return aircraft;
 	}
 
 	public void updateReferenceData() {
@@ -17,6 +17,8 @@
 package com.findupon.frontier;
 
 import com.google.common.base.Stopwatch;
+import com.findupon.commons.utilities.MultiPatternMatcher;
+import com.findupon.commons.utilities.TimeUtils;
 import com.plainviewrd.commons.entity.frontier.VisitedSite;
 import com.plainviewrd.utilities.MemoryUtils;
 import crawlercommons.robots.BaseRobotRules;
@@ -34,7 +36,9 @@ import org.springframework.context.support.ClassPathXmlApplicationContext;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -48,11 +52,20 @@ import java.util.stream.Collectors;
 @Scope(value = ConfigurableBeanFactory.SCOPE_PROTOTYPE)
 public class FrontierApplication {
 	private static final Logger logger = LoggerFactory.getLogger(FrontierApplication.class);
+	private static final int frontierShards = 16;
+	private static final long politenessMillis = 30_000;
+	private static final long checkpointMillis = 60_000;
 	private final Set<String> linkPriorityKeywords = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
-	private Comparator<String> priority;
+	private final List<String> unsupportedPriorityKeywords = new ArrayList<>();
+	private MultiPatternMatcher priorityMatcher;
+	private PersistentFrontier frontier;
+	private UrlFilter insensitiveVisitedUrls;
+	private UrlFilter insensitiveDeterminedAssetUrls;
 	private final FrontierRunner frontierRunner = new FrontierRunner();
 
 	@Value("${production}") private Boolean production;
+	@Value("${frontier.directory:frontier}") private String frontierDirectory;
+	@Value("${frontier.expectedUrls:50000000}") private Long expectedUrls;
 	@Autowired private com.plainviewrd.commons.learning.AssetRecognizer assetRecognizer;
 	@Autowired private com.plainviewrd.commons.repository.frontier.VisitedSiteRepo visitedSiteRepo;
 	@Autowired private JdbcTemplate jdbcTemplate;
@@ -91,11 +104,23 @@ public class FrontierApplication {
 		linkPriorityKeywords.add("vehicle");
 		linkPriorityKeywords.add("dealer");
 		linkPriorityKeywords.add("drive");
-		priority = (s1, s2) -> {
-			boolean p1 = linkPriorityKeywords.stream().anyMatch(s -> StringUtils.containsIgnoreCase(s1, s));
-			boolean p2 = linkPriorityKeywords.stream().anyMatch(s -> StringUtils.containsIgnoreCase(s2, s));
-			return ((p1 && p2) || (!p1 && !p2)) ? s1.compareTo(s2) : p1 ? -1000 : 1000;
-		};
+		MultiPatternMatcher.Builder builder = MultiPatternMatcher.builder();
+		for(String keyword : linkPriorityKeywords) {
+			if(MultiPatternMatcher.isSupported(keyword)) {
+				builder.add(0, keyword);
+			} else {
+				unsupportedPriorityKeywords.add(keyword);
+			}
+		}
+		priorityMatcher = builder.build();
+		try {
+			frontier = new PersistentFrontier(Paths.get(frontierDirectory), frontierShards, expectedUrls, politenessMillis, this::linkPriority);
+			insensitiveVisitedUrls = UrlFilter.open(Paths.get(frontierDirectory, "visited.bloom"), expectedUrls);
+			insensitiveDeterminedAssetUrls = UrlFilter.open(Paths.get(frontierDirectory, "determined.bloom"), expectedUrls);
+		} catch(IOException e) {
+			logger.error("Could not open the frontier at [{}]", frontierDirectory, e);
+			return;
+		}
 		Thread thread = new Thread(frontierRunner);
 		thread.start();
 		try {
@@ -106,6 +131,16 @@ public class FrontierApplication {
 		}
 	}
 
+	/**
+	 * Worked out once when a link is queued, links naming a make, model or trim (or a few general automotive words) go first.
+	 */
+	private int linkPriority(String url) {
+		if(priorityMatcher.match(url, 1) != 0) {
+			return 0;
+		}
+		return unsupportedPriorityKeywords.stream().anyMatch(s -> StringUtils.containsIgnoreCase(url, s)) ? 0 : 1;
+	}
+
 	private void shutdownHook() {
 		logger.info("[ShutdownHook] - Shutdown sequence initiated");
 		frontierRunner.shutdown();
@@ -118,9 +153,7 @@ public class FrontierApplication {
 		private final int statThreshold = 40;
 		private final int visitedPurgeThreshold = 100;
 
-		private final Queue<String> frontierQueue = new PriorityQueue<>(priority);
-		private final Set<String> insensitiveVisitedUrls = Collections.synchronizedSet(new TreeSet<>(String.CASE_INSENSITIVE_ORDER));
-		private final Set<String> insensitiveDeterminedAssetUrls = Collections.synchronizedSet(new TreeSet<>(String.CASE_INSENSITIVE_ORDER));
+		private long lastCheckpoint = System.currentTimeMillis();
 		private final List<VisitedSite> visitedSites = Collections.synchronizedList(new ArrayList<>());
 		private final Set<String> domainKeywordsToAvoid = new HashSet<>(Arrays.asList("login", "accessories"));
 
@@ -134,23 +167,41 @@ public class FrontierApplication {
 			futures.stream().filter(f -> !f.isDone() && !f.isCancelled()).forEach(f -> f.cancel(true));
 			persistThreads.forEach(Thread::interrupt);
 			frontierService.shutdownNow();
+			if(frontier == null) {
+				return;
+			}
+			try {
+				checkpoint();
+				frontier.close();
+			} catch(IOException e) {
+				logger.error("[FrontierRunner] - Could not save the frontier on shutdown", e);
+			}
+		}
+
+		/**
+		 * Save the frontier along with the visited filters, on a restart the crawl picks up from here.
+		 */
+		private void checkpoint() throws IOException {
+			Stopwatch stopwatch = Stopwatch.createStarted();
+			frontier.checkpoint();
+			insensitiveVisitedUrls.save();
+			insensitiveDeterminedAssetUrls.save();
+			lastCheckpoint = System.currentTimeMillis();
+			logger.info("[FrontierRunner] - Frontier checkpoint saved in [{}]", TimeUtils.format(stopwatch));
 		}
 
 		private void seed() {
 			String sql = "select url from data_source where perm_disabled = 0 and bot_class is null";
 			List<String> urls = jdbcTemplate.queryForList(sql, String.class);
-			frontierQueue.addAll(urls);
-			insensitiveDeterminedAssetUrls.addAll(urls);
+			urls.forEach(frontier::offer);
+			urls.forEach(insensitiveDeterminedAssetUrls::add);
 		}
 
 		@Override
 		public void run() {
 			seed();
 			while(run.get()) {
-				final String nextUrl;
-				synchronized(frontierQueue) {
-					nextUrl = frontierQueue.poll();
-				}
+				final String nextUrl = frontier.poll();
 				if(nextUrl != null) {
 					if(!insensitiveVisitedUrls.add(nextUrl)) {
 						continue;
@@ -204,9 +255,7 @@ public class FrontierApplication {
 											.collect(Collectors.toSet()));
 									if(!externalLinks.isEmpty()) {
 										logger.debug("Adding [{}] external links to the frontier queue from [{}]", externalLinks.size(), nextUrl);
-										synchronized(frontierQueue) {
-											frontierQueue.addAll(externalLinks);
-										}
+										externalLinks.forEach(frontier::offer);
 									}
 								} else {
 									logger.warn("URL malformed [{}]", nextUrl);
@@ -219,8 +268,14 @@ public class FrontierApplication {
 						}
 					}));
 				} else {
-					logger.info(com.plainviewrd.commons.utilities.ConsoleColors.yellow("The frontier queue is empty"));
-					sleep(5000L);
+					long wait = frontier.millisUntilReady();
+					if(wait < 0) {
+						logger.info(com.plainviewrd.commons.utilities.ConsoleColors.yellow("The frontier queue is empty"));
+						sleep(5000L);
+					} else {
+						logger.debug("Every waiting URL is within its politeness delay, next is ready in [{}] ms", wait);
+						sleep(Math.min(wait, 5000L));
+					}
 				}
 				sleep(200L);
 
@@ -234,12 +289,16 @@ public class FrontierApplication {
 					synchronized(persistThreads) {
 						persistThreads.removeIf(t -> !t.isAlive());
 					}
-					int frontierSize;
-					synchronized(frontierQueue) {
-						frontierSize = frontierQueue.size();
-					}
+					long frontierSize = frontier.size();
 					logger.info(com.plainviewrd.commons.utilities.ConsoleColors.purple("Frontier Queue Size: [{}]  Futures: [{}]  Visited URLs: [{}]  Visited to Persist: [{}]  Running persist Threads: [{}]"),
-							frontierSize, running, insensitiveVisitedUrls.size(), visitedSites.size(), persistThreads.size());
+							frontierSize, running, insensitiveVisitedUrls.approximateSize(), visitedSites.size(), persistThreads.size());
+				}
+				if(System.currentTimeMillis() - lastCheckpoint >= checkpointMillis) {
+					try {
+						checkpoint();
+					} catch(IOException e) {
+						logger.warn("[FrontierRunner] - Could not save a frontier checkpoint", e);
+					}
 				}
 				if(visitedSites.size() >= visitedPurgeThreshold) {
 					synchronized(visitedSites) {
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.findupon.frontier;
+
+import com.findupon.commons.searchparty.ScoutServices;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntFunction;
+
+
+/**
+ * The crawl frontier kept on local disk so it survives a restart, even an unclean one, and so memory stays the same size no
+ * matter how many URLs are waiting.
+ * <p>
+ * URLs are sharded by registrable domain ({@link ScoutServices#getHostKey}) and each shard has a {@link SegmentQueue} per
+ * priority. Priority is worked out once when the URL is offered, every priority 0 URL is handed out before any priority 1.
+ * Within a priority the shards take turns. A URL read for a domain handed out within the politeness delay is held in memory
+ * with the others for its domain until the delay has passed, at most {@link #maxDeferredUrls} of them, rather than written
+ * back to disk. URLs are only ever queued once, remembered by a {@link UrlFilter}.
+ * <p>
+ * {@link #checkpoint()} saves the read positions, the held URLs and the filter, after a crash everything since the last
+ * checkpoint is handed out again. Thread safe.
+ */
+public class PersistentFrontier implements Closeable {
+	private static final Logger logger = LoggerFactory.getLogger(PersistentFrontier.class);
+	private static final int priorities = 2;
+	private static final int maxDeferrals = 8;
+	private static final int maxDeferredUrls = 65_536;
+	private static final int maxUrlLength = 4096;
+	private static final String checkpointFile = "frontier.checkpoint";
+	private static final String deferredFile = "frontier.deferred";
+
+	private final Path directory;
+	private final int shards;
+	private final SegmentQueue[][] queues;
+	private final UrlFilter queued;
+	private final ToIntFunction<String> priority;
+	private final long politenessMillis;
+	private final LongSupplier clock;
+	private final Map<String, Long> domainReadyMillis = new LinkedHashMap<>();
+	private final Deferrals[] deferrals = new Deferrals[priorities];
+	private int nextShard;
+
+
+	/**
+	 * @param priority 0 for URLs to visit first, anything else for the rest
+	 */
+	public PersistentFrontier(Path directory, int shards, long expectedUrls, long politenessMillis, ToIntFunction<String> priority) throws IOException {
+		this(directory, shards, expectedUrls, politenessMillis, priority, System::currentTimeMillis);
+	}
+
+	PersistentFrontier(Path directory, int shards, long expectedUrls, long politenessMillis, ToIntFunction<String> priority, LongSupplier clock) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		this.shards = shards;
+		this.priority = priority;
+		this.politenessMillis = politenessMillis;
+		this.clock = clock;
+		this.queued = UrlFilter.open(directory.resolve("queued.bloom"), expectedUrls);
+		for(int p = 0; p < priorities; p++) {
+			deferrals[p] = new Deferrals();
+		}
+
+		long[][] positions = readCheckpoint();
+		this.queues = new SegmentQueue[shards][priorities];
+		for(int s = 0; s < shards; s++) {
+			for(int p = 0; p < priorities; p++) {
+				long[] position = positions[s * priorities + p];
+				queues[s][p] = new SegmentQueue(directory.resolve(String.format("shard-%03d/p%d", s, p)), position[0], position[1], position[2]);
+			}
+		}
+		readDeferred();
+		logger.info("[PersistentFrontier] - Opened [{}] with [{}] URLs waiting", directory, size());
+	}
+
+	/**
+	 * @return false if the URL was already queued once or cannot be stored
+	 */
+	public synchronized boolean offer(String url) {
+		if(url == null || url.isEmpty() || url.length() > maxUrlLength || url.indexOf('\n') >= 0 || url.indexOf('\r') >= 0) {
+			return false;
+		}
+		if(!queued.add(url)) {
+			return false;
+		}
+		int p = priority.applyAsInt(url) == 0 ? 0 : 1;
+		try {
+			queues[shard(url)][p].append(url);
+		} catch(IOException e) {
+			throw new IllegalStateException("Could not append to the frontier", e);
+		}
+		return true;
+	}
+
+	/**
+	 * Held URLs whose domain is ready go first within their priority, then the shards are read.
+	 *
+	 * @return the next URL to visit or null when there are none ready, {@link #millisUntilReady()} tells an empty frontier
+	 * from one waiting on politeness
+	 */
+	public synchronized String poll() {
+		long now = clock.getAsLong();
+		Iterator<Long> readyMillis = domainReadyMillis.values().iterator();
+		while(readyMillis.hasNext() && readyMillis.next() <= now) {
+			readyMillis.remove(); // always visit time plus the same delay, so in order
+		}
+		try {
+			for(int p = 0; p < priorities; p++) {
+				String url = pollDeferred(deferrals[p], now);
+				if(url != null) {
+					return url;
+				}
+				for(int s = 0; s < shards && deferredSize() < maxDeferredUrls; s++) {
+					int shard = (nextShard + s) % shards;
+					SegmentQueue queue = queues[shard][p];
+					for(int x = 0; x < maxDeferrals && deferredSize() < maxDeferredUrls; x++) {
+						url = queue.poll();
+						if(url == null) {
+							break;
+						}
+						String domain = domain(url);
+						Long ready = domainReadyMillis.get(domain);
+						if(ready == null) {
+							visited(domain, now);
+							nextShard = shard + 1;
+							return url;
+						}
+						deferrals[p].add(domain, url, ready);
+					}
+				}
+			}
+		} catch(IOException e) {
+			throw new IllegalStateException("Could not read from the frontier", e);
+		}
+		return null;
+	}
+
+	/**
+	 * @return zero when {@link #poll()} may have a URL now, the wait until a held URL's domain is ready when that's all there
+	 * is, or -1 when the frontier is empty
+	 */
+	public synchronized long millisUntilReady() {
+		if(size() == 0) {
+			return -1;
+		}
+		if(deferredSize() < maxDeferredUrls && size() > deferredSize()) {
+			return 0;
+		}
+		long now = clock.getAsLong(), wait = Long.MAX_VALUE;
+		for(Deferrals deferred : deferrals) {
+			Map.Entry<String, Long> next = deferred.ready.peek();
+			if(next != null) {
+				wait = Math.min(wait, Math.max(0, next.getValue() - now));
+			}
+		}
+		return wait;
+	}
+
+	/**
+	 * @return URLs waiting on disk and held in memory
+	 */
+	public synchronized long size() {
+		long size = deferredSize();
+		for(SegmentQueue[] shardQueues : queues) {
+			for(SegmentQueue queue : shardQueues) {
+				size += queue.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Flush pending appends and save the queued filter and the held URLs, then the read positions. Segments read to the end are
+	 * deleted only after, so a crash at any point leaves a checkpoint that can be resumed from.
+	 */
+	public synchronized void checkpoint() throws IOException {
+		for(SegmentQueue[] shardQueues : queues) {
+			for(SegmentQueue queue : shardQueues) {
+				queue.flush();
+			}
+		}
+		queued.save();
+		Path deferredTemp = directory.resolve(deferredFile + ".tmp");
+		try(BufferedWriter writer = Files.newBufferedWriter(deferredTemp, StandardCharsets.UTF_8)) {
+			for(int p = 0; p < priorities; p++) {
+				for(Deque<String> domainUrls : deferrals[p].urls.values()) {
+					for(String url : domainUrls) {
+						writer.write(p + " " + url);
+						writer.newLine();
+					}
+				}
+			}
+		}
+		Files.move(deferredTemp, directory.resolve(deferredFile), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		Path temp = directory.resolve(checkpointFile + ".tmp");
+		try(BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+			for(int s = 0; s < shards; s++) {
+				for(int p = 0; p < priorities; p++) {
+					SegmentQueue queue = queues[s][p];
+					writer.write(s + " " + p + " " + queue.getReadSegment() + " " + queue.getReadOffset() + " " + queue.size());
+					writer.newLine();
+				}
+			}
+		}
+		Files.move(temp, directory.resolve(checkpointFile), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		for(SegmentQueue[] shardQueues : queues) {
+			for(SegmentQueue queue : shardQueues) {
+				queue.deleteConsumedSegments();
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		checkpoint();
+		for(SegmentQueue[] shardQueues : queues) {
+			for(SegmentQueue queue : shardQueues) {
+				queue.close();
+			}
+		}
+	}
+
+	/**
+	 * @return segment, offset and size for every shard and priority, starting positions if there is no checkpoint
+	 */
+	private long[][] readCheckpoint() throws IOException {
+		long[][] positions = new long[shards * priorities][];
+		for(int x = 0; x < positions.length; x++) {
+			positions[x] = new long[]{1, 0, 0};
+		}
+		Path file = directory.resolve(checkpointFile);
+		if(Files.exists(file)) {
+			List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+			for(String line : lines) {
+				if(line.trim().isEmpty()) {
+					continue;
+				}
+				String[] values = line.trim().split(" ");
+				int s = Integer.parseInt(values[0]), p = Integer.parseInt(values[1]);
+				if(s < shards && p < priorities) {
+					positions[s * priorities + p] = new long[]{Long.parseLong(values[2]), Long.parseLong(values[3]), Long.parseLong(values[4])};
+				}
+			}
+		}
+		return positions;
+	}
+
+	/**
+	 * Held URLs are ready at once after a restart, the politeness delay isn't saved.
+	 */
+	private void readDeferred() throws IOException {
+		Path file = directory.resolve(deferredFile);
+		if(Files.exists(file)) {
+			long now = clock.getAsLong();
+			for(String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+				int space = line.indexOf(' ');
+				if(space > 0) {
+					int p = Integer.parseInt(line.substring(0, space)) == 0 ? 0 : 1;
+					String url = line.substring(space + 1);
+					deferrals[p].add(domain(url), url, now);
+				}
+			}
+		}
+	}
+
+	private String pollDeferred(Deferrals deferred, long now) {
+		Map.Entry<String, Long> next;
+		while((next = deferred.ready.peek()) != null && next.getValue() <= now) {
+			deferred.ready.poll();
+			String domain = next.getKey();
+			Long ready = domainReadyMillis.get(domain);
+			if(ready != null) {
+				// visited since for a URL of another priority
+				deferred.ready.add(new AbstractMap.SimpleImmutableEntry<>(domain, ready));
+				continue;
+			}
+			Deque<String> domainUrls = deferred.urls.get(domain);
+			String url = domainUrls.poll();
+			deferred.size--;
+			visited(domain, now);
+			if(domainUrls.isEmpty()) {
+				deferred.urls.remove(domain);
+			} else {
+				deferred.ready.add(new AbstractMap.SimpleImmutableEntry<>(domain, now + politenessMillis));
+			}
+			return url;
+		}
+		return null;
+	}
+
+	private void visited(String domain, long now) {
+		domainReadyMillis.put(domain, now + politenessMillis);
+	}
+
+	private int deferredSize() {
+		int size = 0;
+		for(Deferrals deferred : deferrals) {
+			size += deferred.size;
+		}
+		return size;
+	}
+
+	private int shard(String url) {
+		return Math.floorMod(domain(url).hashCode(), shards);
+	}
+
+	private static String domain(String url) {
+		String domain = ScoutServices.getHostKey(url);
+		return domain == null ? url : domain;
+	}
+
+	/**
+	 * The held URLs of one priority by domain, with each domain once in ready order.
+	 */
+	private static class Deferrals {
+		private final Map<String, Deque<String>> urls = new HashMap<>();
+		private final PriorityQueue<Map.Entry<String, Long>> ready = new PriorityQueue<>(Map.Entry.comparingByValue());
+		private int size;
+
+		private void add(String domain, String url, long readyMillis) {
+			Deque<String> domainUrls = urls.get(domain);
+			if(domainUrls == null) {
+				urls.put(domain, domainUrls = new ArrayDeque<>());
+				ready.add(new AbstractMap.SimpleImmutableEntry<>(domain, readyMillis));
+			}
+			domainUrls.add(url);
+			size++;
+		}
+	}
+}
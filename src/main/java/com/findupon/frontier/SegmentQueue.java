@@ -0,0 +1,247 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.findupon.frontier;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+
+/**
+ * A FIFO queue of URLs kept on disk as append-only segment files of newline terminated records. The writer appends to the
+ * newest segment and rolls to a new one past {@link #segmentBytes}, the reader works through the oldest. Only the read
+ * position has to be remembered to resume, see {@link PersistentFrontier#checkpoint()}. Not thread safe.
+ */
+final class SegmentQueue implements Closeable {
+	private static final long segmentBytes = 64L * 1024 * 1024;
+	private static final int bufferSize = 64 * 1024;
+	private static final String suffix = ".seg";
+
+	private final Path directory;
+	private final ByteBuffer writeBuffer = ByteBuffer.allocate(bufferSize);
+	private final byte[] readBuffer = new byte[bufferSize];
+	private final List<Long> consumedSegments = new ArrayList<>();
+
+	private long writeSegment;
+	private long writeSize;
+	private FileChannel writeChannel;
+
+	private long readSegment;
+	private long readOffset; // file offset of readBuffer[readPos]
+	private int readPos;
+	private int readLimit;
+	private FileChannel readChannel;
+
+	private long size;
+	private boolean exhausted;
+
+
+	/**
+	 * Open or create the queue in the directory, resuming from a checkpointed read position. A record cut short by a crash at the
+	 * end of the newest segment is dropped.
+	 */
+	SegmentQueue(Path directory, long readSegment, long readOffset, long size) throws IOException {
+		this.directory = Files.createDirectories(directory);
+		List<Long> segments = listSegments();
+		for(long segment : segments) {
+			if(segment < readSegment) {
+				Files.deleteIfExists(segmentPath(segment));
+			}
+		}
+		segments.removeIf(segment -> segment < readSegment);
+		if(segments.isEmpty() || segments.get(0) > readSegment) {
+			// the checkpointed segment is gone, start over from whatever is left
+			this.readSegment = segments.isEmpty() ? Math.max(readSegment, 1) : segments.get(0);
+			this.readOffset = 0;
+		} else {
+			this.readSegment = readSegment;
+			this.readOffset = readOffset;
+		}
+		this.writeSegment = segments.isEmpty() ? this.readSegment : segments.get(segments.size() - 1);
+		this.writeChannel = FileChannel.open(segmentPath(writeSegment), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.writeSize = truncateToLastRecord(writeChannel);
+		this.writeChannel.position(writeSize);
+		this.size = size;
+	}
+
+	void append(String url) throws IOException {
+		byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+		if(writeSize >= segmentBytes) {
+			flush();
+			writeChannel.close();
+			writeChannel = FileChannel.open(segmentPath(++writeSegment), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			writeSize = 0;
+		}
+		if(writeBuffer.remaining() < bytes.length + 1) {
+			flush();
+		}
+		writeBuffer.put(bytes).put((byte)'\n');
+		writeSize += bytes.length + 1;
+		size++;
+		exhausted = false;
+	}
+
+	/**
+	 * @return the oldest URL or null when there are none
+	 */
+	String poll() throws IOException {
+		if(exhausted) {
+			return null;
+		}
+		while(true) {
+			String url = readRecord();
+			if(url != null) {
+				size = Math.max(size - 1, 0);
+				return url;
+			}
+			if(readSegment >= writeSegment) {
+				exhausted = true;
+				return null;
+			}
+			closeReader();
+			consumedSegments.add(readSegment++);
+			readOffset = 0;
+		}
+	}
+
+	/**
+	 * @return how many URLs are waiting, after a crash this only counts those known at the last checkpoint
+	 */
+	long size() {
+		return size;
+	}
+
+	long getReadSegment() {
+		return readSegment;
+	}
+
+	long getReadOffset() {
+		return readOffset;
+	}
+
+	void flush() throws IOException {
+		writeBuffer.flip();
+		while(writeBuffer.hasRemaining()) {
+			writeChannel.write(writeBuffer);
+		}
+		writeBuffer.clear();
+	}
+
+	/**
+	 * Remove the segments the reader has finished, only once a checkpoint past them is saved.
+	 */
+	void deleteConsumedSegments() throws IOException {
+		for(long segment : consumedSegments) {
+			Files.deleteIfExists(segmentPath(segment));
+		}
+		consumedSegments.clear();
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		writeChannel.close();
+		closeReader();
+	}
+
+	private String readRecord() throws IOException {
+		boolean flushed = false;
+		while(true) {
+			for(int x = readPos; x < readLimit; x++) {
+				if(readBuffer[x] == '\n') {
+					String url = new String(readBuffer, readPos, x - readPos, StandardCharsets.UTF_8);
+					readOffset += x + 1 - readPos;
+					readPos = x + 1;
+					return url;
+				}
+			}
+			if(readChannel == null) {
+				readChannel = FileChannel.open(segmentPath(readSegment), StandardOpenOption.READ);
+			}
+			if(readPos > 0) {
+				System.arraycopy(readBuffer, readPos, readBuffer, 0, readLimit - readPos);
+				readLimit -= readPos;
+				readPos = 0;
+			}
+			if(readLimit == readBuffer.length) {
+				throw new IOException("Record longer than " + bufferSize + " bytes in " + segmentPath(readSegment));
+			}
+			int read = readChannel.read(ByteBuffer.wrap(readBuffer, readLimit, readBuffer.length - readLimit), readOffset + readLimit);
+			if(read > 0) {
+				readLimit += read;
+			} else if(readSegment == writeSegment && writeBuffer.position() > 0 && !flushed) {
+				flush();
+				flushed = true;
+			} else {
+				return null;
+			}
+		}
+	}
+
+	private void closeReader() throws IOException {
+		if(readChannel != null) {
+			readChannel.close();
+			readChannel = null;
+		}
+		readPos = 0;
+		readLimit = 0;
+	}
+
+	private static long truncateToLastRecord(FileChannel channel) throws IOException {
+		long end = channel.size();
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		while(end > 0) {
+			int length = (int)Math.min(buffer.capacity(), end);
+			buffer.clear().limit(length);
+			channel.read(buffer, end - length);
+			for(int x = length - 1; x >= 0; x--) {
+				if(buffer.get(x) == '\n') {
+					long recordEnd = end - length + x + 1;
+					if(recordEnd < channel.size()) {
+						channel.truncate(recordEnd);
+					}
+					return recordEnd;
+				}
+			}
+			end -= length;
+		}
+		channel.truncate(0);
+		return 0;
+	}
+
+	private List<Long> listSegments() throws IOException {
+		try(Stream<Path> paths = Files.list(directory)) {
+			return paths.map(p -> p.getFileName().toString())
+					.filter(n -> n.endsWith(suffix))
+					.map(n -> Long.parseLong(n.substring(0, n.length() - suffix.length())))
+					.sorted()
+					.collect(Collectors.toCollection(ArrayList::new));
+		}
+	}
+
+	private Path segmentPath(long segment) {
+		return directory.resolve(String.format("%010d%s", segment, suffix));
+	}
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.findupon.frontier;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+
+/**
+ * A fixed size, case insensitive set of URLs that may answer "seen" for a URL it never saw (about 1 in 100), but never the
+ * other way around. Memory does not grow with the crawl, sized by the expected URL count up front. Thread safe.
+ */
+final class UrlFilter {
+	private static final double falsePositiveRate = 0.01;
+
+	private final Path file;
+	private final BloomFilter<CharSequence> filter;
+
+
+	private UrlFilter(Path file, BloomFilter<CharSequence> filter) {
+		this.file = file;
+		this.filter = filter;
+	}
+
+	/**
+	 * Load the filter saved at the path or start an empty one.
+	 */
+	static UrlFilter open(Path file, long expectedUrls) throws IOException {
+		if(Files.exists(file)) {
+			try(InputStream in = new BufferedInputStream(Files.newInputStream(file))) {
+				return new UrlFilter(file, BloomFilter.readFrom(in, Funnels.stringFunnel(StandardCharsets.UTF_8)));
+			}
+		}
+		return new UrlFilter(file, BloomFilter.create(Funnels.stringFunnel(StandardCharsets.UTF_8), expectedUrls, falsePositiveRate));
+	}
+
+	/**
+	 * @return true if the URL was definitely not in the filter
+	 */
+	boolean add(String url) {
+		return filter.put(url.toLowerCase(Locale.ENGLISH));
+	}
+
+	long approximateSize() {
+		return filter.approximateElementCount();
+	}
+
+	/**
+	 * Written beside the old file then moved over it, a crash part way leaves the last save intact.
+	 */
+	void save() throws IOException {
+		Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+		try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+			filter.writeTo(out);
+		}
+		Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+}
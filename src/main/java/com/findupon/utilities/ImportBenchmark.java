@@ -0,0 +1,147 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.utilities;
+
+import com.google.common.base.Stopwatch;
+import com.findupon.commons.dao.AircraftDao;
+import com.findupon.commons.dao.ProductImportSession;
+import com.findupon.commons.entity.product.ProductCondition;
+import com.findupon.commons.entity.product.aircraft.Aircraft;
+import com.findupon.commons.utilities.TimeUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.ConfigurableBeanFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.annotation.Scope;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.findupon.commons.utilities.ConsoleColors.green;
+
+
+/**
+ * Repeatable benchmark for {@link ProductImportSession} against a synthetic aircraft feed. The feed is generated from a
+ * fixed seed so runs are comparable. Three phases are run against an otherwise unused data source ID:
+ * <ol>
+ * <li>initial load, every row inserted</li>
+ * <li>reload with 10% price changes, 5% of rows dropped and 5% new</li>
+ * <li>identical reload, nothing changes</li>
+ * </ol>
+ * Every row for the data source is removed when complete. Usage: {@code ImportBenchmark <dataSourceId> [rows]}
+ */
+@Component
+@Scope(value = ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+public class ImportBenchmark {
+	private static final Logger logger = LoggerFactory.getLogger(ImportBenchmark.class);
+	private static final long seed = 0x5EEDL;
+
+	@Autowired private AircraftDao aircraftDao;
+	@Autowired private JdbcTemplate jdbcTemplate;
+
+
+	public static void main(String... args) {
+		if(args.length < 1) {
+			logger.error("Usage: ImportBenchmark <dataSourceId> [rows]");
+			return;
+		}
+		long dataSourceId = Long.parseLong(args[0]);
+		int rows = args.length > 1 ? Integer.parseInt(args[1]) : 300_000;
+		ApplicationContext applicationContext = new ClassPathXmlApplicationContext("classpath*:worker-context.xml");
+		ImportBenchmark instance = applicationContext.getBean(ImportBenchmark.class);
+		instance.run(dataSourceId, rows);
+	}
+
+	private void run(long dataSourceId, int rows) {
+		if(aircraftDao.countByDataSourceId(dataSourceId) > 0) {
+			logger.error("Data source [{}] already has aircraft, pick an unused data source ID", dataSourceId);
+			return;
+		}
+		try {
+			runPhase("Initial load", dataSourceId, rows, 0);
+			runPhase("Churned reload", dataSourceId, rows, 1);
+			runPhase("Identical reload", dataSourceId, rows, 1);
+		} finally {
+			int removed = jdbcTemplate.update("delete from aircraft where data_source_id = ?", dataSourceId);
+			logger.info("Benchmark rows removed [{}]", removed);
+		}
+	}
+
+	private void runPhase(String name, long dataSourceId, int rows, int generation) {
+		Random random = new Random(seed);
+		Date now = new Date();
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		ProductImportSession.Result result;
+		try(ProductImportSession<Aircraft> session = aircraftDao.newImportSession(dataSourceId)) {
+			for(int x = 0; x < rows; x++) {
+				int listingNumber = x;
+				boolean priceChange = false;
+				if(generation > 0) {
+					int roll = random.nextInt(100);
+					if(roll < 5) {
+						continue; // dropped
+					} else if(roll < 10) {
+						listingNumber = rows + x; // new
+					} else if(roll < 20) {
+						priceChange = true;
+					}
+				}
+				session.add(syntheticAircraft(dataSourceId, listingNumber, priceChange, now));
+			}
+			result = session.reconcile();
+		}
+		stopwatch.stop();
+		logger.info("{} - Rows [{}] Stage [{}] at [{}] rows/sec Reconcile [{}] Price changes [{}] Removed [{}] Total [{}] at [{}] rows/sec",
+				name, String.format("%,d", result.getStaged()),
+				TimeUtils.format(result.getStageMillis()), green(String.format("%,.0f", result.getStageRowsPerSecond())),
+				TimeUtils.format(result.getReconcileMillis()), String.format("%,d", result.getPriceChangedIds().size()),
+				String.format("%,d", result.getRemoved()), TimeUtils.format(stopwatch.elapsed(TimeUnit.MILLISECONDS)),
+				green(String.format("%,.0f", result.getStaged() * 1000D / Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS)))));
+	}
+
+	private static Aircraft syntheticAircraft(long dataSourceId, int listingNumber, boolean priceChange, Date now) {
+		// attributes derived from the listing number alone so every phase generates the same aircraft
+		Random random = new Random(seed ^ listingNumber);
+		Aircraft aircraft = new Aircraft();
+		aircraft.setDataSourceId(dataSourceId);
+		aircraft.setListingId("BENCH" + listingNumber);
+		aircraft.setRegNumber("N" + listingNumber);
+		aircraft.setSrlNumber(Integer.toHexString(random.nextInt()));
+		aircraft.setUrl("https://registry.faa.gov/aircraftinquiry/NNum_Results.aspx?NNumbertxt=N" + listingNumber);
+		aircraft.setSourceUrl("https://registry.faa.gov/");
+		aircraft.setYear(1950 + random.nextInt(70));
+		aircraft.setNumberOfSeats(1 + random.nextInt(12));
+		aircraft.setContactName("Benchmark Owner " + random.nextInt(10_000));
+		aircraft.setCity("Benchmark");
+		aircraft.setZip(String.format("%05d", random.nextInt(99_999)));
+		aircraft.setCountryCode("USA");
+		aircraft.setProductCondition(ProductCondition.USED);
+		BigDecimal price = BigDecimal.valueOf(10_000 + random.nextInt(2_000_000));
+		aircraft.setPrice(priceChange ? price.add(BigDecimal.valueOf(500)) : price);
+		aircraft.setVisitedDate(now);
+		aircraft.setVisitedBy("Chloe");
+		aircraft.setCreationDate(now);
+		aircraft.setCreatedBy("Chloe");
+		return aircraft;
+	}
+}
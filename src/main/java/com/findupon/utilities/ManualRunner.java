@@ -44,6 +44,7 @@ public class ManualRunner {
 	private static final Logger logger = LoggerFactory.getLogger(ManualRunner.class);
 	@Value("${production}") private Boolean production;
 	@Autowired private com.findupon.commons.repository.datasource.DataSourceRepo dataSourceRepo;
+	@Autowired private com.findupon.commons.utilities.DataSourceOperations dataSourceOperations;
 
 
 	public static void main(String... args) {
@@ -59,6 +60,7 @@ public class ManualRunner {
 		// instance.testWatercraftListingBot();
 		// instance.testLoadProcess();
 		// instance.foo();
+		// instance.backfillHostKeys();
 
 		System.exit(0);
 	}
@@ -67,6 +69,10 @@ public class ManualRunner {
 
 	}
 
+	private void backfillHostKeys() {
+		dataSourceOperations.backfillHostKeys();
+	}
+
 	private void controllerBot() {
 		com.findupon.commons.bot.aircraft.ControllerBot bot = new com.findupon.commons.bot.aircraft.ControllerBot();
 		com.findupon.commons.utilities.SpringUtils.autowire(bot);
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.benchmark;
+
+import com.findupon.commons.learning.AddressFinder;
+import com.findupon.commons.learning.AssetDeterminer;
+import com.findupon.commons.learning.BasicKeywordFrequency;
+import com.findupon.commons.learning.KeyAttributeFrequency;
+import com.findupon.commons.learning.LegacyDeterminers;
+import com.findupon.commons.learning.PageFeatures;
+import com.findupon.commons.learning.SchemaFinder;
+import com.findupon.commons.learning.URLKeywordFrequency;
+import com.findupon.commons.utilities.AutomobileAttributeMatcher;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Scoring every page of the corpus for its asset type, through the shared page features and through the old walks of the
+ * document per determiner. The meta determiner needs the database, both sides build the page meta it scores on instead.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class AssetRecognitionBenchmark {
+	private List<Document> pages;
+	private List<AssetDeterminer> determiners;
+	private LegacyDeterminers legacy;
+
+
+	@Setup
+	public void setup() {
+		pages = new ArrayList<>(BenchmarkCorpus.listings());
+		pages.addAll(BenchmarkCorpus.dealers());
+		pages.addAll(BenchmarkCorpus.serps());
+		AutomobileAttributeMatcher attributeMatcher = BenchmarkCorpus.attributeMatcher();
+		determiners = Arrays.asList(new KeyAttributeFrequency(attributeMatcher), new BasicKeywordFrequency(),
+				new URLKeywordFrequency(attributeMatcher), new AddressFinder(), new SchemaFinder());
+		legacy = new LegacyDeterminers(attributeMatcher);
+	}
+
+	@Benchmark
+	public void pageFeatures(Blackhole blackhole) {
+		for(Document page : pages) {
+			PageFeatures features = new PageFeatures(page);
+			for(AssetDeterminer determiner : determiners) {
+				blackhole.consume(determiner.getPossibleAssetType(features));
+			}
+			blackhole.consume(features.getPageMeta());
+		}
+	}
+
+	@Benchmark
+	public void documentWalks(Blackhole blackhole) {
+		for(Document page : pages) {
+			blackhole.consume(legacy.determine(page));
+			blackhole.consume(legacy.pageMeta(page));
+		}
+	}
+}
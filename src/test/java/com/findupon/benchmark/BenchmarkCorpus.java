@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.benchmark;
+
+import com.findupon.commons.searchparty.ScoutServices;
+import com.findupon.commons.utilities.AutomobileAttributeMatcher;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * The page corpus the benchmarks run against, under {@code /benchmark/corpus} on the test classpath. The pages are synthetic,
+ * not captures: four made up example.com dealers, generated VINs with valid check digits and vehicles from the fixture attribute
+ * data. They are built in the shape of the dealer platform pages the crawler sees, critical CSS, JSON-LD and state scripts in
+ * the head, a mega menu, nested layout wrappers, hidden form modals and a footer with the department hours, so each is about
+ * 180KB of vehicle detail or 210KB of dealer home page with some 2,100 to 2,500 elements, and 320KB with 3,900 elements for a
+ * page of 24 inventory results, nested 22 deep. Grouped by kind: vehicle detail pages, dealer home pages and inventory result
+ * pages. Each starts with the same header comment as the parsing test files, the first line being the URL the page stands in
+ * for.
+ */
+public final class BenchmarkCorpus {
+
+	private BenchmarkCorpus() {
+	}
+
+	public static List<Document> listings() {
+		return load("listing");
+	}
+
+	public static List<Document> dealers() {
+		return load("dealer");
+	}
+
+	public static List<Document> serps() {
+		return load("serp");
+	}
+
+	/**
+	 * Load {@link AutomobileAttributeMatcher} from the fixture attribute dataset, no database needed.
+	 */
+	public static AutomobileAttributeMatcher attributeMatcher() {
+		try(Reader reader = new InputStreamReader(resource("/benchmark/automobile-attributes.tsv"), StandardCharsets.UTF_8)) {
+			return new AutomobileAttributeMatcher(reader);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static List<Document> load(String kind) {
+		List<Document> documents = new ArrayList<>();
+		try {
+			Resource[] resources = new PathMatchingResourcePatternResolver().getResources("classpath:/benchmark/corpus/" + kind + "/*.html");
+			Arrays.sort(resources, Comparator.comparing(Resource::getFilename));
+			for(Resource resource : resources) {
+				try(InputStream is = resource.getInputStream()) {
+					String html = ScoutServices.normalize(IOUtils.toString(is, StandardCharsets.UTF_8), false);
+					String url = StringUtils.trimToNull(StringUtils.substringAfter(StringUtils.substringBetween(html, "<!--", "-->").trim().split("\n")[0], ":"));
+					documents.add(Jsoup.parse(html, url));
+				}
+			}
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if(documents.isEmpty()) {
+			throw new IllegalStateException("No " + kind + " pages in the benchmark corpus");
+		}
+		return documents;
+	}
+
+	private static InputStream resource(String path) throws IOException {
+		InputStream is = BenchmarkCorpus.class.getResourceAsStream(path);
+		if(is == null) {
+			throw new IOException("Missing benchmark resource [" + path + "]");
+		}
+		return is;
+	}
+}
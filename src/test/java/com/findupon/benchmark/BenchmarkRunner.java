@@ -0,0 +1,138 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.benchmark;
+
+import org.json.JSONObject;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+
+import static com.findupon.commons.utilities.ConsoleColors.green;
+import static com.findupon.commons.utilities.ConsoleColors.red;
+
+
+/**
+ * Runs every benchmark in this package with the GC profiler and compares throughput and allocation per operation against the
+ * stored baseline. Allocation per operation barely moves between machines, throughput does, so record the baseline on the box
+ * the comparison will run on. Fully offline, the corpus and the attribute fixture are on the test classpath.
+ * <p>
+ * Usage: {@code BenchmarkRunner [benchmark regex]} with
+ * <ul>
+ * <li>{@code -Dbenchmark.baseline} baseline file, default {@value #defaultBaseline}</li>
+ * <li>{@code -Dbenchmark.tolerance} allowed regression as a fraction, default {@value #defaultTolerance}</li>
+ * <li>{@code -Dbenchmark.save=true} write the results as the new baseline instead of comparing</li>
+ * </ul>
+ * Exits 1 when any benchmark regressed past the tolerance.
+ */
+public final class BenchmarkRunner {
+	private static final Logger logger = LoggerFactory.getLogger(BenchmarkRunner.class);
+	private static final String defaultBaseline = "src/test/resources/benchmark/baseline.json";
+	private static final String defaultTolerance = "0.10";
+	private static final String allocationRate = "\u00b7gc.alloc.rate";
+	private static final String allocationPerOp = "\u00b7gc.alloc.rate.norm";
+	private static final double allocationSlackBytes = 64; // a few boxed values either way is noise, not a regression
+
+
+	private BenchmarkRunner() {
+	}
+
+	public static void main(String... args) throws Exception {
+		Path baselinePath = Paths.get(System.getProperty("benchmark.baseline", defaultBaseline));
+		double tolerance = Double.parseDouble(System.getProperty("benchmark.tolerance", defaultTolerance));
+		Options options = new OptionsBuilder()
+				.include(args.length > 0 ? args[0] : BenchmarkRunner.class.getPackage().getName() + ".*")
+				.addProfiler(GCProfiler.class)
+				.build();
+		Collection<RunResult> results = new Runner(options).run();
+
+		JSONObject current = new JSONObject();
+		for(RunResult result : results) {
+			Result allocation = result.getSecondaryResults().get(allocationPerOp);
+			current.put(result.getParams().getBenchmark(), new JSONObject()
+					.put("opsPerSecond", result.getPrimaryResult().getScore())
+					.put("bytesPerOp", allocation == null ? 0 : allocation.getScore()));
+		}
+		if(Boolean.getBoolean("benchmark.save")) {
+			Files.write(baselinePath, current.toString(2).getBytes(StandardCharsets.UTF_8));
+			logger.info(green("[BenchmarkRunner] - Baseline of [{}] benchmarks saved to [{}]"), results.size(), baselinePath);
+			return;
+		}
+		if(!compare(results, loadBaseline(baselinePath), tolerance)) {
+			System.exit(1);
+		}
+	}
+
+	private static boolean compare(Collection<RunResult> results, JSONObject baseline, double tolerance) {
+		boolean passed = true;
+		logger.info(String.format("%-48s %14s %12s %14s %10s %10s", "Benchmark", "ops/s", "MB/s", "B/op", "ops/s %", "B/op %"));
+		for(RunResult result : results) {
+			String benchmark = result.getParams().getBenchmark();
+			double opsPerSecond = result.getPrimaryResult().getScore();
+			Result rate = result.getSecondaryResults().get(allocationRate);
+			Result allocation = result.getSecondaryResults().get(allocationPerOp);
+			double bytesPerOp = allocation == null ? 0 : allocation.getScore();
+			String line = String.format("%-48s %14.2f %12.2f %14.0f", shortName(benchmark), opsPerSecond, rate == null ? 0 : rate.getScore(), bytesPerOp);
+
+			JSONObject expected = baseline.optJSONObject(benchmark);
+			if(expected == null) {
+				logger.info(line + "   (no baseline)");
+				continue;
+			}
+			double baseOps = expected.getDouble("opsPerSecond");
+			double baseBytes = expected.getDouble("bytesPerOp");
+			boolean slower = opsPerSecond < baseOps * (1 - tolerance);
+			boolean heavier = bytesPerOp > baseBytes * (1 + tolerance) + allocationSlackBytes;
+			line += String.format(" %+10.1f %+10.1f", change(opsPerSecond, baseOps), change(bytesPerOp, baseBytes));
+			if(slower || heavier) {
+				passed = false;
+				logger.info(red(line + (slower ? "  slower" : "") + (heavier ? "  allocates more" : "")));
+			} else {
+				logger.info(green(line));
+			}
+		}
+		return passed;
+	}
+
+	private static JSONObject loadBaseline(Path baselinePath) throws IOException {
+		if(!Files.exists(baselinePath)) {
+			logger.warn("[BenchmarkRunner] - No baseline at [{}], record one with -Dbenchmark.save=true", baselinePath);
+			return new JSONObject();
+		}
+		return new JSONObject(new String(Files.readAllBytes(baselinePath), StandardCharsets.UTF_8));
+	}
+
+	private static double change(double value, double baseline) {
+		return baseline == 0 ? 0 : (value - baseline) / baseline * 100;
+	}
+
+	private static String shortName(String benchmark) {
+		return benchmark.substring(BenchmarkRunner.class.getPackage().getName().length() + 1);
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.benchmark;
+
+import com.findupon.commons.netops.entity.HttpStatusCode;
+import com.findupon.commons.netops.strategies.ChloeCongestionController;
+import org.apache.http.HttpHost;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Crawl threads reporting responses for a handful of hosts at once, the contention the old single monitor backoff manager
+ * serialized. Run with -t 1 and -t 64 to compare, throughput per thread should hold as threads are added on a box with the
+ * cores for them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@Threads(64)
+public class CongestionControllerBenchmark {
+	private static final int routes = 16;
+
+	private final ChloeCongestionController controller = new ChloeCongestionController(new StandInPool(16));
+	private final String[] hosts = new String[routes];
+	private final HttpRoute[] httpRoutes = new HttpRoute[routes];
+
+
+	@Setup
+	public void setup() {
+		for(int x = 0; x < routes; x++) {
+			hosts[x] = "www.dealer-" + x + ".com";
+			httpRoutes[x] = new HttpRoute(new HttpHost(hosts[x], 443, "https"));
+			controller.onResponse(hosts[x], httpRoutes[x], HttpStatusCode.SC_OK, 120L, null);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Crawler {
+		private static final AtomicInteger threads = new AtomicInteger();
+		private final int offset = threads.getAndIncrement();
+		private int next;
+
+		int route() {
+			return (offset + next++) & (routes - 1);
+		}
+	}
+
+	@Benchmark
+	public void onResponse(Crawler crawler) {
+		int route = crawler.route();
+		controller.onResponse(hosts[route], httpRoutes[route], HttpStatusCode.SC_OK, 120L, null);
+	}
+
+	@Benchmark
+	public void backOffAndProbe(Crawler crawler) {
+		int route = crawler.route();
+		if((crawler.next & 7) == 0) {
+			controller.backOff(httpRoutes[route]);
+		} else {
+			controller.probe(httpRoutes[route]);
+		}
+	}
+
+	@Benchmark
+	public long reserve(Crawler crawler) {
+		return controller.reserve(hosts[crawler.route()]);
+	}
+
+	private static class StandInPool implements ConnPoolControl<HttpRoute> {
+		private final int defaultMax;
+		private final Map<HttpRoute, Integer> limits = new ConcurrentHashMap<>();
+
+		private StandInPool(int defaultMax) {
+			this.defaultMax = defaultMax;
+		}
+
+		@Override
+		public void setMaxTotal(int max) {
+		}
+
+		@Override
+		public int getMaxTotal() {
+			return defaultMax * routes;
+		}
+
+		@Override
+		public void setDefaultMaxPerRoute(int max) {
+		}
+
+		@Override
+		public int getDefaultMaxPerRoute() {
+			return defaultMax;
+		}
+
+		@Override
+		public void setMaxPerRoute(HttpRoute route, int max) {
+			limits.put(route, max);
+		}
+
+		@Override
+		public int getMaxPerRoute(HttpRoute route) {
+			return limits.getOrDefault(route, defaultMax);
+		}
+
+		@Override
+		public PoolStats getTotalStats() {
+			return null;
+		}
+
+		@Override
+		public PoolStats getStats(HttpRoute route) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.benchmark;
+
+import com.findupon.commons.searchparty.EdgeQueues;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * A million found URLs into the gatherer's edge queue, with the priority worked out once per URL against the old comparator
+ * that ran the keyword and VIN checks on both URLs at every comparison. One shot per operation, the queue starts empty.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class FrontierInsertBenchmark {
+	private final EdgeQueues edgeQueues = new EdgeQueues();
+	private List<String> urls;
+
+
+	@Setup
+	public void setup() {
+		urls = EdgeQueues.urls(1_000_000, 42);
+	}
+
+	@Benchmark
+	public Queue<?> prioritized() {
+		return edgeQueues.prioritized(urls);
+	}
+
+	@Benchmark
+	public Queue<?> comparators() {
+		return edgeQueues.comparators(urls);
+	}
+}
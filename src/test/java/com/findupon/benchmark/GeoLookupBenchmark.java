@@ -0,0 +1,105 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.benchmark;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.findupon.commons.utilities.GeoCityDatabase;
+import com.findupon.commons.utilities.GeoCityFixture;
+import com.findupon.commons.utilities.LocationUtils;
+import com.maxmind.geoip.Location;
+import com.maxmind.geoip.LookupService;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * IP to location lookups from several threads at once against a generated City database. {@link #lookupService} is the
+ * library in memory cache mode, every lookup holding its monitor, {@link #mapped} is {@link GeoCityDatabase} and
+ * {@link #cached} is the cache {@link LocationUtils#getLocation} puts in front of it. Run with {@code -t 1} and then more
+ * threads to compare, the mapped and cached lookups should scale with the cores while the library stays flat.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@Threads(8)
+public class GeoLookupBenchmark {
+	private final String[] ips = new String[4096];
+	private int ip;
+
+
+	@Setup
+	public void setup(Databases databases) {
+		Random random = new Random(Thread.currentThread().getId());
+		for(int x = 0; x < ips.length; x++) {
+			ips[x] = databases.fixture.randomAddress(random);
+		}
+	}
+
+	@Benchmark
+	public Location lookupService(Databases databases) {
+		return databases.lookupService.getLocation(ips[ip++ & 4095]);
+	}
+
+	@Benchmark
+	public Location mapped(Databases databases) {
+		return databases.database.getLocation(ips[ip++ & 4095]);
+	}
+
+	@Benchmark
+	public Location cached(Databases databases) throws ExecutionException {
+		String address = ips[ip++ & 4095];
+		return databases.cache.get(address, () -> Optional.ofNullable(databases.database.getLocation(address))).orElse(null);
+	}
+
+	@State(Scope.Benchmark)
+	public static class Databases {
+		private final Cache<String, Optional<Location>> cache = CacheBuilder.newBuilder()
+				.maximumSize(50_000)
+				.concurrencyLevel(16)
+				.build();
+		private Path file;
+		private GeoCityFixture fixture;
+		private LookupService lookupService;
+		private GeoCityDatabase database;
+
+
+		@Setup
+		public void setup() throws IOException {
+			file = Files.createTempFile("geo-city", ".dat");
+			fixture = GeoCityFixture.write(file, 7, 20_000);
+			lookupService = new LookupService(file.toFile(), LookupService.GEOIP_MEMORY_CACHE);
+			database = GeoCityDatabase.open(file);
+		}
+
+		@TearDown
+		public void tearDown() throws IOException {
+			lookupService.close();
+			Files.deleteIfExists(file);
+		}
+	}
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.benchmark;
+
+import com.findupon.commons.metrics.Counter;
+import com.findupon.commons.metrics.Histogram;
+import com.findupon.commons.metrics.Labeled;
+import com.findupon.commons.metrics.MetricRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * What the instrumentation adds to every download and product, recorded from several threads at once the way crawl threads
+ * do. Compare against {@link ParsingBenchmark}: a page costs milliseconds to parse and build, the few records made per page
+ * are well under a microsecond each, far below 1% of that.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+@Threads(8)
+public class MetricsBenchmark {
+	private static final Histogram histogram = MetricRegistry.INSTANCE.histogram("das_benchmark_seconds",
+			"Benchmark", Histogram.nanos, TimeUnit.MINUTES.toNanos(1));
+	private static final Labeled<Histogram> labeled = MetricRegistry.INSTANCE.histogram("das_benchmark_by_host_seconds",
+			"Benchmark", Histogram.millis, TimeUnit.MINUTES.toMillis(10), "host");
+	private static final Counter counter = MetricRegistry.INSTANCE.counter("das_benchmark_total", "Benchmark");
+
+	private final String[] hosts = new String[64];
+	private long value;
+	private int host;
+
+
+	@Setup
+	public void setup() {
+		for(int x = 0; x < hosts.length; x++) {
+			hosts[x] = "www.dealer-" + x + ".com";
+		}
+	}
+
+	@Benchmark
+	public void record() {
+		histogram.record(value += 7919);
+	}
+
+	@Benchmark
+	public void recordSince() {
+		histogram.recordSince(System.nanoTime());
+	}
+
+	@Benchmark
+	public void recordByHost() {
+		labeled.labels(hosts[host++ & 63]).record(value += 7);
+	}
+
+	@Benchmark
+	public void increment() {
+		counter.increment();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public String scrape() {
+		return MetricRegistry.INSTANCE.scrape();
+	}
+}
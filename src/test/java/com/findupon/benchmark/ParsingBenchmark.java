@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.benchmark;
+
+import com.findupon.commons.building.AddressOperations;
+import com.findupon.commons.building.AttributeOperations;
+import com.findupon.commons.building.PriceOperations;
+import com.findupon.commons.exceptions.SoldException;
+import com.findupon.commons.searchparty.AutomotiveGatherer;
+import com.findupon.commons.searchparty.ScoutServices;
+import com.findupon.commons.utilities.AutomobileAttributeMatcher;
+import com.findupon.commons.utilities.JsoupUtils;
+import com.findupon.utilities.PermutableAttribute;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * The page parsers, each operation is one pass over every page of the corpus the parser would see. {@link #buildProduct} is
+ * the work {@link AutomotiveGatherer#createProductIfFound} does per page before anything is persisted, result pages included
+ * as they are turned away on the identifier. The address line cache is warm after the first pass, as it is on a crawler
+ * revisiting the same dealers. {@link #addressWithoutSchema} is the same pages with the schema.org markup taken out, so the
+ * address is found by the fallbacks over the page text.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class ParsingBenchmark {
+	private AutomotiveGatherer gatherer;
+	private Map<Integer, PermutableAttribute> attributes;
+	private List<Document> pages;
+	private List<Document> listings;
+	private List<Document> strippedListings;
+	private List<URL> listingUrls;
+	private List<Document> addressPages;
+	private List<Document> unmarkedAddressPages;
+
+
+	@Setup
+	public void setup() {
+		AutomobileAttributeMatcher attributeMatcher = BenchmarkCorpus.attributeMatcher();
+		gatherer = new AutomotiveGatherer();
+		ReflectionTestUtils.setField(gatherer, "attributeMatcher", attributeMatcher);
+		attributes = attributeMatcher.getFullAttributeMap();
+
+		listings = BenchmarkCorpus.listings();
+		pages = new ArrayList<>(listings);
+		pages.addAll(BenchmarkCorpus.serps());
+		strippedListings = new ArrayList<>();
+		listingUrls = new ArrayList<>();
+		for(Document listing : listings) {
+			strippedListings.add(JsoupUtils.defaultRemoveUnneeded(listing.clone()));
+			listingUrls.add(ScoutServices.getUrlFromString(listing.location(), false));
+		}
+		addressPages = new ArrayList<>(BenchmarkCorpus.dealers());
+		addressPages.addAll(listings);
+		unmarkedAddressPages = new ArrayList<>();
+		for(Document page : addressPages) {
+			Document unmarked = page.clone();
+			unmarked.select("[itemtype]").removeAttr("itemtype");
+			unmarkedAddressPages.add(unmarked);
+		}
+	}
+
+	@Benchmark
+	public void buildProduct(Blackhole blackhole) {
+		for(Document page : pages) {
+			blackhole.consume(gatherer.buildProduct(page));
+		}
+	}
+
+	@Benchmark
+	public void attributes(Blackhole blackhole) {
+		for(int x = 0; x < strippedListings.size(); x++) {
+			blackhole.consume(AttributeOperations.matchTransformer(attributes, strippedListings.get(x), listingUrls.get(x)));
+		}
+	}
+
+	@Benchmark
+	public void loneAttributes(Blackhole blackhole) {
+		for(Document listing : strippedListings) {
+			blackhole.consume(AttributeOperations.loneAttributeMatcher(attributes, listing));
+		}
+	}
+
+	@Benchmark
+	public void address(Blackhole blackhole) {
+		for(Document page : addressPages) {
+			blackhole.consume(AddressOperations.getAddress(page));
+		}
+	}
+
+	@Benchmark
+	public void addressWithoutSchema(Blackhole blackhole) {
+		for(Document page : unmarkedAddressPages) {
+			blackhole.consume(AddressOperations.getAddress(page));
+		}
+	}
+
+	@Benchmark
+	public void price(Blackhole blackhole) throws SoldException {
+		for(Document listing : strippedListings) {
+			blackhole.consume(PriceOperations.getPrice(listing, p -> {
+			}));
+		}
+	}
+}
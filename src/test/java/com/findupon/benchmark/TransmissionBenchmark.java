@@ -0,0 +1,102 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.benchmark;
+
+import com.findupon.cluster.entity.ClusterTransmission;
+import com.findupon.cluster.entity.master.MasterMessage;
+import com.findupon.commons.entity.datasource.AssetType;
+import com.findupon.commons.entity.datasource.DataSource;
+import com.findupon.commons.entity.datasource.DataSourceType;
+import com.findupon.commons.netops.entity.AgentMode;
+import com.findupon.commons.netops.entity.ProxyMode;
+import com.findupon.utilities.EncryptionUtils;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Master to node messages: a work order carrying a data source and the listing URLs from the corpus result pages, encrypted to
+ * and from the wire format, and the cipher on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class TransmissionBenchmark {
+	private ClusterTransmission transmission;
+	private String encrypted;
+	private String json;
+
+
+	@Setup
+	public void setup() {
+		List<String> urls = new ArrayList<>();
+		for(Document serp : BenchmarkCorpus.serps()) {
+			for(Element link : serp.select(".vehicle-card h3 a")) {
+				urls.add(link.absUrl("href"));
+			}
+		}
+		DataSource dataSource = new DataSource();
+		dataSource.setId(1024L);
+		dataSource.setUrl("https://www.example.com/");
+		dataSource.setAssetType(AssetType.AUTOMOBILE);
+		dataSource.setDataSourceType(DataSourceType.GENERIC);
+		dataSource.setProxyMode(ProxyMode.ROTATE_LOCATION);
+		dataSource.setAgentMode(AgentMode.ROTATE);
+		dataSource.setCreated(new Date(1546300800000L));
+		dataSource.setDaysBetweenRuns(1);
+		dataSource.setTotalRuns(42);
+		dataSource.setTotalVisitedUrls(180_000L);
+		dataSource.setTotalDownloadMb(new BigDecimal("2048.75"));
+
+		transmission = new ClusterTransmission(7L, dataSource);
+		transmission.setMessage(MasterMessage.GENERIC_GATHER_AND_BUILD);
+		transmission.setUrlsToWork(urls);
+		encrypted = transmission.toEncryptedJsonString();
+		json = EncryptionUtils.decrypt(encrypted);
+	}
+
+	@Benchmark
+	public String serialize() {
+		return transmission.toEncryptedJsonString();
+	}
+
+	@Benchmark
+	public ClusterTransmission deserialize() {
+		return ClusterTransmission.fromEncryptedJsonString(encrypted, MasterMessage.class);
+	}
+
+	@Benchmark
+	public String encrypt() {
+		return EncryptionUtils.encrypt(json);
+	}
+
+	@Benchmark
+	public String decrypt() {
+		return EncryptionUtils.decrypt(encrypted);
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.building;
+
+import com.findupon.benchmark.BenchmarkCorpus;
+import com.findupon.commons.utilities.JsoupUtils;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The text fallbacks read the page as parsed, checked against the stripped re-parse they replaced.
+ */
+public class AddressOperationsTest {
+	private static final String[] hookValues = {"addr", "map", "direction", "location"};
+
+
+	@Test
+	public void walkMatchesStrippedPage() {
+		List<Document> pages = new ArrayList<>(BenchmarkCorpus.listings());
+		pages.addAll(BenchmarkCorpus.dealers());
+		pages.addAll(BenchmarkCorpus.serps());
+		for(Document page : pages) {
+			page.select("[itemtype]").removeAttr("itemtype");
+			assertWalkMatches(page);
+			// without the attribute hooks, down to the keyword and state fallbacks
+			for(Element element : page.getAllElements()) {
+				for(String key : new String[]{"class", "id", "itemprop", "data-qaid"}) {
+					if(containsHook(element.attr(key))) {
+						element.removeAttr(key);
+					}
+				}
+			}
+			assertWalkMatches(page);
+		}
+	}
+
+	@Test
+	public void addressSplitAcrossInlineTags() {
+		Document document = Jsoup.parse("<html><body><div class=\"dealer-address\"><span>1200 <strong>Biscayne</strong> Blvd</span><br>"
+				+ "<b>Miami</b>, FL <span>33132</span></div></body></html>");
+		List<String> candidates = AddressOperations.getAddressStringsFromText(document);
+		Assert.assertTrue(candidates.toString(), candidates.stream().anyMatch(c -> c.contains("Biscayne") && c.contains("33132")));
+	}
+
+	@Test
+	public void relatedListingsAreSkipped() {
+		Document document = Jsoup.parse("<html><body><div class=\"similar-vehicles\"><div class=\"address\">"
+				+ "1200 Biscayne Blvd Miami, FL 33132</div></div><div class=\"related\"><p>4500 Main St Dallas, TX 75201</p></div></body></html>");
+		Assert.assertTrue(AddressOperations.getAddressStringsFromText(document).isEmpty());
+	}
+
+	@Test
+	public void documentIsLeftAlone() {
+		Document document = BenchmarkCorpus.dealers().get(0);
+		document.select("[itemtype]").removeAttr("itemtype");
+		String html = document.html();
+		AddressOperations.getAddress(document);
+		Assert.assertEquals(html, document.html());
+	}
+
+	private static void assertWalkMatches(Document page) {
+		Assert.assertEquals(page.location(), AddressOperations.getAddressStringsFromText(JsoupUtils.defaultStripTags(page)),
+				AddressOperations.getAddressStringsFromText(page));
+	}
+
+	private static boolean containsHook(String value) {
+		String lower = value.toLowerCase();
+		for(String hook : hookValues) {
+			if(lower.contains(hook)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.findupon.commons.building;
+
+import com.findupon.commons.entity.product.attribute.ExteriorColor;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+
+public class ColorMatcherTest {
+	private static final ColorMatcher<ExteriorColor> matcher = new ColorMatcher<>(ExteriorColor.values(),
+			Arrays.asList("interior", "wheel"), Arrays.asList("exterior", "color"));
+
+
+	@Test
+	public void hits() {
+		List<ColorMatcher.Hit<ExteriorColor>> hits = matcher.hits("Burgundy over TAN  steel metallic");
+		Assert.assertEquals(Arrays.asList(ExteriorColor.RED, ExteriorColor.BROWN, ExteriorColor.BROWN),
+				hits.stream().map(ColorMatcher.Hit::getColor).collect(Collectors.toList()));
+		Assert.assertEquals(Arrays.asList(0, 0, 14), hits.stream().map(ColorMatcher.Hit::getPosition).collect(Collectors.toList()));
+		Assert.assertEquals(Arrays.asList(ExteriorColor.RED, ExteriorColor.BROWN, ExteriorColor.BROWN), matcher.findColors("tan burgundy"));
+		Assert.assertTrue(matcher.avoids("Black Wheels"));
+		Assert.assertTrue(matcher.mentionsMeta("Ext. Color"));
+		Assert.assertTrue(matcher.containsLoneColor("paint: steel metallic"));
+		Assert.assertFalse(matcher.containsLoneColor("reddish"));
+	}
+
+	@Test
+	public void matchesEqualsIgnoreCase() {
+		Random random = new Random(3);
+		List<String> words = new ArrayList<>(Arrays.asList("", "x", "Blue", "GREY", "whiteish", "steel", "metallic", "rose", "Kolor", "ro\u017Fe"));
+		Arrays.stream(ExteriorColor.values()).forEach(c -> words.addAll(c.getAllowedMatches()));
+		for(int x = 0; x < 50_000; x++) {
+			List<String> tokens = new ArrayList<>();
+			for(int y = random.nextInt(8); y >= 0; y--) {
+				String word = words.get(random.nextInt(words.size()));
+				tokens.add(random.nextBoolean() ? word.toUpperCase() : word);
+			}
+			String text = String.join(" ", tokens);
+			List<ExteriorColor> expected = new ArrayList<>();
+			for(ExteriorColor color : ExteriorColor.values()) {
+				for(String alias : color.getAllowedMatches()) {
+					for(String segment : text.split(" ")) {
+						if(StringUtils.equalsIgnoreCase(segment, alias)) {
+							expected.add(color);
+						}
+					}
+				}
+			}
+			Assert.assertEquals(text, expected, matcher.findColors(text));
+			Assert.assertEquals(text, Arrays.stream(ExteriorColor.values())
+					.flatMap(c -> c.getAllowedMatches().stream()).anyMatch(a -> AttributeOperations.containsLoneAttribute(text, a)),
+					matcher.containsLoneColor(text));
+		}
+		Assert.assertEquals(Collections.emptyList(), matcher.findColors(""));
+	}
+}
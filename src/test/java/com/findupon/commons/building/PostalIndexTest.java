@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.building;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+
+
+public class PostalIndexTest {
+	private PostalIndex index;
+
+
+	@Before
+	public void setUp() {
+		index = new PostalIndex(
+				new String[]{"Springfield", "Springfield", "Saint Louis", "Miami", "Miami Beach", "Springdale", "Nowhere"},
+				new String[]{"IL", "MO", "MO", "FL", "FL", "AR", "TX"},
+				new double[]{39.80, 37.21, 38.63, 25.77, 25.79, 36.19, Double.NaN},
+				new double[]{-89.64, -93.29, -90.20, -80.19, -80.13, -94.13, Double.NaN});
+	}
+
+	@Test
+	public void cityAndCityState() {
+		Assert.assertArrayEquals(new int[]{0, 1}, index.byCity("  springfield "));
+		Assert.assertArrayEquals(new int[]{1}, index.byCityState("Springfield", "mo"));
+		Assert.assertArrayEquals(new int[]{2}, index.byCityState("St. Louis", "MO"));
+		Assert.assertArrayEquals(new int[]{2}, index.byCity("st louis"));
+		Assert.assertEquals(0, index.byCityState("Springfield", "FL").length);
+		Assert.assertEquals(0, index.byCity(".*").length);
+		Assert.assertArrayEquals(new int[]{3, 4}, index.byState("FL"));
+	}
+
+	@Test
+	public void prefix() {
+		Assert.assertArrayEquals(new int[]{5, 0, 1}, index.byCityPrefix("spring", 10));
+		Assert.assertArrayEquals(new int[]{5, 0}, index.byCityPrefix("Spring", 2));
+		Assert.assertArrayEquals(new int[]{3, 4}, index.byCityPrefix("miami", 10));
+		Assert.assertEquals(0, index.byCityPrefix("zz", 10).length);
+	}
+
+	@Test
+	public void nearestAndRadius() {
+		Assert.assertEquals(2, index.nearest(38.6, -90.3));
+		Assert.assertEquals(4, index.nearest(25.80, -80.12));
+		Assert.assertEquals(4, index.nearest(0, 0)); // past the ring limit, scanned
+		Assert.assertArrayEquals(new int[]{4, 3}, index.withinRadius(25.80, -80.12, 10));
+		Assert.assertArrayEquals(new int[]{1, 5}, index.withinRadius(37.21, -93.29, 100));
+		Assert.assertEquals(0, index.withinRadius(45, -100, 50).length);
+	}
+
+	@Test
+	public void nearestMatchesScan() {
+		Random random = new Random(7);
+		int size = 5_000;
+		String[] names = new String[size];
+		String[] states = new String[size];
+		double[] lats = new double[size];
+		double[] lons = new double[size];
+		for(int x = 0; x < size; x++) {
+			names[x] = "place" + x;
+			states[x] = "ST";
+			lats[x] = 25 + random.nextDouble() * 24;
+			lons[x] = -125 + random.nextDouble() * 58;
+		}
+		PostalIndex random5k = new PostalIndex(names, states, lats, lons);
+		for(int q = 0; q < 500; q++) {
+			double lat = 20 + random.nextDouble() * 34;
+			double lon = -130 + random.nextDouble() * 68;
+			int scanned = 0;
+			for(int x = 1; x < size; x++) {
+				if(PostalIndex.miles(lat, lon, lats[x], lons[x]) < PostalIndex.miles(lat, lon, lats[scanned], lons[scanned])) {
+					scanned = x;
+				}
+			}
+			int found = random5k.nearest(lat, lon);
+			Assert.assertEquals(PostalIndex.miles(lat, lon, lats[scanned], lons[scanned]), PostalIndex.miles(lat, lon, lats[found], lons[found]), .01);
+		}
+	}
+}
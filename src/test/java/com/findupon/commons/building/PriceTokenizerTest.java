@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.building;
+
+import com.findupon.commons.utilities.RegexConstants;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+
+/**
+ * The tokenizer must agree with the regex it replaced on every input, the random cases cover what the fixed ones miss.
+ */
+public class PriceTokenizerTest {
+	private static final String alphabet = "$0123456789,. k-/*\t\nmo";
+
+
+	@Test
+	public void tokens() {
+		for(String price : new String[]{"$0", "$5", "$15,000", "$15000", "$1,234,567.89", "$0.99", "$999,999"}) {
+			Assert.assertTrue(price, PriceTokenizer.isPrice(price));
+		}
+		for(String other : new String[]{"$", "15000", "$015", "$0,000", "$1234,567", "$15,00", "$15.9", "$15.999", "$15k",
+				"$10,000-$12,000", "$299/mo", "$ 500", "\u00a3500", "$15,000."}) {
+			Assert.assertFalse(other, PriceTokenizer.isPrice(other));
+		}
+	}
+
+	@Test
+	public void collect() {
+		List<String> prices = new ArrayList<>();
+		PriceTokenizer.collectPrices("Now $15,995.00 was $17,500  or $299/mo $15k", prices);
+		Assert.assertEquals(Arrays.asList("15995", "17500"), prices);
+	}
+
+	@Test
+	public void matchesRegex() {
+		Random random = new Random(42);
+		for(int x = 0; x < 200_000; x++) {
+			String text = randomText(random, 1 + random.nextInt(31));
+			List<String> expected = Arrays.stream(text.split(" "))
+					.filter(s -> s.matches(RegexConstants.PRICE_MATCH))
+					.map(PriceOperations::priceStringCleaner)
+					.collect(Collectors.toList());
+			List<String> actual = new ArrayList<>();
+			PriceTokenizer.collectPrices(text, actual);
+			Assert.assertEquals(text, expected, actual);
+			if(text.indexOf('\n') < 0) { // element text never has line breaks, the regex did not match across them
+				Assert.assertEquals(text, text.matches(".*\\d+.*"), PriceTokenizer.containsDigit(text));
+			}
+			Assert.assertEquals(text, text.replaceAll("(?<=\\$)\\s+?(?=\\d)", "").replace("*", " "), PriceTokenizer.joinDollarAmounts(text));
+		}
+	}
+
+	private static String randomText(Random random, int length) {
+		StringBuilder sb = new StringBuilder(length).append('$');
+		for(int x = 1; x < length; x++) {
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+}
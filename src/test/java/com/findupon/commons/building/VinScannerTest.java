@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.building;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+
+
+/**
+ * The scanner must accept exactly what the substring based recognizer it replaced did, which is kept here as the reference.
+ */
+public class VinScannerTest {
+	private static final Set<String> motorcycleVinPrefixes = new HashSet<>(Arrays.asList("KMY", "LAE", "LBB", "LB2",
+			"LFG", "LMC", "LZP", "L5N", "L8X", "VBK", "VTH", "VTT", "ZKH", "KM1", "LAN", "LBP", "LCE", "LFY", "LPR",
+			"L4B", "L5Y", "SMT", "VG5", "VTL", "YU7", "538"));
+	private static final String alphabet = "0123456789ABCDEFGHJKLMNPRSTUVWXYZabcxyzIOQio \t-/.\u017F\u212A\u00e9\u00df\u0661\u0131";
+
+
+	@Test
+	public void vins() {
+		Assert.assertTrue(VinScanner.isVin("1HGCM82633A004352"));
+		Assert.assertTrue(VinScanner.isVin("1hgcm82633a004352"));
+		Assert.assertFalse(VinScanner.isVin("1HGCM82633A004353"));
+		Assert.assertFalse(VinScanner.isVin("11111111111111111"));
+		Assert.assertFalse(VinScanner.isVin(" 1HGCM82633A004352"));
+		Assert.assertTrue(AutoParsingOperations.vinRecognizer().test(" 1HGCM82633A004352\n"));
+		Assert.assertFalse(AutoParsingOperations.vinRecognizer().test(null));
+		Assert.assertEquals(Arrays.asList("1HGCM82633A004352", "1M8GDM9AXKP042788"),
+				VinScanner.findAll("Stock 1HGCM82633A004352, also see /inventory/1M8GDM9AXKP042788?x=1"));
+		Assert.assertEquals("1HGCM82633A004352", AutoParsingOperations.getContainingVin("/used/1HGCM82633A004352").orElse(null));
+		Assert.assertFalse(AutoParsingOperations.getContainingVin("1HGCM82633A00435").isPresent());
+	}
+
+	@Test
+	public void matchesRecognizer() {
+		Random random = new Random(17);
+		for(int x = 0; x < 500_000; x++) {
+			String candidate = candidate(random);
+			Assert.assertEquals(candidate, legacyRecognizer(candidate), AutoParsingOperations.vinRecognizer().test(candidate));
+		}
+	}
+
+	@Test
+	public void matchesSlidingWindow() {
+		Random random = new Random(23);
+		for(int x = 0; x < 20_000; x++) {
+			StringBuilder sb = new StringBuilder();
+			for(int y = random.nextInt(4); y >= 0; y--) {
+				sb.append(candidate(random)).append(random.nextBoolean() ? "" : alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			String text = sb.toString();
+			Assert.assertEquals(text, legacyContainingVin(text), AutoParsingOperations.getContainingVin(text).orElse(null));
+		}
+	}
+
+	/**
+	 * Mostly valid VINs with a character or two changed, and the odd motorcycle or repeated digit VIN.
+	 */
+	private static String candidate(Random random) {
+		char[] vin = new char[17];
+		for(int x = 0; x < vin.length; x++) {
+			vin[x] = alphabet.charAt(random.nextInt(33));
+		}
+		if(random.nextInt(8) == 0) {
+			String prefix = motorcycleVinPrefixes.stream().skip(random.nextInt(motorcycleVinPrefixes.size())).findFirst().orElse("KMY");
+			prefix.getChars(0, 3, vin, 0);
+		}
+		if(random.nextInt(20) == 0) {
+			Arrays.fill(vin, (char)('0' + random.nextInt(10)));
+		}
+		vin[8] = expectedCheckDigit(vin);
+		for(int y = random.nextInt(3); y > 0; y--) {
+			vin[random.nextInt(vin.length)] = alphabet.charAt(random.nextInt(alphabet.length()));
+		}
+		String candidate = new String(vin);
+		return random.nextInt(10) == 0 ? candidate.substring(random.nextInt(3)) : candidate;
+	}
+
+	private static char expectedCheckDigit(char[] vin) {
+		int[] weights = {8, 7, 6, 5, 4, 3, 2, 10, 0, 9, 8, 7, 6, 5, 4, 3, 2};
+		int sum = 0;
+		for(int x = 0; x < vin.length; x++) {
+			sum += "0123456789.ABCDEFGH..JKLMN.P.R..STUVWXYZ".indexOf(vin[x]) % 10 * weights[x];
+		}
+		return "0123456789X".charAt(sum % 11);
+	}
+
+	private static String legacyContainingVin(String container) {
+		if(StringUtils.isEmpty(container) || container.length() < 17) {
+			return null;
+		}
+		for(int x = 0; x < container.length() - 17 + 1; x++) {
+			String potential = container.substring(x, x + 17);
+			if(legacyRecognizer(potential)) {
+				return potential;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The original recognizer, where it threw the scanner rejects.
+	 */
+	private static boolean legacyRecognizer(String v) {
+		try {
+			v = StringUtils.trimToNull(v);
+			if(v == null || v.length() != 17 || !StringUtils.isAlphanumeric(v)) {
+				return false;
+			}
+			for(int x = 0; x < 10; x++) {
+				if(StringUtils.repeat((char)('0' + x), 17).equals(v)) {
+					return false;
+				}
+			}
+			v = v.toUpperCase(Locale.ENGLISH);
+			String weights = "8765432X098765432";
+			String map = "0123456789X";
+			int sum = 0;
+			for(int x = 0; x < v.length(); ++x) {
+				sum += "0123456789.ABCDEFGH..JKLMN.P.R..STUVWXYZ".indexOf(v.charAt(x)) % 10 * map.indexOf(weights.charAt(x));
+			}
+			String prefix = StringUtils.substring(v, 0, 3);
+			return map.charAt(sum % 11) == v.charAt(8) && motorcycleVinPrefixes.stream().noneMatch(mvp -> StringUtils.equalsIgnoreCase(mvp, prefix));
+		} catch(StringIndexOutOfBoundsException e) {
+			return false;
+		}
+	}
+}
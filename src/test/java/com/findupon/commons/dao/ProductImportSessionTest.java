@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.dao;
+
+import com.findupon.commons.dao.core.JdbcFacade;
+import com.findupon.commons.entity.product.automotive.Automobile;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * The facade stands in for the database, recording the statements run and failing the upsert on demand.
+ */
+public class ProductImportSessionTest {
+	private StubJdbcFacade jdbcFacade;
+	private AutomobileDao automobileDao;
+
+
+	@Before
+	public void setUp() {
+		jdbcFacade = new StubJdbcFacade();
+		automobileDao = new AutomobileDao() {
+			@Override
+			int upsertRows(String tableName, List<Object[]> rows) {
+				return rows.size();
+			}
+		};
+		ReflectionTestUtils.setField(automobileDao, "jdbcFacade", jdbcFacade);
+	}
+
+	@Test
+	public void unstagedRowsAreRemoved() {
+		ProductImportSession.Result result;
+		try(ProductImportSession<Automobile> session = session()) {
+			result = session.reconcile();
+		}
+		Assert.assertEquals(1, result.getStaged());
+		Assert.assertEquals(2, jdbcFacade.updates.size());
+		Assert.assertTrue(jdbcFacade.updates.get(0).startsWith("insert into"));
+		Assert.assertTrue(jdbcFacade.updates.get(1).startsWith("delete from"));
+	}
+
+	@Test
+	public void failedUpsertRemovesNothing() {
+		jdbcFacade.failing = true;
+		try(ProductImportSession<Automobile> session = session()) {
+			session.reconcile();
+			Assert.fail("Reconcile should not succeed when the upsert failed");
+		} catch(IllegalStateException e) {
+			Assert.assertTrue(e.getCause() instanceof DataAccessResourceFailureException);
+		}
+		Assert.assertTrue(jdbcFacade.updates.isEmpty());
+	}
+
+	private ProductImportSession<Automobile> session() {
+		ProductImportSession<Automobile> session = automobileDao.newImportSession(7L);
+		Automobile automobile = new Automobile("https://www.example.com/inventory/1");
+		automobile.setDataSourceId(7L);
+		automobile.setListingId("1");
+		session.add(automobile);
+		return session;
+	}
+
+	private static class StubJdbcFacade extends JdbcFacade {
+		private final List<String> updates = new ArrayList<>();
+		private boolean failing;
+
+		StubJdbcFacade() {
+			super(new JdbcTemplate());
+		}
+
+		@Override
+		public void recreateStagingTable(String sourceTable, String stagingTable) {
+		}
+
+		@Override
+		public void dropStagingTable(String stagingTable) {
+		}
+
+		@Override
+		public <T> List<T> queryForList(String sql, Class<T> type, PreparedStatementSetter setter) {
+			return new ArrayList<>();
+		}
+
+		@Override
+		public int retryingUpdate(String sql, PreparedStatementSetter setter) {
+			updates.add(sql);
+			return 1;
+		}
+
+		@Override
+		public int retryingUpdateOrThrow(String sql, PreparedStatementSetter setter) {
+			if(failing) {
+				throw new DataAccessResourceFailureException("Database unavailable");
+			}
+			updates.add(sql);
+			return 1;
+		}
+	}
+}
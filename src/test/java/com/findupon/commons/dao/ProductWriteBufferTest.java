@@ -0,0 +1,280 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.dao;
+
+import com.findupon.commons.entity.product.Product;
+import com.findupon.commons.entity.product.automotive.Automobile;
+import com.findupon.commons.entity.product.watercraft.Watercraft;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+
+/**
+ * The DAOs stand in for the database, recording the batches upserted and failing or affecting no rows on demand.
+ */
+public class ProductWriteBufferTest {
+	private Path spillDirectory;
+	private ProductWriteBuffer buffer;
+	private StubAutomobileDao automobileDao;
+	private StubWatercraftDao watercraftDao;
+
+
+	@Before
+	public void setUp() throws IOException {
+		spillDirectory = Files.createTempDirectory("das-spill-test");
+		buffer = new ProductWriteBuffer(spillDirectory);
+		automobileDao = new StubAutomobileDao();
+		watercraftDao = new StubWatercraftDao();
+		ReflectionTestUtils.setField(buffer, "automobileDao", automobileDao);
+		ReflectionTestUtils.setField(buffer, "watercraftDao", watercraftDao);
+		ReflectionTestUtils.setField(buffer, "realEstateDao", new RealEstateDao());
+		ReflectionTestUtils.setField(buffer, "aircraftDao", new AircraftDao());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		buffer.shutdown();
+		for(Path file : files()) {
+			Files.delete(file);
+		}
+		Files.delete(spillDirectory);
+	}
+
+	@Test
+	public void batchesKeepTheLatestProduct() throws Exception {
+		Thread writer = startWriter();
+		List<Product> products = new ArrayList<>();
+		for(int x = 0; x < 1200; x++) {
+			products.add(automobile(x % 1000, x));
+		}
+		buffer.offer(products);
+		buffer.shutdown();
+		writer.join();
+
+		Assert.assertTrue(automobileDao.batches.stream().allMatch(b -> b.size() <= 512));
+		Map<String, Integer> written = new HashMap<>();
+		automobileDao.batches.forEach(b -> b.forEach(row -> written.put((String)automobileDao.value(row, "listing_id"), automobileDao.price(row))));
+		Assert.assertEquals(1000, written.size());
+		Assert.assertEquals(1150, (int)written.get("150"));
+		Assert.assertEquals(999, (int)written.get("999"));
+		Assert.assertTrue(files().isEmpty());
+	}
+
+	@Test
+	public void unchangedRowsAreNotSpilled() throws IOException {
+		automobileDao.affected = 0;
+		buffer.offer(Collections.singletonList(automobile(1, 1)));
+		Assert.assertEquals(1, automobileDao.batches.size());
+		Assert.assertTrue(files().isEmpty());
+	}
+
+	@Test
+	public void failedWritesSpillAndReplayOnStart() throws Exception {
+		runWriter();
+		automobileDao.failing = true;
+		buffer.offer(Arrays.asList(automobile(1, 100), automobile(2, 200)));
+		Assert.assertEquals(Collections.singletonList("automobile.spill"), fileNames());
+
+		automobileDao.failing = false;
+		runWriter();
+		Assert.assertTrue(files().isEmpty());
+		Assert.assertEquals(1, automobileDao.batches.size());
+		Assert.assertEquals(200, automobileDao.price(automobileDao.batches.get(0).get(1)));
+	}
+
+	@Test
+	public void unreadableSpillFileIsSetAside() throws Exception {
+		runWriter();
+		watercraftDao.failing = true;
+		buffer.offer(Collections.singletonList(watercraft(1)));
+		watercraftDao.failing = false;
+		Files.write(spillDirectory.resolve("automobile.spill"), "not a spill file".getBytes(StandardCharsets.UTF_8));
+
+		runWriter();
+		Assert.assertEquals(1, watercraftDao.batches.size());
+		List<String> left = fileNames();
+		Assert.assertEquals(1, left.size());
+		Assert.assertTrue(left.get(0).startsWith("automobile.replay-") && left.get(0).endsWith(".bad"));
+		Assert.assertTrue(automobileDao.batches.isEmpty());
+	}
+
+	@Test
+	public void failedReplayDoesNotHoldUpOtherTables() throws Exception {
+		runWriter();
+		automobileDao.failing = true;
+		watercraftDao.failing = true;
+		buffer.offer(Arrays.asList(automobile(1, 100), watercraft(1)));
+		watercraftDao.failing = false;
+
+		runWriter();
+		Assert.assertEquals(1, watercraftDao.batches.size());
+		Assert.assertEquals(Collections.singletonList("automobile.replay"), fileNames());
+	}
+
+	@Test
+	public void nothingSpilledWhereNoWriterRan() throws IOException {
+		automobileDao.failing = true;
+		buffer.offer(Collections.singletonList(automobile(1, 100)));
+		Assert.assertTrue(files().isEmpty());
+	}
+
+	@Test
+	public void discardedProductIsNotReplayed() throws Exception {
+		runWriter();
+		automobileDao.failing = true;
+		buffer.offer(Arrays.asList(automobile(1, 100), automobile(2, 200)));
+		automobileDao.failing = false;
+		buffer.discard(automobile(1, 0));
+
+		runWriter();
+		Assert.assertTrue(files().isEmpty());
+		Assert.assertEquals(1, automobileDao.batches.size());
+		Assert.assertEquals(1, automobileDao.batches.get(0).size());
+		Assert.assertEquals("2", automobileDao.value(automobileDao.batches.get(0).get(0), "listing_id"));
+	}
+
+	@Test
+	public void writerOutlivesAnUnexpectedError() throws Exception {
+		Thread writer = startWriter();
+		automobileDao.broken = true;
+		List<Product> products = new ArrayList<>();
+		for(int x = 0; x < 512; x++) {
+			products.add(automobile(x, x));
+		}
+		buffer.offer(products);
+		while(automobileDao.attempts == 0) {
+			Thread.sleep(10L);
+		}
+		automobileDao.broken = false;
+		buffer.offer(Collections.singletonList(automobile(1000, 1000)));
+		Thread.sleep(100L);
+		Assert.assertTrue(writer.isAlive());
+
+		buffer.shutdown();
+		writer.join();
+		Assert.assertEquals(1, automobileDao.batches.size());
+		Assert.assertEquals("1000", automobileDao.value(automobileDao.batches.get(0).get(0), "listing_id"));
+		Assert.assertTrue(files().isEmpty());
+	}
+
+	private void runWriter() throws InterruptedException {
+		Thread writer = startWriter();
+		buffer.shutdown();
+		writer.join();
+	}
+
+	/**
+	 * Offers are written through until the writer has started, and a shutdown before then would be overridden by the start.
+	 */
+	private Thread startWriter() throws InterruptedException {
+		Thread writer = new Thread(buffer);
+		writer.start();
+		while(!((AtomicBoolean)ReflectionTestUtils.getField(buffer, "run")).get()) {
+			Thread.sleep(10L);
+		}
+		return writer;
+	}
+
+	private List<Path> files() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try(DirectoryStream<Path> stream = Files.newDirectoryStream(spillDirectory)) {
+			stream.forEach(files::add);
+		}
+		return files;
+	}
+
+	private List<String> fileNames() throws IOException {
+		return files().stream().map(p -> p.getFileName().toString()).sorted().collect(Collectors.toList());
+	}
+
+	private static Automobile automobile(int listing, int price) {
+		Automobile automobile = new Automobile("https://www.example.com/inventory/" + listing);
+		automobile.setDataSourceId(7L);
+		automobile.setListingId(String.valueOf(listing));
+		automobile.setPrice(new BigDecimal(price));
+		return automobile;
+	}
+
+	private static Watercraft watercraft(int listing) {
+		Watercraft watercraft = new Watercraft("https://www.example.com/boats/" + listing);
+		watercraft.setDataSourceId(7L);
+		watercraft.setListingId(String.valueOf(listing));
+		return watercraft;
+	}
+
+	private static class StubAutomobileDao extends AutomobileDao {
+		private final List<List<Object[]>> batches = new ArrayList<>();
+		private volatile boolean failing;
+		private volatile boolean broken;
+		private volatile int attempts;
+		private volatile int affected = -1;
+
+		@Override
+		int upsertRows(List<Object[]> rows) {
+			attempts++;
+			if(failing) {
+				throw new DataAccessResourceFailureException("Database unavailable");
+			}
+			if(broken) {
+				throw new IllegalStateException("Not a database error");
+			}
+			batches.add(new ArrayList<>(rows));
+			return affected < 0 ? rows.size() : affected;
+		}
+
+		Object value(Object[] row, String column) {
+			return row[new ArrayList<>(entityMetaData.getColumnFields().keySet()).indexOf(column)];
+		}
+
+		int price(Object[] row) {
+			return ((BigDecimal)value(row, "price")).intValue();
+		}
+	}
+
+	private static class StubWatercraftDao extends WatercraftDao {
+		private final List<List<Object[]>> batches = new ArrayList<>();
+		private volatile boolean failing;
+
+		@Override
+		int upsertRows(List<Object[]> rows) {
+			if(failing) {
+				throw new DataAccessResourceFailureException("Database unavailable");
+			}
+			batches.add(new ArrayList<>(rows));
+			return rows.size();
+		}
+	}
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.learning;
+
+import com.findupon.commons.bot.PageMetaBot;
+import com.findupon.commons.building.AddressOperations;
+import com.findupon.commons.building.AttributeOperations;
+import com.findupon.commons.entity.building.TagWeight;
+import com.findupon.commons.entity.datasource.AssetType;
+import com.findupon.commons.entity.datasource.PageMeta;
+import com.findupon.commons.entity.learning.PossibleAssetType;
+import com.findupon.commons.utilities.AutomobileAttributeMatcher;
+import com.findupon.commons.utilities.JsoupUtils;
+import com.findupon.utilities.ContainsCollectionOwnText;
+import com.findupon.utilities.PermutableAttribute;
+import org.apache.commons.lang3.StringUtils;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Collector;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+
+/**
+ * The determiners as they scored a page before {@link PageFeatures}, each re-walking or re-serializing the document on its
+ * own. Kept to check the shared features against and to time them. The meta determiner needs the database, its page meta is
+ * what's compared.
+ */
+public final class LegacyDeterminers {
+	private final Set<String> makes;
+	private final Set<String> urlKeywords;
+
+
+	public LegacyDeterminers(AutomobileAttributeMatcher attributeMatcher) {
+		makes = attributeMatcher.getFullAttributeMap().values().stream()
+				.map(PermutableAttribute::getAttribute)
+				.collect(Collectors.toSet());
+		urlKeywords = URLKeywordFrequency.buildKeywords(attributeMatcher);
+	}
+
+	/**
+	 * @return the scores in {@link AssetRecognizer} order, less the meta determiner
+	 */
+	public List<PossibleAssetType> determine(Document document) {
+		return Arrays.asList(keyAttributes(document), basicKeywords(document), urlKeywords(document), address(document), schema(document));
+	}
+
+	public PossibleAssetType keyAttributes(Document document) {
+		List<Double> attributeWeights = new ArrayList<>();
+		List<Element> elements = Collector.collect(new ContainsCollectionOwnText(makes), document).stream()
+				.filter(JsoupUtils.defaultTextQualityGate)
+				.collect(Collectors.toList());
+		for(String attribute : makes) {
+			for(Element e : elements) {
+				if(AttributeOperations.containsLoneAttribute(e.ownText(), attribute)) {
+					attributeWeights.add(TagWeight.getWeight(e));
+				}
+			}
+		}
+		double weight = attributeWeights.stream().reduce(0D, Double::sum);
+		return possible(weight >= TagWeight.DEFAULT_WEIGHT * 4, weight > 1 ? 1 : weight);
+	}
+
+	public PossibleAssetType basicKeywords(Document document) {
+		long found = Arrays.stream(BasicKeywordFrequency.keywords)
+				.filter(keyword -> StringUtils.containsIgnoreCase(document.html(), keyword))
+				.count();
+		double frequency = (double)found / BasicKeywordFrequency.keywords.length;
+		return possible(frequency >= 3D / BasicKeywordFrequency.keywords.length, frequency);
+	}
+
+	public PossibleAssetType urlKeywords(Document document) {
+		boolean found = urlKeywords.stream().anyMatch(s -> StringUtils.containsIgnoreCase(document.location(), s));
+		return possible(found, found ? 1D : 0D);
+	}
+
+	public PossibleAssetType address(Document document) {
+		boolean found = AddressOperations.getAddress(document).isPresent();
+		return possible(found, found ? 1D : 0D);
+	}
+
+	public PossibleAssetType schema(Document document) {
+		boolean found = Arrays.stream(SchemaFinder.schemas).anyMatch(s -> StringUtils.containsIgnoreCase(document.html(), s));
+		return possible(found, found ? 1D : 0D);
+	}
+
+	public PageMeta pageMeta(Document document) {
+		return PageMetaBot.buildPageMeta(document);
+	}
+
+	private static PossibleAssetType possible(boolean guess, double relativeProbability) {
+		PossibleAssetType possibleAssetType = new PossibleAssetType();
+		possibleAssetType.setAssetType(AssetType.AUTOMOBILE);
+		possibleAssetType.setGuess(guess);
+		possibleAssetType.setRelativeProbability(relativeProbability);
+		return possibleAssetType;
+	}
+}
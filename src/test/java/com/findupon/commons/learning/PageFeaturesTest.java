@@ -0,0 +1,86 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.learning;
+
+import com.findupon.benchmark.BenchmarkCorpus;
+import com.findupon.commons.entity.datasource.PageMeta;
+import com.findupon.commons.entity.learning.PossibleAssetType;
+import com.findupon.commons.utilities.AutomobileAttributeMatcher;
+import org.jsoup.nodes.Document;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+
+/**
+ * Every page of the benchmark corpus scores the same through the shared features as through the old per-determiner walks.
+ */
+public class PageFeaturesTest {
+	private static List<Document> pages;
+	private static LegacyDeterminers legacy;
+	private static List<AssetDeterminer> determiners;
+
+
+	@BeforeClass
+	public static void setUp() {
+		pages = new ArrayList<>(BenchmarkCorpus.listings());
+		pages.addAll(BenchmarkCorpus.dealers());
+		pages.addAll(BenchmarkCorpus.serps());
+		AutomobileAttributeMatcher attributeMatcher = BenchmarkCorpus.attributeMatcher();
+		legacy = new LegacyDeterminers(attributeMatcher);
+		determiners = Arrays.asList(new KeyAttributeFrequency(attributeMatcher), new BasicKeywordFrequency(),
+				new URLKeywordFrequency(attributeMatcher), new AddressFinder(), new SchemaFinder());
+	}
+
+	@Test
+	public void scoresMatchTheDocumentWalks() {
+		int[] guesses = new int[determiners.size()];
+		for(Document page : pages) {
+			PageFeatures features = new PageFeatures(page);
+			List<PossibleAssetType> expected = legacy.determine(page);
+			for(int x = 0; x < determiners.size(); x++) {
+				PossibleAssetType actual = determiners.get(x).getPossibleAssetType(features);
+				String message = determiners.get(x).getClass().getSimpleName() + " " + page.location();
+				Assert.assertEquals(message, expected.get(x).isGuess(), actual.isGuess());
+				Assert.assertEquals(message, expected.get(x).getRelativeProbability(), actual.getRelativeProbability(), 0D);
+				Assert.assertEquals(message, expected.get(x).getAssetType(), actual.getAssetType());
+				guesses[x] += actual.isGuess() ? 1 : 0;
+			}
+		}
+		for(int x = 0; x < guesses.length; x++) {
+			// a determiner that never guesses on the corpus says little about its equivalence
+			String message = determiners.get(x).getClass().getSimpleName() + " guessed on " + guesses[x] + " of " + pages.size();
+			Assert.assertTrue(message, guesses[x] > 0);
+		}
+	}
+
+	@Test
+	public void pageMetaMatches() {
+		for(Document page : pages) {
+			PageMeta expected = legacy.pageMeta(page);
+			PageMeta actual = new PageFeatures(page).getPageMeta();
+			Assert.assertEquals(page.location(), expected.getTitle(), actual.getTitle());
+			Assert.assertEquals(page.location(), expected.getDescription(), actual.getDescription());
+			Assert.assertEquals(page.location(), expected.getKeywords(), actual.getKeywords());
+			Assert.assertEquals(page.location(), expected.getAuthor(), actual.getAuthor());
+		}
+	}
+}
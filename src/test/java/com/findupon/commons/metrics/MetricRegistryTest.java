@@ -0,0 +1,158 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.commons.metrics;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+
+public class MetricRegistryTest {
+
+	@Test
+	public void buckets() {
+		for(long value : new long[]{0, 1, 15, 16, 17, 31, 32, 33, 1000, 123_456_789L, Long.MAX_VALUE >> 1}) {
+			int index = Histogram.index(value);
+			Assert.assertTrue(String.valueOf(value), Histogram.lowerBound(index) <= value);
+			Assert.assertTrue(String.valueOf(value), Histogram.lowerBound(index + 1) > value);
+		}
+	}
+
+	@Test
+	public void quantiles() {
+		Random random = new Random(7);
+		Histogram histogram = new Histogram(Histogram.units, 1L << 40);
+		long[] values = new long[100_000];
+		for(int x = 0; x < values.length; x++) {
+			values[x] = (long)Math.exp(random.nextDouble() * 20);
+			histogram.record(values[x]);
+		}
+		Arrays.sort(values);
+		Assert.assertEquals(values.length, histogram.getCount());
+		for(double quantile : new double[]{0.5, 0.9, 0.99, 0.999}) {
+			long expected = values[(int)Math.ceil(quantile * values.length) - 1];
+			Assert.assertEquals(String.valueOf(quantile), expected, histogram.getQuantile(quantile), expected * 0.035);
+		}
+	}
+
+	@Test
+	public void exposition() {
+		MetricRegistry registry = new MetricRegistry();
+		registry.counter("das_test_total", "Things\ncounted").add(3);
+		registry.counter("das_test_by_host_total", "Things by host", "host").labels("a \"b\" \\c").increment();
+		Histogram histogram = registry.histogram("das_test_seconds", "Time", Histogram.millis, 1000);
+		histogram.record(250, 4);
+		registry.gauge("das_test_depth", "Depth", () -> 2.5);
+		registry.gauges("das_test_per_node", "Per node", "node", () -> Collections.singletonMap("1", 4));
+		Assert.assertSame(histogram, registry.histogram("das_test_seconds", "Time", Histogram.millis, 1000));
+
+		Assert.assertEquals(
+				"# HELP das_test_by_host_total Things by host\n" +
+						"# TYPE das_test_by_host_total counter\n" +
+						"das_test_by_host_total{host=\"a \\\"b\\\" \\\\c\"} 1\n" +
+						"# HELP das_test_depth Depth\n" +
+						"# TYPE das_test_depth gauge\n" +
+						"das_test_depth 2.5\n" +
+						"# HELP das_test_per_node Per node\n" +
+						"# TYPE das_test_per_node gauge\n" +
+						"das_test_per_node{node=\"1\"} 4\n" +
+						"# HELP das_test_seconds Time\n" +
+						"# TYPE das_test_seconds summary\n" +
+						"das_test_seconds{quantile=\"0.5\"} 0.2515\n" +
+						"das_test_seconds{quantile=\"0.9\"} 0.2515\n" +
+						"das_test_seconds{quantile=\"0.99\"} 0.2515\n" +
+						"das_test_seconds{quantile=\"0.999\"} 0.2515\n" +
+						"das_test_seconds_sum 1\n" +
+						"das_test_seconds_count 4\n" +
+						"# HELP das_test_total Things\\ncounted\n" +
+						"# TYPE das_test_total counter\n" +
+						"das_test_total 3\n",
+				registry.scrape());
+	}
+
+	@Test
+	public void labelCap() {
+		Labeled<Counter> hosts = new MetricRegistry().counter("das_test_hosts_total", "Hosts", "host");
+		for(int x = 0; x < Labeled.maxValues + 10; x++) {
+			hosts.labels("host-" + x).increment();
+		}
+		Assert.assertEquals(10, hosts.labels(Labeled.overflow).get());
+		Assert.assertEquals(1, hosts.labels("host-0").get());
+		Assert.assertEquals(10, hosts.labels("host-9999").get());
+	}
+
+	@Test
+	public void labelCapUnderContention() throws InterruptedException {
+		Labeled<Counter> hosts = new MetricRegistry().counter("das_test_contended_hosts_total", "Hosts", "host");
+		int threads = 8;
+		CountDownLatch start = new CountDownLatch(1);
+		List<Thread> workers = new ArrayList<>();
+		for(int t = 0; t < threads; t++) {
+			int offset = t;
+			Thread worker = new Thread(() -> {
+				try {
+					start.await();
+				} catch(InterruptedException e) {
+					return;
+				}
+				for(int x = offset; x < Labeled.maxValues * 2; x += threads) {
+					hosts.labels("host-" + x).increment();
+				}
+			});
+			worker.start();
+			workers.add(worker);
+		}
+		start.countDown();
+		for(Thread worker : workers) {
+			worker.join();
+		}
+		Counter other = hosts.labels(Labeled.overflow);
+		int ownChildren = 0;
+		for(int x = 0; x < Labeled.maxValues * 2; x++) {
+			if(hosts.labels("host-" + x) != other) {
+				ownChildren++;
+			}
+		}
+		Assert.assertEquals(Labeled.maxValues, ownChildren);
+		Assert.assertEquals(Labeled.maxValues, other.get());
+	}
+
+	@Test
+	public void endpoint() throws Exception {
+		MetricRegistry.INSTANCE.counter("das_test_endpoint_total", "Endpoint test").increment();
+		try(MetricsEndpoint endpoint = MetricsEndpoint.start("127.0.0.1", 0)) {
+			HttpURLConnection connection = (HttpURLConnection)new URL("http://127.0.0.1:" + endpoint.getPort() + "/metrics").openConnection();
+			Assert.assertEquals(200, connection.getResponseCode());
+			Assert.assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+			try(InputStream in = connection.getInputStream()) {
+				Assert.assertTrue(IOUtils.toString(in, StandardCharsets.UTF_8).contains("das_test_endpoint_total 1\n"));
+			}
+		}
+	}
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.message.BasicHeader;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+
+public class BoundedBodyReaderTest {
+	private static final String url = "https://www.example.com/listing/1";
+
+
+	@Test
+	public void onlyParsedContentTypesAreRead() {
+		Assert.assertEquals(BoundedBodyReader.BodyType.HTML, BoundedBodyReader.typeOf("text/html", url));
+		Assert.assertEquals(BoundedBodyReader.BodyType.HTML, BoundedBodyReader.typeOf((String)null, url));
+		Assert.assertEquals(BoundedBodyReader.BodyType.XML, BoundedBodyReader.typeOf("application/rss+xml", url));
+		Assert.assertEquals(BoundedBodyReader.BodyType.TEXT, BoundedBodyReader.typeOf("text/plain", url));
+		Assert.assertEquals(BoundedBodyReader.BodyType.JSON, BoundedBodyReader.typeOf("application/ld+json", url));
+		Assert.assertEquals(BoundedBodyReader.BodyType.XML, BoundedBodyReader.typeOf("application/x-gzip", "https://www.example.com/sitemap.xml.gz"));
+		Assert.assertNull(BoundedBodyReader.typeOf("application/x-gzip", url));
+		Assert.assertNull(BoundedBodyReader.typeOf("image/jpeg", url));
+		Assert.assertNull(BoundedBodyReader.typeOf("application/pdf", url));
+	}
+
+	@Test
+	public void charsetFromHeaderThenMetaThenDefault() throws IOException {
+		byte[] latin = "<html><head><meta charset=\"windows-1252\"></head><body>caf\u00e9</body></html>".getBytes("windows-1252");
+		Assert.assertTrue(read(entity(latin, "text/html"), url).getContent().contains("caf\u00e9"));
+
+		byte[] utf8 = "<html><body>caf\u00e9</body></html>".getBytes(StandardCharsets.UTF_8);
+		Assert.assertTrue(read(entity(utf8, "text/html"), url).getContent().contains("caf\u00c3\u00a9")); // undeclared is ISO-8859-1
+		Assert.assertTrue(read(entity(utf8, "text/html; charset=UTF-8"), url).getContent().contains("caf\u00e9"));
+
+		byte[] declared = "<html><body>caf\u00e9</body></html>".getBytes(StandardCharsets.ISO_8859_1);
+		Assert.assertTrue(read(entity(declared, "text/html; charset=ISO-8859-1"), url).getContent().contains("caf\u00e9"));
+	}
+
+	@Test
+	public void wireBytesAreCountedBeforeDecompression() throws IOException {
+		StringBuilder html = new StringBuilder("<html><body>");
+		for(int x = 0; x < 2000; x++) {
+			html.append("<p>listing</p>");
+		}
+		byte[] gzipped = gzip(html.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8));
+		BasicHttpEntity encoded = entity(gzipped, "text/html");
+		encoded.setContentEncoding("gzip");
+		BoundedBodyReader.Body body = read(encoded, url);
+		Assert.assertEquals(html.toString(), body.getContent());
+		Assert.assertEquals(gzipped.length, body.getWireBytes());
+
+		// a sitemap file that is gzip on disk but not declared as such, and one that is not gzip at all
+		String sitemap = "https://www.example.com/sitemap.xml.gz";
+		Assert.assertEquals(html.toString(), read(entity(gzipped, "application/x-gzip"), sitemap).getContent());
+		Assert.assertEquals("<urlset/>", read(entity("<urlset/>".getBytes(StandardCharsets.UTF_8), "application/xml"), sitemap).getContent());
+	}
+
+	@Test(expected = ResponseBodyRejectedException.class)
+	public void endlessBodyStopsAtTheCap() throws IOException {
+		BasicHttpEntity endless = new BasicHttpEntity();
+		endless.setContentType("text/plain");
+		endless.setContent(new InputStream() {
+			@Override
+			public int read() {
+				return 'a';
+			}
+		});
+		read(endless, url);
+	}
+
+	@Test
+	public void slowBodyStopsAtTheDeadline() {
+		BasicHttpEntity drip = new BasicHttpEntity();
+		drip.setContentType("text/html");
+		drip.setContent(new InputStream() {
+			@Override
+			public int read() throws IOException {
+				try {
+					Thread.sleep(20L);
+				} catch(InterruptedException e) {
+					throw new IOException(e);
+				}
+				return 'a';
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				b[off] = (byte)read();
+				return 1;
+			}
+		});
+		long start = System.currentTimeMillis();
+		try {
+			BoundedBodyReader.read(drip, BoundedBodyReader.BodyType.HTML, url, start + 200L, () -> {});
+			Assert.fail();
+		} catch(IOException e) {
+			Assert.assertTrue(e instanceof ResponseBodyRejectedException);
+		}
+		Assert.assertTrue(System.currentTimeMillis() - start < 2000L);
+	}
+
+	private static BoundedBodyReader.Body read(BasicHttpEntity entity, String url) throws IOException {
+		return BoundedBodyReader.read(entity, BoundedBodyReader.typeOf(entity, url), url, BoundedBodyReader.deadlineFromNow(), () -> {});
+	}
+
+	private static BasicHttpEntity entity(byte[] bytes, String contentType) {
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContent(new ByteArrayInputStream(bytes));
+		entity.setContentLength(bytes.length);
+		entity.setContentType(new BasicHeader("Content-Type", contentType));
+		return entity;
+	}
+
+	private static byte[] gzip(byte[] bytes) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try(GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(bytes);
+		}
+		return out.toByteArray();
+	}
+}
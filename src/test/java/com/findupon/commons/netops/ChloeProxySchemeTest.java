@@ -0,0 +1,106 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import com.findupon.commons.netops.entity.AgentMode;
+import com.findupon.commons.netops.entity.Proxy;
+import com.findupon.commons.netops.entity.ProxyMode;
+import com.findupon.commons.netops.entity.RequestMeta;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.auth.AuthScheme;
+import org.apache.http.auth.AuthenticationException;
+import org.apache.http.auth.UsernamePasswordCredentials;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.message.BasicHttpRequest;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.URI;
+
+import static com.findupon.commons.netops.entity.HttpStatusCode.SC_OK;
+
+
+public class ChloeProxySchemeTest {
+	private static final ProxyPool privateProxies = new ProxyPool(Proxy.parse("a.test", 31280), () -> null);
+	private static final URI uri = URI.create("https://www.example.com/listing/1");
+
+
+	@Test
+	public void openConnectAsksForTheCountry() throws AuthenticationException {
+		RequestMeta meta = new RequestMeta(ProxyMode.ROTATE_OPEN, AgentMode.ROTATE, uri, privateProxies);
+		HttpRequest connect = connect();
+		Assert.assertNotNull(authenticate(context(meta), connect));
+		Assert.assertEquals("US", connect.getFirstHeader("X-ProxyMesh-Country").getValue());
+		Assert.assertNotNull(connect.getFirstHeader("X-ProxyMesh-Timeout"));
+		Assert.assertNull(connect.getFirstHeader("X-ProxyMesh-IP"));
+	}
+
+	@Test
+	public void connectResponseIpIsAskedForNext() throws AuthenticationException {
+		RequestMeta meta = new RequestMeta(ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE, uri, privateProxies);
+		HttpClientContext context = context(meta);
+		HttpRequest connect = connect();
+		authenticate(context, connect);
+		Assert.assertNull(connect.getFirstHeader("X-ProxyMesh-IP"));
+		Assert.assertNull(connect.getFirstHeader("X-ProxyMesh-Country"));
+
+		ChloeProxyScheme.processConnectResponse(ipResponse(), context);
+		Assert.assertEquals("10.1.2.3", meta.getState().getProxyIp());
+
+		HttpRequest next = connect();
+		authenticate(context(meta), next);
+		Assert.assertEquals("10.1.2.3", next.getFirstHeader("X-ProxyMesh-IP").getValue());
+	}
+
+	@Test
+	public void onlyTheConnectResponseIsRead() throws AuthenticationException {
+		RequestMeta meta = new RequestMeta(ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE, uri, privateProxies);
+		HttpClientContext context = context(meta);
+		HttpRequest get = new BasicHttpRequest("GET", uri.toString(), HttpVersion.HTTP_1_1);
+		authenticate(context, get);
+		Assert.assertNull(get.getFirstHeader("X-ProxyMesh-IP"));
+
+		ChloeProxyScheme.processConnectResponse(ipResponse(), context);
+		Assert.assertNull(meta.getState().getProxyIp());
+	}
+
+	private static HttpClientContext context(RequestMeta meta) {
+		return ContextOps.create(meta, meta.getState(), uri.toString(), null, false);
+	}
+
+	/**
+	 * Through the scheme {@link ContextOps} puts in the auth cache for the session's proxy, as the client would.
+	 */
+	private static Object authenticate(HttpClientContext context, HttpRequest request) throws AuthenticationException {
+		AuthScheme scheme = context.getAuthCache().get(ContextOps.session(context).getConfig().getProxy());
+		Assert.assertTrue(scheme instanceof ChloeProxyScheme);
+		return ((ChloeProxyScheme)scheme).authenticate(new UsernamePasswordCredentials("user", "pass"), request, context);
+	}
+
+	private static HttpRequest connect() {
+		return new BasicHttpRequest("CONNECT", "www.example.com:443", HttpVersion.HTTP_1_1);
+	}
+
+	private static HttpResponse ipResponse() {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, SC_OK, "Connection established");
+		response.setHeader("X-ProxyMesh-IP", "10.1.2.3");
+		return response;
+	}
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import com.findupon.commons.netops.entity.AgentMode;
+import com.findupon.commons.netops.entity.AgentResponse;
+import com.findupon.commons.netops.entity.Proxy;
+import com.findupon.commons.netops.entity.ProxyMode;
+import com.findupon.commons.netops.entity.ProxyState;
+import com.findupon.commons.netops.entity.RequestMeta;
+import com.findupon.commons.netops.entity.RequestedAction;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.findupon.commons.netops.entity.HttpStatusCode.*;
+
+
+public class ChloeResponseHandlerTest {
+	private static final ProxyPool privateProxies = new ProxyPool(Proxy.parse("a.test", 31280), () -> null);
+
+
+	@After
+	public void tearDown() {
+		ServerResponseProcessor.removeOverrides("www.example.com");
+	}
+
+	@Test
+	public void overriddenRemoteCodeSwitchesSession() throws IOException {
+		ServerResponseProcessor.override("www.example.com", SC_FORBIDDEN, ProxyState.IP_SWITCH_NEEDED, RequestedAction.PROCEED);
+		RequestMeta meta = meta("https://www.example.com/listing/1");
+		RequestMeta.SessionState state = meta.getState();
+
+		AgentResponse response = handle(meta, response(SC_FORBIDDEN, "Forbidden"));
+		Assert.assertEquals(SC_FORBIDDEN, response.getDecision().getStatusCode());
+		Assert.assertNotSame(state, meta.getState());
+		Assert.assertNotEquals(state.getSessionId(), meta.getState().getSessionId());
+	}
+
+	@Test
+	public void remoteCodesSwitchOnlyWhenOverridden() throws IOException {
+		RequestMeta meta = meta("https://www.example.com/listing/1");
+		RequestMeta.SessionState state = meta.getState();
+		for(int status : new int[]{SC_FORBIDDEN, SC_NOT_FOUND, SC_NOT_ACCEPTABLE, SC_REQUEST_TIMEOUT, SC_TOO_MANY_REQUESTS,
+				SC_BAD_GATEWAY, SC_SERVICE_UNAVAILABLE, SC_GATEWAY_TIMEOUT}) {
+			handle(meta, response(status, "Error"));
+		}
+		Assert.assertSame(state, meta.getState());
+
+		ServerResponseProcessor.override("www.example.com", SC_NOT_FOUND, ProxyState.SUCCESS, RequestedAction.PROCEED);
+		handle(meta, response(SC_TOO_MANY_REQUESTS, "Too Many Requests"));
+		Assert.assertSame(state, meta.getState());
+	}
+
+	@Test
+	public void errorStatusOutlivesItsBody() throws IOException {
+		RequestMeta meta = meta("https://www.example.com/listing/1");
+		HttpResponse unavailable = new BasicHttpResponse(HttpVersion.HTTP_1_1, SC_SERVICE_UNAVAILABLE, "Service Unavailable");
+		unavailable.setHeader(HttpHeaders.RETRY_AFTER, "120");
+		unavailable.setEntity(new StringEntity("not a page", ContentType.IMAGE_PNG));
+		AgentResponse response = handle(meta, unavailable);
+		Assert.assertEquals(SC_SERVICE_UNAVAILABLE, response.getDecision().getStatusCode());
+		Assert.assertEquals(120_000L, (long)response.getRetryAfterMillis());
+		Assert.assertNull(response.getContent());
+
+		AtomicBoolean aborted = new AtomicBoolean();
+		HttpResponse limited = new BasicHttpResponse(HttpVersion.HTTP_1_1, SC_TOO_MANY_REQUESTS, "Too Many Requests");
+		limited.setHeader(HttpHeaders.RETRY_AFTER, "30");
+		limited.setEntity(endless("text/html"));
+		response = handle(meta, limited, () -> aborted.set(true));
+		Assert.assertEquals(SC_TOO_MANY_REQUESTS, response.getDecision().getStatusCode());
+		Assert.assertEquals(30_000L, (long)response.getRetryAfterMillis());
+		Assert.assertNull(response.getContent());
+		Assert.assertTrue(aborted.get());
+	}
+
+	@Test(expected = ResponseBodyRejectedException.class)
+	public void successfulResponseFailsForItsBody() throws IOException {
+		HttpResponse image = new BasicHttpResponse(HttpVersion.HTTP_1_1, SC_OK, "OK");
+		image.setEntity(new StringEntity("not a page", ContentType.IMAGE_PNG));
+		handle(meta("https://www.example.com/listing/1"), image, () -> {});
+	}
+
+	/**
+	 * The async consumer rejects the body before the handler sees it, the status has to come through the agent all the same.
+	 * The server stands in for the proxy non-production sessions are sent through.
+	 */
+	@Test
+	public void agentKeepsErrorStatusOfRejectedBody() throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			byte[] body = new byte[4096];
+			exchange.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, "image/png");
+			exchange.getResponseHeaders().add(HttpHeaders.RETRY_AFTER, "7");
+			exchange.sendResponseHeaders(SC_SERVICE_UNAVAILABLE, body.length);
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		ProxyPool standIn = new ProxyPool(Proxy.parse("127.0.0.1:" + server.getAddress().getPort(), 0), () -> null);
+		try(ConnectionAgent agent = new ConnectionAgent(standIn)) {
+			String url = "http://dealer.test/inventory";
+			AgentResponse async = agent.downloadAsync(url, ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE).join();
+			Assert.assertEquals(SC_SERVICE_UNAVAILABLE, async.getDecision().getStatusCode());
+			Assert.assertEquals(7_000L, (long)async.getRetryAfterMillis());
+
+			AgentResponse sync = agent.download(url, ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE, false);
+			Assert.assertEquals(SC_SERVICE_UNAVAILABLE, sync.getDecision().getStatusCode());
+			Assert.assertEquals(7_000L, (long)sync.getRetryAfterMillis());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	private static RequestMeta meta(String url) {
+		return new RequestMeta(ProxyMode.PUBLIC, AgentMode.PUBLIC, URI.create(url), privateProxies);
+	}
+
+	private static AgentResponse handle(RequestMeta meta, HttpResponse response) throws IOException {
+		return handle(meta, response, () -> {});
+	}
+
+	private static AgentResponse handle(RequestMeta meta, HttpResponse response, Runnable abort) throws IOException {
+		HttpClientContext context = ContextOps.create(meta, meta.getState(), "https://www.example.com/listing/1", null, false);
+		return new ChloeResponseHandler(context, abort).handleResponse(response);
+	}
+
+	private static BasicHttpEntity endless(String contentType) {
+		BasicHttpEntity entity = new BasicHttpEntity();
+		entity.setContentType(contentType);
+		entity.setContent(new InputStream() {
+			@Override
+			public int read() {
+				return 'a';
+			}
+
+			@Override
+			public int read(byte[] b, int off, int len) {
+				for(int x = off; x < off + len; x++) {
+					b[x] = 'a';
+				}
+				return len;
+			}
+		});
+		return entity;
+	}
+
+	private static HttpResponse response(int statusCode, String reason) {
+		HttpResponse response = new BasicHttpResponse(HttpVersion.HTTP_1_1, statusCode, reason);
+		response.setEntity(new StringEntity("<html><body>" + reason + "</body></html>", ContentType.TEXT_HTML));
+		return response;
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import com.findupon.commons.netops.entity.AgentMode;
+import com.findupon.commons.netops.entity.AgentResponse;
+import com.findupon.commons.netops.entity.Proxy;
+import com.findupon.commons.netops.entity.ProxyMode;
+import com.sun.net.httpserver.HttpServer;
+import crawlercommons.robots.BaseRobotRules;
+import org.apache.http.HttpHeaders;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.findupon.commons.netops.entity.HttpStatusCode.*;
+
+
+/**
+ * The server stands in for the proxy non-production sessions are sent through, with a handful of threads so most requests wait
+ * on the agent's pool rather than on the server.
+ */
+public class ConnectionAgentTest {
+	private static final int requests = 4000;
+	private static final int hosts = 50;
+
+
+	@Test
+	public void thousandsInFlight() throws Exception {
+		CountDownLatch submitted = new CountDownLatch(1);
+		AtomicInteger served = new AtomicInteger();
+		byte[] page = ("<html><body>" + new String(new char[256]).replace('\0', 'a') + "</body></html>").getBytes(StandardCharsets.UTF_8);
+
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+		ExecutorService serverThreads = Executors.newFixedThreadPool(8);
+		server.setExecutor(serverThreads);
+		server.createContext("/", exchange -> {
+			try {
+				submitted.await(30, TimeUnit.SECONDS);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			served.incrementAndGet();
+			exchange.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, "text/html");
+			exchange.sendResponseHeaders(SC_OK, page.length);
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(page);
+			}
+		});
+		server.start();
+		ProxyPool standIn = new ProxyPool(Proxy.parse("127.0.0.1:" + server.getAddress().getPort(), 0), () -> null);
+		try(ConnectionAgent agent = new ConnectionAgent(standIn)) {
+			int threads = Thread.activeCount();
+			List<CompletableFuture<AgentResponse>> futures = new ArrayList<>(requests);
+			for(int x = 0; x < requests; x++) {
+				futures.add(agent.downloadAsync("http://dealer" + x % hosts + ".test/inventory/" + x, ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE));
+			}
+			Assert.assertTrue(futures.stream().noneMatch(CompletableFuture::isDone));
+			Assert.assertTrue("Threads started per request", Thread.activeCount() - threads < 64);
+			submitted.countDown();
+
+			for(CompletableFuture<AgentResponse> future : futures) {
+				Assert.assertEquals(SC_OK, future.get(60, TimeUnit.SECONDS).getDecision().getStatusCode());
+			}
+			Assert.assertEquals(requests, served.get());
+		} finally {
+			submitted.countDown();
+			server.stop(0);
+			serverThreads.shutdownNow();
+		}
+	}
+
+	@Test
+	public void blockingDownloadRetriesDroppedConnection() throws IOException {
+		AtomicInteger attempts = new AtomicInteger();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			if(attempts.incrementAndGet() == 1) {
+				exchange.close(); // no status line at all
+				return;
+			}
+			byte[] body = "<html><body>dealer</body></html>".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add(HttpHeaders.CONTENT_TYPE, "text/html");
+			exchange.sendResponseHeaders(SC_OK, body.length);
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		ProxyPool standIn = new ProxyPool(Proxy.parse("127.0.0.1:" + server.getAddress().getPort(), 0), () -> null);
+		try(ConnectionAgent agent = new ConnectionAgent(standIn)) {
+			AgentResponse response = agent.download("http://dealer.test/inventory", ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE, true);
+			Assert.assertEquals(SC_OK, response.getDecision().getStatusCode());
+			Assert.assertEquals("<html><body>dealer</body></html>", response.getContent());
+			Assert.assertEquals(2, attempts.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void pacingIsWaitedOut() throws IOException {
+		AtomicInteger attempts = new AtomicInteger();
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			if(attempts.incrementAndGet() == 1) {
+				exchange.getResponseHeaders().add(HttpHeaders.RETRY_AFTER, "2");
+				exchange.sendResponseHeaders(SC_SERVICE_UNAVAILABLE, -1);
+				exchange.close();
+				return;
+			}
+			byte[] body = (RobotRulesCache.isRobotsUrl(exchange.getRequestURI().toString())
+					? "User-agent: *\nDisallow: /inventory" : "<html><body>dealer</body></html>").getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(SC_OK, body.length);
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.start();
+		ProxyPool standIn = new ProxyPool(Proxy.parse("127.0.0.1:" + server.getAddress().getPort(), 0), () -> null);
+		try(ConnectionAgent agent = new ConnectionAgent(standIn)) {
+			String url = "http://www.dealer.com/inventory";
+			Assert.assertEquals(SC_SERVICE_UNAVAILABLE, agent.download(url, ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE, false).getDecision().getStatusCode());
+			long start = System.currentTimeMillis();
+
+			CompletableFuture<AgentResponse> paced = agent.downloadAsync(url, ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE);
+			Assert.assertFalse(paced.isDone());
+			// the blocking robots fetch waits its turn too, rather than failing into allow all
+			BaseRobotRules rules = agent.downloadRobotRules(url, ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE).getLeft();
+			Assert.assertFalse(rules.isAllowed(url));
+			Assert.assertTrue(rules.isAllowed("http://www.dealer.com/about-us"));
+			Assert.assertEquals(SC_OK, paced.join().getDecision().getStatusCode());
+			Assert.assertTrue(System.currentTimeMillis() - start >= 1_500L);
+			Assert.assertEquals(3, attempts.get());
+		} finally {
+			server.stop(0);
+		}
+	}
+
+	@Test
+	public void proxyHeadersOnTheHttpsConnect() throws Exception {
+		List<List<String>> connects = Collections.synchronizedList(new ArrayList<>());
+		try(ServerSocket proxy = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+			Thread proxyThread = new Thread(() -> {
+				while(!proxy.isClosed()) {
+					// the tunnel is granted with an assigned IP, then dropped before the TLS handshake
+					try(Socket socket = proxy.accept()) {
+						BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+						List<String> head = new ArrayList<>();
+						for(String line = reader.readLine(); line != null && !line.isEmpty(); line = reader.readLine()) {
+							head.add(line);
+						}
+						connects.add(head);
+						socket.getOutputStream().write("HTTP/1.1 200 Connection established\r\nX-ProxyMesh-IP: 10.1.2.3\r\n\r\n"
+								.getBytes(StandardCharsets.ISO_8859_1));
+						socket.getOutputStream().flush();
+					} catch(IOException e) {
+						// closed
+					}
+				}
+			});
+			proxyThread.setDaemon(true);
+			proxyThread.start();
+			ProxyPool standIn = new ProxyPool(Proxy.parse("127.0.0.1:" + proxy.getLocalPort(), 0), () -> null);
+			int firstDownload;
+			try(ConnectionAgent agent = new ConnectionAgent(standIn)) {
+				String url = "https://www.dealer.com/inventory";
+				Assert.assertEquals(ELSE, agent.download(url, ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE, false).getDecision().getStatusCode());
+				firstDownload = connects.size();
+				Assert.assertEquals(ELSE, agent.download(url, ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE, false).getDecision().getStatusCode());
+			}
+			Assert.assertTrue(firstDownload > 0 && connects.size() > firstDownload);
+			for(List<String> connect : connects.subList(0, firstDownload)) {
+				Assert.assertEquals("CONNECT www.dealer.com:443 HTTP/1.1", connect.get(0));
+				Assert.assertTrue(connect.toString(), connect.stream().noneMatch(h -> h.startsWith("X-ProxyMesh-IP")));
+			}
+			// the IP assigned on the first tunnel is asked for on the tunnels of the next download
+			for(List<String> connect : connects.subList(firstDownload, connects.size())) {
+				Assert.assertTrue(connect.toString(), connect.contains("X-ProxyMesh-IP: 10.1.2.3"));
+			}
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.findupon.commons.netops;
+
+import com.findupon.commons.netops.entity.AgentMode;
+import com.findupon.commons.netops.entity.AgentResponse;
+import com.findupon.commons.netops.entity.Proxy;
+import com.findupon.commons.netops.entity.ProxyMode;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.http.HttpHost;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Local stand-ins for the private proxies, each one forwarding nothing and answering itself with injected latency and errors,
+ * plus a manual clock for the circuits.
+ */
+public class ProxyPoolTest {
+	private static final String targetHost = "dealer.test";
+
+	private final TestClock clock = new TestClock();
+	private final List<StandIn> standIns = new ArrayList<>();
+
+
+	@After
+	public void tearDown() {
+		standIns.forEach(StandIn::stop);
+	}
+
+	@Test
+	public void prefersHealthyProxies() throws IOException {
+		StandIn erroring = standIn(0);
+		erroring.failing = true;
+		StandIn down = standIn(0);
+		down.stop();
+		StandIn slow = standIn(40);
+		StandIn fast = standIn(0);
+		ProxyPool pool = pool(erroring, down, slow, fast);
+
+		Map<Proxy, Integer> chosen = new HashMap<>();
+		for(int x = 0; x < 300; x++) {
+			Proxy proxy = pool.select(targetHost);
+			exchange(pool, proxy);
+			if(x >= 200) {
+				chosen.merge(proxy, 1, Integer::sum);
+			}
+		}
+		Assert.assertEquals(1, (int)pool.getOpenCircuits().get(erroring.proxy.getHost().toHostString()));
+		Assert.assertEquals(1, (int)pool.getOpenCircuits().get(down.proxy.getHost().toHostString()));
+		Assert.assertEquals(0, (int)pool.getOpenCircuits().get(fast.proxy.getHost().toHostString()));
+		Assert.assertNull(chosen.get(erroring.proxy));
+		Assert.assertNull(chosen.get(down.proxy));
+		Assert.assertTrue(chosen.toString(), chosen.getOrDefault(fast.proxy, 0) > 90);
+		Assert.assertTrue(slow.requests > 0); // tried before being judged
+	}
+
+	/**
+	 * Through the agent, so the outcome is the one it classifies and reports rather than this test's own. Target hosts vary
+	 * so congestion control for any one of them does not pace the run.
+	 */
+	@Test
+	public void agentReportsOutcomes() throws IOException {
+		StandIn erroring = standIn(0);
+		erroring.failing = true;
+		StandIn down = standIn(0);
+		down.stop();
+		StandIn healthy = standIn(0);
+		ProxyPool pool = pool(erroring, down, healthy);
+
+		try(ConnectionAgent agent = new ConnectionAgent(pool)) {
+			for(int x = 0; x < 120; x++) {
+				agent.download("http://dealer" + x % 24 + ".test/inventory", ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE, false);
+			}
+			Assert.assertEquals(1, (int)pool.getOpenCircuits().get(erroring.proxy.getHost().toHostString()));
+			Assert.assertEquals(1, (int)pool.getOpenCircuits().get(down.proxy.getHost().toHostString()));
+			Assert.assertEquals(0, (int)pool.getOpenCircuits().get(healthy.proxy.getHost().toHostString()));
+			Assert.assertEquals(1d, pool.getSuccessRatios().get(healthy.proxy.getHost().toHostString()), 0d);
+
+			int erroringRequests = erroring.requests;
+			for(int x = 0; x < 24; x++) {
+				AgentResponse response = agent.download("http://dealer" + x + ".test/inventory", ProxyMode.ROTATE_LOCATION, AgentMode.ROTATE, false);
+				Assert.assertEquals(200, response.getDecision().getStatusCode());
+			}
+			Assert.assertEquals(erroringRequests, erroring.requests);
+		}
+	}
+
+	@Test
+	public void recoversGradually() throws IOException {
+		StandIn flaky = standIn(0);
+		flaky.failing = true;
+		StandIn steady = standIn(0);
+		ProxyPool pool = pool(flaky, steady);
+		for(int x = 0; x < 100; x++) {
+			exchange(pool, pool.select(targetHost));
+		}
+		Assert.assertFalse(pool.isAvailable(flaky.proxy.getHost(), targetHost));
+
+		flaky.failing = false;
+		clock.advance(30, TimeUnit.SECONDS);
+		int recovering = 0;
+		for(int x = 0; x < 400; x++) {
+			Proxy proxy = pool.select(targetHost);
+			if(proxy == flaky.proxy) {
+				recovering++;
+			}
+		}
+		Assert.assertTrue(String.valueOf(recovering), recovering > 10 && recovering < 120); // about a tenth of sessions at first
+
+		clock.advance(2, TimeUnit.MINUTES);
+		int recovered = 0;
+		for(int x = 0; x < 100; x++) {
+			Proxy proxy = pool.select(targetHost);
+			exchange(pool, proxy);
+			if(proxy == flaky.proxy) {
+				recovered++;
+			}
+		}
+		Assert.assertTrue(String.valueOf(recovered), recovered > 20);
+		Assert.assertTrue(pool.isAvailable(flaky.proxy.getHost(), targetHost));
+	}
+
+	@Test
+	public void reopensLongerWhenFailingWhileRecovering() {
+		List<Proxy> proxies = Proxy.parse("a.test@25.76/-80.19, b.test:3128", 31280);
+		HttpHost a = proxies.get(0).getHost();
+		ProxyPool pool = new ProxyPool(proxies, () -> null, clock);
+		for(int x = 0; x < 8; x++) {
+			pool.onResponse(a, targetHost, ProxyPool.Outcome.PROXY_ERROR, 100L);
+		}
+		Assert.assertFalse(pool.isAvailable(a, "other.test"));
+		clock.advance(30, TimeUnit.SECONDS);
+		Assert.assertTrue(pool.isAvailable(a, "other.test"));
+
+		pool.onResponse(a, targetHost, ProxyPool.Outcome.PROXY_ERROR, 100L);
+		pool.onResponse(a, targetHost, ProxyPool.Outcome.PROXY_ERROR, 100L);
+		clock.advance(59, TimeUnit.SECONDS);
+		Assert.assertFalse(pool.isAvailable(a, "other.test"));
+		clock.advance(1, TimeUnit.SECONDS);
+		Assert.assertTrue(pool.isAvailable(a, "other.test"));
+	}
+
+	@Test
+	public void hostCircuitLeavesOtherHosts() {
+		List<Proxy> proxies = Proxy.parse("a.test,b.test", 31280);
+		HttpHost a = proxies.get(0).getHost();
+		ProxyPool pool = new ProxyPool(proxies, () -> null, clock);
+		for(int x = 0; x < 8; x++) {
+			pool.onResponse(a, targetHost, ProxyPool.Outcome.BLOCKED, 100L);
+		}
+		Assert.assertFalse(pool.isAvailable(a, targetHost));
+		Assert.assertTrue(pool.isAvailable(a, "other.test"));
+		Assert.assertEquals(0, (int)pool.getOpenCircuits().get("a.test:31280"));
+		for(int x = 0; x < 50; x++) {
+			Assert.assertSame(proxies.get(1), pool.select(targetHost));
+		}
+	}
+
+	@Test
+	public void parse() {
+		List<Proxy> proxies = Proxy.parse("us-il.proxymesh.com@41.878114/-87.629798, 127.0.0.1:3128", 31280);
+		Assert.assertEquals(new HttpHost("us-il.proxymesh.com", 31280), proxies.get(0).getHost());
+		Assert.assertEquals(-87.629798F, proxies.get(0).getLocation().longitude, 0F);
+		Assert.assertEquals(new HttpHost("127.0.0.1", 3128), proxies.get(1).getHost());
+		Assert.assertNull(proxies.get(1).getLocation());
+	}
+
+	private ProxyPool pool(StandIn... standIns) {
+		StringJoiner hosts = new StringJoiner(",");
+		for(StandIn standIn : standIns) {
+			hosts.add("127.0.0.1:" + standIn.port);
+		}
+		List<Proxy> proxies = Proxy.parse(hosts.toString(), 0);
+		for(int x = 0; x < standIns.length; x++) {
+			standIns[x].proxy = proxies.get(x);
+		}
+		return new ProxyPool(proxies, () -> null, clock);
+	}
+
+	/**
+	 * Classified the way the agent does: a proxy error header, then the status, then the exception.
+	 */
+	private void exchange(ProxyPool pool, Proxy proxy) {
+		HttpHost host = proxy.getHost();
+		long start = System.currentTimeMillis();
+		ProxyPool.Outcome outcome;
+		try {
+			HttpURLConnection connection = (HttpURLConnection)new URL("http://" + targetHost + "/inventory").openConnection(
+					new java.net.Proxy(java.net.Proxy.Type.HTTP, new InetSocketAddress(host.getHostName(), host.getPort())));
+			connection.setConnectTimeout(2000);
+			connection.setReadTimeout(2000);
+			int status = connection.getResponseCode();
+			outcome = connection.getHeaderField(ChloeHttpRequestExecutor.proxyErrorResponseHeader) != null
+					? ProxyPool.Outcome.PROXY_ERROR
+					: ProxyPool.Outcome.ofStatus(status);
+			InputStream body = status < 400 ? connection.getInputStream() : connection.getErrorStream();
+			if(body != null) {
+				body.close();
+			}
+		} catch(IOException e) {
+			outcome = ProxyPool.Outcome.ofException(e);
+			Assert.assertNotNull(e.toString(), outcome);
+		}
+		pool.onResponse(host, targetHost, outcome, System.currentTimeMillis() - start);
+	}
+
+	private StandIn standIn(int delayMillis) throws IOException {
+		StandIn standIn = new StandIn(delayMillis);
+		standIns.add(standIn);
+		return standIn;
+	}
+
+	private static final class StandIn {
+		private final HttpServer server;
+		private final int port;
+		private volatile boolean failing;
+		private volatile int requests;
+		private Proxy proxy;
+
+		private StandIn(int delayMillis) throws IOException {
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			server.createContext("/", exchange -> {
+				requests++;
+				if(failing) {
+					exchange.getResponseHeaders().add(ChloeHttpRequestExecutor.proxyErrorResponseHeader, "Injected");
+					exchange.sendResponseHeaders(502, -1);
+					exchange.close();
+					return;
+				}
+				try {
+					TimeUnit.MILLISECONDS.sleep(delayMillis);
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				byte[] body = "<html>listing</html>".getBytes(StandardCharsets.UTF_8);
+				exchange.sendResponseHeaders(200, body.length);
+				try(OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			});
+			server.start();
+			port = server.getAddress().getPort();
+		}
+
+		private void stop() {
+			server.stop(0);
+		}
+	}
+}
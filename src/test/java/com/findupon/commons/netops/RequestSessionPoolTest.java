@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import com.findupon.commons.netops.entity.AgentMode;
+import com.findupon.commons.netops.entity.Proxy;
+import com.findupon.commons.netops.entity.ProxyMode;
+import com.findupon.commons.netops.entity.RequestMeta;
+import org.apache.http.auth.AuthScope;
+import org.apache.http.client.protocol.HttpClientContext;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+
+public class RequestSessionPoolTest {
+	private static final URI uri = URI.create("https://www.example.com/listing/1");
+
+	private final TestClock clock = new TestClock();
+	private RequestSessionPool pool;
+
+
+	@Before
+	public void setUp() {
+		pool = new RequestSessionPool(4, new ProxyPool(Proxy.parse("a.test,b.test", 31280), () -> null), clock);
+	}
+
+	@Test
+	public void releasedSessionIsReusedFromAnyThread() throws InterruptedException {
+		RequestMeta first = pool.borrow(uri, ProxyMode.PUBLIC, AgentMode.PUBLIC);
+		pool.release(first);
+		RequestMeta[] other = new RequestMeta[1];
+		Thread thread = new Thread(() -> other[0] = pool.borrow(uri, ProxyMode.PUBLIC, AgentMode.PUBLIC));
+		thread.start();
+		thread.join();
+		Assert.assertSame(first, other[0]);
+		Assert.assertEquals(1, pool.getSessionCount());
+	}
+
+	@Test
+	public void sessionsAreBoundedAndSharedPastTheLimit() {
+		List<RequestMeta> borrowed = new ArrayList<>();
+		for(int x = 0; x < 12; x++) {
+			borrowed.add(pool.borrow(uri, ProxyMode.PUBLIC, AgentMode.PUBLIC));
+		}
+		Set<RequestMeta> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+		distinct.addAll(borrowed);
+		Assert.assertEquals(4, distinct.size());
+		Assert.assertEquals(4, pool.getSessionCount());
+	}
+
+	@Test
+	public void modesAndSchemesDoNotShare() {
+		RequestMeta https = pool.borrow(uri, ProxyMode.PUBLIC, AgentMode.PUBLIC);
+		RequestMeta http = pool.borrow(URI.create("http://www.example.com/"), ProxyMode.PUBLIC, AgentMode.PUBLIC);
+		RequestMeta rotate = pool.borrow(uri, ProxyMode.PUBLIC, AgentMode.ROTATE);
+		Assert.assertNotSame(https, http);
+		Assert.assertNotSame(https, rotate);
+		Assert.assertEquals(3, pool.getHostCount());
+	}
+
+	@Test
+	public void threadsComingAndGoingDoNotGrowThePool() throws InterruptedException {
+		for(int x = 0; x < 50; x++) {
+			Thread thread = new Thread(() -> pool.release(pool.borrow(uri, ProxyMode.PUBLIC, AgentMode.PUBLIC)));
+			thread.start();
+			thread.join();
+		}
+		Assert.assertEquals(1, pool.getHostCount());
+		Assert.assertEquals(1, pool.getSessionCount());
+	}
+
+	@Test
+	public void idleSessionsAndHostsAreEvicted() {
+		RequestMeta idle = pool.borrow(uri, ProxyMode.PUBLIC, AgentMode.PUBLIC);
+		RequestMeta busy = pool.borrow(URI.create("https://busy.example.com/"), ProxyMode.PUBLIC, AgentMode.PUBLIC);
+		pool.release(idle);
+		clock.advance(6, TimeUnit.MINUTES);
+
+		Assert.assertEquals(1, pool.evictIdle());
+		Assert.assertEquals(1, pool.getHostCount());
+		Assert.assertNotSame(idle, pool.borrow(uri, ProxyMode.PUBLIC, AgentMode.PUBLIC));
+
+		pool.release(busy);
+		Assert.assertEquals(1, pool.evictIdle());
+	}
+
+	/**
+	 * More borrowers than sessions, every request switching or pinning an IP now and then. Each request has to be built from one
+	 * session: its token, proxy credentials and pinned IP all from the same state.
+	 */
+	@Test
+	public void sharedSessionsStayConsistentWhileSwitching() throws Exception {
+		URI http = URI.create("http://www.example.com/listing/1");
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Integer>> futures = new ArrayList<>();
+		for(int t = 0; t < 8; t++) {
+			futures.add(executor.submit(() -> {
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				int switches = 0;
+				for(int x = 0; x < 5_000; x++) {
+					RequestMeta meta = pool.borrow(http, ProxyMode.ROTATE_OPEN, AgentMode.ROTATE);
+					RequestMeta.SessionState state = meta.getState();
+					HttpClientContext context = ContextOps.create(meta, state, http.toString(), null, false);
+					context.setCookieStore(new BasicCookieStore());
+
+					Assert.assertEquals(state.getSessionId(), context.getUserToken());
+					Assert.assertSame(state, ContextOps.session(context));
+					Assert.assertNotNull(context.getCredentialsProvider().getCredentials(new AuthScope(state.getConfig().getProxy())));
+					if(state.getProxyIp() != null) {
+						Assert.assertEquals(ipOf(state), state.getProxyIp());
+					}
+					int action = random.nextInt(10);
+					if(action < 4) {
+						meta.assignProxyIp(state, ipOf(state));
+					} else if(action == 4) {
+						meta.switchNextSession(context);
+						switches++;
+					} else if(action == 5) {
+						meta.switchProxy(state);
+					}
+					pool.release(meta);
+				}
+				return switches;
+			}));
+		}
+		for(Future<Integer> future : futures) {
+			Assert.assertTrue(future.get(60, TimeUnit.SECONDS) > 0);
+		}
+		executor.shutdown();
+		Assert.assertEquals(4, pool.getSessionCount());
+	}
+
+	@Test
+	public void requestsFailingTogetherSwitchOnce() throws Exception {
+		RequestMeta meta = pool.borrow(URI.create("http://www.example.com/"), ProxyMode.ROTATE_OPEN, AgentMode.ROTATE);
+		RequestMeta.SessionState state = meta.getState();
+		CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<RequestMeta.SessionState>> futures = new ArrayList<>();
+		for(int t = 0; t < 8; t++) {
+			futures.add(executor.submit(() -> {
+				HttpClientContext context = ContextOps.create(meta, state, "http://www.example.com/", null, false);
+				start.await();
+				meta.switchNextSession(context);
+				return meta.getState();
+			}));
+		}
+		start.countDown();
+		Set<RequestMeta.SessionState> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+		for(Future<RequestMeta.SessionState> future : futures) {
+			seen.add(future.get(10, TimeUnit.SECONDS));
+		}
+		executor.shutdown();
+		Assert.assertEquals(Collections.singleton(meta.getState()), seen);
+		Assert.assertNotSame(state, meta.getState());
+		Assert.assertNotEquals(state.getSessionId(), meta.getState().getSessionId());
+		Assert.assertTrue(meta.getState().isForceProxyReAuth());
+		Assert.assertFalse("An IP for the old session is dropped", meta.assignProxyIp(state, ipOf(state)));
+	}
+
+	private static String ipOf(RequestMeta.SessionState state) {
+		return state.getConfig().getProxy().toHostString() + "/" + state.getSessionId();
+	}
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import com.sun.net.httpserver.HttpServer;
+import crawlercommons.robots.BaseRobotRules;
+import crawlercommons.robots.SimpleRobotRulesParser;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * Runs the cache against a local server counting robots.txt requests, with a manual clock for expiry.
+ */
+public class RobotRulesCacheTest {
+	private static final String robots = "User-agent: *\nDisallow: /private\n";
+
+	private HttpServer server;
+	private final AtomicInteger okRequests = new AtomicInteger();
+	private final AtomicInteger failedRequests = new AtomicInteger();
+	private final TestClock clock = new TestClock();
+	private RobotRulesCache cache;
+
+
+	@Before
+	public void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/ok/robots.txt", exchange -> {
+			okRequests.incrementAndGet();
+			sleepQuietly(); // hold the download open so concurrent callers pile up
+			byte[] body = robots.getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Cache-Control", "public, max-age=120");
+			exchange.sendResponseHeaders(200, body.length);
+			try(OutputStream out = exchange.getResponseBody()) {
+				out.write(body);
+			}
+		});
+		server.createContext("/down/robots.txt", exchange -> {
+			failedRequests.incrementAndGet();
+			exchange.sendResponseHeaders(503, -1);
+			exchange.close();
+		});
+		server.setExecutor(Executors.newFixedThreadPool(4));
+		server.start();
+		cache = new RobotRulesCache(TimeUnit.HOURS.toMillis(24), TimeUnit.MINUTES.toMillis(1), TimeUnit.MINUTES.toMillis(15), 100, clock);
+	}
+
+	@After
+	public void tearDown() {
+		server.stop(0);
+	}
+
+	@Test
+	public void testSingleFlightLoad() throws Exception {
+		int threads = 32;
+		ExecutorService service = Executors.newFixedThreadPool(threads);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Pair<BaseRobotRules, String>>> futures = new ArrayList<>();
+		for(int x = 0; x < threads; x++) {
+			futures.add(service.submit(() -> {
+				start.await();
+				return cache.get("ok", () -> fetch("/ok/robots.txt"));
+			}));
+		}
+		start.countDown();
+		for(Future<Pair<BaseRobotRules, String>> future : futures) {
+			BaseRobotRules rules = future.get(10, TimeUnit.SECONDS).getLeft();
+			Assert.assertFalse(rules.isAllowed(url("/private/page")));
+			Assert.assertTrue(rules.isAllowed(url("/public/page")));
+		}
+		service.shutdown();
+		Assert.assertEquals(1, okRequests.get());
+		Assert.assertEquals(1, cache.getLoadCount());
+		Assert.assertEquals(threads - 1, cache.getHitCount());
+	}
+
+	@Test
+	public void testCacheHeaderExpiry() {
+		cache.get("ok", () -> fetch("/ok/robots.txt"));
+		clock.advance(119, TimeUnit.SECONDS);
+		cache.get("ok", () -> fetch("/ok/robots.txt"));
+		Assert.assertEquals(1, okRequests.get());
+
+		clock.advance(2, TimeUnit.SECONDS);
+		cache.get("ok", () -> fetch("/ok/robots.txt"));
+		Assert.assertEquals(2, okRequests.get());
+	}
+
+	@Test
+	public void testNegativeCaching() {
+		for(int x = 0; x < 5; x++) {
+			BaseRobotRules rules = cache.get("down", () -> fetch("/down/robots.txt")).getLeft();
+			Assert.assertTrue(rules.isDeferVisits());
+		}
+		Assert.assertEquals(1, failedRequests.get());
+
+		clock.advance(16, TimeUnit.MINUTES);
+		cache.get("down", () -> fetch("/down/robots.txt"));
+		Assert.assertEquals(2, failedRequests.get());
+	}
+
+	@Test
+	public void testBoundedSize() {
+		RobotRulesCache.Fetch fetch = fetch("/ok/robots.txt");
+		for(int x = 0; x < 250; x++) {
+			cache.get("host" + x, () -> fetch);
+		}
+		Assert.assertTrue(String.valueOf(cache.size()), cache.size() <= 100);
+		cache.get("host249", () -> fetch);
+		Assert.assertEquals(250, cache.getLoadCount());
+		Assert.assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testParseMaxAge() {
+		Assert.assertEquals(Long.valueOf(120_000L), RobotRulesCache.parseMaxAgeMillis("public, max-age=120", null, null));
+		Assert.assertEquals(Long.valueOf(0L), RobotRulesCache.parseMaxAgeMillis("no-store", null, null));
+		Assert.assertEquals(Long.valueOf(3_600_000L), RobotRulesCache.parseMaxAgeMillis(null,
+				"Tue, 15 Jan 2019 13:00:00 GMT", "Tue, 15 Jan 2019 12:00:00 GMT"));
+		Assert.assertEquals(Long.valueOf(0L), RobotRulesCache.parseMaxAgeMillis(null, "0", null));
+		Assert.assertNull(RobotRulesCache.parseMaxAgeMillis(null, null, null));
+	}
+
+	private RobotRulesCache.Fetch fetch(String path) {
+		SimpleRobotRulesParser parser = new SimpleRobotRulesParser();
+		try {
+			HttpURLConnection connection = (HttpURLConnection)new URL(url(path)).openConnection();
+			int status = connection.getResponseCode();
+			if(status != 200) {
+				return new RobotRulesCache.Fetch(Pair.of(parser.failedFetch(status), ""), true, null);
+			}
+			String content;
+			try(InputStream in = connection.getInputStream()) {
+				content = IOUtils.toString(in, StandardCharsets.UTF_8);
+			}
+			Long maxAge = RobotRulesCache.parseMaxAgeMillis(connection.getHeaderField("Cache-Control"),
+					connection.getHeaderField("Expires"), connection.getHeaderField("Date"));
+			BaseRobotRules rules = parser.parseContent(url(path), content.getBytes(StandardCharsets.UTF_8), "text/plain", "chloe");
+			return new RobotRulesCache.Fetch(Pair.of(rules, content), false, maxAge);
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private String url(String path) {
+		return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+	}
+
+	private static void sleepQuietly() {
+		try {
+			Thread.sleep(200);
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
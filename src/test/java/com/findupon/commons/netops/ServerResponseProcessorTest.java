@@ -0,0 +1,289 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops;
+
+import com.sun.management.ThreadMXBean;
+import com.findupon.commons.netops.entity.AgentDecision;
+import com.findupon.commons.netops.entity.ProxyState;
+import com.findupon.commons.netops.entity.RequestedAction;
+import com.findupon.commons.netops.entity.ServerResponse;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.HttpVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.message.BasicStatusLine;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.findupon.commons.netops.entity.HttpStatusCode.*;
+
+
+/**
+ * Every status code and the reason phrases that matter, classified by the tables and by the switch statements they replaced
+ * (kept below as {@link Legacy}).
+ */
+public class ServerResponseProcessorTest {
+	private static final List<String> reasons = Arrays.asList(null, "", "Service Unavailable", "Too Many Errors", "too many errors today");
+
+
+	@After
+	public void tearDown() {
+		ServerResponseProcessor.removeOverrides("www.example.com");
+		ServerResponseProcessor.removeOverrides("www.other.com");
+	}
+
+	@Test
+	public void proxyMatchesLegacy() {
+		for(int code = 0; code < 1100; code++) {
+			for(String reason : reasons) {
+				StatusLine line = new BasicStatusLine(HttpVersion.HTTP_1_1, code, reason);
+				assertResponseEquals(line.toString(), Legacy.getProxyResponse(line), ServerResponseProcessor.getProxyResponse(line));
+			}
+		}
+	}
+
+	@Test
+	public void remoteMatchesLegacy() {
+		for(int code = 0; code < 1100; code++) {
+			for(String reason : reasons) {
+				StatusLine line = new BasicStatusLine(HttpVersion.HTTP_1_1, code, reason);
+				assertResponseEquals(line.toString(), Legacy.getRemoteResponse(line), ServerResponseProcessor.getRemoteResponse(line, null));
+				assertResponseEquals(line.toString(), Legacy.getRemoteResponse(line), ServerResponseProcessor.getRemoteResponse(line, "www.example.com"));
+			}
+		}
+	}
+
+	@Test
+	public void successDecisions() {
+		for(int code = -10; code < 300; code++) {
+			AgentDecision decision = ServerResponseProcessor.getSuccessDecision(code);
+			Assert.assertEquals(RequestedAction.PROCEED, decision.getAction());
+			Assert.assertNull(decision.getMessage());
+			Assert.assertEquals(code, decision.getStatusCode());
+		}
+	}
+
+	@Test
+	public void sharedInstances() {
+		StatusLine first = new BasicStatusLine(HttpVersion.HTTP_1_1, SC_FORBIDDEN, "Forbidden");
+		StatusLine second = new BasicStatusLine(HttpVersion.HTTP_1_0, SC_FORBIDDEN, "Go away");
+		Assert.assertSame(ServerResponseProcessor.getRemoteResponse(first, null), ServerResponseProcessor.getRemoteResponse(second, "www.example.com"));
+		Assert.assertSame(ServerResponseProcessor.getProxyResponse(first), ServerResponseProcessor.getProxyResponse(second));
+		Assert.assertSame(ServerResponseProcessor.getSuccessDecision(200), ServerResponseProcessor.getSuccessDecision(200));
+	}
+
+	@Test
+	public void overridesPerHost() {
+		StatusLine forbidden = new BasicStatusLine(HttpVersion.HTTP_1_1, SC_FORBIDDEN, "Forbidden");
+		StatusLine notFound = new BasicStatusLine(HttpVersion.HTTP_1_1, SC_NOT_FOUND, "Not Found");
+		ServerResponseProcessor.override("WWW.Example.com", SC_FORBIDDEN, ProxyState.IP_SWITCH_NEEDED, RequestedAction.PROCEED);
+
+		ServerResponse overridden = ServerResponseProcessor.getRemoteResponse(forbidden, "www.example.com");
+		Assert.assertEquals(ProxyState.IP_SWITCH_NEEDED, overridden.getProxyState());
+		Assert.assertEquals(RequestedAction.PROCEED, overridden.getAgentDecision().getAction());
+		Assert.assertEquals(SC_FORBIDDEN, overridden.getAgentDecision().getStatusCode());
+		Assert.assertEquals(ProxyState.SUCCESS, ServerResponseProcessor.getRemoteResponse(forbidden, "www.other.com").getProxyState());
+		Assert.assertSame(ServerResponseProcessor.getRemoteResponse(notFound, null), ServerResponseProcessor.getRemoteResponse(notFound, "www.example.com"));
+		Assert.assertEquals(ProxyState.OPEN_PROXY_NEEDED, ServerResponseProcessor.getProxyResponse(forbidden).getProxyState());
+
+		ServerResponseProcessor.override("www.example.com", SC_NOT_FOUND, ProxyState.SUCCESS, RequestedAction.ABORT_CRAWL);
+		Assert.assertSame(overridden, ServerResponseProcessor.getRemoteResponse(forbidden, "www.example.com"));
+		Assert.assertEquals(RequestedAction.ABORT_CRAWL, ServerResponseProcessor.getRemoteResponse(notFound, "www.example.com").getAgentDecision().getAction());
+
+		ServerResponseProcessor.removeOverrides("www.example.com");
+		Assert.assertEquals(ProxyState.SUCCESS, ServerResponseProcessor.getRemoteResponse(forbidden, "www.example.com").getProxyState());
+	}
+
+	@Test
+	public void loadsOverrides() {
+		ServerResponseProcessor.loadOverrides("www.example.com:403=IP_SWITCH_NEEDED, www.other.com:410=SUCCESS/ABORT_CRAWL, bad, www.other.com:abc=FATAL");
+		StatusLine forbidden = new BasicStatusLine(HttpVersion.HTTP_1_1, SC_FORBIDDEN, "Forbidden");
+		StatusLine gone = new BasicStatusLine(HttpVersion.HTTP_1_1, SC_GONE, "Gone");
+		Assert.assertEquals(ProxyState.IP_SWITCH_NEEDED, ServerResponseProcessor.getRemoteResponse(forbidden, "www.example.com").getProxyState());
+		Assert.assertEquals(RequestedAction.PROCEED, ServerResponseProcessor.getRemoteResponse(forbidden, "www.example.com").getAgentDecision().getAction());
+		Assert.assertEquals(RequestedAction.ABORT_CRAWL, ServerResponseProcessor.getRemoteResponse(gone, "www.other.com").getAgentDecision().getAction());
+		Assert.assertEquals(ProxyState.SUCCESS, ServerResponseProcessor.getRemoteResponse(forbidden, "www.other.com").getProxyState());
+	}
+
+	@Test
+	public void noAllocation() {
+		ServerResponseProcessor.override("www.example.com", SC_FORBIDDEN, ProxyState.IP_SWITCH_NEEDED, RequestedAction.PROCEED);
+		StatusLine[] lines = new StatusLine[1000];
+		for(int code = 0; code < lines.length; code++) {
+			lines[code] = new BasicStatusLine(HttpVersion.HTTP_1_1, code, code == SC_SERVICE_UNAVAILABLE ? "Too many errors" : "Reason");
+		}
+		ThreadMXBean threads = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long checksum = classifyAll(lines);
+		long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		for(int x = 0; x < 100; x++) {
+			checksum += classifyAll(lines);
+		}
+		long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+		Assert.assertTrue(checksum > 0);
+		Assert.assertTrue("Allocated " + allocated + " bytes", allocated < 1024);
+	}
+
+	private static long classifyAll(StatusLine[] lines) {
+		long checksum = 0;
+		for(StatusLine line : lines) {
+			checksum += ServerResponseProcessor.getProxyResponse(line).getProxyState().ordinal();
+			checksum += ServerResponseProcessor.getRemoteResponse(line, "www.example.com").getProxyState().ordinal();
+			checksum += ServerResponseProcessor.getRemoteResponse(line, "www.other.com").getAgentDecision().getStatusCode();
+			checksum += ServerResponseProcessor.getSuccessDecision(line.getStatusCode() % 300).getStatusCode();
+		}
+		return checksum;
+	}
+
+	private static void assertResponseEquals(String line, ServerResponse expected, ServerResponse actual) {
+		Assert.assertEquals(line, expected.getProxyState(), actual.getProxyState());
+		Assert.assertEquals(line, expected.getAgentDecision().getAction(), actual.getAgentDecision().getAction());
+		Assert.assertEquals(line, expected.getAgentDecision().getMessage(), actual.getAgentDecision().getMessage());
+		Assert.assertEquals(line, expected.getAgentDecision().getStatusCode(), actual.getAgentDecision().getStatusCode());
+	}
+
+	private static final class Legacy {
+
+		private static ServerResponse getProxyResponse(StatusLine statusLine) {
+			RequestedAction action;
+			ProxyState proxyState;
+			String message;
+
+			switch(statusLine.getStatusCode()) {
+				case SC_REQUEST_TIMEOUT:
+					message = "Request timeout";
+					proxyState = ProxyState.SUCCESS;
+					action = RequestedAction.PROCEED;
+					break;
+				case SC_PROXY_AUTHENTICATION_REQUIRED:
+					message = "Your IP is not authorized or your Basic authorization header has an incorrect format, missing username, or bad password";
+					proxyState = ProxyState.FATAL;
+					action = RequestedAction.ABORT_CRAWL;
+					break;
+				case SC_PAYMENT_REQUIRED:
+					message = "Account error or you are not authorized on the particular proxy server";
+					proxyState = ProxyState.FATAL;
+					action = RequestedAction.ABORT_CRAWL;
+					break;
+				case SC_FORBIDDEN:
+					message = "The remote site has been blacklisted and can only be accessed through the open proxy server";
+					proxyState = ProxyState.OPEN_PROXY_NEEDED;
+					action = RequestedAction.ABORT_CRAWL;
+					break;
+				case SC_INTERNAL_SERVER_ERROR:
+					message = "Internal server error - this is not good if it's really coming from the proxy";
+					proxyState = ProxyState.IP_SWITCH_NEEDED;
+					action = RequestedAction.PROCEED;
+					break;
+				case SC_SERVICE_UNAVAILABLE:
+					if(StringUtils.containsIgnoreCase(statusLine.getReasonPhrase(), "too many errors")) {
+						message = "Your requests have generated more than 60 response errors (with a status code of 400 or greater) over the past 30 seconds. " +
+								"You need to fix what you're doing to stop producing so many errors.";
+						proxyState = ProxyState.FATAL;
+						action = RequestedAction.ABORT_CRAWL;
+					} else {
+						message = "Service unavailable - refer to reason for details, this should be temporary";
+						proxyState = ProxyState.IP_SWITCH_NEEDED;
+						action = RequestedAction.PROCEED;
+					}
+					break;
+				case SC_BANDWIDTH_LIMIT_EXCEEDED:
+					message = "You have exceeded your bandwidth limit. This response will continue until your next bill has been processed, or you raise the limit";
+					proxyState = ProxyState.FATAL;
+					action = RequestedAction.ABORT_CRAWL;
+					break;
+				default:
+					message = "Non-documented status code";
+					proxyState = ProxyState.SUCCESS;
+					action = RequestedAction.PROCEED;
+					break;
+			}
+			return new ServerResponse(proxyState, new AgentDecision(action, message, statusLine.getStatusCode()));
+		}
+
+		private static ServerResponse getRemoteResponse(StatusLine statusLine) {
+			RequestedAction action = RequestedAction.PROCEED;
+			ProxyState proxyState = ProxyState.SUCCESS;
+			String message;
+
+			switch(statusLine.getStatusCode()) {
+				case SC_BAD_REQUEST:
+					message = "Bad request";
+					break;
+				case SC_UNAUTHORIZED:
+					message = "Unauthorized";
+					break;
+				case SC_FORBIDDEN:
+					message = "Forbidden";
+					break;
+				case SC_NOT_FOUND:
+					message = "Not Found";
+					break;
+				case SC_NOT_ACCEPTABLE:
+					message = "Not Acceptable - server probably did not accept our user agent or other headers";
+					proxyState = ProxyState.IP_SWITCH_NEEDED;
+					break;
+				case SC_REQUEST_TIMEOUT:
+					message = "Request Timeout - the server wants to shut down this connection";
+					proxyState = ProxyState.IP_SWITCH_NEEDED;
+					break;
+				case SC_TOO_MANY_REQUESTS:
+					message = "Too Many Requests! Too many requests have been sent in X amount of time";
+					proxyState = ProxyState.IP_SWITCH_NEEDED;
+					break;
+				case SC_UNAVAILABLE_FOR_LEGAL:
+					message = "Unavailable For Legal Reasons - we requested an illegal resource, such as a web page censored by a government";
+					action = RequestedAction.ABORT_CRAWL;
+					break;
+				case SC_INTERNAL_SERVER_ERROR:
+					message = "Internal Server Error";
+					break;
+				case SC_BAD_GATEWAY:
+					proxyState = ProxyState.IP_SWITCH_NEEDED;
+					message = "Bad Gateway";
+					break;
+				case SC_SERVICE_UNAVAILABLE:
+					message = "Fuck";
+					proxyState = ProxyState.IP_SWITCH_NEEDED;
+					break;
+				case SC_GATEWAY_TIMEOUT:
+					message = "Gateway Timeout";
+					proxyState = ProxyState.IP_SWITCH_NEEDED;
+					break;
+				default:
+					switch(String.valueOf(statusLine.getStatusCode()).charAt(0)) {
+						case '3':
+							message = "Non-handled redirection code";
+							break;
+						case '4':
+							message = "Non-handled client error";
+							break;
+						case '5':
+							message = "Non-handled server error";
+							break;
+						default:
+							message = "Something strange...";
+							break;
+					}
+			}
+			return new ServerResponse(proxyState, new AgentDecision(action, message, statusLine.getStatusCode()));
+		}
+	}
+}
@@ -14,17 +14,30 @@
  * limitations under the License.
  */
 
-package com.findupon.commons.netops.entity;
+package com.findupon.commons.netops;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
 
-public enum HostRequestStateMode {
-	/**
-	 * Requests will maintain state only by the host, regardless of the thread they are executed from.
-	 */
-	HOST_ONLY,
 
-	/**
-	 * Requests executed for the same host from different threads will maintain individual state.
-	 */
-	HOST_THREAD
+/**
+ * The millisecond clock the netops components take in tests, only moving when told to.
+ */
+public class TestClock implements LongSupplier {
+	private final AtomicLong millis = new AtomicLong(1_000_000L);
+
+
+	@Override
+	public long getAsLong() {
+		return millis.get();
+	}
+
+	public void advance(long millis) {
+		this.millis.addAndGet(millis);
+	}
+
+	public void advance(long duration, TimeUnit unit) {
+		advance(unit.toMillis(duration));
+	}
 }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.netops.strategies;
+
+import com.findupon.commons.netops.TestClock;
+import com.findupon.commons.netops.entity.HttpStatusCode;
+import org.apache.http.HttpHost;
+import org.apache.http.client.utils.DateUtils;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.pool.ConnPoolControl;
+import org.apache.http.pool.PoolStats;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Drives the controller with a manual clock against a pool that only records the limits set on it.
+ */
+public class ChloeCongestionControllerTest {
+	private static final String host = "www.example.com";
+	private static final HttpRoute route = new HttpRoute(new HttpHost(host, 443, "https"));
+
+	private final TestClock clock = new TestClock();
+	private RecordingPool pool;
+	private ChloeCongestionController controller;
+
+
+	@Before
+	public void setUp() {
+		pool = new RecordingPool(16);
+		controller = new ChloeCongestionController(clock, pool);
+	}
+
+	@Test
+	public void backOffHalvesAndProbeAddsOne() {
+		controller.backOff(route);
+		Assert.assertEquals(8, controller.getLimit(host));
+		Assert.assertEquals(8, pool.getMaxPerRoute(route));
+		Assert.assertEquals(250L, controller.getIntervalMillis(host));
+
+		controller.backOff(route); // within the cool down
+		controller.probe(route);
+		Assert.assertEquals(8, controller.getLimit(host));
+
+		clock.advance(5_000L);
+		controller.probe(route);
+		Assert.assertEquals(9, controller.getLimit(host));
+		Assert.assertEquals(150L, controller.getIntervalMillis(host));
+
+		clock.advance(5_000L);
+		controller.backOff(route);
+		Assert.assertEquals(4, controller.getLimit(host));
+		Assert.assertEquals(300L, controller.getIntervalMillis(host));
+	}
+
+	@Test
+	public void limitStaysWithinOneAndDefault() {
+		for(int x = 0; x < 10; x++) {
+			controller.backOff(route);
+			clock.advance(5_000L);
+		}
+		Assert.assertEquals(1, controller.getLimit(host));
+		Assert.assertEquals(8_000L, controller.getIntervalMillis(host));
+
+		for(int x = 0; x < 200; x++) {
+			controller.probe(route);
+			clock.advance(5_000L);
+		}
+		Assert.assertEquals(16, controller.getLimit(host));
+		Assert.assertEquals(0L, controller.getIntervalMillis(host));
+		Assert.assertTrue(controller.getLimits().isEmpty());
+	}
+
+	@Test
+	public void backoffStatusAndSlowResponsesDecrease() {
+		controller.onResponse(host, route, HttpStatusCode.SC_TOO_MANY_REQUESTS, 100L, null);
+		Assert.assertEquals(8, controller.getLimit(host));
+
+		clock.advance(5_000L);
+		for(int x = 0; x < 20; x++) {
+			controller.onResponse(host, route, HttpStatusCode.SC_OK, 500L, null);
+		}
+		Assert.assertEquals(9, controller.getLimit(host));
+
+		clock.advance(5_000L);
+		controller.onResponse(host, route, HttpStatusCode.SC_OK, 1_900L, null); // slow, but under the floor
+		Assert.assertEquals(10, controller.getLimit(host));
+
+		clock.advance(5_000L);
+		controller.onResponse(host, route, HttpStatusCode.SC_OK, 6_000L, null);
+		Assert.assertEquals(5, controller.getLimit(host));
+	}
+
+	@Test
+	public void pacingSpacesRequestsAndHonorsRetryAfter() {
+		Assert.assertEquals(0L, controller.reserve(host));
+		controller.backOff(route);
+		Assert.assertEquals(0L, controller.reserve(host));
+		Assert.assertEquals(250L, controller.reserve(host));
+		Assert.assertEquals(500L, controller.reserve(host));
+
+		clock.advance(10_000L);
+		controller.onResponse(host, route, HttpStatusCode.SC_SERVICE_UNAVAILABLE, 100L, 30_000L);
+		Assert.assertEquals(30_000L, controller.reserve(host));
+		Assert.assertEquals(30_500L, controller.reserve(host));
+	}
+
+	@Test
+	public void routesSeenLaterTakeTheCurrentLimit() {
+		controller.backOff(route);
+		HttpRoute plain = new HttpRoute(new HttpHost(host, 80, "http"));
+		controller.probe(plain);
+		Assert.assertEquals(8, pool.getMaxPerRoute(plain));
+	}
+
+	@Test
+	public void idleHostsAreEvictedAndRestored() {
+		controller.backOff(route);
+		clock.advance(11, TimeUnit.MINUTES);
+		Assert.assertEquals(1, controller.evictIdle(TimeUnit.MINUTES.toMillis(10)));
+		Assert.assertEquals(16, pool.getMaxPerRoute(route));
+		Assert.assertEquals(16, controller.getLimit(host));
+	}
+
+	@Test
+	public void parseRetryAfter() {
+		Assert.assertEquals(Long.valueOf(120_000L), ChloeCongestionController.parseRetryAfterMillis("120", 0L));
+		long date = 1_500_000_000_000L;
+		Assert.assertEquals(Long.valueOf(60_000L), ChloeCongestionController.parseRetryAfterMillis(DateUtils.formatDate(new Date(date + 60_000L)), date));
+		Assert.assertNull(ChloeCongestionController.parseRetryAfterMillis("soon", 0L));
+		Assert.assertNull(ChloeCongestionController.parseRetryAfterMillis(null, 0L));
+	}
+
+	@Test
+	public void concurrentProbesAcrossHosts() throws InterruptedException {
+		ChloeCongestionController realClock = new ChloeCongestionController(pool);
+		List<HttpRoute> routes = new ArrayList<>();
+		for(int x = 0; x < 16; x++) {
+			routes.add(new HttpRoute(new HttpHost("host" + x + ".example.com", 443, "https")));
+		}
+		CountDownLatch done = new CountDownLatch(64);
+		for(int t = 0; t < 64; t++) {
+			int offset = t;
+			new Thread(() -> {
+				for(int x = 0; x < 10_000; x++) {
+					HttpRoute r = routes.get((offset + x) % routes.size());
+					if(x % 1000 == 0) {
+						realClock.backOff(r);
+					} else {
+						realClock.onResponse(r.getTargetHost().getHostName(), r, HttpStatusCode.SC_OK, 10L, null);
+					}
+				}
+				done.countDown();
+			}).start();
+		}
+		Assert.assertTrue(done.await(30, TimeUnit.SECONDS));
+		for(HttpRoute r : routes) {
+			int limit = realClock.getLimit(r.getTargetHost().getHostName());
+			Assert.assertTrue(limit >= 1 && limit <= 16);
+			Assert.assertEquals(limit, pool.getMaxPerRoute(r));
+		}
+	}
+
+	private static class RecordingPool implements ConnPoolControl<HttpRoute> {
+		private final int defaultMax;
+		private final Map<HttpRoute, Integer> limits = new ConcurrentHashMap<>();
+
+		private RecordingPool(int defaultMax) {
+			this.defaultMax = defaultMax;
+		}
+
+		@Override
+		public void setMaxTotal(int max) {
+		}
+
+		@Override
+		public int getMaxTotal() {
+			return defaultMax * 4;
+		}
+
+		@Override
+		public void setDefaultMaxPerRoute(int max) {
+		}
+
+		@Override
+		public int getDefaultMaxPerRoute() {
+			return defaultMax;
+		}
+
+		@Override
+		public void setMaxPerRoute(HttpRoute route, int max) {
+			limits.put(route, max);
+		}
+
+		@Override
+		public int getMaxPerRoute(HttpRoute route) {
+			return limits.getOrDefault(route, defaultMax);
+		}
+
+		@Override
+		public PoolStats getTotalStats() {
+			return null;
+		}
+
+		@Override
+		public PoolStats getStats(HttpRoute route) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.searchparty;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Random;
+
+
+/**
+ * Queues found URLs the way {@link AutomotiveGatherer} does, with each URL's priority worked out once, and the way it did
+ * before, with the priority checks run on both URLs at every comparison. For the frontier benchmark and its test.
+ */
+public final class EdgeQueues {
+	private static final String[] paths = {"/used-inventory/", "/about-us/", "/specials/", "/vehicle-details/", "/cars/", "/research/"};
+	private static final String[] vins = {"1HGCM82633A004352", "WP0RKCBE4CL002848"};
+
+	private final AutomotiveGatherer gatherer = new AutomotiveGatherer();
+
+
+	public Queue<?> prioritized(List<String> urls) {
+		Queue<PrioritizedUrl> queue = new PriorityQueue<>(PrioritizedUrl.order);
+		for(String url : urls) {
+			queue.offer(new PrioritizedUrl(url, gatherer.edgePriority(url)));
+		}
+		return queue;
+	}
+
+	public Queue<String> comparators(List<String> urls) {
+		Queue<String> queue = new PriorityQueue<>((s1, s2) -> Integer.compare(gatherer.edgePriority(s1), gatherer.edgePriority(s2)));
+		queue.addAll(urls);
+		return queue;
+	}
+
+	int edgePriority(String url) {
+		return gatherer.edgePriority(url);
+	}
+
+	/**
+	 * Dealer links of the kinds a crawl finds, about a third of them priority 0 by keyword or VIN.
+	 */
+	public static List<String> urls(int count, long seed) {
+		Random random = new Random(seed);
+		List<String> urls = new ArrayList<>(count);
+		for(int x = 0; x < count; x++) {
+			StringBuilder url = new StringBuilder("https://www.dealer").append(random.nextInt(5000)).append(".com")
+					.append(paths[random.nextInt(paths.length)]);
+			if(random.nextInt(8) == 0) {
+				url.append(vins[random.nextInt(vins.length)]);
+			} else {
+				url.append("page-").append(x);
+			}
+			if(random.nextBoolean()) {
+				url.append("?sort=price&page=").append(random.nextInt(40));
+			}
+			urls.add(url.toString());
+		}
+		return urls;
+	}
+}
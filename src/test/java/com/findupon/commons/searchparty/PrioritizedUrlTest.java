@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.searchparty;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+
+public class PrioritizedUrlTest {
+	private final AutomotiveGatherer gatherer = new AutomotiveGatherer();
+
+
+	@Test
+	public void equalPrioritiesCompareAsEqual() {
+		PrioritizedUrl a = new PrioritizedUrl("a", 1), b = new PrioritizedUrl("b", 0), c = new PrioritizedUrl("c", 1);
+		Assert.assertTrue(PrioritizedUrl.order.compare(b, a) < 0);
+		Assert.assertTrue(PrioritizedUrl.order.compare(a, b) > 0);
+		Assert.assertEquals(0, PrioritizedUrl.order.compare(a, c));
+	}
+
+	/**
+	 * The same parents as the comparator run on the URLs keeps, the first found of each priority.
+	 */
+	@Test
+	public void adjacencyKeepsWhatTheComparatorsKept() {
+		List<String> parents = Arrays.asList("https://www.dealer.com/specials", "https://www.dealer.com/sitemap.xml",
+				"https://www.dealer.com/about-us", "https://www.dealer.com/used-inventory");
+		Map<PrioritizedUrl, String> adjacency = new TreeMap<>(PrioritizedUrl.order);
+		Map<String, String> compared = new TreeMap<>((s1, s2) -> Integer.compare(gatherer.parentPriority(s1), gatherer.parentPriority(s2)));
+		for(String url : parents) {
+			adjacency.putIfAbsent(new PrioritizedUrl(url, gatherer.parentPriority(url)), url);
+			compared.putIfAbsent(url, url);
+		}
+		Assert.assertEquals(Arrays.asList("https://www.dealer.com/sitemap.xml", "https://www.dealer.com/specials"), new ArrayList<>(adjacency.values()));
+		Assert.assertEquals(new ArrayList<>(compared.values()), new ArrayList<>(adjacency.values()));
+	}
+
+	@Test
+	public void automotivePriorities() {
+		Assert.assertEquals(0, gatherer.edgePriority("https://www.dealer.com/USED-Inventory/"));
+		Assert.assertEquals(0, gatherer.edgePriority("https://www.dealer.com/cars/1HGCM82633A004352"));
+		Assert.assertEquals(1, gatherer.edgePriority("https://www.dealer.com/cars/1HGCM82633A00435"));
+		Assert.assertEquals(1, gatherer.edgePriority("https://www.dealer.com/about-us"));
+		Assert.assertEquals(0, gatherer.parentPriority("https://www.dealer.com/SiteMap.xml"));
+		Assert.assertEquals(0, gatherer.parentPriority("https://www.dealer.com/inventory?page=2"));
+		Assert.assertEquals(1, gatherer.parentPriority("https://www.dealer.com/vehicle-details/1HGCM82633A004352"));
+	}
+
+	@Test
+	public void pollOrderMatchesTheComparators() {
+		EdgeQueues edgeQueues = new EdgeQueues();
+		List<String> urls = EdgeQueues.urls(20_000, 7);
+		Queue<?> prioritized = edgeQueues.prioritized(urls);
+		Queue<String> compared = edgeQueues.comparators(urls);
+
+		List<String> found = new ArrayList<>();
+		List<Integer> priorities = new ArrayList<>();
+		while(!prioritized.isEmpty()) {
+			PrioritizedUrl url = (PrioritizedUrl)prioritized.poll();
+			found.add(url.getUrl());
+			priorities.add(url.getPriority());
+			Assert.assertEquals(url.getPriority(), edgeQueues.edgePriority(compared.poll()));
+		}
+		Assert.assertTrue(compared.isEmpty());
+		Assert.assertEquals(priorities.stream().sorted().collect(Collectors.toList()), priorities);
+		Assert.assertTrue(priorities.contains(0) && priorities.contains(1));
+		Assert.assertEquals(urls.stream().sorted().collect(Collectors.toList()), found.stream().sorted().collect(Collectors.toList()));
+	}
+}
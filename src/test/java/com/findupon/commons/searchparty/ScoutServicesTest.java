@@ -0,0 +1,42 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.searchparty;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+
+public class ScoutServicesTest {
+
+	@Test
+	public void hostKeyIsTheRegistrableDomain() {
+		Assert.assertEquals("phillipschevy.com", ScoutServices.getHostKey("https://www.phillipschevy.com/"));
+		Assert.assertEquals("phillipschevy.com", ScoutServices.getHostKey("HTTP://PhillipsChevy.com/new-inventory"));
+		Assert.assertEquals("phillipschevy.com", ScoutServices.getHostKey("phillipschevy.com"));
+		Assert.assertEquals("example.co.uk", ScoutServices.getHostKey("http://shop.example.co.uk/"));
+		Assert.assertEquals("localhost", ScoutServices.getHostKey("http://localhost:8080/"));
+		Assert.assertNull(ScoutServices.getHostKey(" "));
+	}
+
+	@Test
+	public void comparableUrlIgnoresProtocolWwwAndTrailingSlash() {
+		Assert.assertEquals("phillipschevy.com", ScoutServices.getComparableUrl("https://www.phillipschevy.com/"));
+		Assert.assertEquals("phillipschevy.com", ScoutServices.getComparableUrl("http://PhillipsChevy.com"));
+		Assert.assertEquals("dealer.com/phillips", ScoutServices.getComparableUrl("https://www.dealer.com/phillips/"));
+		Assert.assertNotEquals(ScoutServices.getComparableUrl("https://a.dealer.com/"), ScoutServices.getComparableUrl("https://b.dealer.com/"));
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.utilities;
+
+import com.findupon.commons.entity.datasource.AssetType;
+import com.findupon.commons.entity.datasource.DataSource;
+import com.findupon.commons.entity.datasource.DataSourceType;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+
+/**
+ * The template stands in for the database, holding the URLs already present and recording the statements run.
+ */
+public class DataSourceOperationsTest {
+	private DataSourceOperations dataSourceOperations;
+	private StubJdbcTemplate jdbcTemplate;
+
+
+	@Before
+	public void setUp() {
+		dataSourceOperations = new DataSourceOperations();
+		jdbcTemplate = new StubJdbcTemplate();
+		ReflectionTestUtils.setField(dataSourceOperations, "jdbcTemplate", jdbcTemplate);
+	}
+
+	@Test
+	public void insertsInChunks() {
+		List<DataSource> dataSources = dataSources(1200);
+		jdbcTemplate.present.add(dataSources.get(3).getUrl());
+		jdbcTemplate.present.add(dataSources.get(1100).getUrl());
+
+		Assert.assertEquals(1198, dataSourceOperations.bulkInsertNew(dataSources));
+		Assert.assertEquals(Arrays.asList(500, 500, 200), jdbcTemplate.rows);
+		for(String sql : jdbcTemplate.inserts) {
+			Assert.assertTrue(sql, sql.startsWith("insert into data_source("));
+			Assert.assertTrue(sql, sql.endsWith(" on duplicate key update id = id"));
+		}
+		Assert.assertEquals(1200, jdbcTemplate.present.size());
+		Assert.assertEquals(0, dataSourceOperations.bulkInsertNew(dataSources));
+	}
+
+	@Test
+	public void nothingToInsert() {
+		Assert.assertEquals(0, dataSourceOperations.bulkInsertNew(new ArrayList<>()));
+		Assert.assertTrue(jdbcTemplate.inserts.isEmpty());
+	}
+
+	@Test
+	public void errorsOtherThanTheKeyFail() {
+		jdbcTemplate.failure = new DataIntegrityViolationException("Data truncation: Data too long for column 'url'");
+		try {
+			dataSourceOperations.bulkInsertNew(dataSources(10));
+			Assert.fail("insert should have failed");
+		} catch(DataIntegrityViolationException e) {
+			Assert.assertSame(jdbcTemplate.failure, e);
+		}
+	}
+
+	private static List<DataSource> dataSources(int count) {
+		List<DataSource> dataSources = new ArrayList<>();
+		for(int x = 0; x < count; x++) {
+			dataSources.add(DataSource.createNew("https://www.dealer" + x + ".com", AssetType.AUTOMOBILE, DataSourceType.GENERIC));
+		}
+		return dataSources;
+	}
+
+	private static class StubJdbcTemplate extends JdbcTemplate {
+		private final Set<String> present = new HashSet<>();
+		private final List<String> inserts = new ArrayList<>();
+		private final List<Integer> rows = new ArrayList<>();
+		private RuntimeException failure;
+
+
+		@Override
+		public <T> T queryForObject(String sql, Class<T> requiredType, Object... args) {
+			Assert.assertEquals(args.length, sql.split("unhex\\(md5\\(\\?\\)\\)", -1).length - 1);
+			return requiredType.cast((int)Arrays.stream(args).filter(present::contains).count());
+		}
+
+		@Override
+		public int update(String sql, Object... args) {
+			if(failure != null) {
+				throw failure;
+			}
+			Assert.assertEquals(0, args.length % 15);
+			inserts.add(sql);
+			rows.add(args.length / 15);
+			int affected = 0;
+			for(int x = 1; x < args.length; x += 15) {
+				present.add((String)args[x]);
+				// found rows, as the driver reports them by default
+				affected++;
+			}
+			return affected;
+		}
+	}
+}
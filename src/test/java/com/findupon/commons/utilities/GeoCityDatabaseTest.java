@@ -0,0 +1,118 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.utilities;
+
+import com.maxmind.geoip.Location;
+import com.maxmind.geoip.LookupService;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+
+public class GeoCityDatabaseTest {
+	@ClassRule public static TemporaryFolder folder = new TemporaryFolder();
+	private static GeoCityFixture fixture;
+	private static Path file;
+
+
+	@BeforeClass
+	public static void writeDatabase() throws Exception {
+		file = folder.newFile("geo-city.dat").toPath();
+		fixture = GeoCityFixture.write(file, 7, 2_000);
+	}
+
+	@Test
+	public void matchesLookupService() throws Exception {
+		GeoCityDatabase database = GeoCityDatabase.open(file);
+		LookupService lookupService = new LookupService(file.toFile(), LookupService.GEOIP_MEMORY_CACHE);
+		Random random = new Random(11);
+		int found = 0;
+		for(int x = 0; x < 50_000; x++) {
+			String ip = fixture.randomAddress(random);
+			Location expected = lookupService.getLocation(ip);
+			assertLocationEquals(ip, expected, database.getLocation(ip));
+			if(expected != null) {
+				found++;
+			}
+		}
+		lookupService.close();
+		Assert.assertTrue(found > 30_000);
+	}
+
+	@Test
+	public void onlyIpv4() throws Exception {
+		GeoCityDatabase database = GeoCityDatabase.open(file);
+		Assert.assertNull(database.getLocation("0:0:0:0:0:0:0:1"));
+		Assert.assertNull(database.getLocation(InetAddress.getByAddress(new byte[]{0x20, 0x01, 0x0d, (byte)0xb8, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1})));
+	}
+
+	@Test
+	public void concurrentLookups() throws Exception {
+		GeoCityDatabase database = GeoCityDatabase.open(file);
+		Random random = new Random(13);
+		List<String> ips = new ArrayList<>();
+		for(int x = 0; x < 5_000; x++) {
+			ips.add(fixture.randomAddress(random));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<List<Location>>> futures = new ArrayList<>();
+		for(int x = 0; x < 8; x++) {
+			futures.add(executor.submit(() -> {
+				List<Location> locations = new ArrayList<>();
+				for(String ip : ips) {
+					locations.add(database.getLocation(ip));
+				}
+				return locations;
+			}));
+		}
+		for(Future<List<Location>> future : futures) {
+			List<Location> locations = future.get();
+			for(int x = 0; x < ips.size(); x++) {
+				assertLocationEquals(ips.get(x), database.getLocation(ips.get(x)), locations.get(x));
+			}
+		}
+		executor.shutdown();
+	}
+
+	private static void assertLocationEquals(String ip, Location expected, Location actual) {
+		if(expected == null || actual == null) {
+			Assert.assertSame(ip, expected, actual);
+			return;
+		}
+		Assert.assertEquals(ip, expected.countryCode, actual.countryCode);
+		Assert.assertEquals(ip, expected.countryName, actual.countryName);
+		Assert.assertEquals(ip, expected.region, actual.region);
+		Assert.assertEquals(ip, expected.city, actual.city);
+		Assert.assertEquals(ip, expected.postalCode, actual.postalCode);
+		Assert.assertEquals(ip, expected.latitude, actual.latitude, 0f);
+		Assert.assertEquals(ip, expected.longitude, actual.longitude, 0f);
+		Assert.assertEquals(ip, expected.dma_code, actual.dma_code);
+		Assert.assertEquals(ip, expected.metro_code, actual.metro_code);
+		Assert.assertEquals(ip, expected.area_code, actual.area_code);
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.utilities;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+
+/**
+ * Writes a small GeoIP City rev1 database of random networks and records, the real geo-city.dat is not checked in. The
+ * layout is the legacy one: a binary trie of 3 byte little endian pointers, the city records after it and the structure info
+ * at the end of the file.
+ */
+public final class GeoCityFixture {
+	private static final int us = 225;
+
+	private final List<long[]> networks = new ArrayList<>();
+	private final List<int[]> nodes = new ArrayList<>();
+	private final List<byte[]> records = new ArrayList<>();
+
+
+	private GeoCityFixture() {
+	}
+
+	/**
+	 * @param count networks to try, those overlapping one already placed are dropped
+	 */
+	public static GeoCityFixture write(Path file, long seed, int count) throws IOException {
+		GeoCityFixture fixture = new GeoCityFixture();
+		Random random = new Random(seed);
+		fixture.nodes.add(new int[]{-1, -1});
+		for(int x = 0; x < count; x++) {
+			int prefix = 8 + random.nextInt(17);
+			long network = (random.nextLong() & 0xFFFFFFFFL) >>> (32 - prefix) << (32 - prefix);
+			fixture.insert(network, prefix, randomRecord(random));
+		}
+		Files.write(file, fixture.serialize());
+		return fixture;
+	}
+
+	/**
+	 * @return an address inside one of the networks, or anywhere at all one time in four
+	 */
+	public String randomAddress(Random random) {
+		long ip = random.nextLong() & 0xFFFFFFFFL;
+		if(random.nextInt(4) != 0) {
+			long[] network = networks.get(random.nextInt(networks.size()));
+			long hostMask = (1L << (32 - network[1])) - 1;
+			ip = network[0] | (ip & hostMask);
+		}
+		return (ip >>> 24) + "." + (ip >>> 16 & 0xFF) + "." + (ip >>> 8 & 0xFF) + "." + (ip & 0xFF);
+	}
+
+	private void insert(long network, int prefix, byte[] record) {
+		int node = 0;
+		for(int depth = 31; depth > 32 - prefix; depth--) {
+			int bit = (int)(network >>> depth & 1);
+			int child = nodes.get(node)[bit];
+			if(child < -1) {
+				return;
+			}
+			if(child == -1) {
+				child = nodes.size();
+				nodes.add(new int[]{-1, -1});
+				nodes.get(node)[bit] = child;
+			}
+			node = child;
+		}
+		int bit = (int)(network >>> (32 - prefix) & 1);
+		if(nodes.get(node)[bit] != -1) {
+			return;
+		}
+		nodes.get(node)[bit] = -2 - records.size();
+		records.add(record);
+		networks.add(new long[]{network, prefix});
+	}
+
+	/**
+	 * Empty children point at the segment count (no record), leaves at the segment count plus their record offset, the
+	 * record area starting with a pad byte so no record sits at offset 0.
+	 */
+	private byte[] serialize() {
+		int segments = nodes.size();
+		int[] offsets = new int[records.size()];
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		data.write(0);
+		for(int x = 0; x < records.size(); x++) {
+			offsets[x] = data.size();
+			data.write(records.get(x), 0, records.get(x).length);
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for(int[] node : nodes) {
+			for(int child : node) {
+				writeInt(out, child == -1 ? segments : child < -1 ? segments + offsets[-2 - child] : child);
+			}
+		}
+		out.write(data.toByteArray(), 0, data.size());
+		out.write(0xFF);
+		out.write(0xFF);
+		out.write(0xFF);
+		out.write(2);
+		writeInt(out, segments);
+		return out.toByteArray();
+	}
+
+	private static byte[] randomRecord(Random random) {
+		ByteArrayOutputStream record = new ByteArrayOutputStream();
+		int country = random.nextBoolean() ? us : 1 + random.nextInt(250);
+		record.write(country);
+		writeString(record, random.nextInt(5) == 0 ? "" : randomString(random, 2));
+		writeString(record, random.nextInt(5) == 0 ? "" : randomString(random, 3 + random.nextInt(12)));
+		writeString(record, random.nextInt(3) == 0 ? "" : String.format("%05d", random.nextInt(100_000)));
+		writeInt(record, Math.round((random.nextFloat() * 180 - 90 + 180) * 10000));
+		writeInt(record, Math.round((random.nextFloat() * 360 - 180 + 180) * 10000));
+		if(country == us) {
+			writeInt(record, (500 + random.nextInt(400)) * 1000 + random.nextInt(1000));
+		}
+		return record.toByteArray();
+	}
+
+	private static String randomString(Random random, int length) {
+		String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz \u00e9\u00f1";
+		StringBuilder sb = new StringBuilder();
+		for(int x = 0; x < length; x++) {
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+
+	private static void writeString(ByteArrayOutputStream out, String value) {
+		for(int x = 0; x < value.length(); x++) {
+			out.write(value.charAt(x));
+		}
+		out.write(0);
+	}
+
+	private static void writeInt(ByteArrayOutputStream out, int value) {
+		out.write(value);
+		out.write(value >>> 8);
+		out.write(value >>> 16);
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.commons.utilities;
+
+import com.findupon.commons.entity.building.State;
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+
+public class MultiPatternMatcherTest {
+	private static final List<String> keywords = Arrays.asList("addr", "map", "direction", "location");
+	private static final MultiPatternMatcher matcher = MultiPatternMatcher.builder()
+			.add(0, keywords)
+			.add(1, State.paddedStateAbbreviations)
+			.build();
+
+
+	@Test
+	public void groups() {
+		Assert.assertEquals(0, matcher.match("Nothing to see"));
+		Assert.assertEquals(1, matcher.match("Get DIRECTIONS"));
+		Assert.assertEquals(2, matcher.match("Miami FL 33101"));
+		Assert.assertEquals(3, matcher.match("Our Location: Miami fl 33101"));
+		Assert.assertEquals(1, matcher.match("Sitemap FL"));
+		Assert.assertEquals(0, matcher.match(null));
+	}
+
+	@Test
+	public void foldsLikeContainsIgnoreCase() {
+		MultiPatternMatcher kia = MultiPatternMatcher.builder().add(0, "kia").build();
+		Assert.assertTrue(StringUtils.containsIgnoreCase("\u212Aia dealer", "kia")); // Kelvin sign
+		Assert.assertEquals(1, kia.match("\u212Aia dealer"));
+		Assert.assertEquals(0, kia.match("k\u00efa"));
+		Assert.assertFalse(MultiPatternMatcher.isSupported("Citro\u00ebn"));
+	}
+
+	@Test
+	public void overlappingPatterns() {
+		MultiPatternMatcher overlapping = MultiPatternMatcher.builder().add(0, "abcd").add(1, "bc").add(2, "cde").build();
+		Assert.assertEquals(3, overlapping.match("xabcdx"));
+		Assert.assertEquals(2 | 4, overlapping.match("bcde"));
+		Assert.assertEquals(2, overlapping.match("abcxbc"));
+	}
+
+	@Test
+	public void everyAsciiCharacter() {
+		MultiPatternMatcher.Builder builder = MultiPatternMatcher.builder();
+		for(char c = 0; c < 128; c++) {
+			builder.add(c % 32, c + "" + (char)(127 - c));
+		}
+		MultiPatternMatcher all = builder.build();
+		Assert.assertEquals(1 << 31, all.match("x\u007f\u0000x"));
+		Assert.assertEquals(1 << ('~' % 32), all.match("~\u0001"));
+		Assert.assertEquals(0, all.match("\u007f\u007f"));
+	}
+
+	@Test
+	public void matchesContainsIgnoreCase() {
+		Random random = new Random(11);
+		String alphabet = "adeilmnoprtFLMANYCT ";
+		for(int x = 0; x < 50_000; x++) {
+			StringBuilder sb = new StringBuilder();
+			for(int y = random.nextInt(24); y > 0; y--) {
+				sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+			}
+			String text = sb.toString();
+			int expected = (keywords.stream().anyMatch(k -> StringUtils.containsIgnoreCase(text, k)) ? 1 : 0)
+					| (State.paddedStateAbbreviations.stream().anyMatch(s -> StringUtils.containsIgnoreCase(text, s)) ? 2 : 0);
+			Assert.assertEquals(text, expected, matcher.match(text));
+		}
+	}
+}
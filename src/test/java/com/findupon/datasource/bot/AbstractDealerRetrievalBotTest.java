@@ -0,0 +1,171 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.findupon.datasource.bot;
+
+import com.findupon.commons.entity.datasource.DataSource;
+import com.findupon.commons.repository.datasource.DataSourceRepo;
+import com.findupon.commons.searchparty.ScoutServices;
+import com.findupon.commons.utilities.DataSourceOperations;
+import com.findupon.commons.utilities.SlackMessenger;
+import org.jsoup.nodes.Document;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+
+/**
+ * A run over a few subdomains of each of a few dealer domains, with the downloads and the database stubbed out.
+ */
+public class AbstractDealerRetrievalBotTest {
+	private final long delayMillis = 150L;
+	private final long downloadMillis = 50L;
+
+	private StubBot bot;
+	private List<DataSource> inserted;
+	private final AtomicInteger failingInserts = new AtomicInteger();
+
+
+	@Before
+	public void setUp() {
+		List<String> urls = new ArrayList<>();
+		for(String subdomain : new String[]{"www", "used", "service"}) {
+			for(int x = 0; x < 4; x++) {
+				urls.add("https://" + subdomain + ".dealer" + x + ".com/inventory");
+			}
+		}
+		bot = new StubBot(urls);
+		bot.verificationDelayMillis = delayMillis;
+		inserted = Collections.synchronizedList(new ArrayList<>());
+
+		DataSourceRepo dataSourceRepo = (DataSourceRepo)Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{DataSourceRepo.class},
+				(proxy, method, args) -> {
+					switch(method.getName()) {
+						case "count":
+							return 0L;
+						case "findUrlsByHostKeyIn":
+							return Collections.emptyList();
+						case "toString":
+							return "StubDataSourceRepo";
+						default:
+							throw new UnsupportedOperationException(method.getName());
+					}
+				});
+		ReflectionTestUtils.setField(bot, "dataSourceRepo", dataSourceRepo);
+		ReflectionTestUtils.setField(bot, "dataSourceOperations", new DataSourceOperations() {
+			@Override
+			public int bulkInsertNew(Collection<DataSource> dataSources) {
+				if(failingInserts.getAndDecrement() > 0) {
+					throw new DataAccessResourceFailureException("Database unavailable");
+				}
+				inserted.addAll(dataSources);
+				return dataSources.size();
+			}
+		});
+		ReflectionTestUtils.setField(bot, "slackMessenger", new SlackMessenger() {
+			@Override
+			public void sendMessageWithArgs(String format, Object... args) {
+			}
+		});
+	}
+
+	@Test
+	public void everyDealerIsVerifiedAndInserted() {
+		bot.run();
+		Assert.assertEquals(12, bot.visits.values().stream().mapToInt(List::size).sum());
+		Assert.assertEquals(12, inserted.size());
+		Assert.assertTrue(inserted.stream().allMatch(d -> d.getUrl().startsWith("https://") && !d.getUrl().endsWith("/inventory")));
+	}
+
+	@Test
+	public void failedBatchIsWrittenByTheNextFlush() {
+		bot.batchUpdateThreshold = 2;
+		failingInserts.set(1);
+		bot.run();
+		Assert.assertEquals(12, inserted.size());
+		Assert.assertEquals(12, inserted.stream().map(DataSource::getUrl).distinct().count());
+	}
+
+	@Test
+	public void oneDomainAtATimeWithTheDelay() {
+		bot.run();
+		Assert.assertEquals(4, bot.visits.size());
+		for(Map.Entry<String, List<long[]>> entry : bot.visits.entrySet()) {
+			List<long[]> visits = entry.getValue().stream().sorted((a, b) -> Long.compare(a[0], b[0])).collect(Collectors.toList());
+			Assert.assertEquals(entry.getKey(), 3, visits.size());
+			for(int x = 1; x < visits.size(); x++) {
+				long gap = visits.get(x)[0] - visits.get(x - 1)[1];
+				Assert.assertTrue(entry.getKey() + " verified again after " + gap + "ms", gap >= delayMillis);
+			}
+		}
+		// the domains themselves are verified alongside each other
+		Assert.assertTrue(bot.mostConcurrent.get() > 1);
+	}
+
+	private class StubBot extends AbstractDealerRetrievalBot {
+		private final List<String> urls;
+		private final Map<String, List<long[]>> visits = new ConcurrentHashMap<>();
+		private final AtomicInteger concurrent = new AtomicInteger();
+		private final AtomicInteger mostConcurrent = new AtomicInteger();
+
+
+		private StubBot(List<String> urls) {
+			this.urls = urls;
+		}
+
+		@Override
+		protected void obtainDatasourceUrls() {
+			urls.forEach(this::addDealerUrl);
+		}
+
+		@Override
+		protected String getSourceName() {
+			return "Stub";
+		}
+
+		@Override
+		protected boolean verifyAssetType() {
+			return false;
+		}
+
+		@Override
+		Document download(String url) {
+			mostConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+			long start = System.currentTimeMillis();
+			try {
+				Thread.sleep(downloadMillis);
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			concurrent.decrementAndGet();
+			visits.computeIfAbsent(ScoutServices.getHostKey(url), k -> Collections.synchronizedList(new ArrayList<>()))
+					.add(new long[]{start, System.currentTimeMillis()});
+			return Document.createShell(url);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015-2019 Connor Van Elswyk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.findupon.frontier;
+
+import com.findupon.commons.netops.TestClock;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+
+public class PersistentFrontierTest {
+	@Rule public TemporaryFolder folder = new TemporaryFolder();
+
+
+	@Test
+	public void priorityFirstAndQueuedOnce() throws IOException {
+		try(PersistentFrontier frontier = open(0)) {
+			Assert.assertTrue(frontier.offer("http://www.example.com/"));
+			Assert.assertTrue(frontier.offer("http://www.usedcars.com/"));
+			Assert.assertFalse(frontier.offer("HTTP://WWW.USEDCARS.COM/"));
+			Assert.assertFalse(frontier.offer("http://www.bad.com/\n"));
+			Assert.assertEquals(2, frontier.size());
+			Assert.assertEquals("http://www.usedcars.com/", frontier.poll());
+			Assert.assertEquals("http://www.example.com/", frontier.poll());
+			Assert.assertNull(frontier.poll());
+		}
+	}
+
+	@Test
+	public void politeness() throws IOException {
+		try(PersistentFrontier frontier = open(60_000)) {
+			frontier.offer("http://www.example.com/");
+			frontier.offer("http://shop.example.com/");
+			frontier.offer("http://www.other.com/");
+			Assert.assertEquals("http://www.example.com/", frontier.poll());
+			Assert.assertEquals("http://www.other.com/", frontier.poll());
+			Assert.assertNull(frontier.poll());
+			Assert.assertEquals(1, frontier.size());
+		}
+	}
+
+	@Test
+	public void heldUrlsStayOffDisk() throws IOException {
+		TestClock clock = new TestClock();
+		try(PersistentFrontier frontier = open(1_000, clock)) {
+			Assert.assertEquals(-1, frontier.millisUntilReady());
+			for(int x = 0; x < 20; x++) {
+				frontier.offer("http://www.example.com/" + x);
+			}
+			frontier.checkpoint();
+			long bytes = segmentBytes();
+			Assert.assertEquals("http://www.example.com/0", frontier.poll());
+			for(int x = 0; x < 100; x++) {
+				Assert.assertNull(frontier.poll());
+			}
+			frontier.checkpoint();
+			Assert.assertEquals(bytes, segmentBytes());
+			Assert.assertEquals(19, frontier.size());
+			Assert.assertEquals(1_000, frontier.millisUntilReady());
+
+			clock.advance(400);
+			Assert.assertEquals(600, frontier.millisUntilReady());
+			clock.advance(600);
+			Assert.assertEquals("http://www.example.com/1", frontier.poll());
+			Assert.assertNull(frontier.poll());
+		}
+		try(PersistentFrontier frontier = open(1_000, clock)) {
+			Assert.assertEquals(18, frontier.size());
+			Assert.assertEquals("http://www.example.com/2", frontier.poll());
+		}
+	}
+
+	@Test
+	public void heldUrlsKeepTheirPriority() throws IOException {
+		TestClock clock = new TestClock();
+		try(PersistentFrontier frontier = open(1_000, clock)) {
+			frontier.offer("http://www.example.com/");
+			frontier.offer("http://www.example.com/other");
+			frontier.offer("http://www.example.com/cars");
+			Assert.assertEquals("http://www.example.com/cars", frontier.poll());
+			Assert.assertNull(frontier.poll());
+			clock.advance(1_000);
+			Assert.assertEquals("http://www.example.com/", frontier.poll());
+			frontier.offer("http://www.usedcars.com/");
+			Assert.assertEquals("http://www.usedcars.com/", frontier.poll());
+			Assert.assertNull(frontier.poll());
+			Assert.assertEquals(1, frontier.size());
+		}
+	}
+
+	@Test
+	public void resumesFromCheckpoint() throws IOException {
+		PersistentFrontier crashed = open(0);
+		for(int x = 0; x < 1000; x++) {
+			crashed.offer("http://www.dealer" + x + ".com/");
+		}
+		Set<String> polled = new HashSet<>();
+		for(int x = 0; x < 100; x++) {
+			polled.add(crashed.poll());
+		}
+		crashed.checkpoint();
+		for(int x = 0; x < 50; x++) {
+			crashed.poll(); // lost with the crash, handed out again
+		}
+		// a record half written when the process died
+		try(Stream<Path> segments = Files.walk(folder.getRoot().toPath())) {
+			Path segment = segments.filter(p -> p.toString().endsWith(".seg")).findFirst().orElseThrow(IllegalStateException::new);
+			Files.write(segment, "http://www.partial".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		}
+
+		try(PersistentFrontier frontier = open(0)) {
+			Assert.assertEquals(900, frontier.size());
+			Assert.assertFalse(frontier.offer("http://www.dealer5.com/"));
+			String url;
+			while((url = frontier.poll()) != null) {
+				Assert.assertTrue(url, url.matches("http://www\\.dealer\\d+\\.com/"));
+				Assert.assertTrue(url, polled.add(url));
+			}
+			Assert.assertEquals(1000, polled.size());
+		}
+	}
+
+	private PersistentFrontier open(long politenessMillis) throws IOException {
+		return new PersistentFrontier(folder.getRoot().toPath(), 4, 10_000, politenessMillis, url -> url.contains("cars") ? 0 : 1);
+	}
+
+	private PersistentFrontier open(long politenessMillis, TestClock clock) throws IOException {
+		return new PersistentFrontier(folder.getRoot().toPath(), 4, 10_000, politenessMillis, url -> url.contains("cars") ? 0 : 1, clock);
+	}
+
+	private long segmentBytes() throws IOException {
+		try(Stream<Path> segments = Files.walk(folder.getRoot().toPath())) {
+			return segments.filter(p -> p.toString().endsWith(".seg")).mapToLong(p -> p.toFile().length()).sum();
+		}
+	}
+}